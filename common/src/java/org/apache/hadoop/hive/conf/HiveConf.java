@@ -157,6 +157,7 @@ public class HiveConf extends Configuration {
     // QL execution stuff
     SCRIPTWRAPPER("hive.exec.script.wrapper", null),
     PLAN("hive.exec.plan", ""),
+    PLANFORMAT("hive.exec.plan.format", "xml"),
     SCRATCHDIR("hive.exec.scratchdir", "/tmp/hive-" + System.getProperty("user.name")),
     SUBMITVIACHILD("hive.exec.submitviachild", false),
     SCRIPTERRORLIMIT("hive.exec.script.maxerrsize", 100000),
@@ -358,6 +359,7 @@ public class HiveConf extends Configuration {
     HIVEGROUPBYSKEW("hive.groupby.skewindata", false),
     HIVEJOINEMITINTERVAL("hive.join.emit.interval", 1000),
     HIVEJOINCACHESIZE("hive.join.cache.size", 25000),
+    HIVEWINDOWINGCACHESIZE("hive.windowing.cache.size", 25000),
     HIVEMAPJOINBUCKETCACHESIZE("hive.mapjoin.bucket.cache.size", 100),
     HIVEMAPJOINROWSIZE("hive.mapjoin.size.key", 10000),
     HIVEMAPJOINCACHEROWS("hive.mapjoin.cache.numrows", 25000),
@@ -366,6 +368,8 @@ public class HiveConf extends Configuration {
     HIVEMAPJOINFOLLOWEDBYMAPAGGRHASHMEMORY("hive.mapjoin.followby.map.aggr.hash.percentmemory", (float) 0.3),
     HIVEMAPAGGRMEMORYTHRESHOLD("hive.map.aggr.hash.force.flush.memory.threshold", (float) 0.9),
     HIVEMAPAGGRHASHMINREDUCTION("hive.map.aggr.hash.min.reduction", (float) 0.5),
+    HIVEMAPAGGRHASHSPILL("hive.map.aggr.hash.spill", false),
+    HIVEMAPAGGRHASHPRIMITIVE("hive.map.aggr.hash.primitive", true),
     HIVEMULTIGROUPBYSINGLEREDUCER("hive.multigroupby.singlereducer", true),
 
     // for hive udtf operator
@@ -434,12 +438,22 @@ public class HiveConf extends Configuration {
     HIVEHASHTABLEFOLLOWBYGBYMAXMEMORYUSAGE("hive.mapjoin.followby.gby.localtask.max.memory.usage", (float) 0.55),
     HIVEHASHTABLEMAXMEMORYUSAGE("hive.mapjoin.localtask.max.memory.usage", (float) 0.90),
     HIVEHASHTABLESCALE("hive.mapjoin.check.memory.rows", (long)100000),
+    HIVEHASHTABLECOMPACT("hive.mapjoin.hashtable.compact", false),
+    HIVEHYBRIDHASHJOINPARTITIONS("hive.mapjoin.hybrid.partitions", 16),
 
     HIVEDEBUGLOCALTASK("hive.debug.localtask",false),
 
     HIVEJOBPROGRESS("hive.task.progress", false),
 
     HIVEINPUTFORMAT("hive.input.format", "org.apache.hadoop.hive.ql.io.CombineHiveInputFormat"),
+    // number of threads computing the splits of the input directories, 1 to compute them serially
+    HIVE_SPLIT_GENERATION_THREADS("hive.exec.split.generation.threads", 1),
+    // number of input directories whose splits are cached per process, 0 to disable
+    HIVE_SPLIT_CACHE_SIZE("hive.exec.split.cache.size", 0),
+    // number of input paths whose content summary is cached per process, 0 to disable
+    HIVE_INPUT_SUMMARY_CACHE_SIZE("hive.exec.input.summary.cache.size", 0),
+    // seconds a cached content summary is used for, 0 to keep it until it is invalidated
+    HIVE_INPUT_SUMMARY_CACHE_TTL("hive.exec.input.summary.cache.ttl", 600L),
 
     HIVEENFORCEBUCKETING("hive.enforce.bucketing", false),
     HIVEENFORCESORTING("hive.enforce.sorting", false),
@@ -453,6 +467,7 @@ public class HiveConf extends Configuration {
     // Optimizer
     HIVEOPTCP("hive.optimize.cp", true), // column pruner
     HIVEOPTINDEXFILTER("hive.optimize.index.filter", false), // automatically use indexes
+    HIVEOPTRCFILESTATSFILTER("hive.optimize.rcfile.stats.filter", false), // skip rcfile row groups
     HIVEINDEXAUTOUPDATE("hive.optimize.index.autoupdate", false), //automatically update stale indexes
     HIVEOPTPPD("hive.optimize.ppd", true), // predicate pushdown
     HIVEPPDRECOGNIZETRANSITIVITY("hive.ppd.recognizetransivity", true), // predicate pushdown
@@ -464,6 +479,19 @@ public class HiveConf extends Configuration {
     HIVEOPTBUCKETMAPJOIN("hive.optimize.bucketmapjoin", false), // optimize bucket map join
     HIVEOPTSORTMERGEBUCKETMAPJOIN("hive.optimize.bucketmapjoin.sortedmerge", false), // try to use sorted merge bucket map join
     HIVEOPTREDUCEDEDUPLICATION("hive.optimize.reducededuplication", true),
+    // fold constant calls and share common subexpressions of select and filter operators
+    HIVEOPTEXPRESSIONS("hive.optimize.expressions", false),
+    // skip the big table partitions and rows of a map join which cannot match the small table keys
+    HIVEOPTRUNTIMEFILTER("hive.optimize.runtime.filter", false),
+    HIVEOPTRUNTIMEFILTERMAXVALUES("hive.optimize.runtime.filter.max.values", 10000),
+    // run the supported map-side scan, filter, select and group by operators on batches of rows
+    HIVE_VECTORIZATION_ENABLED("hive.vectorized.execution.enabled", false),
+    // reorder comma-joined tables by size when translating SQL (hive.ql.mode=sql)
+    HIVEOPTSQLJOINREORDER("hive.optimize.sql.joinreorder", false),
+    // number of translated SQL commands (hive.ql.mode=sql) cached per process, 0 to disable
+    HIVE_SQL_TRANSLATION_CACHE_SIZE("hive.sql.translation.cache.size", 256),
+    // print the SQL AST, query info and Hive AST after every translation stage
+    HIVE_SQL_TRANSLATION_TRACE("hive.sql.translation.trace", false),
 
     // Indexes
     HIVEOPTINDEXFILTER_COMPACT_MINSIZE("hive.optimize.index.filter.compact.minsize", (long) 5 * 1024 * 1024 * 1024), // 5G
@@ -558,6 +586,8 @@ public class HiveConf extends Configuration {
     HIVE_REWORK_MAPREDWORK("hive.rework.mapredwork", false),
     HIVE_CONCATENATE_CHECK_INDEX ("hive.exec.concatenate.check.index", true),
     HIVE_IO_EXCEPTION_HANDLERS("hive.io.exception.handlers", ""),
+    HIVE_RCFILE_COLUMN_STATS("hive.io.rcfile.column.stats", false),
+    HIVE_RCFILE_COLUMN_ENCODINGS("hive.io.rcfile.column.encodings", false),
 
     //prefix used to auto generated column aliases
     HIVE_AUTOGEN_COLUMNALIAS_PREFIX_LABEL("hive.autogen.columnalias.prefix.label", "_c"),
@@ -52,7 +52,8 @@ struct OperatorType {
     LATERALVIEWJOIN = 14,
     LATERALVIEWFORWARD = 15,
     HASHTABLESINK = 16,
-    HASHTABLEDUMMY = 17
+    HASHTABLEDUMMY = 17,
+    WINDOWING = 18
   };
 };
 
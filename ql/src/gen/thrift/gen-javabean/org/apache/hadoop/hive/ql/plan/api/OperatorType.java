@@ -28,7 +28,8 @@ public enum OperatorType implements org.apache.thrift.TEnum {
   LATERALVIEWJOIN(14),
   LATERALVIEWFORWARD(15),
   HASHTABLESINK(16),
-  HASHTABLEDUMMY(17);
+  HASHTABLEDUMMY(17),
+  WINDOWING(18);
 
   private final int value;
 
@@ -85,6 +86,8 @@ public enum OperatorType implements org.apache.thrift.TEnum {
         return HASHTABLESINK;
       case 17:
         return HASHTABLEDUMMY;
+      case 18:
+        return WINDOWING;
       default:
         return null;
     }
@@ -54,6 +54,7 @@ $GLOBALS['E_OperatorType'] = array(
   'LATERALVIEWFORWARD' => 15,
   'HASHTABLESINK' => 16,
   'HASHTABLEDUMMY' => 17,
+  'WINDOWING' => 18,
 );
 
 final class OperatorType {
@@ -75,6 +76,7 @@ final class OperatorType {
   const LATERALVIEWFORWARD = 15;
   const HASHTABLESINK = 16;
   const HASHTABLEDUMMY = 17;
+  const WINDOWING = 18;
   static public $__names = array(
     0 => 'JOIN',
     1 => 'MAPJOIN',
@@ -94,6 +96,7 @@ final class OperatorType {
     15 => 'LATERALVIEWFORWARD',
     16 => 'HASHTABLESINK',
     17 => 'HASHTABLEDUMMY',
+    18 => 'WINDOWING',
   );
 }
 
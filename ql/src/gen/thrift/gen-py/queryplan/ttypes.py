@@ -61,6 +61,7 @@ class OperatorType:
   LATERALVIEWFORWARD = 15
   HASHTABLESINK = 16
   HASHTABLEDUMMY = 17
+  WINDOWING = 18
 
   _VALUES_TO_NAMES = {
     0: "JOIN",
@@ -81,6 +82,7 @@ class OperatorType:
     15: "LATERALVIEWFORWARD",
     16: "HASHTABLESINK",
     17: "HASHTABLEDUMMY",
+    18: "WINDOWING",
   }
 
   _NAMES_TO_VALUES = {
@@ -102,6 +104,7 @@ class OperatorType:
     "LATERALVIEWFORWARD": 15,
     "HASHTABLESINK": 16,
     "HASHTABLEDUMMY": 17,
+    "WINDOWING": 18,
   }
 
 class TaskType:
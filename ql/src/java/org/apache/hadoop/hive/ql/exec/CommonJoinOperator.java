@@ -156,6 +156,8 @@ public abstract class CommonJoinOperator<T extends JoinDesc> extends
 
   transient boolean hasLeftSemiJoin = false;
 
+  transient boolean hasLeftAntiJoin = false;
+
   protected transient int countAfterReport;
   protected transient int heartbeatInterval;
   protected static final int NOTSKIPBIGTABLE = -1;
@@ -334,6 +336,9 @@ public abstract class CommonJoinOperator<T extends JoinDesc> extends
       if(condn[i].getType() == JoinDesc.LEFT_SEMI_JOIN) {
         hasLeftSemiJoin = true;
       }
+      if(condn[i].getType() == JoinDesc.LEFT_ANTI_JOIN) {
+        hasLeftAntiJoin = true;
+      }
     }
 
     LOG.info("JOIN "
@@ -441,6 +446,39 @@ transient boolean newGroupStarted = false;
     return resNulls;
   }
 
+  /**
+   * Implement anti join operator. A lhs row is kept, with the rhs set to null,
+   * only if it has no match on the rhs: either the rhs is empty for the join
+   * key or the lhs row does not pass through the join filters. Rows with null
+   * join keys never match, so NOT IN's null semantics are left to the caller.
+   */
+  private ArrayList<boolean[]> joinObjectsLeftAntiJoin(
+      ArrayList<boolean[]> resNulls, ArrayList<boolean[]> inputNulls,
+      ArrayList<Object> newObj, IntermediateObject intObj, int left,
+      boolean newObjNull) {
+    Iterator<boolean[]> nullsIter = inputNulls.iterator();
+    while (nullsIter.hasNext()) {
+      boolean[] oldNulls = nullsIter.next();
+      boolean oldObjNull = oldNulls[left];
+      boolean noMatch = newObjNull || oldObjNull;
+      if (!noMatch) {
+        // the lhs row does not match if it does not pass through filter
+        ArrayList<Object> leftObj = intObj.getObjs()[left];
+        int filterIndex = joinValues.get(order[left]).size();
+        if (filterIndex < leftObj.size()) {
+          noMatch = ((BooleanWritable) (leftObj.get(filterIndex))).get();
+        }
+      }
+      if (noMatch) {
+        boolean[] newNulls = new boolean[intObj.getCurSize()];
+        copyOldArray(oldNulls, newNulls);
+        newNulls[oldNulls.length] = true;
+        resNulls.add(newNulls);
+      }
+    }
+    return resNulls;
+  }
+
   private ArrayList<boolean[]> joinObjectsLeftOuterJoin(
       ArrayList<boolean[]> resNulls, ArrayList<boolean[]> inputNulls,
       ArrayList<Object> newObj, IntermediateObject intObj, int left,
@@ -653,6 +691,9 @@ transient boolean newGroupStarted = false;
     } else if (type == JoinDesc.LEFT_SEMI_JOIN) {
       return joinObjectsLeftSemiJoin(resNulls, inputNulls, newObj, intObj,
           left, newObjNull);
+    } else if (type == JoinDesc.LEFT_ANTI_JOIN) {
+      return joinObjectsLeftAntiJoin(resNulls, inputNulls, newObj, intObj,
+          left, newObjNull);
     }
 
     assert (type == JoinDesc.FULL_OUTER_JOIN);
@@ -680,9 +721,10 @@ transient boolean newGroupStarted = false;
       for (ArrayList<Object> newObj = aliasRes.first(); newObj != null; newObj = aliasRes
           .next()) {
 
-        // check for skipping in case of left semi join
+        // check for skipping in case of left semi join or left anti join
         if (aliasNum > 0
-            && condn[aliasNum - 1].getType() == JoinDesc.LEFT_SEMI_JOIN
+            && (condn[aliasNum - 1].getType() == JoinDesc.LEFT_SEMI_JOIN
+            || condn[aliasNum - 1].getType() == JoinDesc.LEFT_ANTI_JOIN)
             && newObj != dummyObj[aliasNum]) { // successful match
           skipping = true;
         }
@@ -699,8 +741,8 @@ transient boolean newGroupStarted = false;
         intObj.popObj();
         firstRow = false;
 
-        // if left-semi-join found a match, skipping the rest of the rows in the
-        // rhs table of the semijoin
+        // if left-semi-join or left-anti-join found a match, skipping the rest
+        // of the rows in the rhs table of the semijoin or antijoin
         if (skipping) {
           break;
         }
@@ -843,11 +885,11 @@ transient boolean newGroupStarted = false;
         }
       }
 
-      if (!hasEmpty && !mayHasMoreThanOne) {
+      if (!hasEmpty && !mayHasMoreThanOne && !hasLeftAntiJoin) {
         LOG.trace("calling genAllOneUniqueJoinObject");
         genAllOneUniqueJoinObject();
         LOG.trace("called genAllOneUniqueJoinObject");
-      } else if (!hasEmpty && !hasLeftSemiJoin) {
+      } else if (!hasEmpty && !hasLeftSemiJoin && !hasLeftAntiJoin) {
         LOG.trace("calling genUniqueJoinObject");
         genUniqueJoinObject(0, 0);
         LOG.trace("called genUniqueJoinObject");
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+
+/**
+ * Process-wide LRU cache from input path to its content summary, so that the queries of a long
+ * running process such as HiveServer do not ask the name node again for the size of the same
+ * partitions. Context only keeps the summaries of one query.
+ *
+ * Hive drops the entries below or above the location of a table or partition whenever it loads
+ * into, alters or drops it. Changes made by other processes are not seen, so an entry also
+ * expires hive.exec.input.summary.cache.ttl seconds after it was cached.
+ */
+public final class ContentSummaryCache {
+  private static final Log LOG = LogFactory.getLog("hive.ql.exec.ContentSummaryCache");
+
+  private static ContentSummaryCache instance;
+
+  private final int maxSize;
+  private final long ttl;
+  private final Map<String, Entry> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private static class Entry {
+    private final ContentSummary summary;
+    private final long time;
+
+    Entry(ContentSummary summary, long time) {
+      this.summary = summary;
+      this.time = time;
+    }
+  }
+
+  private ContentSummaryCache(final int maxSize, long ttl) {
+    this.maxSize = maxSize;
+    this.ttl = ttl;
+    cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get the cache, or null if it is disabled by hive.exec.input.summary.cache.size. The cache is
+   * re-created if the configured size or time to live changes.
+   */
+  public static synchronized ContentSummaryCache get(Configuration conf) {
+    int size = HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVE_INPUT_SUMMARY_CACHE_SIZE);
+    if (size <= 0) {
+      return null;
+    }
+    long ttl = HiveConf.getLongVar(conf, HiveConf.ConfVars.HIVE_INPUT_SUMMARY_CACHE_TTL) * 1000;
+    if (instance == null || instance.maxSize != size || instance.ttl != ttl) {
+      instance = new ContentSummaryCache(size, ttl);
+    }
+    return instance;
+  }
+
+  /**
+   * Check if the cache has been created in this process, even if it is disabled by the
+   * configuration of the caller.
+   */
+  public static synchronized boolean isCreated() {
+    return instance != null;
+  }
+
+  /**
+   * Drop the cached summaries of a location, of the paths below it and of the paths above it,
+   * as the data or the location of a table or partition changed.
+   */
+  public static void invalidate(Path location) {
+    ContentSummaryCache cache;
+    synchronized (ContentSummaryCache.class) {
+      cache = instance;
+    }
+    if (cache != null && location != null) {
+      cache.remove(location);
+    }
+  }
+
+  /**
+   * Look up the summary of a path.
+   *
+   * @return the cached summary, or null if it is not cached or expired
+   */
+  public ContentSummary lookup(String path) {
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(path);
+      if (entry != null && ttl > 0 && System.currentTimeMillis() - entry.time > ttl) {
+        cache.remove(path);
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.summary;
+  }
+
+  public void put(String path, ContentSummary summary) {
+    Entry entry = new Entry(summary, System.currentTimeMillis());
+    synchronized (cache) {
+      cache.put(path, entry);
+    }
+  }
+
+  private void remove(Path location) {
+    String prefix = location.toUri().getPath();
+    int removed = 0;
+    synchronized (cache) {
+      Iterator<String> iter = cache.keySet().iterator();
+      while (iter.hasNext()) {
+        String path = new Path(iter.next()).toUri().getPath();
+        if (isAncestor(prefix, path) || isAncestor(path, prefix)) {
+          iter.remove();
+          removed++;
+        }
+      }
+    }
+    if (removed > 0) {
+      invalidations.addAndGet(removed);
+      LOG.info("Dropped " + removed + " cached content summaries of " + location);
+    }
+  }
+
+  /**
+   * Check if a path is equal to or below another one. Schemes and authorities are ignored, so at
+   * worst too many entries are dropped.
+   */
+  private static boolean isAncestor(String ancestor, String path) {
+    if (!path.startsWith(ancestor)) {
+      return false;
+    }
+    return path.length() == ancestor.length() || ancestor.endsWith(Path.SEPARATOR)
+        || path.charAt(ancestor.length()) == Path.SEPARATOR_CHAR;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+}
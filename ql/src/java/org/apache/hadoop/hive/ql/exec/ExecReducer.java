@@ -98,6 +98,8 @@ public class ExecReducer extends MapReduceBase implements Reducer {
     // Allocate the bean at the beginning -
     memoryMXBean = ManagementFactory.getMemoryMXBean();
     l4j.info("maximum memory = " + memoryMXBean.getHeapMemoryUsage().getMax());
+    // the JVM may be reused from a task which did not release its memory
+    MemoryManager.getInstance().reset();
 
     isLogInfoEnabled = l4j.isInfoEnabled();
 
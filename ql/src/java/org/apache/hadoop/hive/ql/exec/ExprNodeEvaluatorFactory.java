@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
@@ -35,6 +39,78 @@ public final class ExprNodeEvaluatorFactory {
   }
 
   public static ExprNodeEvaluator get(ExprNodeDesc desc) {
+    return get(desc, null);
+  }
+
+  /**
+   * Create the evaluators of the expressions of an operator. A deterministic function
+   * subexpression whose instance occurs more than once in the expressions, which is how the
+   * ExpressionOptimizer shares common subexpressions, gets a single ExprNodeSharedEvaluator and
+   * is evaluated once per row. The operator calls counter.next() before evaluating each row.
+   */
+  public static ExprNodeEvaluator[] get(List<ExprNodeDesc> descs,
+      ExprNodeSharedEvaluator.RowCounter counter) {
+    Map<ExprNodeDesc, Integer> occurrences = new IdentityHashMap<ExprNodeDesc, Integer>();
+    for (ExprNodeDesc desc : descs) {
+      countOccurrences(desc, occurrences);
+    }
+    SharedExpressions shared = new SharedExpressions(counter);
+    for (Map.Entry<ExprNodeDesc, Integer> entry : occurrences.entrySet()) {
+      if (entry.getValue() > 1 && ExprNodeSharedEvaluator.isShareable(entry.getKey())) {
+        shared.evaluators.put(entry.getKey(), null);
+      }
+    }
+
+    ExprNodeEvaluator[] evaluators = new ExprNodeEvaluator[descs.size()];
+    for (int i = 0; i < evaluators.length; i++) {
+      evaluators[i] = get(descs.get(i), shared.evaluators.isEmpty() ? null : shared);
+    }
+    return evaluators;
+  }
+
+  private static void countOccurrences(ExprNodeDesc desc, Map<ExprNodeDesc, Integer> occurrences) {
+    if (!(desc instanceof ExprNodeGenericFuncDesc)) {
+      return;
+    }
+    Integer count = occurrences.get(desc);
+    if (count != null) {
+      // The children of a shared subexpression are evaluated as part of it
+      occurrences.put(desc, count + 1);
+      return;
+    }
+    occurrences.put(desc, 1);
+    for (ExprNodeDesc child : ((ExprNodeGenericFuncDesc) desc).getChildExprs()) {
+      countOccurrences(child, occurrences);
+    }
+  }
+
+  /**
+   * The shared subexpressions of the expressions of an operator, and their evaluators once
+   * created.
+   */
+  static final class SharedExpressions {
+    final Map<ExprNodeDesc, ExprNodeEvaluator> evaluators =
+        new IdentityHashMap<ExprNodeDesc, ExprNodeEvaluator>();
+    final ExprNodeSharedEvaluator.RowCounter counter;
+
+    SharedExpressions(ExprNodeSharedEvaluator.RowCounter counter) {
+      this.counter = counter;
+    }
+  }
+
+  static ExprNodeEvaluator get(ExprNodeDesc desc, SharedExpressions shared) {
+    if (shared != null && shared.evaluators.containsKey(desc)) {
+      ExprNodeEvaluator evaluator = shared.evaluators.get(desc);
+      if (evaluator == null) {
+        evaluator = new ExprNodeSharedEvaluator(create(desc, shared), shared.counter);
+        shared.evaluators.put(desc, evaluator);
+      }
+      return evaluator;
+    }
+    return create(desc, shared);
+  }
+
+  private static ExprNodeEvaluator create(ExprNodeDesc desc, SharedExpressions shared) {
     // Constant node
     if (desc instanceof ExprNodeConstantDesc) {
       return new ExprNodeConstantEvaluator((ExprNodeConstantDesc) desc);
@@ -45,7 +121,7 @@ public final class ExprNodeEvaluatorFactory {
     }
     // Generic Function node, e.g. CASE, an operator or a UDF node
     if (desc instanceof ExprNodeGenericFuncDesc) {
-      return new ExprNodeGenericFuncEvaluator((ExprNodeGenericFuncDesc) desc);
+      return new ExprNodeGenericFuncEvaluator((ExprNodeGenericFuncDesc) desc, shared);
     }
     // Field node, e.g. get a.myfield1 from a
     if (desc instanceof ExprNodeFieldDesc) {
@@ -89,12 +89,17 @@ public class ExprNodeGenericFuncEvaluator extends ExprNodeEvaluator {
   }
 
   public ExprNodeGenericFuncEvaluator(ExprNodeGenericFuncDesc expr) {
+    this(expr, null);
+  }
+
+  ExprNodeGenericFuncEvaluator(ExprNodeGenericFuncDesc expr,
+      ExprNodeEvaluatorFactory.SharedExpressions shared) {
     this.expr = expr;
     children = new ExprNodeEvaluator[expr.getChildExprs().size()];
     isEager = false;
     for (int i = 0; i < children.length; i++) {
       ExprNodeDesc child = expr.getChildExprs().get(i);
-      ExprNodeEvaluator nodeEvaluator = ExprNodeEvaluatorFactory.get(child);
+      ExprNodeEvaluator nodeEvaluator = ExprNodeEvaluatorFactory.get(child, shared);
       children[i] = nodeEvaluator;
       // If we have eager evaluators anywhere below us, then we are eager too.
       if (nodeEvaluator instanceof ExprNodeGenericFuncEvaluator) {
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeFieldDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+
+/**
+ * ExprNodeSharedEvaluator.
+ *
+ * The evaluator of a subexpression which occurs several times in the expressions of an operator.
+ * The subexpression is evaluated at most once per row: the result is kept until the operator
+ * moves to the next row.
+ */
+public class ExprNodeSharedEvaluator extends ExprNodeEvaluator {
+
+  /**
+   * The current row of an operator, shared by the evaluators of its shared subexpressions.
+   */
+  public static class RowCounter {
+
+    long row;
+
+    /**
+     * Move to the next row, which invalidates the results kept by the shared evaluators.
+     */
+    public void next() {
+      row++;
+    }
+  }
+
+  private final ExprNodeEvaluator evaluator;
+  private final RowCounter counter;
+
+  transient ObjectInspector outputOI;
+  transient long evaluatedRow = -1;
+  transient Object result;
+
+  public ExprNodeSharedEvaluator(ExprNodeEvaluator evaluator, RowCounter counter) {
+    this.evaluator = evaluator;
+    this.counter = counter;
+  }
+
+  @Override
+  public ObjectInspector initialize(ObjectInspector rowInspector) throws HiveException {
+    // Every occurrence initializes the evaluator, but it is only initialized once
+    if (outputOI == null) {
+      outputOI = evaluator.initialize(rowInspector);
+    }
+    return outputOI;
+  }
+
+  @Override
+  public Object evaluate(Object row) throws HiveException {
+    if (evaluatedRow != counter.row) {
+      result = evaluator.evaluate(row);
+      evaluatedRow = counter.row;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isDeterministic() {
+    return evaluator.isDeterministic();
+  }
+
+  /**
+   * Return whether a subexpression can be evaluated once for all its occurrences in a row, i.e.
+   * whether all its functions are deterministic and stateless.
+   */
+  public static boolean isShareable(ExprNodeDesc desc) {
+    if (desc instanceof ExprNodeFieldDesc) {
+      return isShareable(((ExprNodeFieldDesc) desc).getDesc());
+    }
+    if (desc instanceof ExprNodeGenericFuncDesc) {
+      GenericUDF udf = ((ExprNodeGenericFuncDesc) desc).getGenericUDF();
+      if (!FunctionRegistry.isDeterministic(udf) || FunctionRegistry.isStateful(udf)) {
+        return false;
+      }
+      for (ExprNodeDesc child : desc.getChildren()) {
+        if (!isShareable(child)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -19,6 +19,7 @@
 package org.apache.hadoop.hive.ql.exec;
 
 import java.io.Serializable;
+import java.util.Collections;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
@@ -48,6 +49,7 @@ public class FilterOperator extends Operator<FilterDesc> implements
 
   private final transient LongWritable filtered_count, passed_count;
   private transient ExprNodeEvaluator conditionEvaluator;
+  private transient ExprNodeSharedEvaluator.RowCounter rowCounter;
   private transient PrimitiveObjectInspector conditionInspector;
   private transient int consecutiveFails;
   private transient int consecutiveSearches;
@@ -67,7 +69,14 @@ public class FilterOperator extends Operator<FilterDesc> implements
     try {
       heartbeatInterval = HiveConf.getIntVar(hconf,
           HiveConf.ConfVars.HIVESENDHEARTBEAT);
-      conditionEvaluator = ExprNodeEvaluatorFactory.get(conf.getPredicate());
+      if (conf.isSortedFilter()) {
+        // compare() walks the function evaluators of the predicate, so nothing is shared
+        conditionEvaluator = ExprNodeEvaluatorFactory.get(conf.getPredicate());
+      } else {
+        rowCounter = new ExprNodeSharedEvaluator.RowCounter();
+        conditionEvaluator = ExprNodeEvaluatorFactory.get(
+            Collections.singletonList(conf.getPredicate()), rowCounter)[0];
+      }
       statsMap.put(Counter.FILTERED, filtered_count);
       statsMap.put(Counter.PASSED, passed_count);
       conditionInspector = null;
@@ -115,6 +124,9 @@ public class FilterOperator extends Operator<FilterDesc> implements
       }
     }
 
+    if (rowCounter != null) {
+      rowCounter.next();
+    }
     Object condition = conditionEvaluator.evaluate(row);
 
     // If we are currently performing a binary search on the input, don't forward the results
@@ -18,17 +18,24 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -44,9 +51,13 @@ import org.apache.hadoop.hive.ql.plan.GroupByDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
-import org.apache.hadoop.hive.serde2.lazy.LazyPrimitive;
-import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyStringObjectInspector;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters.Converter;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.StandardStructObjectInspector;
@@ -54,11 +65,9 @@ import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.UnionObject;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
-import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
-import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
-import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
 
 /**
  * GroupBy operator implementation.
@@ -72,6 +81,18 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   private static final long serialVersionUID = 1L;
   private static final int NUMROWSESTIMATESIZE = 1000;
 
+  /**
+   * Counter.
+   *
+   */
+  public static enum Counter {
+    HASH_TABLE_PEAK_MEMORY, HASH_TABLE_PEAK_ENTRIES, HASH_TABLE_FLUSHES
+  }
+
+  private final transient LongWritable peakMemoryCount = new LongWritable();
+  private final transient LongWritable peakEntriesCount = new LongWritable();
+  private final transient LongWritable flushesCount = new LongWritable();
+
   protected transient ExprNodeEvaluator[] keyFields;
   protected transient ObjectInspector[] keyObjectInspectors;
 
@@ -94,7 +115,7 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   // Union expr for distinct keys
   transient ExprNodeEvaluator unionExprEval = null;
 
-  transient GenericUDAFEvaluator[] aggregationEvaluators;
+  protected transient GenericUDAFEvaluator[] aggregationEvaluators;
 
   protected transient ArrayList<ObjectInspector> objectInspectors;
   transient ArrayList<String> fieldNames;
@@ -110,6 +131,12 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   // Used by hash-based GroupBy: Mode = HASH, PARTIALS
   protected transient HashMap<KeyWrapper, AggregationBuffer[]> hashAggregations;
 
+  // Used by hash-based GroupBy instead of hashAggregations when all the aggregations are count,
+  // sum, min, max or avg of numeric columns: the keys are mapped to group ids in the primitive
+  // arrays of primitiveAggregations
+  protected transient HashMap<KeyWrapper, Integer> hashGroups;
+  transient PrimitiveAggregations primitiveAggregations;
+
   // Used by hash distinct aggregations when hashGrpKeyNotRedKey is true
   protected transient HashSet<KeyWrapper> keysCurrentGroup;
 
@@ -135,45 +162,27 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   // new Key ObjectInspectors are objectInspectors from the parent
   transient StructObjectInspector newKeyObjectInspector;
   transient StructObjectInspector currentKeyObjectInspector;
-  public static MemoryMXBean memoryMXBean;
-  private long maxMemory;
   private float memoryThreshold;
 
-  /**
-   * This is used to store the position and field names for variable length
-   * fields.
-   **/
-  class varLenFields {
-    int aggrPos;
-    List<Field> fields;
-
-    varLenFields(int aggrPos, List<Field> fields) {
-      this.aggrPos = aggrPos;
-      this.fields = fields;
-    }
-
-    int getAggrPos() {
-      return aggrPos;
-    }
+  // When the hash table is full, it is sorted on the keys and spilled to a local run file. The
+  // partial aggregations of the runs are merged at close by evaluators in PARTIAL2 mode.
+  transient boolean spillHashAggr;
+  transient File spillDirectory;
+  transient List<File> spilledRuns;
+  transient SerDe spillSerDe;
+  transient StructObjectInspector spillObjectInspector;
+  transient ObjectInspector[] spillKeyObjectInspectors;
+  transient GenericUDAFEvaluator[] mergeEvaluators;
+  transient Converter[] mergeConverters;
 
-    List<Field> getFields() {
-      return fields;
-    }
-  };
-
-  // for these positions, some variable primitive type (String) is used, so size
-  // cannot be estimated. sample it at runtime.
-  transient List<Integer> keyPositionsSize;
-
-  // for these positions, some variable primitive type (String) is used for the
-  // aggregation classes
-  transient List<varLenFields> aggrPositions;
-
-  transient int fixedRowSize;
   transient long maxHashTblMemory;
-  transient int totalVariableSize;
-  transient int numEntriesVarSize;
-  transient int numEntriesHashTable;
+  // the memory of the hash table reserved from the MemoryManager, and the average size of the
+  // aggregation buffers of an entry, sampled every NUMROWSESTIMATESIZE entries
+  transient long hashTableMemory;
+  transient long aggregationsSize;
+  transient long numEntriesSized;
+  // rows added to the hash table since the heap usage was last checked
+  transient int numRowsSinceHeapCheck;
   transient int countAfterReport;
   transient int heartbeatInterval;
 
@@ -331,8 +340,6 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       hashAggregations = new HashMap<KeyWrapper, AggregationBuffer[]>(256);
       aggregations = newAggregations();
       hashAggr = true;
-      keyPositionsSize = new ArrayList<Integer>();
-      aggrPositions = new ArrayList<varLenFields>();
       groupbyMapAggrInterval = HiveConf.getIntVar(hconf,
           HiveConf.ConfVars.HIVEGROUPBYMAPINTERVAL);
 
@@ -344,6 +351,25 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       if (groupKeyIsNotReduceKey) {
         keysCurrentGroup = new HashSet<KeyWrapper>();
       }
+
+      // the partial aggregations of distinct keys are not merged but recomputed by the reducer,
+      // so they are flushed as before
+      spillHashAggr = HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPAGGRHASHSPILL)
+          && !groupKeyIsNotReduceKey && unionExprEval == null;
+      for (boolean isDistinct : aggregationIsDistinct) {
+        spillHashAggr = spillHashAggr && !isDistinct;
+      }
+
+      if (HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEMAPAGGRHASHPRIMITIVE)
+          && unionExprEval == null && !groupKeyIsNotReduceKey) {
+        primitiveAggregations = PrimitiveAggregations.create(conf.getAggregators(),
+            aggregationEvaluators, aggregationParameterObjectInspectors);
+      }
+      if (primitiveAggregations != null) {
+        LOG.info("Hash aggregations are kept in primitive arrays");
+        hashGroups = new HashMap<KeyWrapper, Integer>(256);
+        hashAggregations = null;
+      }
     }
 
     fieldNames = conf.getOutputColumnNames();
@@ -372,161 +398,82 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     newKeys = keyWrapperFactory.getKeyWrapper();
 
     firstRow = true;
-    // estimate the number of hash table entries based on the size of each
-    // entry. Since the size of a entry
-    // is not known, estimate that based on the number of entries
     if (hashAggr) {
       computeMaxEntriesHashAggr(hconf);
     }
-    memoryMXBean = ManagementFactory.getMemoryMXBean();
-    maxMemory = memoryMXBean.getHeapMemoryUsage().getMax();
+    if (spillHashAggr) {
+      initializeSpill(hconf);
+    }
     memoryThreshold = this.getConf().getMemoryThreshold();
+    statsMap.put(Counter.HASH_TABLE_PEAK_MEMORY, peakMemoryCount);
+    statsMap.put(Counter.HASH_TABLE_PEAK_ENTRIES, peakEntriesCount);
+    statsMap.put(Counter.HASH_TABLE_FLUSHES, flushesCount);
     initializeChildren(hconf);
   }
 
   /**
-   * Estimate the number of entries in map-side hash table. The user can specify
-   * the total amount of memory to be used by the map-side hash. By default, all
-   * available memory is used. The size of each row is estimated, rather
-   * crudely, and the number of entries are figure out based on that.
-   *
-   * @return number of entries that can fit in hash table - useful for map-side
-   *         aggregation only
+   * Compute the memory of the map-side hash table. The user can specify the
+   * portion of the memory to be used by the map-side hash. The size of each
+   * entry is estimated as it is added, and reserved from the MemoryManager.
    **/
   private void computeMaxEntriesHashAggr(Configuration hconf) throws HiveException {
     float memoryPercentage = this.getConf().getGroupByMemoryUsage();
-    maxHashTblMemory = (long) (memoryPercentage * Runtime.getRuntime().maxMemory());
-    estimateRowSize();
-  }
-
-  private static final int javaObjectOverHead = 64;
-  private static final int javaHashEntryOverHead = 64;
-  private static final int javaSizePrimitiveType = 16;
-  private static final int javaSizeUnknownType = 256;
-
-  /**
-   * The size of the element at position 'pos' is returned, if possible. If the
-   * datatype is of variable length, STRING, a list of such key positions is
-   * maintained, and the size for such positions is then actually calculated at
-   * runtime.
-   *
-   * @param pos
-   *          the position of the key
-   * @param c
-   *          the type of the key
-   * @return the size of this datatype
-   **/
-  private int getSize(int pos, PrimitiveCategory category) {
-    switch (category) {
-    case VOID:
-    case BOOLEAN:
-    case BYTE:
-    case SHORT:
-    case INT:
-    case LONG:
-    case FLOAT:
-    case DOUBLE:
-      return javaSizePrimitiveType;
-    case STRING:
-      keyPositionsSize.add(new Integer(pos));
-      return javaObjectOverHead;
-    default:
-      return javaSizeUnknownType;
-    }
+    maxHashTblMemory = (long) (memoryPercentage * MemoryManager.getInstance().getMaxMemory());
+    hashTableMemory = 0;
+    aggregationsSize = 0;
+    numEntriesSized = 0;
+    numRowsSinceHeapCheck = 0;
   }
 
   /**
-   * The size of the element at position 'pos' is returned, if possible. If the
-   * field is of variable length, STRING, a list of such field names for the
-   * field position is maintained, and the size for such positions is then
-   * actually calculated at runtime.
-   *
-   * @param pos
-   *          the position of the key
-   * @param c
-   *          the type of the key
-   * @param f
-   *          the field to be added
-   * @return the size of this datatype
-   **/
-  private int getSize(int pos, Class<?> c, Field f) {
-    if (c.isPrimitive()
-        || c.isInstance(Boolean.valueOf(true))
-        || c.isInstance(Byte.valueOf((byte) 0))
-        || c.isInstance(Short.valueOf((short) 0))
-        || c.isInstance(Integer.valueOf(0))
-        || c.isInstance(Long.valueOf(0))
-        || c.isInstance(new Float(0))
-        || c.isInstance(new Double(0))) {
-      return javaSizePrimitiveType;
-    }
-
-    if (c.isInstance(new String())) {
-      int idx = 0;
-      varLenFields v = null;
-      for (idx = 0; idx < aggrPositions.size(); idx++) {
-        v = aggrPositions.get(idx);
-        if (v.getAggrPos() == pos) {
-          break;
+   * Initialize the serde of the spilled runs, and the evaluators that merge them. Spilling is
+   * disabled if the partial aggregations cannot be merged back. The runs are written to a
+   * directory of this operator under the local work directory of the job.
+   */
+  private void initializeSpill(Configuration hconf) {
+    String localDir = hconf.get("job.local.dir", System.getProperty("java.io.tmpdir"));
+    spillDirectory = new File(localDir, "hive-groupby-" + Utilities.getTaskId(hconf) + "-"
+        + getIdentifier());
+    try {
+      StringBuilder colNames = new StringBuilder();
+      StringBuilder colTypes = new StringBuilder();
+      for (int i = 0; i < fieldNames.size(); i++) {
+        if (i > 0) {
+          colNames.append(',');
+          colTypes.append(',');
         }
+        colNames.append(fieldNames.get(i));
+        colTypes.append(TypeInfoUtils.getTypeInfoFromObjectInspector(objectInspectors.get(i))
+            .getTypeName());
       }
+      spillSerDe = new LazyBinarySerDe();
+      spillSerDe.initialize(null, Utilities.makeProperties(Constants.LIST_COLUMNS,
+          colNames.toString(), Constants.LIST_COLUMN_TYPES, colTypes.toString()));
+      spillObjectInspector = (StructObjectInspector) ObjectInspectorUtils
+          .getStandardObjectInspector(spillSerDe.getObjectInspector(),
+          ObjectInspectorCopyOption.WRITABLE);
+      List<? extends StructField> fields = spillObjectInspector.getAllStructFieldRefs();
 
-      if (idx == aggrPositions.size()) {
-        v = new varLenFields(pos, new ArrayList<Field>());
-        aggrPositions.add(v);
+      spillKeyObjectInspectors = new ObjectInspector[keyFields.length];
+      for (int i = 0; i < keyFields.length; i++) {
+        spillKeyObjectInspectors[i] = fields.get(i).getFieldObjectInspector();
       }
 
-      v.getFields().add(f);
-      return javaObjectOverHead;
-    }
-
-    return javaSizeUnknownType;
-  }
-
-  /**
-   * @param pos
-   *          position of the key
-   * @param typeinfo
-   *          type of the input
-   * @return the size of this datatype
-   **/
-  private int getSize(int pos, TypeInfo typeInfo) {
-    if (typeInfo instanceof PrimitiveTypeInfo) {
-      return getSize(pos, ((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory());
-    }
-    return javaSizeUnknownType;
-  }
-
-  /**
-   * @return the size of each row
-   **/
-  private void estimateRowSize() throws HiveException {
-    // estimate the size of each entry -
-    // a datatype with unknown size (String/Struct etc. - is assumed to be 256
-    // bytes for now).
-    // 64 bytes is the overhead for a reference
-    fixedRowSize = javaHashEntryOverHead;
-
-    ArrayList<ExprNodeDesc> keys = conf.getKeys();
-
-    // Go over all the keys and get the size of the fields of fixed length. Keep
-    // track of the variable length keys
-    for (int pos = 0; pos < keys.size(); pos++) {
-      fixedRowSize += getSize(pos, keys.get(pos).getTypeInfo());
-    }
-
-    // Go over all the aggregation classes and and get the size of the fields of
-    // fixed length. Keep track of the variable length
-    // fields in these aggregation classes.
-    for (int i = 0; i < aggregationEvaluators.length; i++) {
-
-      fixedRowSize += javaObjectOverHead;
-      Class<? extends AggregationBuffer> agg = aggregationEvaluators[i]
-          .getNewAggregationBuffer().getClass();
-      Field[] fArr = ObjectInspectorUtils.getDeclaredNonStaticFields(agg);
-      for (Field f : fArr) {
-        fixedRowSize += getSize(i, f.getType(), f);
+      mergeEvaluators = new GenericUDAFEvaluator[aggregationEvaluators.length];
+      mergeConverters = new Converter[aggregationEvaluators.length];
+      for (int i = 0; i < aggregationEvaluators.length; i++) {
+        AggregationDesc aggr = conf.getAggregators().get(i);
+        mergeEvaluators[i] = FunctionRegistry.getGenericUDAFEvaluator(
+            aggr.getGenericUDAFName(), Arrays.asList(aggregationParameterObjectInspectors[i]),
+            aggr.getDistinct(), aggr.getParameters().isEmpty());
+        ObjectInspector partialOI = objectInspectors.get(keyFields.length + i);
+        ObjectInspector mergeOI = mergeEvaluators[i].init(GenericUDAFEvaluator.Mode.PARTIAL2,
+            new ObjectInspector[] {fields.get(keyFields.length + i).getFieldObjectInspector()});
+        mergeConverters[i] = ObjectInspectorConverters.getConverter(mergeOI, partialOI);
       }
+    } catch (Exception e) {
+      LOG.warn("Disable spilling of the hash aggregations", e);
+      spillHashAggr = false;
     }
   }
 
@@ -719,7 +666,11 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       newKeys.getNewKey(row, rowInspector);
       if (hashAggr) {
         newKeys.setHashKey();
-        processHashAggr(row, rowInspector, newKeys);
+        if (hashGroups != null) {
+          processPrimitiveHashAggr(row, newKeys);
+        } else {
+          processHashAggr(row, rowInspector, newKeys);
+        }
       } else {
         processAggr(row, rowInspector, newKeys);
       }
@@ -745,9 +696,10 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     boolean newEntryForHashAggr = false;
 
     // hash-based aggregations
+    KeyWrapper newKeyProber = null;
     aggs = hashAggregations.get(newKeys);
     if (aggs == null) {
-      KeyWrapper newKeyProber = newKeys.copyKey();
+      newKeyProber = newKeys.copyKey();
       aggs = newAggregations();
       hashAggregations.put(newKeyProber, aggs);
       newEntryForHashAggr = true;
@@ -765,6 +717,9 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
 
     // Update the aggs
     updateAggregations(aggs, row, rowInspector, true, newEntryForHashAggr, null);
+    if (newKeyProber != null) {
+      reserveEntryMemory(newKeyProber, aggs);
+    }
 
     // We can only flush after the updateAggregations is done, or the
     // potentially new entry "aggs"
@@ -775,8 +730,45 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
     // If the grouping key is not the same as reduction key, flushing can only
     // happen at boundaries
     if ((!groupKeyIsNotReduceKey || firstRowInGroup)
-        && shouldBeFlushed(newKeys)) {
-      flush(false);
+        && shouldBeFlushed()) {
+      if (spillHashAggr) {
+        spill();
+      } else {
+        flush(false);
+      }
+    }
+  }
+
+  /**
+   * Hash aggregation into primitive arrays: the parameters are evaluated and
+   * added to the state of the group of the key, without any evaluator call or
+   * parameter array.
+   */
+  private void processPrimitiveHashAggr(Object row, KeyWrapper newKeys)
+      throws HiveException {
+    Integer group = hashGroups.get(newKeys);
+    if (group == null) {
+      KeyWrapper newKeyProber = newKeys.copyKey();
+      group = Integer.valueOf(primitiveAggregations.newGroup());
+      hashGroups.put(newKeyProber, group);
+      numRowsHashTbl++;
+      reserveEntryMemory(newKeyProber, MemoryManager.OBJECT_OVERHEAD
+          + primitiveAggregations.getEntrySize());
+    }
+
+    int groupId = group.intValue();
+    for (int ai = 0; ai < aggregationParameterFields.length; ai++) {
+      ExprNodeEvaluator[] fields = aggregationParameterFields[ai];
+      primitiveAggregations.aggregate(ai, groupId,
+          fields.length == 0 ? null : fields[0].evaluate(row));
+    }
+
+    if (shouldBeFlushed()) {
+      if (spillHashAggr) {
+        spill();
+      } else {
+        flush(false);
+      }
     }
   }
 
@@ -825,72 +817,60 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
   }
 
   /**
-   * Based on user-parameters, should the hash table be flushed.
-   *
-   * @param newKeys
-   *          keys for the row under consideration
-   **/
-  private boolean shouldBeFlushed(KeyWrapper newKeys) {
-    int numEntries = hashAggregations.size();
-    long usedMemory;
-    float rate;
-
-    // The fixed size for the aggregation class is already known. Get the
-    // variable portion of the size every NUMROWSESTIMATESIZE rows.
-    if ((numEntriesHashTable == 0) || ((numEntries % NUMROWSESTIMATESIZE) == 0)) {
-      //check how much memory left memory
-      usedMemory = memoryMXBean.getHeapMemoryUsage().getUsed();
-      rate = (float) usedMemory / (float) maxMemory;
-      if(rate > memoryThreshold){
-        return true;
-      }
-      for (Integer pos : keyPositionsSize) {
-        Object key = newKeys.getKeyArray()[pos.intValue()];
-        // Ignore nulls
-        if (key != null) {
-          if (key instanceof LazyPrimitive) {
-              totalVariableSize +=
-                  ((LazyPrimitive<LazyStringObjectInspector, Text>) key).
-                      getWritableObject().getLength();
-          } else if (key instanceof String) {
-            totalVariableSize += ((String) key).length();
-          } else if (key instanceof Text) {
-            totalVariableSize += ((Text) key).getLength();
-          }
-        }
-      }
-
-      AggregationBuffer[] aggs = null;
-      if (aggrPositions.size() > 0) {
-        KeyWrapper newKeyProber = newKeys.copyKey();
-        aggs = hashAggregations.get(newKeyProber);
-      }
+   * Reserve the memory of a new hash table entry from the MemoryManager. The
+   * aggregation buffers of the entries are alike but for their variable length
+   * fields, so their size is sampled every NUMROWSESTIMATESIZE entries.
+   */
+  private void reserveEntryMemory(KeyWrapper key, AggregationBuffer[] aggs) {
+    if (numEntriesSized % NUMROWSESTIMATESIZE == 0) {
+      long numSamples = numEntriesSized / NUMROWSESTIMATESIZE;
+      aggregationsSize = (aggregationsSize * numSamples + MemoryManager.estimateSize(aggs))
+          / (numSamples + 1);
+    }
+    numEntriesSized++;
+    reserveEntryMemory(key, aggregationsSize);
+  }
 
-      for (varLenFields v : aggrPositions) {
-        int aggrPos = v.getAggrPos();
-        List<Field> fieldsVarLen = v.getFields();
-        AggregationBuffer agg = aggs[aggrPos];
+  private void reserveEntryMemory(KeyWrapper key, long aggregationsBytes) {
+    long bytes = MemoryManager.HASH_ENTRY_OVERHEAD + MemoryManager.estimateSize(key)
+        + aggregationsBytes;
+    hashTableMemory += bytes;
+    MemoryManager.getInstance().reserve(bytes);
+    peakMemoryCount.set(Math.max(peakMemoryCount.get(), hashTableMemory));
+    peakEntriesCount.set(Math.max(peakEntriesCount.get(), getHashTableSize()));
+  }
 
-        try {
-          for (Field f : fieldsVarLen) {
-            totalVariableSize += ((String) f.get(agg)).length();
-          }
-        } catch (IllegalAccessException e) {
-          assert false;
-        }
-      }
+  private int getHashTableSize() {
+    if (hashGroups != null) {
+      return hashGroups.size();
+    }
+    return hashAggregations == null ? 0 : hashAggregations.size();
+  }
 
-      numEntriesVarSize++;
+  private void releaseHashTableMemory(long bytes) {
+    hashTableMemory -= bytes;
+    MemoryManager.getInstance().release(bytes);
+  }
 
-      // Update the number of entries that can fit in the hash table
-      numEntriesHashTable =
-          (int) (maxHashTblMemory / (fixedRowSize + (totalVariableSize / numEntriesVarSize)));
-      LOG.trace("Hash Aggr: #hash table = " + numEntries
-          + " #max in hash table = " + numEntriesHashTable);
+  /**
+   * Based on user-parameters, should the hash table be flushed: if it uses
+   * more than its portion of the memory, or the task more than the memory
+   * threshold. The reservations do not follow the aggregation buffers which
+   * keep growing after their entry was added (collect_set, percentile_approx,
+   * string min/max...), so the heap usage is also checked every
+   * NUMROWSESTIMATESIZE rows.
+   **/
+  private boolean shouldBeFlushed() {
+    boolean heapExceeded = false;
+    if (++numRowsSinceHeapCheck >= NUMROWSESTIMATESIZE) {
+      numRowsSinceHeapCheck = 0;
+      heapExceeded = MemoryManager.getInstance().isHeapExceeded(memoryThreshold);
     }
-
-    // flush if necessary
-    if (numEntries >= numEntriesHashTable) {
+    if (heapExceeded || hashTableMemory > maxHashTblMemory
+        || MemoryManager.getInstance().isExceeded(memoryThreshold)) {
+      LOG.info("Hash Aggr: #hash table = " + getHashTableSize() + " memory = "
+          + hashTableMemory + " task memory = " + MemoryManager.getInstance().getUsedMemory());
+      flushesCount.set(flushesCount.get() + 1);
       return true;
     }
     return false;
@@ -900,6 +880,17 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
 
     countAfterReport = 0;
 
+    // The group ids of the primitive arrays are not reused, so all the
+    // groups are flushed
+    if (hashGroups != null) {
+      LOG.info("Hash Tbl flush: #hash table = " + hashGroups.size());
+      forwardGroups();
+      if (complete) {
+        hashGroups = null;
+      }
+      return;
+    }
+
     // Currently, the algorithm flushes 10% of the entries - this can be
     // changed in the future
 
@@ -912,6 +903,7 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       }
       hashAggregations.clear();
       hashAggregations = null;
+      releaseHashTableMemory(hashTableMemory);
       LOG.info("Hash Table completed flushed");
       return;
     }
@@ -927,12 +919,221 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       iter.remove();
       numDel++;
       if (numDel * 10 >= oldSize) {
+        releaseHashTableMemory(hashTableMemory * numDel / oldSize);
         LOG.info("Hash Table flushed: new size = " + hashAggregations.size());
         return;
       }
     }
   }
 
+  /**
+   * Sort the keys of the hash table, and write the keys and the partial aggregations to a new
+   * run file in the spill directory. The entries are removed from the hash table as they are
+   * written, so only the sorted array of keys is held in addition to the table.
+   */
+  private void spill() throws HiveException {
+    countAfterReport = 0;
+
+    try {
+      if (spilledRuns == null) {
+        if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+          throw new IOException("Cannot create the spill directory " + spillDirectory);
+        }
+        spilledRuns = new ArrayList<File>();
+      }
+      File run = new File(spillDirectory, "run-" + spilledRuns.size());
+      spilledRuns.add(run);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(run)));
+      int numEntries;
+      try {
+        if (hashGroups != null) {
+          KeyWrapper[] keys = sortKeys(hashGroups);
+          numEntries = keys.length;
+          out.writeInt(numEntries);
+          for (KeyWrapper key : keys) {
+            int group = hashGroups.remove(key).intValue();
+            spillSerDe.serialize(getRow(key.getKeyArray(), group), outputObjInspector)
+                .write(out);
+          }
+        } else {
+          KeyWrapper[] keys = sortKeys(hashAggregations);
+          numEntries = keys.length;
+          out.writeInt(numEntries);
+          for (KeyWrapper key : keys) {
+            AggregationBuffer[] aggs = hashAggregations.remove(key);
+            spillSerDe.serialize(getRow(key.getKeyArray(), aggs), outputObjInspector)
+                .write(out);
+          }
+        }
+      } finally {
+        out.close();
+      }
+      LOG.info("Hash Table spilled: " + numEntries + " entries to " + run);
+    } catch (IOException e) {
+      throw new HiveException(e);
+    } catch (SerDeException e) {
+      throw new HiveException(e);
+    }
+    if (hashGroups != null) {
+      primitiveAggregations.clear();
+    }
+    releaseHashTableMemory(hashTableMemory);
+  }
+
+  private KeyWrapper[] sortKeys(Map<KeyWrapper, ?> hashTable) {
+    KeyWrapper[] keys = hashTable.keySet().toArray(new KeyWrapper[hashTable.size()]);
+    Arrays.sort(keys, new Comparator<KeyWrapper>() {
+      public int compare(KeyWrapper o1, KeyWrapper o2) {
+        return ObjectInspectorUtils.compare(o1.getKeyArray(), currentKeyObjectInspectors,
+            o2.getKeyArray(), currentKeyObjectInspectors);
+      }
+    });
+    return keys;
+  }
+
+  /**
+   * A spilled run, read back in the order of its keys.
+   */
+  private class SpilledRun {
+    private final DataInputStream in;
+    private final BytesWritable bytes = new BytesWritable();
+    private int remaining;
+    private List<Object> row;
+
+    SpilledRun(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      remaining = in.readInt();
+    }
+
+    @SuppressWarnings("unchecked")
+    boolean next() throws IOException, SerDeException {
+      if (remaining == 0) {
+        return false;
+      }
+      remaining--;
+      bytes.readFields(in);
+      row = (List<Object>) ObjectInspectorUtils.copyToStandardObject(
+          spillSerDe.deserialize(bytes), spillSerDe.getObjectInspector(),
+          ObjectInspectorCopyOption.WRITABLE);
+      return true;
+    }
+
+    Object[] getKeys() {
+      return row.subList(0, keyFields.length).toArray();
+    }
+
+    Object getPartial(int i) {
+      return row.get(keyFields.length + i);
+    }
+
+    void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Merge the spilled runs, and forward the merged aggregations of each key once.
+   */
+  private void mergeSpilledRuns() throws HiveException {
+    // the rest of the hash table is the last run
+    if (getHashTableSize() > 0) {
+      spill();
+    }
+    LOG.info("Begin merging " + spilledRuns.size() + " spilled runs");
+
+    final Map<SpilledRun, Object[]> runKeys = new HashMap<SpilledRun, Object[]>();
+    PriorityQueue<SpilledRun> queue = new PriorityQueue<SpilledRun>(spilledRuns.size(),
+        new Comparator<SpilledRun>() {
+          public int compare(SpilledRun o1, SpilledRun o2) {
+            return ObjectInspectorUtils.compare(runKeys.get(o1), spillKeyObjectInspectors,
+                runKeys.get(o2), spillKeyObjectInspectors);
+          }
+        });
+    List<SpilledRun> runs = new ArrayList<SpilledRun>();
+    try {
+      for (File file : spilledRuns) {
+        SpilledRun run = new SpilledRun(file);
+        runs.add(run);
+        if (run.next()) {
+          runKeys.put(run, run.getKeys());
+          queue.add(run);
+        }
+      }
+
+      AggregationBuffer[] aggs = new AggregationBuffer[mergeEvaluators.length];
+      for (int i = 0; i < mergeEvaluators.length; i++) {
+        aggs[i] = mergeEvaluators[i].getNewAggregationBuffer();
+      }
+      Object[] keys = null;
+      long numKeys = 0;
+      while (!queue.isEmpty()) {
+        SpilledRun run = queue.poll();
+        Object[] runKey = runKeys.get(run);
+        if (keys != null && ObjectInspectorUtils.compare(keys, spillKeyObjectInspectors,
+            runKey, spillKeyObjectInspectors) != 0) {
+          forwardMerged(keys, aggs);
+          numKeys++;
+          keys = null;
+        }
+        if (keys == null) {
+          keys = runKey;
+        }
+        for (int i = 0; i < mergeEvaluators.length; i++) {
+          mergeEvaluators[i].merge(aggs[i], run.getPartial(i));
+        }
+        if (run.next()) {
+          runKeys.put(run, run.getKeys());
+          queue.add(run);
+        }
+      }
+      if (keys != null) {
+        forwardMerged(keys, aggs);
+        numKeys++;
+      }
+      LOG.info("Merged spilled runs: " + numKeys + " keys");
+    } catch (IOException e) {
+      throw new HiveException(e);
+    } catch (SerDeException e) {
+      throw new HiveException(e);
+    } finally {
+      for (SpilledRun run : runs) {
+        try {
+          run.close();
+        } catch (IOException e) {
+          LOG.warn("Failed to close a spilled run", e);
+        }
+      }
+      deleteSpilledRuns();
+    }
+  }
+
+  private void forwardMerged(Object[] keys, AggregationBuffer[] aggs) throws HiveException {
+    int totalFields = keys.length + aggs.length;
+    if (forwardCache == null) {
+      forwardCache = new Object[totalFields];
+    }
+    for (int i = 0; i < keys.length; i++) {
+      forwardCache[i] = keys[i];
+    }
+    for (int i = 0; i < aggs.length; i++) {
+      forwardCache[keys.length + i] = mergeConverters[i].convert(
+          mergeEvaluators[i].evaluate(aggs[i]));
+      mergeEvaluators[i].reset(aggs[i]);
+    }
+    forward(forwardCache, outputObjInspector);
+  }
+
+  private void deleteSpilledRuns() {
+    if (spilledRuns != null) {
+      for (File run : spilledRuns) {
+        run.delete();
+      }
+      spillDirectory.delete();
+      spilledRuns = null;
+    }
+  }
+
   transient Object[] forwardCache;
 
   /**
@@ -944,6 +1145,37 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
    */
   protected void forward(Object[] keys, AggregationBuffer[] aggs)
       throws HiveException {
+    forward(getRow(keys, aggs), outputObjInspector);
+  }
+
+  private Object[] getRow(Object[] keys, int group) {
+    int totalFields = keys.length + aggregationEvaluators.length;
+    if (forwardCache == null) {
+      forwardCache = new Object[totalFields];
+    }
+    for (int i = 0; i < keys.length; i++) {
+      forwardCache[i] = keys[i];
+    }
+    for (int i = 0; i < aggregationEvaluators.length; i++) {
+      forwardCache[keys.length + i] = primitiveAggregations.evaluate(i, group);
+    }
+    return forwardCache;
+  }
+
+  /**
+   * Forward all the groups of the primitive arrays, and clear them.
+   */
+  private void forwardGroups() throws HiveException {
+    for (Map.Entry<KeyWrapper, Integer> m : hashGroups.entrySet()) {
+      forward(getRow(m.getKey().getKeyArray(), m.getValue().intValue()), outputObjInspector);
+    }
+    hashGroups.clear();
+    primitiveAggregations.clear();
+    releaseHashTableMemory(hashTableMemory);
+  }
+
+  private Object[] getRow(Object[] keys, AggregationBuffer[] aggs)
+      throws HiveException {
     int totalFields = keys.length+ aggs.length;
     if (forwardCache == null) {
       forwardCache = new Object[totalFields];
@@ -955,8 +1187,7 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
       forwardCache[keys.length + i] = aggregationEvaluators[i]
           .evaluate(aggs[i]);
     }
-
-    forward(forwardCache, outputObjInspector);
+    return forwardCache;
   }
 
   /**
@@ -994,7 +1225,14 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
           // create dummy keys - size 0
           forward(new Object[0], aggregations);
         } else {
-          if (hashAggregations != null) {
+          if (spilledRuns != null) {
+            mergeSpilledRuns();
+          }
+          if (hashGroups != null) {
+            LOG.info("Begin Hash Table flush at close: size = "
+                + hashGroups.size());
+            forwardGroups();
+          } else if (hashAggregations != null) {
             LOG.info("Begin Hash Table flush at close: size = "
                 + hashAggregations.size());
             Iterator iter = hashAggregations.entrySet().iterator();
@@ -1024,6 +1262,8 @@ public class GroupByOperator extends Operator<GroupByDesc> implements
         throw new HiveException(e);
       }
     }
+    deleteSpilledRuns();
+    releaseHashTableMemory(hashTableMemory);
   }
 
   // Group by contains the columns needed - no need to aggregate from children
@@ -33,11 +33,13 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
 import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinHashTable;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
 import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
 import org.apache.hadoop.hive.ql.exec.persistence.RowContainer;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.HashTableSinkDesc;
+import org.apache.hadoop.hive.ql.plan.RuntimeFilterDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
@@ -47,9 +49,11 @@ import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StandardStructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StandardStructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.util.ReflectionUtils;
 
 
@@ -58,6 +62,17 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
   private static final long serialVersionUID = 1L;
   private static final Log LOG = LogFactory.getLog(HashTableSinkOperator.class.getName());
 
+  /**
+   * Counter.
+   *
+   */
+  public static enum Counter {
+    HASHTABLE_MEMORY, HASHTABLE_KEYS
+  }
+
+  private final transient LongWritable hashTableMemory = new LongWritable();
+  private final transient LongWritable hashTableKeys = new LongWritable();
+
   // from abstract map join operator
   /**
    * The expressions for join inputs's join keys.
@@ -112,6 +127,10 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
   protected transient Map<Byte, TableDesc> spillTableDesc; // spill tables are
 
   protected transient Map<Byte, HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>> mapJoinTables;
+  /**
+   * The small table keys collected for the scan of the big table.
+   */
+  protected transient RuntimeFilter[] runtimeFilters;
   protected transient boolean noOuterJoin;
 
   private long rowNumber = 0;
@@ -181,6 +200,8 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
   protected void initializeOp(Configuration hconf) throws HiveException {
     boolean isSilent = HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVESESSIONSILENT);
     console = new LogHelper(LOG, isSilent);
+    statsMap.put(Counter.HASHTABLE_MEMORY, hashTableMemory);
+    statsMap.put(Counter.HASHTABLE_KEYS, hashTableKeys);
     numMapRowsRead = 0;
     firstRow = true;
 
@@ -253,17 +274,45 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
       hashTableScale = 1;
     }
 
+    boolean compact = HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEHASHTABLECOMPACT);
+    int numPartitions = HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEHYBRIDHASHJOINPARTITIONS);
+    if (compact && numPartitions > 0) {
+      // the compact hash table cannot spill partitions, so it still aborts
+      LOG.info("The compact hash tables do not spill partitions of the hybrid hash join");
+    }
+
     // initialize the hash tables for other tables
     for (Byte pos : order) {
       if (pos == posBigTableTag) {
         continue;
       }
 
-      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable = new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>(
-          hashTableThreshold, hashTableLoadFactor, hashTableMaxMemoryUsage);
+      HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable;
+      if (compact) {
+        hashTable = new MapJoinHashTable(MapJoinHashTable.isLongKey(
+            joinKeysStandardObjectInspectors.get(pos)), hashTableMaxMemoryUsage);
+      } else {
+        hashTable = new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>(
+            hashTableThreshold, hashTableLoadFactor, hashTableMaxMemoryUsage);
+        hashTable.setNumPartitions(numPartitions);
+      }
 
       mapJoinTables.put(pos, hashTable);
     }
+
+    List<RuntimeFilterDesc> runtimeFilterDescs = conf.getRuntimeFilters();
+    if (runtimeFilterDescs != null) {
+      int maxValues = HiveConf.getIntVar(hconf, HiveConf.ConfVars.HIVEOPTRUNTIMEFILTERMAXVALUES);
+      runtimeFilters = new RuntimeFilter[runtimeFilterDescs.size()];
+      for (int i = 0; i < runtimeFilters.length; i++) {
+        RuntimeFilterDesc filterDesc = runtimeFilterDescs.get(i);
+        ObjectInspector keyOI = joinKeysObjectInspectors.get(filterDesc.getTag()).get(
+            filterDesc.getKeyIndex());
+        // the distinct values are only used to prune partitions
+        runtimeFilters[i] = new RuntimeFilter((PrimitiveObjectInspector) keyOI,
+            filterDesc.isPartitionColumn() ? maxValues : 0);
+      }
+    }
   }
 
 
@@ -320,10 +369,25 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
           joinValuesObjectInspectors.get(alias), joinFilters.get(alias), joinFilterObjectInspectors
               .get(alias), noOuterJoin);
 
+      if (runtimeFilters != null) {
+        collectRuntimeFilters(row);
+      }
+
 
       HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable = mapJoinTables
           .get((byte) tag);
 
+      if (hashTable instanceof MapJoinHashTable) {
+        if (metadataValueTag[tag] == -1) {
+          metadataValueTag[tag] = order[tag];
+          setValueMetaData(tag);
+        }
+        ((MapJoinHashTable) hashTable).add(keyMap, metadataValueTag[tag], value);
+        rowNumber++;
+        checkMemoryUsage(hashTable);
+        return;
+      }
+
       MapJoinObjectValue o = hashTable.get(keyMap);
       MapJoinRowContainer<Object[]> res = null;
 
@@ -342,18 +406,17 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
           MapJoinObjectValue valueObj = new MapJoinObjectValue(metadataValueTag[tag], res);
 
           rowNumber++;
-          if (rowNumber > hashTableScale && rowNumber % hashTableScale == 0) {
-            isAbort = hashTable.isAbort(rowNumber, console);
-            if (isAbort) {
-              throw new HiveException("RunOutOfMeomoryUsage");
-            }
-          }
+          checkMemoryUsage(hashTable);
           hashTable.put(keyMap, valueObj);
+          hashTable.addMemoryUsage(keyMap, MemoryManager.HASH_ENTRY_OVERHEAD
+              + MemoryManager.estimateSize(keyMap) + MemoryManager.estimateSize(valueObj));
         }
 
       } else {
         res = o.getObj();
         res.add(value);
+        hashTable.addMemoryUsage(keyMap, MemoryManager.REFERENCE
+            + MemoryManager.estimateSize(value));
       }
 
 
@@ -363,6 +426,46 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
 
   }
 
+  private void collectRuntimeFilters(Object row) throws HiveException {
+    List<RuntimeFilterDesc> runtimeFilterDescs = conf.getRuntimeFilters();
+    for (int i = 0; i < runtimeFilters.length; i++) {
+      RuntimeFilterDesc filterDesc = runtimeFilterDescs.get(i);
+      if (filterDesc.getTag().equals(alias)) {
+        runtimeFilters[i].add(joinKeys.get(alias).get(filterDesc.getKeyIndex()).evaluate(row));
+      }
+    }
+  }
+
+  private void checkMemoryUsage(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable)
+      throws HiveException {
+    if (rowNumber > hashTableScale && rowNumber % hashTableScale == 0) {
+      isAbort = hashTable.isAbort(rowNumber, console);
+      // spill the partitions of a hybrid hash join, and abort only if nothing is left to spill
+      while (isAbort && spillPartition(hashTable)) {
+        isAbort = hashTable.isAbort(rowNumber, console);
+      }
+      if (isAbort) {
+        throw new HiveException("RunOutOfMeomoryUsage");
+      }
+    }
+  }
+
+  private boolean spillPartition(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable)
+      throws HiveException {
+    // spill the table being built first, then the other ones
+    boolean spilled = hashTable.spillPartition();
+    for (HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> other : mapJoinTables.values()) {
+      if (spilled) {
+        break;
+      }
+      spilled = other != hashTable && other.spillPartition();
+    }
+    if (spilled) {
+      console.printInfo(Utilities.now() + "\tSpilled 1 partition of the hashtable to local disk");
+    }
+    return spilled;
+  }
+
   private void setValueMetaData(int tag) throws SerDeException {
     TableDesc valueTableDesc = conf.getValueTblFilteredDescs().get(tag);
     SerDe valueSerDe = (SerDe) ReflectionUtils.newInstance(valueTableDesc.getDeserializerClass(),
@@ -412,13 +515,24 @@ public class HashTableSinkOperator extends TerminalOperator<HashTableSinkDesc> i
           FileSystem fs = path.getFileSystem(hconf);
           File file = new File(path.toUri().getPath());
           fs.create(path);
-          fileLength = hashTable.flushMemoryCacheToPersistent(file);
+          hashTableMemory.set(hashTableMemory.get() + hashTable.getCurrentMemory());
+          hashTableKeys.set(hashTableKeys.get() + hashTable.size());
+          fileLength = hashTable.flushMemoryCacheToPersistent(file,
+              HiveConf.getBoolVar(hconf, HiveConf.ConfVars.HIVEHASHTABLECOMPACT));
           console.printInfo(Utilities.now() + "\tUpload 1 File to: " + tmpURIPath + " File size: "
               + fileLength);
 
           hashTable.close();
         }
       }
+      if (runtimeFilters != null) {
+        List<RuntimeFilterDesc> runtimeFilterDescs = conf.getRuntimeFilters();
+        for (int i = 0; i < runtimeFilters.length; i++) {
+          String path = runtimeFilterDescs.get(i).getPath();
+          console.printInfo(Utilities.now() + "\tDump the join keys into file: " + path);
+          runtimeFilters[i].write(new Path(path), hconf);
+        }
+      }
 
       super.closeOp(abort);
     } catch (Exception e) {
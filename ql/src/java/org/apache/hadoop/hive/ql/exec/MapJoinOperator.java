@@ -18,8 +18,17 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,6 +50,7 @@ import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
 import org.apache.hadoop.hive.shims.ShimLoader;
@@ -67,6 +77,12 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
   transient boolean hashTblInitedOnce;
   private int bigTableAlias;
 
+  // the big table rows of the partitions spilled by a hybrid hash join, joined in a second pass
+  private static final int PROBE_RESET_INTERVAL = 1024;
+  private transient File[] probeFiles;
+  private transient ObjectOutputStream[] probeStreams;
+  private transient int[] probeCounts;
+
   public MapJoinOperator() {
   }
 
@@ -209,6 +225,10 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
         firstRow = false;
       }
 
+      // the spilled rows must be joined with the hash tables they were spilled for
+      if (this.getExecContext().getLocalWork().getInputFileChangeSensitive()) {
+        joinSpilledPartitions();
+      }
       loadHashTable();
     } catch (SerDeException e) {
       e.printStackTrace();
@@ -242,45 +262,173 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
               .get(alias), noOuterJoin);
 
 
-      // Add the value to the ArrayList
-      storage.get((byte) tag).add(value);
+      // rows whose key is in a spilled partition of a hash table are joined in a second pass
+      int partition = getSpilledPartition(key);
+      if (partition >= 0) {
+        spillProbeRow(partition, key, value);
+        return;
+      }
+
+      joinRow(key, value, tag);
+    } catch (SerDeException e) {
+      e.printStackTrace();
+      throw new HiveException(e);
+    }
+  }
+
+  private void joinRow(AbstractMapJoinKey key, ArrayList<Object> value, int tag)
+      throws HiveException {
+    // Add the value to the ArrayList
+    storage.get((byte) tag).add(value);
 
-      for (Byte pos : order) {
-        if (pos.intValue() != tag) {
+    for (Byte pos : order) {
+      if (pos.intValue() != tag) {
 
-          MapJoinObjectValue o = mapJoinTables.get(pos).get(key);
-          MapJoinRowContainer<ArrayList<Object>> rowContainer = rowContainerMap.get(pos);
+        MapJoinObjectValue o = mapJoinTables.get(pos).get(key);
+        MapJoinRowContainer<ArrayList<Object>> rowContainer = rowContainerMap.get(pos);
 
-          // there is no join-value or join-key has all null elements
-          if (o == null || key.hasAnyNulls(nullsafes)) {
-            if (noOuterJoin) {
-              storage.put(pos, emptyList);
-            } else {
-              storage.put(pos, dummyObjVectors[pos.intValue()]);
-            }
+        // there is no join-value or join-key has all null elements
+        if (o == null || key.hasAnyNulls(nullsafes)) {
+          if (noOuterJoin) {
+            storage.put(pos, emptyList);
           } else {
-            rowContainer.reset(o.getObj());
-            storage.put(pos, rowContainer);
+            storage.put(pos, dummyObjVectors[pos.intValue()]);
           }
+        } else {
+          rowContainer.reset(o.getObj());
+          storage.put(pos, rowContainer);
         }
       }
+    }
 
-      // generate the output records
-      checkAndGenObject();
+    // generate the output records
+    checkAndGenObject();
 
-      // done with the row
-      storage.get((byte) tag).clear();
+    // done with the row
+    storage.get((byte) tag).clear();
 
-      for (Byte pos : order) {
-        if (pos.intValue() != tag) {
-          storage.put(pos, null);
+    for (Byte pos : order) {
+      if (pos.intValue() != tag) {
+        storage.put(pos, null);
+      }
+    }
+  }
+
+  private int getSpilledPartition(AbstractMapJoinKey key) {
+    for (HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable : mapJoinTables.values()) {
+      int partition = hashTable.getSpilledPartition(key);
+      if (partition >= 0) {
+        return partition;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Write a big table row to the local file of its partition, as a key and a value with the
+   * metadata of the big table alias.
+   */
+  private void spillProbeRow(int partition, AbstractMapJoinKey key, ArrayList<Object> value)
+      throws HiveException {
+    try {
+      if (probeStreams == null) {
+        int numPartitions = 0;
+        for (HashMapWrapper<?, ?> hashTable : mapJoinTables.values()) {
+          numPartitions = Math.max(numPartitions, hashTable.getNumPartitions());
         }
+        probeFiles = new File[numPartitions];
+        probeStreams = new ObjectOutputStream[numPartitions];
+        probeCounts = new int[numPartitions];
+        setProbeMetaData();
+      }
+      ObjectOutputStream out = probeStreams[partition];
+      if (out == null) {
+        probeFiles[partition] = File.createTempFile("hive-mapjoin-probe-" + partition, ".spill");
+        probeFiles[partition].deleteOnExit();
+        out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(
+            probeFiles[partition])));
+        probeStreams[partition] = out;
       }
+      MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+      rows.add(value.toArray());
+      out.writeObject(key);
+      out.writeObject(new MapJoinObjectValue(bigTableAlias, rows));
+      if (++probeCounts[partition] % PROBE_RESET_INTERVAL == 0) {
+        out.reset();
+      }
+    } catch (IOException e) {
+      throw new HiveException(e);
+    }
+  }
 
-    } catch (SerDeException e) {
-      e.printStackTrace();
+  private void setProbeMetaData() throws HiveException {
+    // the big table values are serialized as the rows a join spills
+    TableDesc spillDesc = JoinUtil.getSpillTableDesc(order[posBigTable], spillTableDesc, conf,
+        noOuterJoin);
+    if (spillDesc == null) {
+      // no value columns, so no rows are serialized
+      return;
+    }
+    SerDe spillSerDe = JoinUtil.getSpillSerDe(order[posBigTable], spillTableDesc, conf,
+        noOuterJoin);
+    if (spillSerDe == null) {
+      throw new HiveException("Cannot initialize the serde of the spilled big table rows");
+    }
+    MapJoinMetaData.put(Integer.valueOf(bigTableAlias), new HashTableSinkObjectCtx(
+        ObjectInspectorFactory.getStandardStructObjectInspector(Utilities.getColumnNames(
+        spillDesc.getProperties()), rowContainerStandardObjectInspectors.get((byte) posBigTable)),
+        spillSerDe, spillDesc, hconf));
+  }
+
+  /**
+   * The second pass of a hybrid hash join: join the big table rows of each spilled partition,
+   * with that partition of the hash tables loaded in memory.
+   */
+  private void joinSpilledPartitions() throws HiveException {
+    if (probeStreams == null) {
+      return;
+    }
+    alias = order[posBigTable];
+    try {
+      for (int partition = 0; partition < probeStreams.length; partition++) {
+        ObjectOutputStream out = probeStreams[partition];
+        if (out == null) {
+          continue;
+        }
+        // a null key ends the partition
+        out.writeObject(null);
+        out.close();
+        probeStreams[partition] = null;
+
+        for (HashMapWrapper<?, ?> hashTable : mapJoinTables.values()) {
+          hashTable.loadSpilledPartition(partition);
+        }
+        LOG.info("Join " + probeCounts[partition] + " spilled rows of partition " + partition);
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+            new FileInputStream(probeFiles[partition])));
+        try {
+          for (Object key = in.readObject(); key != null; key = in.readObject()) {
+            MapJoinObjectValue value = (MapJoinObjectValue) in.readObject();
+            joinRow((AbstractMapJoinKey) key, new ArrayList<Object>(Arrays.asList(value.getObj()
+                .first())), posBigTable);
+          }
+        } finally {
+          in.close();
+        }
+        probeFiles[partition].delete();
+      }
+    } catch (IOException e) {
+      throw new HiveException(e);
+    } catch (ClassNotFoundException e) {
       throw new HiveException(e);
+    } finally {
+      for (HashMapWrapper<?, ?> hashTable : mapJoinTables.values()) {
+        hashTable.loadSpilledPartition(-1);
+      }
     }
+    probeFiles = null;
+    probeStreams = null;
+    probeCounts = null;
   }
 
   private String getFileName(String path) {
@@ -297,6 +445,9 @@ public class MapJoinOperator extends AbstractMapJoinOperator<MapJoinDesc> implem
   @Override
   public void closeOp(boolean abort) throws HiveException {
 
+    if (!abort) {
+      joinSpilledPartitions();
+    }
     if (mapJoinTables != null) {
       for (HashMapWrapper<?, ?> hashTable : mapJoinTables.values()) {
         hashTable.close();
@@ -33,6 +33,7 @@ import java.util.Set;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
 import org.apache.hadoop.hive.ql.io.IOContext;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.VirtualColumn;
@@ -495,6 +496,12 @@ public class MapOperator extends Operator<MapredWork> implements Serializable {
       cleanUpInputFileChanged();
     }
 
+    if (value instanceof VectorizedRowBatch) {
+      // the split is read a batch of rows at a time, by vectorized table scans only
+      forward(value, rowObjectInspector);
+      return;
+    }
+
     Object row = null;
     try {
       if (this.hasVC) {
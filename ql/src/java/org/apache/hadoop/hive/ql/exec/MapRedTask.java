@@ -22,7 +22,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
 
@@ -39,6 +41,9 @@ import org.apache.hadoop.hive.ql.DriverContext;
 import org.apache.hadoop.hive.ql.exec.Utilities.StreamPrinter;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.RuntimeFilterDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.shims.ShimLoader;
 import org.apache.hadoop.mapred.JobConf;
@@ -49,6 +54,7 @@ import org.apache.hadoop.mapred.JobConf;
  * - will make last minute adjustments to map-reduce job parameters, viz:
  *   * estimating number of reducers
  *   * estimating whether job should run locally
+ *   * pruning the input with the small table keys of a map join
  **/
 public class MapRedTask extends ExecDriver implements Serializable {
 
@@ -89,6 +95,8 @@ public class MapRedTask extends ExecDriver implements Serializable {
         ctxCreated = true;
       }
 
+      applyRuntimeFilters();
+
       // estimate number of reducers
       setNumberOfReducers();
 
@@ -172,7 +180,7 @@ public class MapRedTask extends ExecDriver implements Serializable {
       OutputStream out = FileSystem.getLocal(conf).create(planPath);
       MapredWork plan = getWork();
       LOG.info("Generating plan file " + planPath.toString());
-      Utilities.serializeMapRedWork(plan, out);
+      Utilities.serializeMapRedWork(plan, out, conf);
 
       String isSilent = "true".equalsIgnoreCase(System
           .getProperty("test.silent")) ? "-nolog" : "";
@@ -375,6 +383,71 @@ public class MapRedTask extends ExecDriver implements Serializable {
     return runningViaChild ? isdone : b;
   }
 
+  /**
+   * Read the small table keys collected by the local task of a map join, prune the partitions of
+   * the big table which cannot match them, and pass their range to the table scan.
+   */
+  private void applyRuntimeFilters() {
+    for (Map.Entry<String, Operator<? extends Serializable>> entry : work.getAliasToWork()
+        .entrySet()) {
+      if (!(entry.getValue() instanceof TableScanOperator)) {
+        continue;
+      }
+      TableScanDesc tableScanDesc = ((TableScanOperator) entry.getValue()).getConf();
+      if (tableScanDesc == null || tableScanDesc.getRuntimeFilters() == null) {
+        continue;
+      }
+      for (RuntimeFilterDesc filterDesc : tableScanDesc.getRuntimeFilters()) {
+        RuntimeFilter filter;
+        try {
+          filter = RuntimeFilter.read(new Path(filterDesc.getPath()), conf);
+        } catch (IOException e) {
+          LOG.warn("Cannot read the join keys from " + filterDesc.getPath(), e);
+          continue;
+        }
+        if (filter == null) {
+          continue;
+        }
+        filterDesc.setLoaded(true);
+        filterDesc.setMinValue(filter.getMinValue());
+        filterDesc.setMaxValue(filter.getMaxValue());
+        if (filterDesc.isPartitionColumn()) {
+          prunePartitions(entry.getKey(), filterDesc.getColumn(), filter);
+        }
+      }
+    }
+  }
+
+  private void prunePartitions(String alias, String column, RuntimeFilter filter) {
+    int numPruned = 0;
+    Iterator<Map.Entry<String, ArrayList<String>>> iter = work.getPathToAliases().entrySet()
+        .iterator();
+    while (iter.hasNext()) {
+      Map.Entry<String, ArrayList<String>> entry = iter.next();
+      ArrayList<String> aliases = entry.getValue();
+      PartitionDesc partDesc = work.getPathToPartitionInfo().get(entry.getKey());
+      if (!aliases.contains(alias) || partDesc == null || partDesc.getPartSpec() == null) {
+        continue;
+      }
+      String value = partDesc.getPartSpec().get(column);
+      if (value == null || filter.mayContain(value)) {
+        continue;
+      }
+      aliases.remove(alias);
+      if (aliases.isEmpty()) {
+        iter.remove();
+        work.getPathToPartitionInfo().remove(entry.getKey());
+      }
+      numPruned++;
+    }
+    if (numPruned > 0) {
+      console.printInfo("Runtime filter on " + alias + "." + column + " pruned " + numPruned
+          + " partitions");
+      // the input has to be summarized again
+      inputSummary = null;
+    }
+  }
+
   /**
    * Set the number of reducers for the mapred work.
    */
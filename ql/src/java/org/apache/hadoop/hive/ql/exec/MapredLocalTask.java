@@ -122,7 +122,7 @@ public class MapredLocalTask extends Task<MapredLocalWork> implements Serializab
       OutputStream out = FileSystem.getLocal(conf).create(planPath);
       MapredLocalWork plan = getWork();
       LOG.info("Generating plan file " + planPath.toString());
-      Utilities.serializeMapRedLocalWork(plan, out);
+      Utilities.serializeMapRedLocalWork(plan, out, conf);
 
       String isSilent = "true".equalsIgnoreCase(System.getProperty("test.silent")) ? "-nolog" : "";
 
@@ -257,6 +257,7 @@ public class MapredLocalTask extends Task<MapredLocalWork> implements Serializab
     console.printInfo(Utilities.now()
         + "\tStarting to launch local task to process map join;\tmaximum memory = "
         + memoryMXBean.getHeapMemoryUsage().getMax());
+    MemoryManager.getInstance().reset();
     fetchOperators = new HashMap<String, FetchOperator>();
     Map<FetchOperator, JobConf> fetchOpJobConfMap = new HashMap<FetchOperator, JobConf>();
     execContext.setJc(job);
@@ -422,7 +423,8 @@ public class MapredLocalTask extends Task<MapredLocalWork> implements Serializab
     FileSystem fs = path.getFileSystem(job);
     File file = new File(path.toUri().getPath());
     fs.create(path);
-    long fileLength = hashTable.flushMemoryCacheToPersistent(file);
+    long fileLength = hashTable.flushMemoryCacheToPersistent(file,
+        HiveConf.getBoolVar(job, HiveConf.ConfVars.HIVEHASHTABLECOMPACT));
     console.printInfo(Utilities.now() + "\tUpload 1 File to: " + tmpURIPath + " File size: "
         + fileLength);
     hashTable.close();
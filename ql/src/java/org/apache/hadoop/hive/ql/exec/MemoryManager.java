@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinDoubleKeys;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectKey;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinSingleKey;
+import org.apache.hadoop.hive.serde2.lazy.LazyPrimitive;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * MemoryManager.
+ *
+ * Accounts for the memory of the hash tables of the operators of a task. The operators estimate
+ * the bytes of the entries they add, and reserve them from a budget shared by the whole task, so
+ * that they flush, spill or abort on the size of their data rather than on the heap usage, which
+ * depends on when the garbage collector last ran.
+ *
+ * The estimates are taken when the entries are added, and miss the growth of the entries which
+ * keep growing afterwards, such as collect_set or percentile_approx buffers, so the heap usage is
+ * still checked from time to time as a safety net (see isHeapExceeded).
+ */
+public final class MemoryManager {
+
+  private static final Log LOG = LogFactory.getLog(MemoryManager.class.getName());
+
+  // sizes of a 64-bit JVM
+  public static final int OBJECT_OVERHEAD = 16;
+  public static final int ARRAY_OVERHEAD = 24;
+  public static final int REFERENCE = 8;
+  // a HashMap entry with its slot in the table
+  public static final int HASH_ENTRY_OVERHEAD = 48;
+
+  // how deep the fields of an unknown object are followed
+  private static final int MAX_DEPTH = 3;
+
+  private static final MemoryManager INSTANCE = new MemoryManager();
+
+  private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+
+  private final long maxMemory;
+  private long usedMemory;
+  private long peakMemory;
+
+  // the non static fields of the classes estimated by reflection
+  private final Map<Class<?>, Field[]> classFields = new HashMap<Class<?>, Field[]>();
+
+  private MemoryManager() {
+    maxMemory = Runtime.getRuntime().maxMemory();
+  }
+
+  public static MemoryManager getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Forget the memory reserved by a previous task of the JVM.
+   */
+  public synchronized void reset() {
+    if (usedMemory != 0) {
+      LOG.info("Reset the memory reserved by a previous task: " + usedMemory);
+    }
+    usedMemory = 0;
+    peakMemory = 0;
+  }
+
+  public synchronized void reserve(long bytes) {
+    usedMemory += bytes;
+    peakMemory = Math.max(peakMemory, usedMemory);
+  }
+
+  public synchronized void release(long bytes) {
+    usedMemory -= bytes;
+  }
+
+  public synchronized long getUsedMemory() {
+    return usedMemory;
+  }
+
+  public synchronized long getPeakMemory() {
+    return peakMemory;
+  }
+
+  public long getMaxMemory() {
+    return maxMemory;
+  }
+
+  /**
+   * @return whether the reserved memory is more than the given fraction of the heap
+   */
+  public boolean isExceeded(float memoryUsage) {
+    return getUsedMemory() > (long) (memoryUsage * maxMemory);
+  }
+
+  /**
+   * @return whether the used heap, as last seen by the garbage collector, is more than the given
+   *         fraction of the maximum heap
+   */
+  public boolean isHeapExceeded(float memoryUsage) {
+    MemoryUsage heap = memoryMXBean.getHeapMemoryUsage();
+    long max = heap.getMax() > 0 ? heap.getMax() : maxMemory;
+    return (float) heap.getUsed() / (float) max > memoryUsage;
+  }
+
+  /**
+   * Estimate the bytes of an object and of the objects it references.
+   */
+  public static long estimateSize(Object o) {
+    return INSTANCE.estimate(o, 0);
+  }
+
+  private long estimate(Object o, int depth) {
+    if (o == null) {
+      return 0;
+    }
+    if (o instanceof Text) {
+      return align(OBJECT_OVERHEAD + REFERENCE + 4) + array(((Text) o).getBytes().length);
+    }
+    if (o instanceof BytesWritable) {
+      return align(OBJECT_OVERHEAD + REFERENCE + 8) + array(((BytesWritable) o).getCapacity());
+    }
+    if (o instanceof String) {
+      return align(OBJECT_OVERHEAD + REFERENCE + 8) + array(2 * ((String) o).length());
+    }
+    if (o instanceof LazyPrimitive) {
+      return align(OBJECT_OVERHEAD + REFERENCE + 4)
+          + estimate(((LazyPrimitive<?, ?>) o).getWritableObject(), depth);
+    }
+    if (o instanceof Object[]) {
+      Object[] array = (Object[]) o;
+      long size = array((long) REFERENCE * array.length);
+      for (Object element : array) {
+        size += estimate(element, depth);
+      }
+      return size;
+    }
+    if (o instanceof Collection) {
+      Collection<?> collection = (Collection<?>) o;
+      long size = align(OBJECT_OVERHEAD + REFERENCE + 8)
+          + array((long) REFERENCE * collection.size());
+      for (Object element : collection) {
+        size += estimate(element, depth);
+      }
+      return size;
+    }
+    if (o instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) o;
+      long size = align(OBJECT_OVERHEAD + REFERENCE + 16)
+          + (long) HASH_ENTRY_OVERHEAD * map.size();
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        size += estimate(entry.getKey(), depth) + estimate(entry.getValue(), depth);
+      }
+      return size;
+    }
+    if (o instanceof KeyWrapper) {
+      return align(OBJECT_OVERHEAD + 2 * REFERENCE + 4)
+          + estimate(((KeyWrapper) o).getKeyArray(), depth);
+    }
+    if (o instanceof MapJoinSingleKey) {
+      return align(OBJECT_OVERHEAD + REFERENCE) + estimate(((MapJoinSingleKey) o).getObj(), depth);
+    }
+    if (o instanceof MapJoinDoubleKeys) {
+      MapJoinDoubleKeys key = (MapJoinDoubleKeys) o;
+      return align(OBJECT_OVERHEAD + 2 * REFERENCE) + estimate(key.getObj1(), depth)
+          + estimate(key.getObj2(), depth);
+    }
+    if (o instanceof MapJoinObjectKey) {
+      return align(OBJECT_OVERHEAD + REFERENCE) + estimate(((MapJoinObjectKey) o).getObj(), depth);
+    }
+    if (o instanceof MapJoinObjectValue) {
+      return align(OBJECT_OVERHEAD + REFERENCE + 4)
+          + estimate(((MapJoinObjectValue) o).getObj(), depth);
+    }
+    if (o instanceof MapJoinRowContainer) {
+      return align(OBJECT_OVERHEAD + REFERENCE + 4)
+          + estimate(((MapJoinRowContainer<?>) o).getList(), depth);
+    }
+    return estimateFields(o, depth);
+  }
+
+  /**
+   * Estimate an object from its fields, such as a writable or an aggregation buffer.
+   */
+  private long estimateFields(Object o, int depth) {
+    long size = OBJECT_OVERHEAD;
+    long referenced = 0;
+    for (Field f : getFields(o.getClass())) {
+      Class<?> type = f.getType();
+      if (type == long.class || type == double.class) {
+        size += 8;
+      } else if (type == int.class || type == float.class) {
+        size += 4;
+      } else if (type == short.class || type == char.class) {
+        size += 2;
+      } else if (type == byte.class || type == boolean.class) {
+        size += 1;
+      } else {
+        size += REFERENCE;
+        if (depth < MAX_DEPTH) {
+          try {
+            referenced += estimate(f.get(o), depth + 1);
+          } catch (IllegalAccessException e) {
+            // count the reference only
+          }
+        }
+      }
+    }
+    return align(size) + referenced;
+  }
+
+  private synchronized Field[] getFields(Class<?> c) {
+    Field[] fields = classFields.get(c);
+    if (fields == null) {
+      List<Field> list = new ArrayList<Field>();
+      for (Class<?> k = c; k != null && k != Object.class; k = k.getSuperclass()) {
+        for (Field f : k.getDeclaredFields()) {
+          if (!Modifier.isStatic(f.getModifiers())) {
+            try {
+              f.setAccessible(true);
+            } catch (SecurityException e) {
+              // the field is not followed
+            }
+            list.add(f);
+          }
+        }
+      }
+      fields = list.toArray(new Field[list.size()]);
+      classFields.put(c, fields);
+    }
+    return fields;
+  }
+
+  private static long array(long bytes) {
+    return align(ARRAY_OVERHEAD + bytes);
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+}
@@ -42,6 +42,7 @@ import org.apache.hadoop.hive.ql.plan.SelectDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.ql.plan.UDTFDesc;
 import org.apache.hadoop.hive.ql.plan.UnionDesc;
+import org.apache.hadoop.hive.ql.plan.WindowingDesc;
 
 /**
  * OperatorFactory.
@@ -91,6 +92,8 @@ public final class OperatorFactory {
         HashTableDummyOperator.class));
     opvec.add(new OpTuple<HashTableSinkDesc>(HashTableSinkDesc.class,
         HashTableSinkOperator.class));
+    opvec.add(new OpTuple<WindowingDesc>(WindowingDesc.class,
+        WindowingOperator.class));
   }
 
   public static <T extends Serializable> Operator<T> get(Class<T> opClass) {
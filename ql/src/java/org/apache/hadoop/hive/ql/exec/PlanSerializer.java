@@ -0,0 +1,618 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.hive.common.JavaUtils;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Compact binary serialization of query plans, an alternative to XMLEncoder for the plan shipped
+ * to every task.
+ *
+ * An object graph is written with the same rules XMLEncoder follows: a bean is created by its
+ * public no-argument constructor and restored through the properties that have both a getter and
+ * a setter, skipping those equal to the value of a freshly constructed bean. Collections and maps
+ * which can not be re-created are written as ArrayList, LinkedHashSet or LinkedHashMap. Shared
+ * objects and cycles (e.g. parent and child operators) are written once and referred by id. Any
+ * other value which can not be re-created fails the serialization, rather than being lost.
+ *
+ * The stream starts with a magic number and a format version. The class name and property names
+ * of a bean class are written once, at its first occurrence, and checked against the class found
+ * when reading, so a plan written by a different version of Hive fails with a clear message
+ * instead of silently losing properties.
+ */
+public final class PlanSerializer {
+
+  /** "HPLN" */
+  public static final int MAGIC = 0x48504c4e;
+  public static final int VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte REF = 1;
+  private static final byte SKIP = 2;
+  private static final byte STRING = 3;
+  private static final byte STRING_REF = 4;
+  private static final byte BOOLEAN = 5;
+  private static final byte BYTE = 6;
+  private static final byte SHORT = 7;
+  private static final byte INT = 8;
+  private static final byte LONG = 9;
+  private static final byte FLOAT = 10;
+  private static final byte DOUBLE = 11;
+  private static final byte CHAR = 12;
+  private static final byte CLASS = 13;
+  private static final byte ENUM = 14;
+  private static final byte ARRAY = 15;
+  private static final byte COLLECTION = 16;
+  private static final byte MAP = 17;
+  private static final byte BEAN = 18;
+
+  private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+  static {
+    for (Class<?> c : new Class<?>[] {boolean.class, byte.class, short.class, int.class,
+        long.class, float.class, double.class, char.class, void.class}) {
+      PRIMITIVES.put(c.getName(), c);
+    }
+  }
+
+  /** Reflection metadata of bean classes, shared by all plans. */
+  private static final Map<Class<?>, BeanSchema> SCHEMAS =
+      new ConcurrentHashMap<Class<?>, BeanSchema>();
+
+  private PlanSerializer() {
+  }
+
+  /**
+   * Properties of a bean class, sorted by name, with their values in a new instance.
+   */
+  private static final class BeanSchema {
+    private final Constructor<?> constructor;
+    private final String[] names;
+    private final Method[] getters;
+    private final Method[] setters;
+    private final Object[] defaults;
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+    private BeanSchema(Class<?> c) throws IOException {
+      try {
+        constructor = c.getConstructor();
+        BeanInfo info = Introspector.getBeanInfo(c);
+        List<PropertyDescriptor> props = new ArrayList<PropertyDescriptor>();
+        for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+          if (pd.getReadMethod() != null && pd.getWriteMethod() != null
+              && !Boolean.TRUE.equals(pd.getValue("transient"))) {
+            props.add(pd);
+          }
+        }
+        names = new String[props.size()];
+        getters = new Method[props.size()];
+        setters = new Method[props.size()];
+        defaults = new Object[props.size()];
+        Object prototype = constructor.newInstance();
+        for (int i = 0; i < props.size(); i++) {
+          PropertyDescriptor pd = props.get(i);
+          names[i] = pd.getName();
+          getters[i] = pd.getReadMethod();
+          setters[i] = pd.getWriteMethod();
+          getters[i].setAccessible(true);
+          setters[i].setAccessible(true);
+          defaults[i] = getters[i].invoke(prototype);
+          index.put(names[i], i);
+        }
+      } catch (IntrospectionException e) {
+        throw new IOException("Cannot introspect " + c.getName() + ": " + e.getMessage());
+      } catch (Exception e) {
+        throw new IOException("Cannot instantiate " + c.getName() + ": " + e);
+      }
+    }
+
+    private boolean isDefault(int i, Object value) {
+      return value == defaults[i] || (value != null && value.equals(defaults[i]));
+    }
+  }
+
+  private static BeanSchema getSchema(Class<?> c) throws IOException {
+    BeanSchema schema = SCHEMAS.get(c);
+    if (schema == null) {
+      schema = new BeanSchema(c);
+      SCHEMAS.put(c, schema);
+    }
+    return schema;
+  }
+
+  /**
+   * Check whether a stream holds a binary plan. The stream must support mark and reset; it is
+   * left at its current position.
+   */
+  public static boolean isBinaryPlan(InputStream in) throws IOException {
+    in.mark(4);
+    try {
+      int magic = 0;
+      for (int i = 0; i < 4; i++) {
+        int b = in.read();
+        if (b < 0) {
+          return false;
+        }
+        magic = (magic << 8) | b;
+      }
+      return magic == MAGIC;
+    } finally {
+      in.reset();
+    }
+  }
+
+  /**
+   * Serialize an object graph to an output stream. The stream is flushed but not closed.
+   */
+  public static void serialize(Object o, OutputStream out) throws IOException {
+    DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out, 65536));
+    dos.writeInt(MAGIC);
+    WritableUtils.writeVInt(dos, VERSION);
+    new Writer(dos).writeValue(o);
+    dos.flush();
+  }
+
+  /**
+   * Deserialize an object graph written by serialize().
+   */
+  public static Object deserialize(InputStream in) throws IOException {
+    DataInputStream dis = new DataInputStream(in instanceof BufferedInputStream ? in
+        : new BufferedInputStream(in, 65536));
+    if (dis.readInt() != MAGIC) {
+      throw new IOException("Not a binary plan");
+    }
+    int version = WritableUtils.readVInt(dis);
+    if (version != VERSION) {
+      throw new IOException("Unsupported binary plan version " + version + ", expected "
+          + VERSION);
+    }
+    return new Reader(dis).readValue();
+  }
+
+  private static boolean isCreatable(Class<?> c) {
+    if (!Modifier.isPublic(c.getModifiers()) || Modifier.isAbstract(c.getModifiers())) {
+      return false;
+    }
+    try {
+      c.getConstructor();
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static final class Writer {
+    private final DataOutputStream out;
+    private final Map<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private final Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+    private final Map<Class<?>, Integer> beans = new HashMap<Class<?>, Integer>();
+
+    private Writer(DataOutputStream out) {
+      this.out = out;
+    }
+
+    /**
+     * Whether an object can be written so that it reads back as an equivalent object.
+     */
+    private boolean isEncodable(Object o) {
+      if (o == null || o instanceof String || o instanceof Integer || o instanceof Long
+          || o instanceof Boolean || o instanceof Byte || o instanceof Short
+          || o instanceof Double || o instanceof Float || o instanceof Character
+          || o instanceof Class || o instanceof Enum || o instanceof Collection
+          || o instanceof Map || o.getClass().isArray() || objects.containsKey(o)) {
+        return true;
+      }
+      return !(o instanceof Number) && isCreatable(o.getClass());
+    }
+
+    private void writeValue(Object o) throws IOException {
+      if (o == null) {
+        out.writeByte(NULL);
+      } else if (o instanceof String) {
+        writeString((String) o);
+      } else if (o instanceof Integer) {
+        out.writeByte(INT);
+        WritableUtils.writeVInt(out, (Integer) o);
+      } else if (o instanceof Long) {
+        out.writeByte(LONG);
+        WritableUtils.writeVLong(out, (Long) o);
+      } else if (o instanceof Boolean) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) o);
+      } else if (o instanceof Byte) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) o);
+      } else if (o instanceof Short) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) o);
+      } else if (o instanceof Double) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) o);
+      } else if (o instanceof Float) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) o);
+      } else if (o instanceof Character) {
+        out.writeByte(CHAR);
+        out.writeChar((Character) o);
+      } else if (o instanceof Class) {
+        out.writeByte(CLASS);
+        writeClass((Class<?>) o);
+      } else if (o instanceof Enum) {
+        out.writeByte(ENUM);
+        writeClass(((Enum<?>) o).getDeclaringClass());
+        writeString(((Enum<?>) o).name());
+      } else {
+        Integer id = objects.get(o);
+        if (id != null) {
+          out.writeByte(REF);
+          WritableUtils.writeVInt(out, id);
+          return;
+        }
+        objects.put(o, objects.size());
+        if (o.getClass().isArray()) {
+          writeArray(o);
+        } else if (o instanceof Collection) {
+          writeCollection((Collection<?>) o);
+        } else if (o instanceof Map) {
+          writeMap((Map<?, ?>) o);
+        } else {
+          writeBean(o);
+        }
+      }
+    }
+
+    private void writeString(String s) throws IOException {
+      Integer id = strings.get(s);
+      if (id != null) {
+        out.writeByte(STRING_REF);
+        WritableUtils.writeVInt(out, id);
+        return;
+      }
+      strings.put(s, strings.size());
+      out.writeByte(STRING);
+      byte[] bytes = s.getBytes("UTF-8");
+      WritableUtils.writeVInt(out, bytes.length);
+      out.write(bytes);
+    }
+
+    /**
+     * Write a class by id, with its name at its first occurrence.
+     */
+    private void writeClass(Class<?> c) throws IOException {
+      Integer id = classes.get(c);
+      if (id != null) {
+        WritableUtils.writeVInt(out, id);
+        return;
+      }
+      id = classes.size();
+      classes.put(c, id);
+      WritableUtils.writeVInt(out, id);
+      writeString(c.getName());
+    }
+
+    private void writeArray(Object array) throws IOException {
+      out.writeByte(ARRAY);
+      writeClass(array.getClass().getComponentType());
+      int length = Array.getLength(array);
+      WritableUtils.writeVInt(out, length);
+      for (int i = 0; i < length; i++) {
+        writeValue(Array.get(array, i));
+      }
+    }
+
+    private void writeCollection(Collection<?> c) throws IOException {
+      Class<?> cls = c.getClass();
+      if (!isCreatable(cls)) {
+        cls = c instanceof Set ? LinkedHashSet.class : ArrayList.class;
+      }
+      out.writeByte(COLLECTION);
+      writeClass(cls);
+      WritableUtils.writeVInt(out, c.size());
+      for (Object e : c) {
+        writeValue(checkEncodable(e));
+      }
+    }
+
+    private void writeMap(Map<?, ?> m) throws IOException {
+      Class<?> cls = m.getClass();
+      if (!isCreatable(cls)) {
+        cls = LinkedHashMap.class;
+      }
+      out.writeByte(MAP);
+      writeClass(cls);
+      WritableUtils.writeVInt(out, m.size());
+      for (Map.Entry<?, ?> e : m.entrySet()) {
+        writeValue(checkEncodable(e.getKey()));
+        writeValue(checkEncodable(e.getValue()));
+      }
+    }
+
+    private void writeBean(Object o) throws IOException {
+      Class<?> c = o.getClass();
+      BeanSchema schema = getSchema(c);
+      out.writeByte(BEAN);
+      Integer id = beans.get(c);
+      if (id != null) {
+        WritableUtils.writeVInt(out, id);
+      } else {
+        // the first occurrence of a bean class also carries its property names
+        id = beans.size();
+        beans.put(c, id);
+        WritableUtils.writeVInt(out, id);
+        writeString(c.getName());
+        WritableUtils.writeVInt(out, schema.names.length);
+        for (String name : schema.names) {
+          writeString(name);
+        }
+      }
+      for (int i = 0; i < schema.names.length; i++) {
+        Object value;
+        try {
+          value = schema.getters[i].invoke(o);
+        } catch (Exception e) {
+          throw new IOException("Cannot get " + c.getName() + "." + schema.names[i] + ": " + e);
+        }
+        if (schema.isDefault(i, value)) {
+          out.writeByte(SKIP);
+        } else if (!isEncodable(value)) {
+          throw new IOException("Cannot write " + c.getName() + "." + schema.names[i]
+              + " of type " + value.getClass().getName() + " which can not be re-created");
+        } else {
+          writeValue(value);
+        }
+      }
+    }
+
+    private Object checkEncodable(Object o) throws IOException {
+      if (!isEncodable(o)) {
+        throw new IOException("Cannot write an instance of " + o.getClass().getName()
+            + " which can not be re-created");
+      }
+      return o;
+    }
+  }
+
+  private static final class Reader {
+    private final DataInputStream in;
+    private final List<Object> objects = new ArrayList<Object>();
+    private final List<String> strings = new ArrayList<String>();
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+    private final List<Class<?>> beans = new ArrayList<Class<?>>();
+    // bean class id -> index in the schema of the class of each written property
+    private final List<int[]> layouts = new ArrayList<int[]>();
+
+    private Reader(DataInputStream in) {
+      this.in = in;
+    }
+
+    private Object readValue() throws IOException {
+      return readValue(in.readByte());
+    }
+
+    private Object readValue(byte tag) throws IOException {
+      switch (tag) {
+      case NULL:
+        return null;
+      case REF:
+        return objects.get(WritableUtils.readVInt(in));
+      case STRING:
+      case STRING_REF:
+        return readString(tag);
+      case INT:
+        return WritableUtils.readVInt(in);
+      case LONG:
+        return WritableUtils.readVLong(in);
+      case BOOLEAN:
+        return in.readBoolean();
+      case BYTE:
+        return in.readByte();
+      case SHORT:
+        return in.readShort();
+      case DOUBLE:
+        return in.readDouble();
+      case FLOAT:
+        return in.readFloat();
+      case CHAR:
+        return in.readChar();
+      case CLASS:
+        return readClass();
+      case ENUM:
+        return readEnum();
+      case ARRAY:
+        return readArray();
+      case COLLECTION:
+        return readCollection();
+      case MAP:
+        return readMap();
+      case BEAN:
+        return readBean();
+      default:
+        throw new IOException("Corrupted binary plan, unknown tag " + tag);
+      }
+    }
+
+    private String readString() throws IOException {
+      return readString(in.readByte());
+    }
+
+    private String readString(byte tag) throws IOException {
+      if (tag == STRING_REF) {
+        return strings.get(WritableUtils.readVInt(in));
+      }
+      if (tag != STRING) {
+        throw new IOException("Corrupted binary plan, expect a string but get tag " + tag);
+      }
+      byte[] bytes = new byte[WritableUtils.readVInt(in)];
+      in.readFully(bytes);
+      String s = new String(bytes, "UTF-8");
+      strings.add(s);
+      return s;
+    }
+
+    private Class<?> readClass() throws IOException {
+      int id = WritableUtils.readVInt(in);
+      if (id < classes.size()) {
+        return classes.get(id);
+      }
+      String name = readString();
+      Class<?> c = PRIMITIVES.get(name);
+      if (c == null) {
+        try {
+          c = Class.forName(name, true, JavaUtils.getClassLoader());
+        } catch (ClassNotFoundException e) {
+          throw new IOException("Cannot find class " + name + " used by the plan");
+        }
+      }
+      classes.add(c);
+      return c;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readEnum() throws IOException {
+      Class c = readClass();
+      String name = readString();
+      try {
+        return Enum.valueOf(c, name);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Enum " + c.getName() + " has no constant " + name);
+      }
+    }
+
+    private Object readArray() throws IOException {
+      Class<?> component = readClass();
+      int length = WritableUtils.readVInt(in);
+      Object array = Array.newInstance(component, length);
+      objects.add(array);
+      for (int i = 0; i < length; i++) {
+        Array.set(array, i, readValue());
+      }
+      return array;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readCollection() throws IOException {
+      Collection<Object> c = (Collection<Object>) newInstance(readClass());
+      objects.add(c);
+      int size = WritableUtils.readVInt(in);
+      for (int i = 0; i < size; i++) {
+        c.add(readValue());
+      }
+      return c;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readMap() throws IOException {
+      Map<Object, Object> m = (Map<Object, Object>) newInstance(readClass());
+      objects.add(m);
+      int size = WritableUtils.readVInt(in);
+      for (int i = 0; i < size; i++) {
+        Object key = readValue();
+        m.put(key, readValue());
+      }
+      return m;
+    }
+
+    private Object readBean() throws IOException {
+      int id = WritableUtils.readVInt(in);
+      Class<?> c;
+      BeanSchema schema;
+      int[] layout;
+      if (id < beans.size()) {
+        c = beans.get(id);
+        schema = getSchema(c);
+        layout = layouts.get(id);
+      } else {
+        // first occurrence: check the written properties against the class
+        String name = readString();
+        try {
+          c = Class.forName(name, true, JavaUtils.getClassLoader());
+        } catch (ClassNotFoundException e) {
+          throw new IOException("Cannot find class " + name + " used by the plan");
+        }
+        beans.add(c);
+        schema = getSchema(c);
+        layout = new int[WritableUtils.readVInt(in)];
+        for (int i = 0; i < layout.length; i++) {
+          String prop = readString();
+          Integer index = schema.index.get(prop);
+          if (index == null) {
+            throw new IOException("Property " + prop + " of " + name + " in the plan does not "
+                + "exist in this version of Hive");
+          }
+          layout[i] = index;
+        }
+        layouts.add(layout);
+      }
+
+      Object bean = newInstance(c);
+      objects.add(bean);
+      for (int i = 0; i < layout.length; i++) {
+        byte tag = in.readByte();
+        if (tag == SKIP) {
+          continue;
+        }
+        Method setter = schema.setters[layout[i]];
+        try {
+          setter.invoke(bean, readValue(tag));
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException("Cannot set " + c.getName() + "." + schema.names[layout[i]]
+              + ": " + e);
+        }
+      }
+      return bean;
+    }
+
+    private Object newInstance(Class<?> c) throws IOException {
+      try {
+        return c.newInstance();
+      } catch (Exception e) {
+        throw new IOException("Cannot instantiate " + c.getName() + ": " + e);
+      }
+    }
+  }
+}
@@ -0,0 +1,400 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFAverage.GenericUDAFAverageEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCount.GenericUDAFCountEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFMax.GenericUDAFMaxEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFMin.GenericUDAFMinEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum.GenericUDAFSumDouble;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum.GenericUDAFSumLong;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * PrimitiveAggregations.
+ *
+ * The aggregation state of the groups of a hash aggregation made of count, sum, min, max and avg
+ * of numeric columns only. The state of an aggregation is kept in primitive arrays indexed by the
+ * group id, instead of an AggregationBuffer per group, and is updated without going through the
+ * evaluators. The results are the same as the ones of the evaluators in PARTIAL1 or COMPLETE mode.
+ */
+public class PrimitiveAggregations {
+
+  /**
+   * The aggregations that are supported.
+   */
+  static enum Kind {
+    COUNT_ALL, COUNT, SUM_LONG, SUM_DOUBLE, MIN_LONG, MAX_LONG, MIN_DOUBLE, MAX_DOUBLE, AVG
+  }
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final Kind[] kinds;
+  private final PrimitiveObjectInspector[] inputOIs;
+  private final boolean[] partial;
+
+  // the values of the aggregations, and the number of non null values of a group
+  private final long[][] longs;
+  private final double[][] doubles;
+  private final long[][] counts;
+  private final int entrySize;
+
+  private int capacity;
+  private int numGroups;
+
+  private final LongWritable[] longResults;
+  private final DoubleWritable[] doubleResults;
+  private final Object[][] partialResults;
+
+  private PrimitiveAggregations(Kind[] kinds, PrimitiveObjectInspector[] inputOIs,
+      boolean[] partial) {
+    this.kinds = kinds;
+    this.inputOIs = inputOIs;
+    this.partial = partial;
+    longs = new long[kinds.length][];
+    doubles = new double[kinds.length][];
+    counts = new long[kinds.length][];
+    longResults = new LongWritable[kinds.length];
+    doubleResults = new DoubleWritable[kinds.length];
+    partialResults = new Object[kinds.length][];
+    capacity = INITIAL_CAPACITY;
+
+    int size = 0;
+    for (int i = 0; i < kinds.length; i++) {
+      counts[i] = new long[capacity];
+      size += 8;
+      switch (kinds[i]) {
+      case SUM_LONG:
+      case MIN_LONG:
+      case MAX_LONG:
+        longs[i] = new long[capacity];
+        size += 8;
+        break;
+      case SUM_DOUBLE:
+      case MIN_DOUBLE:
+      case MAX_DOUBLE:
+      case AVG:
+        doubles[i] = new double[capacity];
+        size += 8;
+        break;
+      default:
+        break;
+      }
+      longResults[i] = new LongWritable();
+      doubleResults[i] = new DoubleWritable();
+      if (kinds[i] == Kind.AVG && partial[i]) {
+        partialResults[i] = new Object[] {new LongWritable(), new DoubleWritable()};
+      }
+    }
+    entrySize = size;
+  }
+
+  /**
+   * Create the state of the given aggregations.
+   *
+   * @return null if one of the aggregations is not supported
+   */
+  public static PrimitiveAggregations create(List<AggregationDesc> aggrs,
+      GenericUDAFEvaluator[] evaluators, ObjectInspector[][] parameterObjectInspectors) {
+    Kind[] kinds = new Kind[aggrs.size()];
+    PrimitiveObjectInspector[] inputOIs = new PrimitiveObjectInspector[aggrs.size()];
+    boolean[] partial = new boolean[aggrs.size()];
+    for (int i = 0; i < kinds.length; i++) {
+      AggregationDesc aggr = aggrs.get(i);
+      GenericUDAFEvaluator.Mode mode = aggr.getMode();
+      if (aggr.getDistinct() || (mode != GenericUDAFEvaluator.Mode.PARTIAL1
+          && mode != GenericUDAFEvaluator.Mode.COMPLETE)) {
+        return null;
+      }
+      partial[i] = mode == GenericUDAFEvaluator.Mode.PARTIAL1;
+
+      ObjectInspector[] parameters = parameterObjectInspectors[i];
+      Class<?> evaluator = evaluators[i].getClass();
+      if (evaluator == GenericUDAFCountEvaluator.class) {
+        if (parameters.length > 1) {
+          return null;
+        }
+        kinds[i] = parameters.length == 0 ? Kind.COUNT_ALL : Kind.COUNT;
+        continue;
+      }
+      if (parameters.length != 1 || !isNumeric(parameters[0])) {
+        return null;
+      }
+      inputOIs[i] = (PrimitiveObjectInspector) parameters[0];
+      boolean integral = isIntegral(inputOIs[i]);
+      if (evaluator == GenericUDAFSumLong.class) {
+        kinds[i] = Kind.SUM_LONG;
+      } else if (evaluator == GenericUDAFSumDouble.class) {
+        kinds[i] = Kind.SUM_DOUBLE;
+      } else if (evaluator == GenericUDAFMinEvaluator.class) {
+        kinds[i] = integral ? Kind.MIN_LONG : Kind.MIN_DOUBLE;
+      } else if (evaluator == GenericUDAFMaxEvaluator.class) {
+        kinds[i] = integral ? Kind.MAX_LONG : Kind.MAX_DOUBLE;
+      } else if (evaluator == GenericUDAFAverageEvaluator.class) {
+        kinds[i] = Kind.AVG;
+      } else {
+        return null;
+      }
+    }
+    return new PrimitiveAggregations(kinds, inputOIs, partial);
+  }
+
+  private static boolean isNumeric(ObjectInspector oi) {
+    if (oi.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveObjectInspector) oi).getPrimitiveCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isIntegral(PrimitiveObjectInspector oi) {
+    PrimitiveCategory category = oi.getPrimitiveCategory();
+    return category != PrimitiveCategory.FLOAT && category != PrimitiveCategory.DOUBLE;
+  }
+
+  /**
+   * @return the id of a new group
+   */
+  public int newGroup() {
+    if (numGroups == capacity) {
+      grow();
+    }
+    int group = numGroups++;
+    for (int i = 0; i < kinds.length; i++) {
+      counts[i][group] = 0;
+      if (longs[i] != null) {
+        longs[i][group] = 0;
+      }
+      if (doubles[i] != null) {
+        doubles[i][group] = 0;
+      }
+    }
+    return group;
+  }
+
+  private void grow() {
+    int newCapacity = capacity * 2;
+    for (int i = 0; i < kinds.length; i++) {
+      counts[i] = copyOf(counts[i], newCapacity);
+      if (longs[i] != null) {
+        longs[i] = copyOf(longs[i], newCapacity);
+      }
+      if (doubles[i] != null) {
+        double[] copy = new double[newCapacity];
+        System.arraycopy(doubles[i], 0, copy, 0, numGroups);
+        doubles[i] = copy;
+      }
+    }
+    capacity = newCapacity;
+  }
+
+  private long[] copyOf(long[] array, int newCapacity) {
+    long[] copy = new long[newCapacity];
+    System.arraycopy(array, 0, copy, 0, numGroups);
+    return copy;
+  }
+
+  /**
+   * Update an aggregation of a group with the value of its parameter, which is ignored for
+   * count(*).
+   */
+  public void aggregate(int i, int group, Object parameter) {
+    Kind kind = kinds[i];
+    if (kind == Kind.COUNT_ALL) {
+      counts[i][group]++;
+      return;
+    }
+    if (parameter == null) {
+      return;
+    }
+    if (kind == Kind.COUNT) {
+      counts[i][group]++;
+    } else if (isDoubleParameter(i)) {
+      aggregateDouble(i, group, PrimitiveObjectInspectorUtils.getDouble(parameter, inputOIs[i]));
+    } else {
+      aggregateLong(i, group, PrimitiveObjectInspectorUtils.getLong(parameter, inputOIs[i]));
+    }
+  }
+
+  /**
+   * @return whether the parameter of an aggregation is a float or a double, the other
+   *         aggregations taking a long or no parameter
+   */
+  public boolean isDoubleParameter(int i) {
+    return inputOIs[i] != null && !isIntegral(inputOIs[i]);
+  }
+
+  /**
+   * Update an aggregation of a group with a non null long value, which is ignored for count.
+   */
+  public void aggregateLong(int i, int group, long v) {
+    long count = counts[i][group]++;
+    switch (kinds[i]) {
+    case SUM_LONG:
+      longs[i][group] += v;
+      break;
+    case MIN_LONG:
+      if (count == 0 || v < longs[i][group]) {
+        longs[i][group] = v;
+      }
+      break;
+    case MAX_LONG:
+      if (count == 0 || v > longs[i][group]) {
+        longs[i][group] = v;
+      }
+      break;
+    case AVG:
+      doubles[i][group] += v;
+      break;
+    default:
+      break;
+    }
+  }
+
+  /**
+   * Update an aggregation of a group with a non null double value.
+   */
+  public void aggregateDouble(int i, int group, double v) {
+    long count = counts[i][group]++;
+    switch (kinds[i]) {
+    case SUM_DOUBLE:
+    case AVG:
+      doubles[i][group] += v;
+      break;
+    case MIN_DOUBLE:
+      if (count == 0 || Double.compare(v, doubles[i][group]) < 0) {
+        doubles[i][group] = v;
+      }
+      break;
+    case MAX_DOUBLE:
+      if (count == 0 || Double.compare(v, doubles[i][group]) > 0) {
+        doubles[i][group] = v;
+      }
+      break;
+    default:
+      break;
+    }
+  }
+
+  /**
+   * @return whether the aggregation is count(*)
+   */
+  public boolean isCountAll(int i) {
+    return kinds[i] == Kind.COUNT_ALL;
+  }
+
+  /**
+   * @return the result of an aggregation of a group, in the format of its evaluator
+   */
+  public Object evaluate(int i, int group) {
+    long count = counts[i][group];
+    switch (kinds[i]) {
+    case COUNT_ALL:
+    case COUNT:
+      longResults[i].set(count);
+      return longResults[i];
+    case SUM_LONG:
+      if (count == 0) {
+        return null;
+      }
+      longResults[i].set(longs[i][group]);
+      return longResults[i];
+    case SUM_DOUBLE:
+      if (count == 0) {
+        return null;
+      }
+      doubleResults[i].set(doubles[i][group]);
+      return doubleResults[i];
+    case MIN_LONG:
+    case MAX_LONG:
+    case MIN_DOUBLE:
+    case MAX_DOUBLE:
+      return count == 0 ? null : getMinMax(i, group);
+    case AVG:
+      if (partial[i]) {
+        ((LongWritable) partialResults[i][0]).set(count);
+        ((DoubleWritable) partialResults[i][1]).set(doubles[i][group]);
+        return partialResults[i];
+      }
+      if (count == 0) {
+        return null;
+      }
+      doubleResults[i].set(doubles[i][group] / count);
+      return doubleResults[i];
+    default:
+      throw new IllegalStateException("Unknown aggregation " + kinds[i]);
+    }
+  }
+
+  /**
+   * min and max return the java object of the type of their parameter.
+   */
+  private Object getMinMax(int i, int group) {
+    switch (inputOIs[i].getPrimitiveCategory()) {
+    case BYTE:
+      return Byte.valueOf((byte) longs[i][group]);
+    case SHORT:
+      return Short.valueOf((short) longs[i][group]);
+    case INT:
+      return Integer.valueOf((int) longs[i][group]);
+    case LONG:
+      return Long.valueOf(longs[i][group]);
+    case FLOAT:
+      return Float.valueOf((float) doubles[i][group]);
+    default:
+      return Double.valueOf(doubles[i][group]);
+    }
+  }
+
+  /**
+   * Forget all the groups. The arrays are kept for the next groups.
+   */
+  public void clear() {
+    numGroups = 0;
+  }
+
+  public int getNumGroups() {
+    return numGroups;
+  }
+
+  /**
+   * @return the bytes of the state of a group
+   */
+  public int getEntrySize() {
+    return entrySize;
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters.Converter;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.Text;
+
+/**
+ * RuntimeFilter.
+ *
+ * The keys of a small table of a map join: their range, and their distinct values as long as
+ * there are few of them. The local task collects them while it builds the hash table; the
+ * map-reduce task of the big table reads them back to skip what cannot match (see
+ * RuntimeFilterDesc). Null keys never match, so they are not collected; null-safe keys get no
+ * runtime filter.
+ *
+ * The keys are written as strings along with their type, and the values they are checked against
+ * are converted to that type before they are compared, as the join would, so that partition
+ * "01" matches the int key 1.
+ */
+public class RuntimeFilter {
+
+  private PrimitiveObjectInspector keyOI;
+  private ObjectInspector standardKeyOI;
+  private int maxValues;
+  private Object min;
+  private Object max;
+
+  private Set<String> values;
+
+  // the keys read back, as strings and as writables of the key type
+  private String minValue;
+  private String maxValue;
+  private PrimitiveObjectInspector valueOI;
+  private Converter valueConverter;
+  private Object minObject;
+  private Object maxObject;
+  private Set<Object> valueObjects;
+
+  private RuntimeFilter() {
+  }
+
+  /**
+   * Create a filter collecting keys inspected by keyOI. The distinct values are only collected
+   * if maxValues is positive, and are dropped once there are more than maxValues of them.
+   */
+  public RuntimeFilter(PrimitiveObjectInspector keyOI, int maxValues) {
+    this.keyOI = keyOI;
+    this.maxValues = maxValues;
+    standardKeyOI = ObjectInspectorUtils.getStandardObjectInspector(keyOI,
+        ObjectInspectorCopyOption.WRITABLE);
+    if (maxValues > 0) {
+      values = new HashSet<String>();
+    }
+  }
+
+  public void add(Object key) {
+    if (key == null) {
+      return;
+    }
+    if (min == null || ObjectInspectorUtils.compare(key, keyOI, min, standardKeyOI) < 0) {
+      min = ObjectInspectorUtils.copyToStandardObject(key, keyOI,
+          ObjectInspectorCopyOption.WRITABLE);
+    }
+    if (max == null || ObjectInspectorUtils.compare(key, keyOI, max, standardKeyOI) > 0) {
+      max = ObjectInspectorUtils.copyToStandardObject(key, keyOI,
+          ObjectInspectorCopyOption.WRITABLE);
+    }
+    if (values != null) {
+      values.add(PrimitiveObjectInspectorUtils.getString(key, keyOI));
+      if (values.size() > maxValues) {
+        values = null;
+      }
+    }
+  }
+
+  public void write(Path path, Configuration conf) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    DataOutputStream out = fs.create(path);
+    try {
+      Text.writeString(out, keyOI.getTypeName());
+      out.writeBoolean(min != null);
+      if (min != null) {
+        Text.writeString(out, PrimitiveObjectInspectorUtils.getString(min,
+            (PrimitiveObjectInspector) standardKeyOI));
+        Text.writeString(out, PrimitiveObjectInspectorUtils.getString(max,
+            (PrimitiveObjectInspector) standardKeyOI));
+      }
+      out.writeInt(values == null ? -1 : values.size());
+      if (values != null) {
+        for (String value : values) {
+          Text.writeString(out, value);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read the keys written by a local task.
+   *
+   * @return the keys, or null if the local task did not write them
+   */
+  public static RuntimeFilter read(Path path, Configuration conf) throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    if (!fs.exists(path)) {
+      return null;
+    }
+    final RuntimeFilter filter = new RuntimeFilter();
+    DataInputStream in = fs.open(path);
+    try {
+      PrimitiveTypeInfo typeInfo = (PrimitiveTypeInfo) TypeInfoUtils
+          .getTypeInfoFromTypeString(Text.readString(in));
+      filter.valueOI = PrimitiveObjectInspectorFactory.getPrimitiveWritableObjectInspector(
+          typeInfo.getPrimitiveCategory());
+      filter.valueConverter = ObjectInspectorConverters.getConverter(
+          PrimitiveObjectInspectorFactory.javaStringObjectInspector, filter.valueOI);
+      if (in.readBoolean()) {
+        filter.minValue = Text.readString(in);
+        filter.maxValue = Text.readString(in);
+        filter.minObject = filter.toKeyType(filter.minValue);
+        filter.maxObject = filter.toKeyType(filter.maxValue);
+      }
+      int numValues = in.readInt();
+      if (numValues >= 0) {
+        filter.valueObjects = new TreeSet<Object>(new Comparator<Object>() {
+          public int compare(Object o1, Object o2) {
+            return ObjectInspectorUtils.compare(o1, filter.valueOI, o2, filter.valueOI);
+          }
+        });
+        for (int i = 0; i < numValues; i++) {
+          Object value = filter.toKeyType(Text.readString(in));
+          if (value != null) {
+            filter.valueObjects.add(value);
+          }
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return filter;
+  }
+
+  /**
+   * Convert a string to a writable of the key type, or null if it is not a valid value of it.
+   */
+  private Object toKeyType(String value) {
+    Object converted = valueConverter.convert(value);
+    if (converted == null) {
+      return null;
+    }
+    // the converter reuses its result
+    return ObjectInspectorUtils.copyToStandardObject(converted, valueOI,
+        ObjectInspectorCopyOption.WRITABLE);
+  }
+
+  /**
+   * @return the smallest key read back, or null if there is no key
+   */
+  public String getMinValue() {
+    return minValue;
+  }
+
+  public String getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * Return whether a value, such as a partition value, may be one of the keys read back. The value
+   * is converted to the key type first; a value that is not valid for the key type is null once
+   * converted, and never matches. Without the distinct values, it is compared with the range of
+   * the keys.
+   */
+  public boolean mayContain(String key) {
+    if (minValue == null || key == null) {
+      return false;
+    }
+    Object value = valueConverter.convert(key);
+    if (value == null) {
+      return false;
+    }
+    if (valueObjects != null) {
+      return valueObjects.contains(value);
+    }
+    return ObjectInspectorUtils.compare(value, valueOI, minObject, valueOI) >= 0
+        && ObjectInspectorUtils.compare(value, valueOI, maxObject, valueOI) <= 0;
+  }
+}
@@ -36,6 +36,7 @@ public class SelectOperator extends Operator<SelectDesc> implements
 
   private static final long serialVersionUID = 1L;
   protected transient ExprNodeEvaluator[] eval;
+  protected transient ExprNodeSharedEvaluator.RowCounter rowCounter;
 
   transient Object[] output;
 
@@ -48,11 +49,8 @@ public class SelectOperator extends Operator<SelectDesc> implements
     }
 
     ArrayList<ExprNodeDesc> colList = conf.getColList();
-    eval = new ExprNodeEvaluator[colList.size()];
-    for (int i = 0; i < colList.size(); i++) {
-      assert (colList.get(i) != null);
-      eval[i] = ExprNodeEvaluatorFactory.get(colList.get(i));
-    }
+    rowCounter = new ExprNodeSharedEvaluator.RowCounter();
+    eval = ExprNodeEvaluatorFactory.get(colList, rowCounter);
 
     output = new Object[eval.length];
     LOG.info("SELECT "
@@ -71,6 +69,7 @@ public class SelectOperator extends Operator<SelectDesc> implements
       return;
     }
 
+    rowCounter.next();
     for (int i = 0; i < eval.length; i++) {
       try {
         output[i] = eval[i].evaluate(row);
@@ -29,16 +29,20 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.common.FileUtils;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.VirtualColumn;
+import org.apache.hadoop.hive.ql.plan.RuntimeFilterDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.ql.plan.api.OperatorType;
 import org.apache.hadoop.hive.ql.stats.StatsPublisher;
 import org.apache.hadoop.hive.ql.stats.StatsSetupConst;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapred.JobConf;
 
@@ -51,6 +55,14 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
     Serializable {
   private static final long serialVersionUID = 1L;
 
+  /**
+   * Counter.
+   *
+   */
+  public static enum Counter {
+    RUNTIME_FILTERED
+  }
+
   protected transient JobConf jc;
   private transient Configuration hconf;
   private transient String partitionSpecs;
@@ -60,6 +72,14 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
   private transient Stat currentStat;
   private transient Map<String, Stat> stats;
 
+  // the join columns checked against the range of the small table keys of a map join
+  private transient StructField[] filterFields;
+  private transient ObjectInspector[] filterFieldOIs;
+  private transient ObjectInspector[] filterBoundOIs;
+  private transient Object[] filterMins;
+  private transient Object[] filterMaxs;
+  private final transient LongWritable runtimeFiltered = new LongWritable();
+
   public TableDesc getTableDesc() {
     return tableDesc;
   }
@@ -77,12 +97,89 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
    **/
   @Override
   public void processOp(Object row, int tag) throws HiveException {
+    if (filterFields != null && !acceptRuntimeFilters(row)) {
+      runtimeFiltered.set(runtimeFiltered.get() + 1);
+      return;
+    }
     if (conf != null && conf.isGatherStats()) {
       gatherStats(row);
     }
     forward(row, inputObjInspectors[tag]);
   }
 
+  /**
+   * Return whether the join columns of a row are in the range of the small table keys, i.e.
+   * whether the row may be joined.
+   */
+  private boolean acceptRuntimeFilters(Object row) {
+    StructObjectInspector soi = (StructObjectInspector) inputObjInspectors[0];
+    for (int i = 0; i < filterFields.length; i++) {
+      if (filterMins[i] == null) {
+        // the small table has no key
+        return false;
+      }
+      Object value = soi.getStructFieldData(row, filterFields[i]);
+      if (value == null
+          || ObjectInspectorUtils.compare(value, filterFieldOIs[i], filterMins[i],
+              filterBoundOIs[i]) < 0
+          || ObjectInspectorUtils.compare(value, filterFieldOIs[i], filterMaxs[i],
+              filterBoundOIs[i]) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void initializeRuntimeFilters() {
+    List<StructField> fields = new ArrayList<StructField>();
+    List<ObjectInspector> boundOIs = new ArrayList<ObjectInspector>();
+    List<Object> mins = new ArrayList<Object>();
+    List<Object> maxs = new ArrayList<Object>();
+    StructObjectInspector soi = (StructObjectInspector) inputObjInspectors[0];
+    for (RuntimeFilterDesc filter : conf.getRuntimeFilters()) {
+      // the partitions have been pruned with the keys already
+      if (!filter.isLoaded() || filter.isPartitionColumn()) {
+        continue;
+      }
+      StructField field = soi.getStructFieldRef(filter.getColumn());
+      ObjectInspector fieldOI = field.getFieldObjectInspector();
+      if (fieldOI.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        continue;
+      }
+      ObjectInspector boundOI = PrimitiveObjectInspectorFactory
+          .getPrimitiveWritableObjectInspector(
+          ((PrimitiveObjectInspector) fieldOI).getPrimitiveCategory());
+      fields.add(field);
+      boundOIs.add(boundOI);
+      if (filter.getMinValue() == null) {
+        mins.add(null);
+        maxs.add(null);
+      } else {
+        // the converters reuse their result, so each bound has its own
+        mins.add(ObjectInspectorConverters.getConverter(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector, boundOI).convert(
+            filter.getMinValue()));
+        maxs.add(ObjectInspectorConverters.getConverter(
+            PrimitiveObjectInspectorFactory.javaStringObjectInspector, boundOI).convert(
+            filter.getMaxValue()));
+      }
+    }
+    if (fields.isEmpty()) {
+      return;
+    }
+
+    filterFields = fields.toArray(new StructField[fields.size()]);
+    filterFieldOIs = new ObjectInspector[filterFields.length];
+    for (int i = 0; i < filterFields.length; i++) {
+      filterFieldOIs[i] = filterFields[i].getFieldObjectInspector();
+    }
+    filterBoundOIs = boundOIs.toArray(new ObjectInspector[boundOIs.size()]);
+    filterMins = mins.toArray();
+    filterMaxs = maxs.toArray();
+    statsMap.put(Counter.RUNTIME_FILTERED, runtimeFiltered);
+    LOG.info("Filtering the rows with " + filterFields.length + " runtime filters");
+  }
+
   // Change the table partition for collecting stats
   @Override
   public void cleanUpInputFileChangedOp() throws HiveException {
@@ -169,6 +266,9 @@ public class TableScanOperator extends Operator<TableScanDesc> implements
     if (conf == null) {
       return;
     }
+    if (conf.getRuntimeFilters() != null) {
+      initializeRuntimeFilters();
+    }
     if (!conf.isGatherStats()) {
       return;
     }
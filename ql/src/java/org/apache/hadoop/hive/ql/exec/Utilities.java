@@ -25,6 +25,7 @@ import java.beans.Expression;
 import java.beans.Statement;
 import java.beans.XMLDecoder;
 import java.beans.XMLEncoder;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -64,9 +65,12 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -94,6 +98,7 @@ import org.apache.hadoop.hive.metastore.api.Order;
 import org.apache.hadoop.hive.ql.Context;
 import org.apache.hadoop.hive.ql.QueryPlan;
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
+import org.apache.hadoop.hive.ql.io.ColumnStatisticsCollector;
 import org.apache.hadoop.hive.ql.io.ContentSummaryInputFormat;
 import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
 import org.apache.hadoop.hive.ql.io.HiveIgnoreKeyTextOutputFormat;
@@ -348,7 +353,7 @@ public final class Utilities {
       // use the default file system of the job
       FileSystem fs = planPath.getFileSystem(job);
       FSDataOutputStream out = fs.create(planPath);
-      serializeMapRedWork(w, out);
+      serializeMapRedWork(w, out, job);
 
       // Serialize the plan to the default hdfs instance
       // Except for hadoop local mode execution where we should be
@@ -510,7 +515,25 @@ public final class Utilities {
 
   }
 
+  /**
+   * Serialize the mapredWork object to an output stream, in the format set by
+   * hive.exec.plan.format. A plan the binary format can not re-create is
+   * written as XML. The output stream is closed.
+   */
+  public static void serializeMapRedWork(MapredWork w, OutputStream out, Configuration conf) {
+    if (!isBinaryPlanFormat(conf) || !serializeBinaryPlan(w, out)) {
+      serializeMapRedWork(w, out);
+    }
+  }
+
+  /**
+   * Deserialize the mapredWork object from an input stream holding either a binary or an XML plan.
+   */
   public static MapredWork deserializeMapRedWork(InputStream in, Configuration conf) {
+    in = in.markSupported() ? in : new BufferedInputStream(in);
+    if (isBinaryPlan(in)) {
+      return (MapredWork) deserializeBinaryPlan(in);
+    }
     XMLDecoder d = null;
     try {
       d = new XMLDecoder(in, null, null);
@@ -542,7 +565,27 @@ public final class Utilities {
     }
   }
 
+  /**
+   * Serialize the mapredLocalWork object to an output stream, in the format set by
+   * hive.exec.plan.format. A plan the binary format can not re-create is
+   * written as XML. The output stream is closed.
+   */
+  public static void serializeMapRedLocalWork(MapredLocalWork w, OutputStream out,
+      Configuration conf) {
+    if (!isBinaryPlanFormat(conf) || !serializeBinaryPlan(w, out)) {
+      serializeMapRedLocalWork(w, out);
+    }
+  }
+
+  /**
+   * Deserialize the mapredLocalWork object from an input stream holding either a binary or an XML
+   * plan.
+   */
   public static MapredLocalWork deserializeMapRedLocalWork(InputStream in, Configuration conf) {
+    in = in.markSupported() ? in : new BufferedInputStream(in);
+    if (isBinaryPlan(in)) {
+      return (MapredLocalWork) deserializeBinaryPlan(in);
+    }
     XMLDecoder d = null;
     try {
       d = new XMLDecoder(in, null, null);
@@ -555,6 +598,55 @@ public final class Utilities {
     }
   }
 
+  private static boolean isBinaryPlanFormat(Configuration conf) {
+    return conf != null
+        && "binary".equalsIgnoreCase(HiveConf.getVar(conf, HiveConf.ConfVars.PLANFORMAT));
+  }
+
+  /**
+   * Write a plan in the binary format, or return false and leave the stream untouched if the
+   * plan holds a value the binary format can not re-create.
+   */
+  private static boolean serializeBinaryPlan(Serializable plan, OutputStream out) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try {
+      PlanSerializer.serialize(plan, buffer);
+    } catch (IOException e) {
+      LOG.warn("Cannot serialize the plan in the binary format, use XML: " + e.getMessage());
+      return false;
+    }
+    try {
+      try {
+        buffer.writeTo(out);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot serialize the plan", e);
+    }
+    return true;
+  }
+
+  private static boolean isBinaryPlan(InputStream in) {
+    try {
+      return PlanSerializer.isBinaryPlan(in);
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot read the plan", e);
+    }
+  }
+
+  private static Object deserializeBinaryPlan(InputStream in) {
+    try {
+      try {
+        return PlanSerializer.deserialize(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot deserialize the plan", e);
+    }
+  }
+
   /**
    * Tuple.
    *
@@ -984,13 +1076,27 @@ public final class Utilities {
    */
   public static RCFile.Writer createRCFileWriter(JobConf jc, FileSystem fs, Path file,
       boolean isCompressed) throws IOException {
+    return createRCFileWriter(jc, fs, file, isCompressed, null);
+  }
+
+  /**
+   * Create a RCFile output stream that writes the column statistics of each
+   * record.
+   *
+   * @param statistics
+   *          collects the column statistics, or null to write none
+   * @return output stream over the created rcfile
+   */
+  public static RCFile.Writer createRCFileWriter(JobConf jc, FileSystem fs, Path file,
+      boolean isCompressed, ColumnStatisticsCollector statistics) throws IOException {
     CompressionCodec codec = null;
     Class<?> codecClass = null;
     if (isCompressed) {
       codecClass = FileOutputFormat.getOutputCompressorClass(jc, DefaultCodec.class);
       codec = (CompressionCodec) ReflectionUtils.newInstance(codecClass, jc);
     }
-    return new RCFile.Writer(fs, jc, file, null, codec);
+    return new RCFile.Writer(fs, jc, file, null, new SequenceFile.Metadata(), codec,
+        statistics);
   }
 
   /**
@@ -1638,11 +1744,18 @@ public final class Utilities {
     }
   }
 
-  public static Object getInputSummaryLock = new Object();
+  // input path -> computation of its content summary in progress, shared by the queries that
+  // need it at the same time
+  private static final ConcurrentHashMap<String, FutureTask<ContentSummary>> inputSummaryTasks =
+      new ConcurrentHashMap<String, FutureTask<ContentSummary>>();
 
   /**
    * Calculate the total size of input files.
    *
+   * The summary of a path is taken from the query context, then from the process-wide
+   * ContentSummaryCache, and is asked to the name node otherwise. A path is asked for by one
+   * query at a time: a query needing a summary another query is computing waits for it.
+   *
    * @param ctx
    *          the hadoop job context
    * @param work
@@ -1658,142 +1771,203 @@ public final class Utilities {
     long[] summary = {0, 0, 0};
 
     List<String> pathNeedProcess = new ArrayList<String>();
+    final ContentSummaryCache csCache = ContentSummaryCache.get(ctx.getConf());
 
-    // Since multiple threads could call this method concurrently, locking
-    // this method will avoid number of threads out of control.
-    synchronized (getInputSummaryLock) {
-      // For each input path, calculate the total size.
-      for (String path : work.getPathToAliases().keySet()) {
-        Path p = new Path(path);
+    // For each input path, calculate the total size.
+    for (String path : work.getPathToAliases().keySet()) {
+      Path p = new Path(path);
 
-        if (filter != null && !filter.accept(p)) {
-          continue;
-        }
+      if (filter != null && !filter.accept(p)) {
+        continue;
+      }
 
-        ContentSummary cs = ctx.getCS(path);
-        if (cs == null) {
-          if (path == null) {
-            continue;
-          }
-          pathNeedProcess.add(path);
-        } else {
-          summary[0] += cs.getLength();
-          summary[1] += cs.getFileCount();
-          summary[2] += cs.getDirectoryCount();
+      ContentSummary cs = ctx.getCS(path);
+      if (cs == null && csCache != null) {
+        cs = csCache.lookup(path);
+        if (cs != null) {
+          ctx.addCS(path, cs);
         }
       }
-
-      // Process the case when name node call is needed
-      final Map<String, ContentSummary> resultMap = new ConcurrentHashMap<String, ContentSummary>();
-      ArrayList<Future<?>> results = new ArrayList<Future<?>>();
-      final ThreadPoolExecutor executor;
-      int maxThreads = ctx.getConf().getInt("mapred.dfsclient.parallelism.max", 0);
-      if (pathNeedProcess.size() > 1 && maxThreads > 1) {
-        int numExecutors = Math.min(pathNeedProcess.size(), maxThreads);
-        LOG.info("Using " + numExecutors + " threads for getContentSummary");
-        executor = new ThreadPoolExecutor(numExecutors, numExecutors, 60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>());
+      if (cs == null) {
+        if (path == null) {
+          continue;
+        }
+        pathNeedProcess.add(path);
       } else {
-        executor = null;
+        summary[0] += cs.getLength();
+        summary[1] += cs.getFileCount();
+        summary[2] += cs.getDirectoryCount();
       }
+    }
 
-      HiveInterruptCallback interrup = HiveInterruptUtils.add(new HiveInterruptCallback() {
-        @Override
-        public void interrupt() {
-          if (executor != null) {
-            executor.shutdownNow();
+    // Process the case when name node call is needed
+    final ThreadPoolExecutor executor;
+    int maxThreads = ctx.getConf().getInt("mapred.dfsclient.parallelism.max", 0);
+    if (pathNeedProcess.size() > 1 && maxThreads > 1) {
+      int numExecutors = Math.min(pathNeedProcess.size(), maxThreads);
+      LOG.info("Using " + numExecutors + " threads for getContentSummary");
+      executor = new ThreadPoolExecutor(numExecutors, numExecutors, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>());
+    } else {
+      executor = null;
+    }
+
+    HiveInterruptCallback interrup = HiveInterruptUtils.add(new HiveInterruptCallback() {
+      @Override
+      public void interrupt() {
+        if (executor != null) {
+          // queued computations are cancelled so that the queries waiting for them compute
+          // them themselves
+          for (Runnable r : executor.shutdownNow()) {
+            ((Future<?>) r).cancel(true);
           }
         }
-      });
-      try {
-        Configuration conf = ctx.getConf();
-        JobConf jobConf = new JobConf(conf);
-        for (String path : pathNeedProcess) {
-          final Path p = new Path(path);
-          final String pathStr = path;
-          // All threads share the same Configuration and JobConf based on the
-          // assumption that they are thread safe if only read operations are
-          // executed. It is not stated in Hadoop's javadoc, the sourcce codes
-          // clearly showed that they made efforts for it and we believe it is
-          // thread safe. Will revisit this piece of codes if we find the assumption
-          // is not correct.
-          final Configuration myConf = conf;
-          final JobConf myJobConf = jobConf;
-          final PartitionDesc partDesc = work.getPathToPartitionInfo().get(
-              p.toString());
-          Runnable r = new Runnable() {
-            public void run() {
-              try {
-                ContentSummary resultCs;
-
-                Class<? extends InputFormat> inputFormatCls = partDesc
-                    .getInputFileFormatClass();
-                InputFormat inputFormatObj = HiveInputFormat.getInputFormatFromCache(
-                    inputFormatCls, myJobConf);
-                if (inputFormatObj instanceof ContentSummaryInputFormat) {
-                  resultCs = ((ContentSummaryInputFormat) inputFormatObj).getContentSummary(p,
-                      myJobConf);
-                } else {
-                  FileSystem fs = p.getFileSystem(myConf);
-                  resultCs = fs.getContentSummary(p);
+      }
+    });
+    try {
+      Configuration conf = ctx.getConf();
+      JobConf jobConf = new JobConf(conf);
+      Map<String, Future<ContentSummary>> results =
+          new LinkedHashMap<String, Future<ContentSummary>>();
+      // paths whose summary is computed by another query
+      Set<String> sharedPaths = new HashSet<String>();
+      for (String path : pathNeedProcess) {
+        final Path p = new Path(path);
+        final String pathStr = path;
+        // All threads share the same Configuration and JobConf based on the
+        // assumption that they are thread safe if only read operations are
+        // executed. It is not stated in Hadoop's javadoc, the sourcce codes
+        // clearly showed that they made efforts for it and we believe it is
+        // thread safe. Will revisit this piece of codes if we find the assumption
+        // is not correct.
+        final Configuration myConf = conf;
+        final JobConf myJobConf = jobConf;
+        final PartitionDesc partDesc = work.getPathToPartitionInfo().get(
+            p.toString());
+        FutureTask<ContentSummary> task = new FutureTask<ContentSummary>(
+            new Callable<ContentSummary>() {
+              public ContentSummary call() throws IOException {
+                ContentSummary resultCs = getContentSummary(p, partDesc, myConf, myJobConf);
+                if (csCache != null) {
+                  csCache.put(pathStr, resultCs);
                 }
-                resultMap.put(pathStr, resultCs);
-              } catch (IOException e) {
-                // We safely ignore this exception for summary data.
-                // We don't update the cache to protect it from polluting other
-                // usages. The worst case is that IOException will always be
-                // retried for another getInputSummary(), which is fine as
-                // IOException is not considered as a common case.
-                LOG.info("Cannot get size of " + pathStr + ". Safely ignored.");
+                return resultCs;
               }
-            }
-          };
+            }) {
+          @Override
+          protected void done() {
+            inputSummaryTasks.remove(pathStr, this);
+          }
+        };
 
+        FutureTask<ContentSummary> running = inputSummaryTasks.putIfAbsent(pathStr, task);
+        if (running != null) {
+          LOG.info("Waiting for the size of " + pathStr + " computed by another query");
+          results.put(pathStr, running);
+          sharedPaths.add(pathStr);
+        } else {
           if (executor == null) {
-            r.run();
+            task.run();
           } else {
-            Future<?> result = executor.submit(r);
-            results.add(result);
+            executor.execute(task);
           }
+          results.put(pathStr, task);
         }
+      }
 
-        if (executor != null) {
-          for (Future<?> result : results) {
-            boolean executorDone = false;
-            do {
-              try {
-                result.get();
-                executorDone = true;
-              } catch (InterruptedException e) {
-                LOG.info("Interrupted when waiting threads: ", e);
-                Thread.currentThread().interrupt();
-                break;
-              } catch (ExecutionException e) {
-                throw new IOException(e);
-              }
-            } while (!executorDone);
-    }
-          executor.shutdown();
+      for (Map.Entry<String, Future<ContentSummary>> result : results.entrySet()) {
+        String pathStr = result.getKey();
+        ContentSummary cs = null;
+        try {
+          cs = result.getValue().get();
+        } catch (InterruptedException e) {
+          LOG.info("Interrupted when waiting threads: ", e);
+          Thread.currentThread().interrupt();
+          break;
+        } catch (CancellationException e) {
+          if (executor != null && executor.isShutdown()) {
+            break;
+          }
+          // the query that was computing it has been interrupted
+          cs = getSharedContentSummary(pathStr, result.getValue(), work, csCache, conf,
+              jobConf);
+        } catch (ExecutionException e) {
+          if (sharedPaths.contains(pathStr)) {
+            // the failure may belong to the query that was computing it, e.g. when that query
+            // has been interrupted, so the summary is computed again for this query
+            cs = getSharedContentSummary(pathStr, result.getValue(), work, csCache, conf,
+                jobConf);
+          } else if (!(e.getCause() instanceof IOException)) {
+            throw new IOException(e);
+          } else {
+            // We safely ignore this exception for summary data.
+            // We don't update the cache to protect it from polluting other
+            // usages. The worst case is that IOException will always be
+            // retried for another getInputSummary(), which is fine as
+            // IOException is not considered as a common case.
+            LOG.info("Cannot get size of " + pathStr + ". Safely ignored.");
+          }
         }
-        HiveInterruptUtils.checkInterrupted();
-        for (Map.Entry<String, ContentSummary> entry : resultMap.entrySet()) {
-          ContentSummary cs = entry.getValue();
-
-          summary[0] += cs.getLength();
-          summary[1] += cs.getFileCount();
-          summary[2] += cs.getDirectoryCount();
-
-          ctx.addCS(entry.getKey(), cs);
-          LOG.info("Cache Content Summary for " + entry.getKey() + " length: " + cs.getLength()
-              + " file count: "
-              + cs.getFileCount() + " directory count: " + cs.getDirectoryCount());
+        if (cs == null) {
+          continue;
         }
 
-        return new ContentSummary(summary[0], summary[1], summary[2]);
-      } finally {
-        HiveInterruptUtils.remove(interrup);
+        summary[0] += cs.getLength();
+        summary[1] += cs.getFileCount();
+        summary[2] += cs.getDirectoryCount();
+
+        ctx.addCS(pathStr, cs);
+        LOG.info("Cache Content Summary for " + pathStr + " length: " + cs.getLength()
+            + " file count: "
+            + cs.getFileCount() + " directory count: " + cs.getDirectoryCount());
+      }
+      if (executor != null) {
+        executor.shutdown();
+      }
+      HiveInterruptUtils.checkInterrupted();
+
+      return new ContentSummary(summary[0], summary[1], summary[2]);
+    } finally {
+      HiveInterruptUtils.remove(interrup);
+    }
+  }
+
+  /**
+   * Compute in the calling thread the summary of a path whose computation shared with another
+   * query has failed or been cancelled. The failed computation is dropped from
+   * inputSummaryTasks so that later queries do not wait for it.
+   *
+   * @return the summary of the path, or null if it cannot be computed
+   */
+  private static ContentSummary getSharedContentSummary(String pathStr,
+      Future<ContentSummary> failed, MapredWork work, ContentSummaryCache csCache,
+      Configuration conf, JobConf jobConf) {
+    inputSummaryTasks.remove(pathStr, failed);
+    Path p = new Path(pathStr);
+    try {
+      ContentSummary cs = getContentSummary(p, work.getPathToPartitionInfo().get(p.toString()),
+          conf, jobConf);
+      if (csCache != null) {
+        csCache.put(pathStr, cs);
       }
+      return cs;
+    } catch (IOException ioe) {
+      LOG.info("Cannot get size of " + pathStr + ". Safely ignored.");
+      return null;
+    }
+  }
+
+  private static ContentSummary getContentSummary(Path p, PartitionDesc partDesc,
+      Configuration conf, JobConf jobConf) throws IOException {
+    Class<? extends InputFormat> inputFormatCls = partDesc
+        .getInputFileFormatClass();
+    InputFormat inputFormatObj = HiveInputFormat.getInputFormatFromCache(
+        inputFormatCls, jobConf);
+    if (inputFormatObj instanceof ContentSummaryInputFormat) {
+      return ((ContentSummaryInputFormat) inputFormatObj).getContentSummary(p, jobConf);
     }
+    FileSystem fs = p.getFileSystem(conf);
+    return fs.getContentSummary(p);
   }
 
   public static boolean isEmptyPath(JobConf job, String dirPath, Context ctx)
@@ -1959,6 +2133,11 @@ public final class Utilities {
     return fileName;
   }
 
+  public static String generateRuntimeFilterPath(String baseURI, String dumpFilePrefix,
+      Byte tag, int keyIndex) {
+    return baseURI + Path.SEPARATOR + "RuntimeFilter-" + dumpFilePrefix + tag + "-" + keyIndex;
+  }
+
   public static String generateTmpURI(String baseURI, String id) {
     String tmpFileURI = new String(baseURI + Path.SEPARATOR + "HashTable-" + id);
     return tmpFileURI;
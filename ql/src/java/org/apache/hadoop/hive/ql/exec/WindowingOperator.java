@@ -0,0 +1,761 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.persistence.RowContainer;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.PlanUtils;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.ql.plan.WindowFunctionDesc;
+import org.apache.hadoop.hive.ql.plan.WindowingDesc;
+import org.apache.hadoop.hive.ql.plan.api.OperatorType;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters.Converter;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Windowing operator implementation. It evaluates window functions over the
+ * rows of a reducer, which are distributed by the partition columns and
+ * sorted by the partition and order columns by the ReduceSinkOperator.
+ *
+ * If every function is a ranking function, lag, or a running aggregation
+ * (from UNBOUNDED PRECEDING to CURRENT ROW), the rows are evaluated as they
+ * arrive. Only the rows of the current peer group are held back, in a
+ * RowContainer, until the running RANGE aggregations over the peer group are
+ * known.
+ *
+ * Otherwise the rows of the partition are buffered in a RowContainer, which
+ * spills to disk after hive.windowing.cache.size rows, and evaluated in two
+ * sequential passes over it when the partition ends: the first finds the peer
+ * groups, the second keeps in memory only the rows of the frames of the
+ * current row. A frame that ends UNBOUNDED FOLLOWING but does not start
+ * UNBOUNDED PRECEDING needs all the remaining rows of the partition, so its
+ * partition is read back into memory.
+ **/
+public class WindowingOperator extends Operator<WindowingDesc> implements
+    Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static enum FunctionType {
+    ROW_NUMBER, RANK, DENSE_RANK, LAG, LEAD, AGGREGATION
+  }
+
+  protected transient StructObjectInspector rowInspector;
+  protected transient int numInputFields;
+
+  protected transient ExprNodeEvaluator[] partitionEvals;
+  protected transient ObjectInspector[] partitionEvalInspectors;
+  protected transient ObjectInspector[] partitionObjectInspectors;
+  protected transient ExprNodeEvaluator[] orderEvals;
+  protected transient ObjectInspector[] orderEvalInspectors;
+  protected transient ObjectInspector[] orderObjectInspectors;
+
+  protected transient FunctionType[] functionTypes;
+  protected transient ExprNodeEvaluator[][] parameterEvals;
+  protected transient GenericUDAFEvaluator[] aggregationEvaluators;
+  protected transient ObjectInspector[] resultObjectInspectors;
+  protected transient ObjectInspector[] standardResultObjectInspectors;
+  // converters of the default values of lag and lead
+  protected transient Converter[] defaultConverters;
+  protected transient AggregationBuffer[] aggregations;
+
+  protected transient Object[] currentPartitionKeys;
+  // whether all the functions are evaluated as the rows arrive
+  protected transient boolean streaming;
+
+  // state of the streaming evaluation
+  // running RANGE aggregations, known when the peer group ends
+  protected transient boolean[] peerFunctions;
+  protected transient boolean hasPeerFunctions;
+  protected transient Object[] currentOrderKeys;
+  protected transient int rowNumber;
+  protected transient int rank;
+  protected transient int denseRank;
+  // values of the lag expressions of the last offset rows
+  protected transient LinkedList<Object>[] lagValues;
+  // output rows of the current peer group
+  protected transient RowContainer<List<Object>> peers;
+
+  // state of the buffered evaluation
+  protected transient RowContainer<List<Object>> partition;
+  // rows [windowStart, windowStart + window.size()) of the partition
+  protected transient ArrayList<List<Object>> window;
+  protected transient int windowStart;
+  protected transient int[] peerStart;
+  protected transient int[] peerEnd;
+  protected transient int[] peerGroup;
+  // next row to add to a running aggregation
+  protected transient int[] nextAggregatedRow;
+  // results of the aggregations over the whole partition or up to its end
+  protected transient Object[][] partitionResults;
+
+  @Override
+  protected void initializeOp(Configuration hconf) throws HiveException {
+    // rows are buffered, so work on standard copies of them
+    rowInspector = (StructObjectInspector) ObjectInspectorUtils
+        .getStandardObjectInspector(inputObjInspectors[0],
+        ObjectInspectorCopyOption.WRITABLE);
+
+    ArrayList<ExprNodeDesc> partitionCols = conf.getPartitionCols();
+    partitionEvals = new ExprNodeEvaluator[partitionCols.size()];
+    partitionEvalInspectors = new ObjectInspector[partitionCols.size()];
+    partitionObjectInspectors = new ObjectInspector[partitionCols.size()];
+    for (int i = 0; i < partitionEvals.length; i++) {
+      partitionEvals[i] = ExprNodeEvaluatorFactory.get(partitionCols.get(i));
+      partitionEvalInspectors[i] = partitionEvals[i].initialize(rowInspector);
+      partitionObjectInspectors[i] = ObjectInspectorUtils
+          .getStandardObjectInspector(partitionEvalInspectors[i],
+          ObjectInspectorCopyOption.WRITABLE);
+    }
+    ArrayList<ExprNodeDesc> orderCols = conf.getOrderCols();
+    orderEvals = new ExprNodeEvaluator[orderCols.size()];
+    orderEvalInspectors = new ObjectInspector[orderCols.size()];
+    orderObjectInspectors = new ObjectInspector[orderCols.size()];
+    for (int i = 0; i < orderEvals.length; i++) {
+      orderEvals[i] = ExprNodeEvaluatorFactory.get(orderCols.get(i));
+      orderEvalInspectors[i] = orderEvals[i].initialize(rowInspector);
+      orderObjectInspectors[i] = ObjectInspectorUtils
+          .getStandardObjectInspector(orderEvalInspectors[i],
+          ObjectInspectorCopyOption.WRITABLE);
+    }
+
+    ArrayList<WindowFunctionDesc> functions = conf.getFunctions();
+    int numFunctions = functions.size();
+    functionTypes = new FunctionType[numFunctions];
+    parameterEvals = new ExprNodeEvaluator[numFunctions][];
+    aggregationEvaluators = new GenericUDAFEvaluator[numFunctions];
+    resultObjectInspectors = new ObjectInspector[numFunctions];
+    standardResultObjectInspectors = new ObjectInspector[numFunctions];
+    defaultConverters = new Converter[numFunctions];
+    aggregations = new AggregationBuffer[numFunctions];
+    for (int i = 0; i < numFunctions; i++) {
+      WindowFunctionDesc function = functions.get(i);
+      ArrayList<ExprNodeDesc> parameters = function.getParameters();
+      parameterEvals[i] = new ExprNodeEvaluator[parameters.size()];
+      ObjectInspector[] parameterObjectInspectors = new ObjectInspector[parameters
+          .size()];
+      for (int j = 0; j < parameters.size(); j++) {
+        parameterEvals[i][j] = ExprNodeEvaluatorFactory.get(parameters.get(j));
+        parameterObjectInspectors[j] = parameterEvals[i][j]
+            .initialize(rowInspector);
+      }
+
+      if (function.getGenericUDAFEvaluator() != null) {
+        functionTypes[i] = FunctionType.AGGREGATION;
+        aggregationEvaluators[i] = function.getGenericUDAFEvaluator();
+        resultObjectInspectors[i] = aggregationEvaluators[i].init(
+            GenericUDAFEvaluator.Mode.COMPLETE, parameterObjectInspectors);
+        aggregations[i] = aggregationEvaluators[i].getNewAggregationBuffer();
+      } else {
+        functionTypes[i] = FunctionType.valueOf(function.getFunctionName()
+            .toUpperCase());
+        if (functionTypes[i] == FunctionType.LAG
+            || functionTypes[i] == FunctionType.LEAD) {
+          resultObjectInspectors[i] = parameterObjectInspectors[0];
+        } else {
+          resultObjectInspectors[i] = PrimitiveObjectInspectorFactory.writableIntObjectInspector;
+        }
+      }
+      standardResultObjectInspectors[i] = ObjectInspectorUtils
+          .getStandardObjectInspector(resultObjectInspectors[i],
+          ObjectInspectorCopyOption.WRITABLE);
+      if (parameters.size() > 1 && functionTypes[i] != FunctionType.AGGREGATION) {
+        defaultConverters[i] = ObjectInspectorConverters.getConverter(
+            parameterObjectInspectors[1], standardResultObjectInspectors[i]);
+      }
+    }
+
+    // output the input fields followed by the functions
+    List<? extends StructField> fields = rowInspector.getAllStructFieldRefs();
+    numInputFields = fields.size();
+    ArrayList<ObjectInspector> outputFieldInspectors = new ArrayList<ObjectInspector>();
+    for (StructField field : fields) {
+      outputFieldInspectors.add(field.getFieldObjectInspector());
+    }
+    for (ObjectInspector oi : standardResultObjectInspectors) {
+      outputFieldInspectors.add(oi);
+    }
+    outputObjInspector = ObjectInspectorFactory
+        .getStandardStructObjectInspector(conf.getOutputColumnNames(),
+        outputFieldInspectors);
+
+    streaming = true;
+    hasPeerFunctions = false;
+    peerFunctions = new boolean[numFunctions];
+    lagValues = new LinkedList[numFunctions];
+    for (int i = 0; i < numFunctions; i++) {
+      WindowFunctionDesc function = functions.get(i);
+      switch (functionTypes[i]) {
+      case LAG:
+        lagValues[i] = new LinkedList<Object>();
+        break;
+      case LEAD:
+        streaming = false;
+        break;
+      case AGGREGATION:
+        if (function.getFrameStart() != WindowFunctionDesc.UNBOUNDED_PRECEDING
+            || function.getFrameEnd() != 0) {
+          streaming = false;
+        } else if (function.getRangeFrame()) {
+          peerFunctions[i] = true;
+          hasPeerFunctions = true;
+        }
+        break;
+      default:
+        break;
+      }
+    }
+
+    int cacheSize = HiveConf.getIntVar(hconf,
+        HiveConf.ConfVars.HIVEWINDOWINGCACHESIZE);
+    if (streaming) {
+      if (hasPeerFunctions) {
+        peers = newRowContainer((StructObjectInspector) outputObjInspector,
+            cacheSize, hconf);
+      }
+      startStreamingPartition();
+    } else {
+      partition = newRowContainer(rowInspector, cacheSize, hconf);
+      window = new ArrayList<List<Object>>();
+      nextAggregatedRow = new int[numFunctions];
+      partitionResults = new Object[numFunctions][];
+    }
+    currentPartitionKeys = null;
+    initializeChildren(hconf);
+  }
+
+  /**
+   * Create a RowContainer of the rows of the given standard object inspector,
+   * which spills its rows as LazyBinary sequence files.
+   */
+  private static RowContainer<List<Object>> newRowContainer(
+      StructObjectInspector oi, int cacheSize, Configuration hconf)
+      throws HiveException {
+    List<FieldSchema> fieldSchemas = new ArrayList<FieldSchema>();
+    for (StructField field : oi.getAllStructFieldRefs()) {
+      fieldSchemas.add(MetaStoreUtils.getFieldSchemaFromTypeInfo(field
+          .getFieldName(), TypeInfoUtils.getTypeInfoFromObjectInspector(field
+          .getFieldObjectInspector())));
+    }
+    TableDesc tblDesc = PlanUtils.getIntermediateFileTableDesc(fieldSchemas);
+    SerDe serde = (SerDe) ReflectionUtils.newInstance(tblDesc
+        .getDeserializerClass(), null);
+    try {
+      serde.initialize(null, tblDesc.getProperties());
+    } catch (SerDeException e) {
+      throw new HiveException(e);
+    }
+    RowContainer<List<Object>> rc = new RowContainer<List<Object>>(cacheSize,
+        hconf);
+    rc.setSerDe(serde, oi);
+    rc.setTableDesc(tblDesc);
+    return rc;
+  }
+
+  @Override
+  public void processOp(Object row, int tag) throws HiveException {
+    List<Object> copy = (List<Object>) ObjectInspectorUtils
+        .copyToStandardObject(row, inputObjInspectors[tag],
+        ObjectInspectorCopyOption.WRITABLE);
+    Object[] keys = evaluate(partitionEvals, partitionEvalInspectors, copy);
+    if (currentPartitionKeys != null
+        && ObjectInspectorUtils.compare(keys, partitionObjectInspectors,
+        currentPartitionKeys, partitionObjectInspectors) != 0) {
+      processPartition();
+    }
+    currentPartitionKeys = keys;
+    if (streaming) {
+      processStreamingRow(copy);
+    } else {
+      partition.add(copy);
+    }
+  }
+
+  @Override
+  public void closeOp(boolean abort) throws HiveException {
+    if (!abort && currentPartitionKeys != null) {
+      processPartition();
+    }
+    if (peers != null) {
+      peers.clear();
+    }
+    if (partition != null) {
+      partition.clear();
+    }
+    window = null;
+  }
+
+  private Object[] evaluate(ExprNodeEvaluator[] evals,
+      ObjectInspector[] evalInspectors, Object row) throws HiveException {
+    Object[] values = new Object[evals.length];
+    for (int i = 0; i < evals.length; i++) {
+      values[i] = ObjectInspectorUtils.copyToStandardObject(evals[i]
+          .evaluate(row), evalInspectors[i], ObjectInspectorCopyOption.WRITABLE);
+    }
+    return values;
+  }
+
+  /**
+   * Evaluate the functions over the partition that has ended and forward its
+   * remaining rows.
+   */
+  private void processPartition() throws HiveException {
+    if (streaming) {
+      forwardPeers();
+      startStreamingPartition();
+    } else {
+      processBufferedPartition();
+    }
+  }
+
+  private ArrayList<Object> newOutputRow(List<Object> row) {
+    ArrayList<Object> output = new ArrayList<Object>(numInputFields
+        + functionTypes.length);
+    for (int j = 0; j < numInputFields; j++) {
+      output.add(row.get(j));
+    }
+    return output;
+  }
+
+  private void startStreamingPartition() throws HiveException {
+    currentOrderKeys = null;
+    rowNumber = 0;
+    rank = 0;
+    denseRank = 0;
+    for (int f = 0; f < functionTypes.length; f++) {
+      if (aggregations[f] != null) {
+        aggregationEvaluators[f].reset(aggregations[f]);
+      }
+      if (lagValues[f] != null) {
+        lagValues[f].clear();
+      }
+    }
+  }
+
+  /**
+   * Evaluate the functions for a row of the current partition as it arrives.
+   * The row is forwarded at once, or when its peer group ends if there is a
+   * running RANGE aggregation.
+   */
+  private void processStreamingRow(List<Object> row) throws HiveException {
+    Object[] orderKeys = evaluate(orderEvals, orderEvalInspectors, row);
+    rowNumber++;
+    if (currentOrderKeys == null
+        || ObjectInspectorUtils.compare(orderKeys, orderObjectInspectors,
+        currentOrderKeys, orderObjectInspectors) != 0) {
+      forwardPeers();
+      rank = rowNumber;
+      denseRank++;
+      currentOrderKeys = orderKeys;
+    }
+
+    ArrayList<Object> output = newOutputRow(row);
+    for (int f = 0; f < functionTypes.length; f++) {
+      switch (functionTypes[f]) {
+      case ROW_NUMBER:
+        output.add(new IntWritable(rowNumber));
+        break;
+      case RANK:
+        output.add(new IntWritable(rank));
+        break;
+      case DENSE_RANK:
+        output.add(new IntWritable(denseRank));
+        break;
+      case LAG:
+        output.add(evaluateLag(f, row));
+        break;
+      default:
+        aggregate(f, aggregations[f], row);
+        output.add(peerFunctions[f] ? null : terminate(f, aggregations[f]));
+        break;
+      }
+    }
+    if (hasPeerFunctions) {
+      peers.add(output);
+    } else {
+      forward(output, outputObjInspector);
+    }
+  }
+
+  private Object evaluateLag(int f, List<Object> row) throws HiveException {
+    int offset = conf.getFunctions().get(f).getOffset();
+    Object value = ObjectInspectorUtils.copyToStandardObject(
+        parameterEvals[f][0].evaluate(row), resultObjectInspectors[f],
+        ObjectInspectorCopyOption.WRITABLE);
+    if (offset == 0) {
+      return value;
+    }
+    LinkedList<Object> values = lagValues[f];
+    Object result = values.size() == offset ? values.removeFirst()
+        : getDefaultValue(f, row);
+    values.addLast(value);
+    return result;
+  }
+
+  /**
+   * Forward the rows of the current peer group with the values of the
+   * running RANGE aggregations.
+   */
+  private void forwardPeers() throws HiveException {
+    if (!hasPeerFunctions || peers.size() == 0) {
+      return;
+    }
+    Object[] results = new Object[functionTypes.length];
+    for (int f = 0; f < functionTypes.length; f++) {
+      if (peerFunctions[f]) {
+        results[f] = terminate(f, aggregations[f]);
+      }
+    }
+    for (List<Object> output = peers.first(); output != null; output = peers
+        .next()) {
+      for (int f = 0; f < functionTypes.length; f++) {
+        if (peerFunctions[f]) {
+          output.set(numInputFields + f, results[f]);
+        }
+      }
+      forward(output, outputObjInspector);
+    }
+    peers.clear();
+  }
+
+  /**
+   * Evaluate all the functions over the buffered partition and forward its
+   * rows.
+   */
+  private void processBufferedPartition() throws HiveException {
+    int size = partition.size();
+    if (size == 0) {
+      return;
+    }
+
+    // first pass: peers are the rows with the same order keys,
+    // [peerStart, peerEnd]
+    peerStart = new int[size];
+    peerEnd = new int[size];
+    peerGroup = new int[size];
+    boolean hasPartitionAggregation = false;
+    for (int f = 0; f < functionTypes.length; f++) {
+      partitionResults[f] = null;
+      if (isPartitionAggregation(f)) {
+        aggregationEvaluators[f].reset(aggregations[f]);
+        hasPartitionAggregation = true;
+      }
+    }
+    Object[] lastKeys = null;
+    int group = -1;
+    int i = 0;
+    for (List<Object> row = partition.first(); row != null; row = partition
+        .next(), i++) {
+      Object[] keys = evaluate(orderEvals, orderEvalInspectors, row);
+      if (lastKeys == null
+          || ObjectInspectorUtils.compare(keys, orderObjectInspectors, lastKeys,
+          orderObjectInspectors) != 0) {
+        group++;
+        peerStart[i] = i;
+      } else {
+        peerStart[i] = peerStart[i - 1];
+      }
+      peerGroup[i] = group;
+      lastKeys = keys;
+      if (hasPartitionAggregation) {
+        for (int f = 0; f < functionTypes.length; f++) {
+          if (isPartitionAggregation(f)) {
+            aggregate(f, aggregations[f], row);
+          }
+        }
+      }
+    }
+    for (i = size - 1; i >= 0; i--) {
+      peerEnd[i] = (i == size - 1 || peerGroup[i + 1] != peerGroup[i]) ? i
+          : peerEnd[i + 1];
+    }
+    for (int f = 0; f < functionTypes.length; f++) {
+      if (isPartitionAggregation(f)) {
+        partitionResults[f] = new Object[] {terminate(f, aggregations[f])};
+      } else if (functionTypes[f] == FunctionType.AGGREGATION) {
+        aggregationEvaluators[f].reset(aggregations[f]);
+        nextAggregatedRow[f] = 0;
+      }
+    }
+
+    // second pass: hold in memory only the rows needed by the current row
+    window.clear();
+    windowStart = 0;
+    for (i = 0; i < size; i++) {
+      int last = i;
+      for (int f = 0; f < functionTypes.length; f++) {
+        last = Math.max(last, getLastNeededRow(f, i, size));
+      }
+      while (windowStart + window.size() <= last) {
+        window.add(window.isEmpty() && windowStart == 0 ? partition.first()
+            : partition.next());
+      }
+
+      List<Object> row = getRow(i);
+      ArrayList<Object> output = newOutputRow(row);
+      for (int f = 0; f < functionTypes.length; f++) {
+        output.add(evaluateBuffered(f, i, size, row));
+      }
+      forward(output, outputObjInspector);
+
+      if (i + 1 < size) {
+        int first = i + 1;
+        for (int f = 0; f < functionTypes.length; f++) {
+          first = Math.min(first, getFirstNeededRow(f, i + 1, size));
+        }
+        releaseRows(first);
+      }
+    }
+    window.clear();
+    partition.clear();
+    peerStart = null;
+    peerEnd = null;
+    peerGroup = null;
+  }
+
+  /**
+   * @return whether the function is an aggregation over the whole partition
+   */
+  private boolean isPartitionAggregation(int f) {
+    WindowFunctionDesc function = conf.getFunctions().get(f);
+    return functionTypes[f] == FunctionType.AGGREGATION
+        && function.getFrameStart() == WindowFunctionDesc.UNBOUNDED_PRECEDING
+        && function.getFrameEnd() == WindowFunctionDesc.UNBOUNDED_FOLLOWING;
+  }
+
+  /**
+   * @return whether the function is an aggregation from inside the partition
+   *         to its end
+   */
+  private boolean isSuffixAggregation(int f) {
+    WindowFunctionDesc function = conf.getFunctions().get(f);
+    return functionTypes[f] == FunctionType.AGGREGATION
+        && function.getFrameStart() != WindowFunctionDesc.UNBOUNDED_PRECEDING
+        && function.getFrameEnd() == WindowFunctionDesc.UNBOUNDED_FOLLOWING;
+  }
+
+  private int getLastNeededRow(int f, int row, int size) {
+    WindowFunctionDesc function = conf.getFunctions().get(f);
+    switch (functionTypes[f]) {
+    case LEAD:
+      return (int) Math.min(size - 1, (long) row + function.getOffset());
+    case AGGREGATION:
+      if (isPartitionAggregation(f)) {
+        return row;
+      } else if (isSuffixAggregation(f)) {
+        return size - 1;
+      }
+      return Math.max(row, getFrameEnd(f, row, size));
+    default:
+      return row;
+    }
+  }
+
+  private int getFirstNeededRow(int f, int row, int size) {
+    WindowFunctionDesc function = conf.getFunctions().get(f);
+    switch (functionTypes[f]) {
+    case LAG:
+      return (int) Math.max(0, (long) row - function.getOffset());
+    case AGGREGATION:
+      if (isPartitionAggregation(f) || isSuffixAggregation(f)) {
+        return row;
+      } else if (function.getFrameStart() == WindowFunctionDesc.UNBOUNDED_PRECEDING) {
+        return Math.min(row, nextAggregatedRow[f]);
+      }
+      return Math.min(row, getFrameStart(f, row, size));
+    default:
+      return row;
+    }
+  }
+
+  private List<Object> getRow(int row) {
+    return window.get(row - windowStart);
+  }
+
+  /**
+   * Release the rows of the window before the given row. The window is only
+   * compacted once half of it is released, so that a window holding the rest
+   * of the partition is not shifted for every row.
+   */
+  private void releaseRows(int first) {
+    int count = first - windowStart;
+    if (count > 0 && count >= window.size() / 2) {
+      window.subList(0, count).clear();
+      windowStart = first;
+    }
+  }
+
+  private Object evaluateBuffered(int f, int i, int size, List<Object> row)
+      throws HiveException {
+    switch (functionTypes[f]) {
+    case ROW_NUMBER:
+      return new IntWritable(i + 1);
+    case RANK:
+      return new IntWritable(peerStart[i] + 1);
+    case DENSE_RANK:
+      return new IntWritable(peerGroup[i] + 1);
+    case LAG:
+    case LEAD:
+      int offset = conf.getFunctions().get(f).getOffset();
+      int j = functionTypes[f] == FunctionType.LAG ? i - offset : i + offset;
+      if (j >= 0 && j < size) {
+        return ObjectInspectorUtils.copyToStandardObject(parameterEvals[f][0]
+            .evaluate(getRow(j)), resultObjectInspectors[f],
+            ObjectInspectorCopyOption.WRITABLE);
+      }
+      return getDefaultValue(f, row);
+    default:
+      return evaluateAggregation(f, i, size);
+    }
+  }
+
+  private Object getDefaultValue(int f, List<Object> row) throws HiveException {
+    if (defaultConverters[f] == null) {
+      return null;
+    }
+    return ObjectInspectorUtils.copyToStandardObject(defaultConverters[f]
+        .convert(parameterEvals[f][1].evaluate(row)),
+        standardResultObjectInspectors[f], ObjectInspectorCopyOption.WRITABLE);
+  }
+
+  private Object evaluateAggregation(int f, int i, int size)
+      throws HiveException {
+    WindowFunctionDesc function = conf.getFunctions().get(f);
+    GenericUDAFEvaluator evaluator = aggregationEvaluators[f];
+    AggregationBuffer agg = aggregations[f];
+    if (isPartitionAggregation(f)) {
+      return partitionResults[f][0];
+    } else if (isSuffixAggregation(f)) {
+      if (partitionResults[f] == null) {
+        // the window holds the rest of the partition, the frames only grow
+        // backward
+        partitionResults[f] = new Object[size];
+        int next = size - 1;
+        for (int r = size - 1; r >= i; r--) {
+          for (int start = Math.max(i, getFrameStart(f, r, size)); next >= start; next--) {
+            aggregate(f, agg, getRow(next));
+          }
+          partitionResults[f][r] = terminate(f, agg);
+        }
+      }
+      return partitionResults[f][i];
+    } else if (function.getFrameStart() == WindowFunctionDesc.UNBOUNDED_PRECEDING) {
+      // the frames only grow forward
+      int end = getFrameEnd(f, i, size);
+      for (; nextAggregatedRow[f] <= end; nextAggregatedRow[f]++) {
+        aggregate(f, agg, getRow(nextAggregatedRow[f]));
+      }
+      return terminate(f, agg);
+    } else {
+      evaluator.reset(agg);
+      int end = getFrameEnd(f, i, size);
+      for (int j = getFrameStart(f, i, size); j <= end; j++) {
+        aggregate(f, agg, getRow(j));
+      }
+      return terminate(f, agg);
+    }
+  }
+
+  private int getFrameStart(int f, int row, int size) {
+    WindowFunctionDesc function = conf.getFunctions().get(f);
+    return Math.max(0, getFrameBound(function.getFrameStart(), function
+        .getRangeFrame() ? peerStart[row] : row, row, size));
+  }
+
+  private int getFrameEnd(int f, int row, int size) {
+    WindowFunctionDesc function = conf.getFunctions().get(f);
+    return Math.min(size - 1, getFrameBound(function.getFrameEnd(), function
+        .getRangeFrame() ? peerEnd[row] : row, row, size));
+  }
+
+  /**
+   * @param bound
+   *          bound of the frame
+   * @param current
+   *          the first or the last peer in a RANGE frame, the row itself in a
+   *          ROWS frame
+   * @param row
+   *          the current row
+   * @return the position of the bound, which may be out of the partition
+   */
+  private static int getFrameBound(int bound, int current, int row, int size) {
+    if (bound == WindowFunctionDesc.UNBOUNDED_PRECEDING) {
+      return 0;
+    } else if (bound == WindowFunctionDesc.UNBOUNDED_FOLLOWING) {
+      return size - 1;
+    } else if (bound == 0) {
+      return current;
+    }
+    long pos = (long) row + bound;
+    return (int) Math.max(-1, Math.min(size, pos));
+  }
+
+  private void aggregate(int f, AggregationBuffer agg, List<Object> row)
+      throws HiveException {
+    ExprNodeEvaluator[] evals = parameterEvals[f];
+    Object[] parameters = new Object[evals.length];
+    for (int i = 0; i < evals.length; i++) {
+      parameters[i] = evals[i].evaluate(row);
+    }
+    aggregationEvaluators[f].aggregate(agg, parameters);
+  }
+
+  private Object terminate(int f, AggregationBuffer agg) throws HiveException {
+    // the evaluator may reuse its result object
+    return ObjectInspectorUtils.copyToStandardObject(aggregationEvaluators[f]
+        .evaluate(agg), resultObjectInspectors[f],
+        ObjectInspectorCopyOption.WRITABLE);
+  }
+
+  /**
+   * @return the name of the operator
+   */
+  @Override
+  public String getName() {
+    return "WIN";
+  }
+
+  @Override
+  public OperatorType getType() {
+    return OperatorType.WINDOWING;
+  }
+}
@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.hive.ql.exec.persistence;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -28,14 +32,19 @@ import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.MemoryManager;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
+import org.apache.hadoop.io.IOUtils;
 
 
 /**
@@ -43,6 +52,10 @@ import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
  * main memory hash table acts as a cache and all put/get will operate on it first. If the size of
  * the main memory hash table exceeds a certain threshold, new elements will go into the persistent
  * hash table.
+ *
+ * For a hybrid hash join, the keys are hash-partitioned. When the memory runs out, a whole
+ * partition is spilled to a local file, together with all the entries put into it later, and
+ * joined in a second pass by the mapper.
  */
 
 public class HashMapWrapper<K, V> implements Serializable {
@@ -55,12 +68,29 @@ public class HashMapWrapper<K, V> implements Serializable {
   private static final int THRESHOLD = 1000000;
   private static final float LOADFACTOR = 0.75f;
   private static final float MEMORYUSAGE = 1;
+  // reset the spill streams every so many entries, so that they do not keep them all referenced
+  private static final int SPILL_RESET_INTERVAL = 1024;
+  private static final String PARTITIONS_SUFFIX = ".partitions";
 
   private float maxMemoryUsage;
   private HashMap<K, V> mHash; // main memory HashMap
   protected transient LogHelper console;
 
   private File dumpFile;
+  // the loaded persistent hash table in the compact format, which replaces mHash
+  private transient MapJoinBytesTable bytesTable;
+  // the hash partitions of the hybrid hash join, and the ones spilled to local files
+  private transient int numPartitions;
+  private transient boolean[] spilled;
+  private transient File[] spillFiles;
+  private transient ObjectOutputStream[] spillStreams;
+  private transient int[] spillCounts;
+  private transient long[] partitionMemory;
+  // the persistent hash table file, and the spilled partition loaded from it
+  private transient String persistentFileName;
+  private transient int loadedPartition = -1;
+  private transient HashMap<K, V> partitionHash;
+  private transient long partitionHashMemory;
   public static MemoryMXBean memoryMXBean;
   private long maxMemory;
   private long currentMemory;
@@ -90,16 +120,298 @@ public class HashMapWrapper<K, V> implements Serializable {
     this(THRESHOLD, LOADFACTOR, MEMORYUSAGE);
   }
 
-  public V get(K key) {
+  @SuppressWarnings("unchecked")
+  public V get(K key) throws HiveException {
+    if (spilled != null) {
+      int partition = getSpilledPartition(key);
+      if (partition >= 0) {
+        return partition == loadedPartition ? partitionHash.get(key) : null;
+      }
+    }
+    if (bytesTable != null) {
+      return (V) bytesTable.get((AbstractMapJoinKey) key);
+    }
     return mHash.get(key);
   }
 
   public boolean put(K key, V value) throws HiveException {
     // isAbort();
+    if (spilled != null) {
+      int partition = getSpilledPartition(key);
+      if (partition >= 0) {
+        try {
+          writeSpilled(partition, key, value);
+        } catch (IOException e) {
+          throw new HiveException(e);
+        }
+        return true;
+      }
+    }
     mHash.put(key, value);
     return false;
   }
 
+  /**
+   * Partition the keys for a hybrid hash join.
+   *
+   * @param numPartitions
+   *          the number of hash partitions, or 0 to never spill
+   */
+  public void setNumPartitions(int numPartitions) {
+    this.numPartitions = numPartitions;
+    spilled = numPartitions > 0 ? new boolean[numPartitions] : null;
+    partitionMemory = numPartitions > 0 ? new long[numPartitions] : null;
+  }
+
+  public int getNumPartitions() {
+    return numPartitions;
+  }
+
+  /**
+   * Get the hash partition of a key. The hash code of the key is scrambled, so that the
+   * partitions do not follow the buckets of the hash tables.
+   */
+  public static int getPartition(Object key, int numPartitions) {
+    int h = key.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return (h & Integer.MAX_VALUE) % numPartitions;
+  }
+
+  /**
+   * @return the partition of the key if it is spilled, or -1 if the key is in memory
+   */
+  public int getSpilledPartition(Object key) {
+    if (spilled == null) {
+      return -1;
+    }
+    int partition = getPartition(key, numPartitions);
+    return spilled[partition] ? partition : -1;
+  }
+
+  /**
+   * Spill the largest partition still in memory to a local file. The entries put into that
+   * partition afterwards go to the file as well.
+   *
+   * @return false if there is no partition left to spill
+   */
+  public boolean spillPartition() throws HiveException {
+    if (spilled == null || mHash.isEmpty()) {
+      return false;
+    }
+    int[] counts = new int[numPartitions];
+    for (K key : mHash.keySet()) {
+      counts[getPartition(key, numPartitions)]++;
+    }
+    int partition = -1;
+    for (int i = 0; i < numPartitions; i++) {
+      if (!spilled[i] && counts[i] > 0 && (partition < 0 || counts[i] > counts[partition])) {
+        partition = i;
+      }
+    }
+    if (partition < 0) {
+      return false;
+    }
+
+    spilled[partition] = true;
+    try {
+      Iterator<Map.Entry<K, V>> iter = mHash.entrySet().iterator();
+      while (iter.hasNext()) {
+        Map.Entry<K, V> entry = iter.next();
+        if (getPartition(entry.getKey(), numPartitions) == partition) {
+          writeSpilled(partition, entry.getKey(), entry.getValue());
+          iter.remove();
+        }
+      }
+    } catch (IOException e) {
+      throw new HiveException(e);
+    }
+    LOG.info("Spilled partition " + partition + " with " + counts[partition] + " keys and "
+        + partitionMemory[partition] + " bytes to " + spillFiles[partition]);
+    setMemoryUsage(currentMemory - partitionMemory[partition]);
+    partitionMemory[partition] = 0;
+    return true;
+  }
+
+  /**
+   * Account for the memory of the entries added for a key in the task-wide MemoryManager, unless
+   * the key is spilled.
+   *
+   * @param bytes
+   *          the estimated size of the entries
+   */
+  public void addMemoryUsage(Object key, long bytes) {
+    if (spilled != null) {
+      int partition = getPartition(key, numPartitions);
+      if (spilled[partition]) {
+        return;
+      }
+      partitionMemory[partition] += bytes;
+    }
+    setMemoryUsage(currentMemory + bytes);
+  }
+
+  /**
+   * Set the memory of the hash table, and reserve or release the difference in the task-wide
+   * MemoryManager.
+   */
+  protected void setMemoryUsage(long bytes) {
+    if (bytes != currentMemory) {
+      MemoryManager.getInstance().reserve(bytes - currentMemory);
+      currentMemory = bytes;
+    }
+  }
+
+  private static long estimateMemoryUsage(Map<?, ?> hashtable) {
+    long bytes = 0;
+    for (Map.Entry<?, ?> entry : hashtable.entrySet()) {
+      bytes += MemoryManager.HASH_ENTRY_OVERHEAD + MemoryManager.estimateSize(entry.getKey())
+          + MemoryManager.estimateSize(entry.getValue());
+    }
+    return bytes;
+  }
+
+  private void writeSpilled(int partition, K key, V value) throws IOException {
+    if (spillStreams == null) {
+      spillFiles = new File[numPartitions];
+      spillStreams = new ObjectOutputStream[numPartitions];
+      spillCounts = new int[numPartitions];
+    }
+    ObjectOutputStream out = spillStreams[partition];
+    if (out == null) {
+      spillFiles[partition] = File.createTempFile("hashtable-partition-" + partition, ".spill");
+      spillFiles[partition].deleteOnExit();
+      out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(
+          spillFiles[partition])));
+      spillStreams[partition] = out;
+    }
+    out.writeObject(key);
+    out.writeObject(value);
+    if (++spillCounts[partition] % SPILL_RESET_INTERVAL == 0) {
+      out.reset();
+    }
+  }
+
+  /**
+   * Move the spilled partitions next to the persistent cache file, and list them in a
+   * partitions file.
+   */
+  private void flushSpilledPartitions(File file) throws IOException {
+    if (spillStreams == null) {
+      return;
+    }
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file.getPath()
+        + PARTITIONS_SUFFIX));
+    try {
+      out.writeInt(numPartitions);
+      for (int partition = 0; partition < numPartitions; partition++) {
+        out.writeBoolean(spilled[partition]);
+        if (!spilled[partition]) {
+          continue;
+        }
+        // a null key ends the partition
+        spillStreams[partition].writeObject(null);
+        spillStreams[partition].close();
+        spillStreams[partition] = null;
+        File target = getPartitionFile(file.getPath(), partition);
+        if (!spillFiles[partition].renameTo(target)) {
+          IOUtils.copyBytes(new FileInputStream(spillFiles[partition]),
+              new FileOutputStream(target), 4096, true);
+          spillFiles[partition].delete();
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static File getPartitionFile(String fileName, int partition) {
+    return new File(fileName + ".p" + partition);
+  }
+
+  private void loadPartitions(String fileName) throws IOException {
+    persistentFileName = fileName;
+    loadedPartition = -1;
+    partitionHash = null;
+    partitionHashMemory = 0;
+    setNumPartitions(0);
+    File file = new File(fileName + PARTITIONS_SUFFIX);
+    if (!file.exists()) {
+      return;
+    }
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      setNumPartitions(in.readInt());
+      for (int partition = 0; partition < numPartitions; partition++) {
+        spilled[partition] = in.readBoolean();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Load a spilled partition of the persistent hash table, in place of the one loaded before,
+   * for the second pass of a hybrid hash join. The entries of a key spilled more than once are
+   * merged.
+   *
+   * @param partition
+   *          the spilled partition, or -1 to just release the one loaded before
+   */
+  @SuppressWarnings("unchecked")
+  public void loadSpilledPartition(int partition) throws HiveException {
+    loadedPartition = -1;
+    partitionHash = null;
+    setMemoryUsage(currentMemory - partitionHashMemory);
+    partitionHashMemory = 0;
+    if (partition < 0 || spilled == null || !spilled[partition]) {
+      return;
+    }
+    HashMap<K, V> hashtable = new HashMap<K, V>();
+    try {
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(
+          getPartitionFile(persistentFileName, partition))));
+      try {
+        for (Object key = in.readObject(); key != null; key = in.readObject()) {
+          MapJoinObjectValue value = (MapJoinObjectValue) in.readObject();
+          MapJoinObjectValue old = (MapJoinObjectValue) hashtable.get(key);
+          if (old == null) {
+            hashtable.put((K) key, (V) value);
+          } else {
+            old.getObj().getList().addAll(value.getObj().getList());
+          }
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new HiveException(e);
+    } catch (ClassNotFoundException e) {
+      throw new HiveException(e);
+    }
+    LOG.info("Loaded spilled partition " + partition + " with " + hashtable.size() + " keys");
+    partitionHash = hashtable;
+    loadedPartition = partition;
+    partitionHashMemory = estimateMemoryUsage(hashtable);
+    setMemoryUsage(currentMemory + partitionHashMemory);
+  }
+
+  private void closeSpillFiles() {
+    if (spillStreams != null) {
+      for (int partition = 0; partition < spillStreams.length; partition++) {
+        if (spillStreams[partition] != null) {
+          IOUtils.closeStream(spillStreams[partition]);
+          spillFiles[partition].delete();
+        }
+      }
+      spillStreams = null;
+      spillFiles = null;
+    }
+    loadedPartition = -1;
+    partitionHash = null;
+    partitionHashMemory = 0;
+  }
+
 
   public void remove(K key) {
     mHash.remove(key);
@@ -120,16 +432,48 @@ public class HashMapWrapper<K, V> implements Serializable {
     return file.length();
   }
 
+  /**
+   * Flush the main memory hash table into the persistent cache file, in the compact format of
+   * MapJoinBytesTable if compact is set. Only a map join hash table can use the compact format.
+   *
+   * @return persistent cache file
+   */
+  @SuppressWarnings("unchecked")
+  public long flushMemoryCacheToPersistent(File file, boolean compact) throws IOException {
+    long length;
+    if (compact) {
+      length = MapJoinBytesTable.write((Map<AbstractMapJoinKey, MapJoinObjectValue>) mHash, file);
+    } else {
+      length = flushMemoryCacheToPersistent(file);
+    }
+    flushSpilledPartitions(file);
+    return length;
+  }
+
   public void initilizePersistentHash(String fileName) throws IOException, ClassNotFoundException {
+    File file = new File(fileName);
+    loadPartitions(fileName);
+    if (MapJoinBytesTable.isCompact(file)) {
+      mHash.clear();
+      bytesTable = MapJoinBytesTable.load(file);
+      // memory mapped, out of the heap
+      setMemoryUsage(0);
+      return;
+    }
+    bytesTable = null;
     ObjectInputStream inputStream = null;
     inputStream = new ObjectInputStream(new FileInputStream(fileName));
     HashMap<K, V> hashtable = (HashMap<K, V>) inputStream.readObject();
     this.setMHash(hashtable);
 
     inputStream.close();
+    setMemoryUsage(estimateMemoryUsage(hashtable));
   }
 
   public int size() {
+    if (bytesTable != null) {
+      return bytesTable.size();
+    }
     return mHash.size();
   }
 
@@ -145,21 +489,36 @@ public class HashMapWrapper<K, V> implements Serializable {
    */
   public void close() throws HiveException {
     mHash.clear();
+    bytesTable = null;
+    closeSpillFiles();
+    releaseMemory();
   }
 
   public void clear() throws HiveException {
     mHash.clear();
+    bytesTable = null;
+    closeSpillFiles();
+    releaseMemory();
+  }
+
+  private void releaseMemory() {
+    setMemoryUsage(0);
+    if (partitionMemory != null) {
+      Arrays.fill(partitionMemory, 0);
+    }
   }
 
   public int getKeySize() {
     return mHash.size();
   }
 
+  /**
+   * Whether the memory reserved by the task, the hash tables included, is more than the
+   * maximum memory usage.
+   */
   public boolean isAbort(long numRows,LogHelper console) {
-    System.gc();
-    System.gc();
-    int size = mHash.size();
-    long usedMemory = memoryMXBean.getHeapMemoryUsage().getUsed();
+    int size = size();
+    long usedMemory = MemoryManager.getInstance().getUsedMemory();
     double rate = (double) usedMemory / (double) maxMemory;
     console.printInfo(Utilities.now() + "\tProcessing rows:\t" + numRows + "\tHashtable size:\t"
         + size + "\tMemory usage:\t" + usedMemory + "\trate:\t" + num.format(rate));
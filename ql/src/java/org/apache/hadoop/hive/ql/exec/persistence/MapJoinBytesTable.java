@@ -0,0 +1,415 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectCtx;
+import org.apache.hadoop.hive.ql.exec.MapJoinMetaData;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Read-only map join hash table in a compact file format, selected by
+ * hive.mapjoin.hashtable.compact.
+ *
+ * Keys and rows are kept as the bytes written by the key and value SerDes of the map join, in
+ * one contiguous region of the file, indexed by an open addressing table. A single integral key
+ * is kept as a long instead, and probed without serializing it. The file is memory mapped when
+ * loaded, so it takes neither deserialization time nor heap; the rows of a key are deserialized
+ * only when a probe matches it.
+ *
+ * File layout, all integers big-endian:
+ * <pre>
+ *   header: magic, version, metadata tag of the values, number of keys, capacity, data length,
+ *           1 if the keys are longs or 0, offset of the null long key or -1
+ *   data:   for each key: key length and key bytes, or the long key, number of rows,
+ *           and for each row: row length, row bytes (a row without columns has length 0)
+ *   index:  int[capacity] offset of the key in the data or -1,
+ *           int[capacity] hash code of the key
+ * </pre>
+ */
+public class MapJoinBytesTable {
+
+  /** "HMJT" */
+  public static final int MAGIC = 0x484d4a54;
+  public static final int VERSION = 2;
+  private static final int HEADER_SIZE = 32;
+
+  private final int metadataTag;
+  private final int size;
+  private final int mask;
+  private final boolean longKeys;
+  private final int nullOffset;
+  private final ByteBuffer data;
+  private final IntBuffer offsets;
+  private final IntBuffer hashes;
+
+  private final DataOutputBuffer keyBuffer = new DataOutputBuffer();
+  private final DataInputBuffer rowBuffer = new DataInputBuffer();
+  private byte[] rowBytes = new byte[1024];
+  private Writable rowWritable;
+
+  // consecutive rows of the big table often have the same key
+  private int lastOffset = -1;
+  private MapJoinObjectValue lastValue;
+
+  private MapJoinBytesTable(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a compact map join hash table");
+    }
+    int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported map join hash table version " + version);
+    }
+    metadataTag = buffer.getInt(8);
+    size = buffer.getInt(12);
+    int capacity = buffer.getInt(16);
+    int dataLength = buffer.getInt(20);
+    longKeys = buffer.getInt(24) != 0;
+    nullOffset = buffer.getInt(28);
+    mask = capacity - 1;
+
+    buffer.position(HEADER_SIZE);
+    buffer.limit(HEADER_SIZE + dataLength);
+    data = buffer.slice();
+    buffer.limit(buffer.capacity());
+    buffer.position(HEADER_SIZE + dataLength);
+    offsets = buffer.slice().asIntBuffer();
+    buffer.position(HEADER_SIZE + dataLength + 4 * capacity);
+    hashes = buffer.slice().asIntBuffer();
+  }
+
+  /**
+   * Check whether a file holds a compact hash table.
+   */
+  public static boolean isCompact(File file) throws IOException {
+    if (file.length() < HEADER_SIZE) {
+      return false;
+    }
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      return in.readInt() == MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Memory map a compact hash table file.
+   */
+  public static MapJoinBytesTable load(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      // the mapping stays valid after the channel is closed
+      return new MapJoinBytesTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Hash code of a long key, spread over the low bits used by the index.
+   */
+  static int hashLong(long key) {
+    int h = (int) (key ^ (key >>> 32));
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    return h ^ (h >>> 13);
+  }
+
+  /**
+   * Writer of a compact hash table file. Every key is added with the number of its rows, and
+   * then its rows one by one.
+   */
+  public static class Writer {
+    private final FileOutputStream fos;
+    private final DataOutputStream out;
+    private final boolean longKeys;
+    private final int capacity;
+    private final int[] offsets;
+    private final int[] hashes;
+    private int size;
+    private int nullOffset = -1;
+    private long dataLength;
+
+    public Writer(File file, int numKeys, boolean longKeys) throws IOException {
+      this.longKeys = longKeys;
+      int cap = 2;
+      while (cap < numKeys * 2) {
+        cap <<= 1;
+      }
+      capacity = cap;
+      offsets = new int[capacity];
+      hashes = new int[capacity];
+      Arrays.fill(offsets, -1);
+      fos = new FileOutputStream(file);
+      out = new DataOutputStream(new BufferedOutputStream(fos, 65536));
+      // placeholder of the header, which is written at last
+      out.write(new byte[HEADER_SIZE]);
+    }
+
+    private void index(int hash) throws IOException {
+      if (dataLength > Integer.MAX_VALUE) {
+        throw new IOException("Map join hash table is too large for the compact format, "
+            + "set hive.mapjoin.hashtable.compact to false");
+      }
+      int slot = hash & (capacity - 1);
+      while (offsets[slot] != -1) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      offsets[slot] = (int) dataLength;
+      hashes[slot] = hash;
+      size++;
+    }
+
+    public void addKey(byte[] bytes, int length, int numRows) throws IOException {
+      index(WritableComparator.hashBytes(bytes, length));
+      out.writeInt(length);
+      out.write(bytes, 0, length);
+      out.writeInt(numRows);
+      dataLength += 8 + length;
+    }
+
+    public void addLongKey(long key, int numRows) throws IOException {
+      index(hashLong(key));
+      out.writeLong(key);
+      out.writeInt(numRows);
+      dataLength += 12;
+    }
+
+    /**
+     * Add the null key of a table with long keys, which is kept out of the index.
+     */
+    public void addNullKey(int numRows) throws IOException {
+      nullOffset = (int) dataLength;
+      size++;
+      out.writeLong(0);
+      out.writeInt(numRows);
+      dataLength += 12;
+    }
+
+    public void addRow(byte[] bytes, int offset, int length) throws IOException {
+      out.writeInt(length);
+      out.write(bytes, offset, length);
+      dataLength += 4 + length;
+    }
+
+    /**
+     * Write the index and the header.
+     *
+     * @return length of the file
+     */
+    public long finish(int metadataTag) throws IOException {
+      if (dataLength + 8L * capacity > Integer.MAX_VALUE - HEADER_SIZE) {
+        throw new IOException("Map join hash table is too large for the compact format, "
+            + "set hive.mapjoin.hashtable.compact to false");
+      }
+      for (int offset : offsets) {
+        out.writeInt(offset);
+      }
+      for (int hash : hashes) {
+        out.writeInt(hash);
+      }
+      out.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putInt(metadataTag).putInt(size).putInt(capacity)
+          .putInt((int) dataLength).putInt(longKeys ? 1 : 0).putInt(nullOffset);
+      header.flip();
+      fos.getChannel().write(header, 0);
+      return fos.getChannel().size();
+    }
+
+    public void close() throws IOException {
+      fos.close();
+    }
+  }
+
+  /**
+   * Write the keys and rows of a map join hash table in the compact format.
+   *
+   * @return length of the file
+   */
+  public static long write(Map<AbstractMapJoinKey, MapJoinObjectValue> map, File file)
+      throws IOException {
+    Writer writer = new Writer(file, map.size(), false);
+    try {
+      DataOutputBuffer buffer = new DataOutputBuffer();
+      int metadataTag = -1;
+      for (Map.Entry<AbstractMapJoinKey, MapJoinObjectValue> entry : map.entrySet()) {
+        MapJoinObjectValue value = entry.getValue();
+        MapJoinRowContainer<Object[]> rows = value.getObj();
+        buffer.reset();
+        entry.getKey().serialize().write(buffer);
+        writer.addKey(buffer.getData(), buffer.getLength(), rows.size());
+
+        metadataTag = value.getMetadataTag();
+        HashTableSinkObjectCtx ctx = MapJoinMetaData.get(Integer.valueOf(metadataTag));
+        for (Object[] row = rows.first(); row != null; row = rows.next()) {
+          buffer.reset();
+          if (row.length > 0) {
+            ctx.getSerDe().serialize(row, ctx.getStandardOI()).write(buffer);
+          }
+          writer.addRow(buffer.getData(), 0, buffer.getLength());
+        }
+      }
+      return writer.finish(metadataTag);
+    } catch (SerDeException e) {
+      throw new IOException(e);
+    } catch (HiveException e) {
+      throw new IOException(e);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Look up the rows of a key.
+   *
+   * @return the rows, or null if the key is not in the table
+   */
+  public MapJoinObjectValue get(AbstractMapJoinKey key) throws HiveException {
+    if (longKeys) {
+      Object obj = ((MapJoinSingleKey) key).getObj();
+      if (obj == null) {
+        return nullOffset < 0 ? null : getValue(nullOffset, nullOffset + 8);
+      }
+      long value = MapJoinHashTable.getLongKey(obj);
+      int hash = hashLong(value);
+      for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+        int offset = offsets.get(slot);
+        if (offset < 0) {
+          return null;
+        }
+        if (hashes.get(slot) == hash && data.getLong(offset) == value) {
+          return getValue(offset, offset + 8);
+        }
+      }
+    }
+
+    try {
+      keyBuffer.reset();
+      key.serialize().write(keyBuffer);
+    } catch (Exception e) {
+      throw new HiveException(e);
+    }
+    byte[] bytes = keyBuffer.getData();
+    int length = keyBuffer.getLength();
+    int hash = WritableComparator.hashBytes(bytes, length);
+    for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+      int offset = offsets.get(slot);
+      if (offset < 0) {
+        return null;
+      }
+      if (hashes.get(slot) == hash && keyEquals(offset, bytes, length)) {
+        return getValue(offset, offset + 4 + length);
+      }
+    }
+  }
+
+  private boolean keyEquals(int offset, byte[] bytes, int length) {
+    if (data.getInt(offset) != length) {
+      return false;
+    }
+    int pos = offset + 4;
+    for (int i = 0; i < length; i++) {
+      if (data.get(pos + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private MapJoinObjectValue getValue(int offset, int pos) throws HiveException {
+    if (offset != lastOffset) {
+      lastValue = readValue(pos);
+      lastOffset = offset;
+    }
+    return lastValue;
+  }
+
+  private MapJoinObjectValue readValue(int pos) throws HiveException {
+    HashTableSinkObjectCtx ctx = MapJoinMetaData.get(Integer.valueOf(metadataTag));
+    SerDe serde = ctx.getSerDe();
+    MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+    int numRows = data.getInt(pos);
+    pos += 4;
+    try {
+      if (rowWritable == null) {
+        rowWritable = serde.getSerializedClass().newInstance();
+      }
+      for (int i = 0; i < numRows; i++) {
+        int length = data.getInt(pos);
+        pos += 4;
+        if (rowBytes.length < length) {
+          rowBytes = new byte[Math.max(length, rowBytes.length * 2)];
+        }
+        ByteBuffer row = data.duplicate();
+        row.position(pos);
+        row.get(rowBytes, 0, length);
+        pos += length;
+        rows.add(deserializeRow(serde, rowWritable, rowBuffer, rowBytes, 0, length));
+      }
+    } catch (Exception e) {
+      throw new HiveException(e);
+    }
+    return new MapJoinObjectValue(metadataTag, rows);
+  }
+
+  /**
+   * Deserialize a row written by the value SerDe into standard writable objects.
+   */
+  static Object[] deserializeRow(SerDe serde, Writable writable, DataInputBuffer buffer,
+      byte[] bytes, int offset, int length) throws IOException, SerDeException {
+    if (length == 0) {
+      return new Object[0];
+    }
+    buffer.reset(bytes, offset, length);
+    writable.readFields(buffer);
+    ArrayList<?> memObj = (ArrayList<?>) ObjectInspectorUtils.copyToStandardObject(serde
+        .deserialize(writable), serde.getObjectInspector(), ObjectInspectorCopyOption.WRITABLE);
+    return memObj == null ? new Object[0] : memObj.toArray();
+  }
+
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,517 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectCtx;
+import org.apache.hadoop.hive.ql.exec.MapJoinMetaData;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Map join hash table built by the local task when hive.mapjoin.hashtable.compact is set, in
+ * place of a HashMap of key and row objects.
+ *
+ * A single integral key is kept as a long in a primitive open addressing table; other keys are
+ * kept as the bytes written by the key SerDe. Rows are serialized by the value SerDe into large
+ * byte pages, and the rows of a key are chained through primitive arrays, so a row takes a few
+ * bytes beyond its serialized size instead of several objects. The table is dumped in the
+ * format of MapJoinBytesTable without deserializing anything, and a dump loaded back by
+ * initilizePersistentHash() is probed as HashMapWrapper probes it.
+ *
+ * The table is not partitioned for the hybrid hash join, so it never spills: the local task
+ * aborts when it runs out of memory.
+ */
+public class MapJoinHashTable extends HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int PAGE_SIZE = 1 << 20;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private final boolean longKeys;
+  private int metadataTag = -1;
+
+  // pages of serialized keys and rows; an address is the page index << 32 | offset
+  private transient List<byte[]> pages;
+  private transient int pageOffset;
+  private transient long pageBytes;
+
+  // open addressing index, a slot is empty if its head is -1
+  private transient int capacity;
+  private transient int numKeys;
+  private transient long[] keys;
+  private transient long[] keyAddresses;
+  private transient int[] hashes;
+  private transient int[] heads;
+  private transient int[] tails;
+  private transient int[] counts;
+
+  // rows of the null key, which only a table with long keys keeps out of the index
+  private transient int nullHead;
+  private transient int nullTail;
+  private transient int nullCount;
+
+  // row chains
+  private transient int numRows;
+  private transient long[] rowAddresses;
+  private transient int[] rowNext;
+
+  private transient DataOutputBuffer buffer;
+
+  // whether the table is a dump loaded by initilizePersistentHash()
+  private transient boolean persistent;
+
+  /**
+   * @param longKeys
+   *          whether the key is a single integral column, see isLongKey()
+   */
+  public MapJoinHashTable(boolean longKeys, float memoryUsage) {
+    super(1, LOAD_FACTOR, memoryUsage);
+    this.longKeys = longKeys;
+    reset();
+  }
+
+  private void reset() {
+    pages = new ArrayList<byte[]>();
+    pageOffset = 0;
+    pageBytes = 0;
+    capacity = 1024;
+    numKeys = 0;
+    if (longKeys) {
+      keys = new long[capacity];
+    } else {
+      keyAddresses = new long[capacity];
+    }
+    hashes = new int[capacity];
+    heads = new int[capacity];
+    tails = new int[capacity];
+    counts = new int[capacity];
+    Arrays.fill(heads, -1);
+    nullHead = -1;
+    nullTail = -1;
+    nullCount = 0;
+    numRows = 0;
+    rowAddresses = new long[1024];
+    rowNext = new int[1024];
+    buffer = new DataOutputBuffer();
+  }
+
+  /**
+   * Whether the map join key is a single byte, short, int or bigint column, which is kept as a
+   * long.
+   */
+  public static boolean isLongKey(List<ObjectInspector> keyInspectors) {
+    if (keyInspectors == null || keyInspectors.size() != 1
+        || keyInspectors.get(0).getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return false;
+    }
+    switch (((PrimitiveObjectInspector) keyInspectors.get(0)).getPrimitiveCategory()) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Get the long value of a standard writable integral key.
+   */
+  static long getLongKey(Object key) throws HiveException {
+    if (key instanceof IntWritable) {
+      return ((IntWritable) key).get();
+    } else if (key instanceof LongWritable) {
+      return ((LongWritable) key).get();
+    } else if (key instanceof ShortWritable) {
+      return ((ShortWritable) key).get();
+    } else if (key instanceof ByteWritable) {
+      return ((ByteWritable) key).get();
+    }
+    throw new HiveException("Unexpected map join key " + key.getClass().getName());
+  }
+
+  /**
+   * Add a row of a key.
+   *
+   * @param metadataTag
+   *          tag of the value SerDe in MapJoinMetaData
+   */
+  public void add(AbstractMapJoinKey key, int metadataTag, Object[] row) throws HiveException {
+    this.metadataTag = metadataTag;
+    int rowIndex = addRow(row);
+    if (longKeys && ((MapJoinSingleKey) key).getObj() == null) {
+      if (nullHead == -1) {
+        nullHead = rowIndex;
+      } else {
+        rowNext[nullTail] = rowIndex;
+      }
+      nullTail = rowIndex;
+      nullCount++;
+      return;
+    }
+
+    int slot = findSlot(key, true);
+    if (heads[slot] == -1) {
+      heads[slot] = rowIndex;
+      numKeys++;
+    } else {
+      rowNext[tails[slot]] = rowIndex;
+    }
+    tails[slot] = rowIndex;
+    counts[slot]++;
+    if (numKeys > capacity * LOAD_FACTOR) {
+      rehash();
+    }
+    // the pages and the arrays are all the memory of the table
+    setMemoryUsage(pageBytes + (long) capacity * 24 + (long) rowAddresses.length * 12);
+  }
+
+  /**
+   * Find the slot of a key, or the empty slot to put it if it is absent. With insert set, the
+   * key of an empty slot is filled in.
+   */
+  private int findSlot(AbstractMapJoinKey key, boolean insert) throws HiveException {
+    int mask = capacity - 1;
+    if (longKeys) {
+      long value = getLongKey(((MapJoinSingleKey) key).getObj());
+      int hash = MapJoinBytesTable.hashLong(value);
+      int slot = hash & mask;
+      while (heads[slot] != -1 && keys[slot] != value) {
+        slot = (slot + 1) & mask;
+      }
+      if (insert && heads[slot] == -1) {
+        keys[slot] = value;
+        hashes[slot] = hash;
+      }
+      return slot;
+    }
+
+    buffer.reset();
+    try {
+      key.serialize().write(buffer);
+    } catch (Exception e) {
+      throw new HiveException(e);
+    }
+    byte[] bytes = buffer.getData();
+    int length = buffer.getLength();
+    int hash = WritableComparator.hashBytes(bytes, length);
+    int slot = hash & mask;
+    while (heads[slot] != -1
+        && (hashes[slot] != hash || !keyEquals(keyAddresses[slot], bytes, length))) {
+      slot = (slot + 1) & mask;
+    }
+    if (insert && heads[slot] == -1) {
+      keyAddresses[slot] = store(bytes, length);
+      hashes[slot] = hash;
+    }
+    return slot;
+  }
+
+  private boolean keyEquals(long address, byte[] bytes, int length) {
+    byte[] page = pages.get((int) (address >>> 32));
+    int offset = (int) address;
+    if (readInt(page, offset) != length) {
+      return false;
+    }
+    return WritableComparator.compareBytes(page, offset + 4, length, bytes, 0, length) == 0;
+  }
+
+  private int addRow(Object[] row) throws HiveException {
+    buffer.reset();
+    if (row.length > 0) {
+      HashTableSinkObjectCtx ctx = MapJoinMetaData.get(Integer.valueOf(metadataTag));
+      try {
+        ctx.getSerDe().serialize(row, ctx.getStandardOI()).write(buffer);
+      } catch (Exception e) {
+        throw new HiveException(e);
+      }
+    }
+    if (numRows == rowAddresses.length) {
+      rowAddresses = Arrays.copyOf(rowAddresses, numRows * 2);
+      rowNext = Arrays.copyOf(rowNext, numRows * 2);
+    }
+    rowAddresses[numRows] = store(buffer.getData(), buffer.getLength());
+    rowNext[numRows] = -1;
+    return numRows++;
+  }
+
+  /**
+   * Store length-prefixed bytes in the pages.
+   *
+   * @return address of the bytes
+   */
+  private long store(byte[] bytes, int length) {
+    byte[] page = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+    if (page == null || pageOffset + 4 + length > page.length) {
+      page = new byte[Math.max(PAGE_SIZE, 4 + length)];
+      pages.add(page);
+      pageBytes += page.length;
+      pageOffset = 0;
+    }
+    long address = ((long) (pages.size() - 1) << 32) | pageOffset;
+    page[pageOffset] = (byte) (length >>> 24);
+    page[pageOffset + 1] = (byte) (length >>> 16);
+    page[pageOffset + 2] = (byte) (length >>> 8);
+    page[pageOffset + 3] = (byte) length;
+    System.arraycopy(bytes, 0, page, pageOffset + 4, length);
+    pageOffset += 4 + length;
+    return address;
+  }
+
+  private static int readInt(byte[] page, int offset) {
+    return ((page[offset] & 0xff) << 24) | ((page[offset + 1] & 0xff) << 16)
+        | ((page[offset + 2] & 0xff) << 8) | (page[offset + 3] & 0xff);
+  }
+
+  private void rehash() {
+    int oldCapacity = capacity;
+    long[] oldKeys = keys;
+    long[] oldKeyAddresses = keyAddresses;
+    int[] oldHashes = hashes;
+    int[] oldHeads = heads;
+    int[] oldTails = tails;
+    int[] oldCounts = counts;
+
+    capacity = oldCapacity * 2;
+    int mask = capacity - 1;
+    if (longKeys) {
+      keys = new long[capacity];
+    } else {
+      keyAddresses = new long[capacity];
+    }
+    hashes = new int[capacity];
+    heads = new int[capacity];
+    tails = new int[capacity];
+    counts = new int[capacity];
+    Arrays.fill(heads, -1);
+    for (int i = 0; i < oldCapacity; i++) {
+      if (oldHeads[i] == -1) {
+        continue;
+      }
+      int slot = oldHashes[i] & mask;
+      while (heads[slot] != -1) {
+        slot = (slot + 1) & mask;
+      }
+      if (longKeys) {
+        keys[slot] = oldKeys[i];
+      } else {
+        keyAddresses[slot] = oldKeyAddresses[i];
+      }
+      hashes[slot] = oldHashes[i];
+      heads[slot] = oldHeads[i];
+      tails[slot] = oldTails[i];
+      counts[slot] = oldCounts[i];
+    }
+  }
+
+  @Override
+  public MapJoinObjectValue get(AbstractMapJoinKey key) throws HiveException {
+    if (persistent) {
+      return super.get(key);
+    }
+    int head;
+    if (longKeys && ((MapJoinSingleKey) key).getObj() == null) {
+      head = nullHead;
+    } else {
+      head = heads[findSlot(key, false)];
+    }
+    if (head == -1) {
+      return null;
+    }
+    HashTableSinkObjectCtx ctx = MapJoinMetaData.get(Integer.valueOf(metadataTag));
+    SerDe serde = ctx.getSerDe();
+    MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+    try {
+      Writable writable = serde.getSerializedClass().newInstance();
+      DataInputBuffer in = new DataInputBuffer();
+      for (int row = head; row != -1; row = rowNext[row]) {
+        byte[] page = pages.get((int) (rowAddresses[row] >>> 32));
+        int offset = (int) rowAddresses[row];
+        rows.add(MapJoinBytesTable.deserializeRow(serde, writable, in, page, offset + 4,
+            readInt(page, offset)));
+      }
+    } catch (Exception e) {
+      throw new HiveException(e);
+    }
+    return new MapJoinObjectValue(metadataTag, rows);
+  }
+
+  @Override
+  public boolean put(AbstractMapJoinKey key, MapJoinObjectValue value) throws HiveException {
+    MapJoinRowContainer<Object[]> rows = value.getObj();
+    for (Object[] row = rows.first(); row != null; row = rows.next()) {
+      add(key, value.getMetadataTag(), row);
+    }
+    return false;
+  }
+
+  /**
+   * Remove a key. The bytes of its rows stay in the pages until the table is cleared.
+   */
+  @Override
+  public void remove(AbstractMapJoinKey key) {
+    if (persistent) {
+      super.remove(key);
+      return;
+    }
+    if (longKeys && ((MapJoinSingleKey) key).getObj() == null) {
+      nullHead = -1;
+      nullTail = -1;
+      nullCount = 0;
+      return;
+    }
+    int slot;
+    try {
+      slot = findSlot(key, false);
+    } catch (HiveException e) {
+      throw new RuntimeException(e);
+    }
+    if (heads[slot] == -1) {
+      return;
+    }
+    heads[slot] = -1;
+    numKeys--;
+    // shift back the following keys of the probe sequence which can no longer be reached
+    int mask = capacity - 1;
+    int hole = slot;
+    for (int next = (slot + 1) & mask; heads[next] != -1; next = (next + 1) & mask) {
+      int home = hashes[next] & mask;
+      boolean reachable = hole <= next ? hole < home && home <= next
+          : hole < home || home <= next;
+      if (!reachable) {
+        moveSlot(next, hole);
+        hole = next;
+      }
+    }
+  }
+
+  private void moveSlot(int from, int to) {
+    if (longKeys) {
+      keys[to] = keys[from];
+    } else {
+      keyAddresses[to] = keyAddresses[from];
+    }
+    hashes[to] = hashes[from];
+    heads[to] = heads[from];
+    tails[to] = tails[from];
+    counts[to] = counts[from];
+    heads[from] = -1;
+  }
+
+  @Override
+  public int size() {
+    if (persistent) {
+      return super.size();
+    }
+    return numKeys + (nullHead == -1 ? 0 : 1);
+  }
+
+  @Override
+  public int getKeySize() {
+    return size();
+  }
+
+  /**
+   * Dump the table in the compact format, whatever the format asked for.
+   */
+  @Override
+  public long flushMemoryCacheToPersistent(File file) throws IOException {
+    MapJoinBytesTable.Writer writer = new MapJoinBytesTable.Writer(file, size(), longKeys);
+    try {
+      for (int slot = 0; slot < capacity; slot++) {
+        if (heads[slot] == -1) {
+          continue;
+        }
+        if (longKeys) {
+          writer.addLongKey(keys[slot], counts[slot]);
+        } else {
+          byte[] page = pages.get((int) (keyAddresses[slot] >>> 32));
+          int offset = (int) keyAddresses[slot];
+          int length = readInt(page, offset);
+          writer.addKey(Arrays.copyOfRange(page, offset + 4, offset + 4 + length), length,
+              counts[slot]);
+        }
+        writeRows(writer, heads[slot]);
+      }
+      if (nullHead != -1) {
+        writer.addNullKey(nullCount);
+        writeRows(writer, nullHead);
+      }
+      return writer.finish(metadataTag);
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Override
+  public long flushMemoryCacheToPersistent(File file, boolean compact) throws IOException {
+    return flushMemoryCacheToPersistent(file);
+  }
+
+  private void writeRows(MapJoinBytesTable.Writer writer, int head) throws IOException {
+    for (int row = head; row != -1; row = rowNext[row]) {
+      byte[] page = pages.get((int) (rowAddresses[row] >>> 32));
+      int offset = (int) rowAddresses[row];
+      writer.addRow(page, offset + 4, readInt(page, offset));
+    }
+  }
+
+  /**
+   * Load a dump, which replaces the rows in memory.
+   */
+  @Override
+  public void initilizePersistentHash(String fileName) throws IOException,
+      ClassNotFoundException {
+    reset();
+    super.initilizePersistentHash(fileName);
+    persistent = true;
+  }
+
+  @Override
+  public void close() throws HiveException {
+    super.close();
+    reset();
+    persistent = false;
+  }
+
+  @Override
+  public void clear() throws HiveException {
+    super.clear();
+    reset();
+    persistent = false;
+  }
+}
@@ -118,18 +118,22 @@ public class MapJoinObjectKey  extends AbstractMapJoinKey {
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     try {
-      // get the tableDesc from the map stored in the mapjoin operator
-      HashTableSinkObjectCtx ctx = MapJoinMetaData.get(
-          Integer.valueOf(metadataTag));
-
-      // Different processing for key and value
-      Writable outVal = ctx.getSerDe().serialize(obj, ctx.getStandardOI());
-      outVal.write(out);
+      serialize().write(out);
     } catch (SerDeException e) {
       throw new IOException(e);
     }
   }
 
+  @Override
+  public Writable serialize() throws SerDeException {
+    // get the tableDesc from the map stored in the mapjoin operator
+    HashTableSinkObjectCtx ctx = MapJoinMetaData.get(
+        Integer.valueOf(metadataTag));
+
+    // Different processing for key and value
+    return ctx.getSerDe().serialize(obj, ctx.getStandardOI());
+  }
+
 
   /**
    * @return the obj
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+/**
+ * BytesColumnVector.
+ *
+ * The values of a string column. Each value is a reference to a range of a byte array, usually the
+ * buffer the column was read into, so filling the vector copies no bytes.
+ */
+public class BytesColumnVector extends ColumnVector {
+
+  public final byte[][] vector;
+  public final int[] start;
+  public final int[] length;
+
+  public BytesColumnVector() {
+    this(VectorizedRowBatch.DEFAULT_SIZE);
+  }
+
+  public BytesColumnVector(int size) {
+    super(size);
+    vector = new byte[size][];
+    start = new int[size];
+    length = new int[size];
+  }
+
+  /**
+   * Set the value of the row to a range of the given bytes, without copying them.
+   */
+  public void setRef(int i, byte[] bytes, int start, int length) {
+    vector[i] = bytes;
+    this.start[i] = start;
+    this.length[i] = length;
+  }
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.Arrays;
+
+/**
+ * ColumnVector.
+ *
+ * The values of a column for the rows of a batch. The values are kept in a primitive array by the
+ * subclasses; isNull tells which rows are null, unless noNulls is set, in which case isNull is
+ * not maintained.
+ */
+public abstract class ColumnVector {
+
+  public final boolean[] isNull;
+  public boolean noNulls;
+
+  protected ColumnVector(int size) {
+    isNull = new boolean[size];
+    noNulls = true;
+  }
+
+  /**
+   * Forget the nulls of the previous batch.
+   */
+  public void reset() {
+    if (!noNulls) {
+      Arrays.fill(isNull, false);
+    }
+    noNulls = true;
+  }
+
+  /**
+   * Set the row to null.
+   */
+  public void setNull(int i) {
+    if (noNulls) {
+      noNulls = false;
+    }
+    isNull[i] = true;
+  }
+}
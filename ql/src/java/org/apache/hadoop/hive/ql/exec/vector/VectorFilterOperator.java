@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Vectorized filter operator. The predicate removes the rows for which it is not true from the
+ * selected rows of the batch, which is forwarded unless no row is left.
+ */
+public class VectorFilterOperator extends FilterOperator {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient VectorExpression filter;
+  private transient int numInputColumns;
+  private transient ColumnVector[] scratchColumns;
+  private transient LongWritable filteredCount;
+  private transient LongWritable passedCount;
+
+  @Override
+  protected void initializeOp(Configuration hconf) throws HiveException {
+    super.initializeOp(hconf);
+    VectorizationContext context =
+        new VectorizationContext((StructObjectInspector) inputObjInspectors[0]);
+    filter = context.getFilterExpression(conf.getPredicate());
+    numInputColumns = context.getNumInputColumns();
+    scratchColumns = context.createScratchColumns();
+    filteredCount = statsMap.get(Counter.FILTERED);
+    passedCount = statsMap.get(Counter.PASSED);
+  }
+
+  @Override
+  public void processOp(Object row, int tag) throws HiveException {
+    VectorizedRowBatch batch = (VectorizedRowBatch) row;
+    int n = batch.size;
+    batch.setColumns(numInputColumns, scratchColumns);
+    filter.evaluate(batch);
+    passedCount.set(passedCount.get() + batch.size);
+    filteredCount.set(filteredCount.get() + n - batch.size);
+    if (batch.size > 0) {
+      forward(batch, inputObjInspectors[tag]);
+    }
+  }
+}
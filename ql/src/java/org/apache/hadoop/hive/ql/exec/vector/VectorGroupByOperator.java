@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.MemoryManager;
+import org.apache.hadoop.hive.ql.exec.PrimitiveAggregations;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Vectorized map-side hash aggregation. The keys and the parameters of the aggregations are
+ * evaluated on the whole batch, the keys of a row are looked up in a hash table of their
+ * primitive values, and the aggregations are updated one aggregation at a time over the batch,
+ * in primitive arrays. The hash table is flushed when it uses more than its portion of the
+ * memory.
+ */
+public class VectorGroupByOperator extends GroupByOperator {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Log LOG = LogFactory.getLog(VectorGroupByOperator.class.getName());
+
+  /**
+   * The primitive values of the keys of a group: a double is kept as its bits, and the last
+   * value is the mask of the keys which are null.
+   */
+  private static final class GroupKey {
+    private final long[] values;
+    private int hashCode;
+
+    GroupKey(int numKeys) {
+      values = new long[numKeys + 1];
+    }
+
+    GroupKey(GroupKey key) {
+      values = key.values.clone();
+      hashCode = key.hashCode;
+    }
+
+    void rehash() {
+      hashCode = Arrays.hashCode(values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof GroupKey && Arrays.equals(values, ((GroupKey) o).values);
+    }
+  }
+
+  private transient VectorExpression[] keyExpressions;
+  private transient PrimitiveCategory[] keyCategories;
+  private transient VectorExpression[] parameterExpressions;
+  private transient int numInputColumns;
+  private transient ColumnVector[] scratchColumns;
+
+  private transient PrimitiveAggregations groupAggregations;
+  private transient HashMap<GroupKey, Integer> groups;
+  private transient GroupKey probe;
+  private transient int[] rowGroups;
+  private transient boolean hasGroups;
+
+  private transient long maxMemory;
+  private transient float memoryThreshold;
+  private transient long entrySize;
+  private transient long memory;
+  private transient LongWritable peakMemoryCount;
+  private transient LongWritable peakEntriesCount;
+  private transient LongWritable flushesCount;
+
+  @Override
+  protected void initializeOp(Configuration hconf) throws HiveException {
+    super.initializeOp(hconf);
+    VectorizationContext context =
+        new VectorizationContext((StructObjectInspector) inputObjInspectors[0]);
+
+    List<ExprNodeDesc> keys = conf.getKeys();
+    keyExpressions = new VectorExpression[keys.size()];
+    keyCategories = new PrimitiveCategory[keys.size()];
+    for (int i = 0; i < keyExpressions.length; i++) {
+      keyExpressions[i] = context.getVectorExpression(keys.get(i));
+      keyCategories[i] = context.getColumnCategory(keyExpressions[i].getOutputColumn());
+    }
+
+    List<AggregationDesc> aggrs = conf.getAggregators();
+    parameterExpressions = new VectorExpression[aggrs.size()];
+    for (int i = 0; i < parameterExpressions.length; i++) {
+      List<ExprNodeDesc> parameters = aggrs.get(i).getParameters();
+      if (!parameters.isEmpty()) {
+        parameterExpressions[i] = context.getVectorExpression(parameters.get(0));
+      }
+    }
+    numInputColumns = context.getNumInputColumns();
+    scratchColumns = context.createScratchColumns();
+
+    groupAggregations = PrimitiveAggregations.create(aggrs, aggregationEvaluators,
+        aggregationParameterObjectInspectors);
+    if (groupAggregations == null) {
+      throw new HiveException("The aggregations of " + getIdentifier()
+          + " are not supported in vectorized mode");
+    }
+    groups = new HashMap<GroupKey, Integer>(256);
+    probe = new GroupKey(keyExpressions.length);
+    rowGroups = new int[VectorizedRowBatch.DEFAULT_SIZE];
+    hasGroups = false;
+
+    maxMemory = (long) (conf.getGroupByMemoryUsage() * MemoryManager.getInstance().getMaxMemory());
+    memoryThreshold = conf.getMemoryThreshold();
+    entrySize = MemoryManager.HASH_ENTRY_OVERHEAD + 2 * MemoryManager.OBJECT_OVERHEAD
+        + MemoryManager.ARRAY_OVERHEAD + 8 * (keyExpressions.length + 1)
+        + groupAggregations.getEntrySize();
+    memory = 0;
+    peakMemoryCount = statsMap.get(Counter.HASH_TABLE_PEAK_MEMORY);
+    peakEntriesCount = statsMap.get(Counter.HASH_TABLE_PEAK_ENTRIES);
+    flushesCount = statsMap.get(Counter.HASH_TABLE_FLUSHES);
+  }
+
+  @Override
+  public void processOp(Object row, int tag) throws HiveException {
+    VectorizedRowBatch batch = (VectorizedRowBatch) row;
+    batch.setColumns(numInputColumns, scratchColumns);
+    for (VectorExpression key : keyExpressions) {
+      key.evaluate(batch);
+    }
+    for (VectorExpression parameter : parameterExpressions) {
+      if (parameter != null) {
+        parameter.evaluate(batch);
+      }
+    }
+
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+    for (int j = 0; j < n; j++) {
+      rowGroups[j] = findGroup(batch, useSel ? sel[j] : j);
+    }
+
+    for (int a = 0; a < parameterExpressions.length; a++) {
+      if (parameterExpressions[a] == null) {
+        for (int j = 0; j < n; j++) {
+          groupAggregations.aggregateLong(a, rowGroups[j], 0);
+        }
+        continue;
+      }
+      ColumnVector column = batch.cols[parameterExpressions[a].getOutputColumn()];
+      boolean noNulls = column.noNulls;
+      boolean[] isNull = column.isNull;
+      if (column instanceof LongColumnVector) {
+        long[] v = ((LongColumnVector) column).vector;
+        for (int j = 0; j < n; j++) {
+          int i = useSel ? sel[j] : j;
+          if (noNulls || !isNull[i]) {
+            groupAggregations.aggregateLong(a, rowGroups[j], v[i]);
+          }
+        }
+      } else {
+        double[] v = ((DoubleColumnVector) column).vector;
+        for (int j = 0; j < n; j++) {
+          int i = useSel ? sel[j] : j;
+          if (noNulls || !isNull[i]) {
+            groupAggregations.aggregateDouble(a, rowGroups[j], v[i]);
+          }
+        }
+      }
+    }
+
+    if (memory > maxMemory || MemoryManager.getInstance().isExceeded(memoryThreshold)) {
+      LOG.info("Vectorized Hash Aggr: #hash table = " + groups.size() + " memory = " + memory
+          + " task memory = " + MemoryManager.getInstance().getUsedMemory());
+      flushesCount.set(flushesCount.get() + 1);
+      forwardGroups();
+    }
+  }
+
+  /**
+   * @return the group of the keys of a row of the batch, created if needed
+   */
+  private int findGroup(VectorizedRowBatch batch, int i) {
+    long[] values = probe.values;
+    long nullMask = 0;
+    for (int k = 0; k < keyExpressions.length; k++) {
+      ColumnVector column = batch.cols[keyExpressions[k].getOutputColumn()];
+      if (!column.noNulls && column.isNull[i]) {
+        nullMask |= 1L << k;
+        values[k] = 0;
+      } else if (column instanceof LongColumnVector) {
+        values[k] = ((LongColumnVector) column).vector[i];
+      } else {
+        values[k] = Double.doubleToLongBits(((DoubleColumnVector) column).vector[i]);
+      }
+    }
+    values[keyExpressions.length] = nullMask;
+    probe.rehash();
+
+    Integer group = groups.get(probe);
+    if (group == null) {
+      group = Integer.valueOf(groupAggregations.newGroup());
+      groups.put(new GroupKey(probe), group);
+      hasGroups = true;
+      memory += entrySize;
+      MemoryManager.getInstance().reserve(entrySize);
+      peakMemoryCount.set(Math.max(peakMemoryCount.get(), memory));
+      peakEntriesCount.set(Math.max(peakEntriesCount.get(), groups.size()));
+    }
+    return group.intValue();
+  }
+
+  /**
+   * Forward all the groups, and clear the hash table.
+   */
+  private void forwardGroups() throws HiveException {
+    Object[] row = new Object[keyExpressions.length + aggregationEvaluators.length];
+    for (Map.Entry<GroupKey, Integer> entry : groups.entrySet()) {
+      long[] values = entry.getKey().values;
+      long nullMask = values[keyExpressions.length];
+      for (int k = 0; k < keyExpressions.length; k++) {
+        row[k] = (nullMask & (1L << k)) != 0 ? null : getKey(keyCategories[k], values[k]);
+      }
+      int group = entry.getValue().intValue();
+      for (int a = 0; a < aggregationEvaluators.length; a++) {
+        row[keyExpressions.length + a] = groupAggregations.evaluate(a, group);
+      }
+      forward(row, outputObjInspector);
+    }
+    groups.clear();
+    groupAggregations.clear();
+    MemoryManager.getInstance().release(memory);
+    memory = 0;
+  }
+
+  /**
+   * @return the writable of a key, as the row mode group by outputs it
+   */
+  private static Object getKey(PrimitiveCategory category, long value) {
+    switch (category) {
+    case BOOLEAN:
+      return new BooleanWritable(value != 0);
+    case BYTE:
+      return new ByteWritable((byte) value);
+    case SHORT:
+      return new ShortWritable((short) value);
+    case INT:
+      return new IntWritable((int) value);
+    case LONG:
+      return new LongWritable(value);
+    case FLOAT:
+      return new FloatWritable((float) Double.longBitsToDouble(value));
+    default:
+      return new DoubleWritable(Double.longBitsToDouble(value));
+    }
+  }
+
+  @Override
+  public void closeOp(boolean abort) throws HiveException {
+    if (groups == null) {
+      // not initialized, there was no input
+      return;
+    }
+    try {
+      if (!abort) {
+        // a global aggregation outputs a row even if there is no input
+        if (!hasGroups && keyExpressions.length == 0) {
+          groups.put(new GroupKey(0), Integer.valueOf(groupAggregations.newGroup()));
+        }
+        LOG.info("Begin Hash Table flush at close: size = " + groups.size());
+        forwardGroups();
+      }
+    } finally {
+      MemoryManager.getInstance().release(memory);
+      memory = 0;
+    }
+  }
+}
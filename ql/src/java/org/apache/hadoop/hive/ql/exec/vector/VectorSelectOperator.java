@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.SelectOperator;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+
+/**
+ * Vectorized select operator. The expressions are evaluated into the scratch columns of the
+ * input batch, and the output batch refers to the columns of their results.
+ */
+public class VectorSelectOperator extends SelectOperator {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient VectorExpression[] expressions;
+  private transient int numInputColumns;
+  private transient ColumnVector[] scratchColumns;
+  private transient VectorizedRowBatch output;
+
+  @Override
+  protected void initializeOp(Configuration hconf) throws HiveException {
+    super.initializeOp(hconf);
+    if (conf.isSelStarNoCompute()) {
+      return;
+    }
+    VectorizationContext context =
+        new VectorizationContext((StructObjectInspector) inputObjInspectors[0]);
+    ArrayList<ExprNodeDesc> colList = conf.getColList();
+    expressions = new VectorExpression[colList.size()];
+    for (int i = 0; i < expressions.length; i++) {
+      expressions[i] = context.getVectorExpression(colList.get(i));
+    }
+    numInputColumns = context.getNumInputColumns();
+    scratchColumns = context.createScratchColumns();
+    output = new VectorizedRowBatch(expressions.length);
+  }
+
+  @Override
+  public void processOp(Object row, int tag) throws HiveException {
+    VectorizedRowBatch batch = (VectorizedRowBatch) row;
+    if (conf.isSelStarNoCompute()) {
+      forward(batch, inputObjInspectors[tag]);
+      return;
+    }
+
+    batch.setColumns(numInputColumns, scratchColumns);
+    for (int i = 0; i < expressions.length; i++) {
+      expressions[i].evaluate(batch);
+      output.cols[i] = batch.cols[expressions[i].getOutputColumn()];
+    }
+    output.size = batch.size;
+    output.selectedInUse = batch.selectedInUse;
+    if (batch.selectedInUse) {
+      System.arraycopy(batch.selected, 0, output.selected, 0, batch.size);
+    }
+    forward(output, outputObjInspector);
+  }
+}
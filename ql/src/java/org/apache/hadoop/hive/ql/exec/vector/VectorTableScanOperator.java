@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+
+/**
+ * Vectorized table scan operator. When the input format reads the split a batch of rows at a
+ * time, the batches of column vectors it decodes are forwarded as they are. Otherwise the rows
+ * read by the map-reduce framework are copied into a batch, which is forwarded when it is full,
+ * and at close. Only the columns used by the vectorized operators below the scan are copied.
+ */
+public class VectorTableScanOperator extends TableScanOperator {
+
+  private static final long serialVersionUID = 1L;
+
+  private ArrayList<String> vectorColumns;
+
+  private transient VectorizedRowBatch batch;
+  private transient StructField[] fields;
+  private transient PrimitiveObjectInspector[] fieldObjectInspectors;
+  private transient ColumnVector[] columns;
+  private transient int[] positions;
+  // the all null columns of the batches read from files without the column
+  private transient ColumnVector[] nullColumns;
+
+  public ArrayList<String> getVectorColumns() {
+    return vectorColumns;
+  }
+
+  public void setVectorColumns(ArrayList<String> vectorColumns) {
+    this.vectorColumns = vectorColumns;
+  }
+
+  @Override
+  protected void initializeOp(Configuration hconf) throws HiveException {
+    super.initializeOp(hconf);
+    StructObjectInspector rowInspector = (StructObjectInspector) inputObjInspectors[0];
+    List<? extends StructField> allFields = rowInspector.getAllStructFieldRefs();
+    batch = new VectorizedRowBatch(allFields.size());
+
+    fields = new StructField[vectorColumns.size()];
+    fieldObjectInspectors = new PrimitiveObjectInspector[fields.length];
+    columns = new ColumnVector[fields.length];
+    positions = new int[fields.length];
+    nullColumns = new ColumnVector[fields.length];
+    for (int k = 0; k < fields.length; k++) {
+      fields[k] = rowInspector.getStructFieldRef(vectorColumns.get(k));
+      PrimitiveCategory category = VectorizationContext.getVectorCategory(
+          fields[k].getFieldObjectInspector());
+      if (category == null) {
+        throw new HiveException("Column " + vectorColumns.get(k) + " is not vectorized");
+      }
+      fieldObjectInspectors[k] = (PrimitiveObjectInspector) fields[k].getFieldObjectInspector();
+      columns[k] = VectorizationContext.isDouble(category) ? new DoubleColumnVector()
+          : new LongColumnVector();
+      positions[k] = allFields.indexOf(fields[k]);
+      batch.cols[positions[k]] = columns[k];
+    }
+  }
+
+  @Override
+  public void processOp(Object row, int tag) throws HiveException {
+    if (row instanceof VectorizedRowBatch) {
+      processBatch((VectorizedRowBatch) row, tag);
+      return;
+    }
+    StructObjectInspector rowInspector = (StructObjectInspector) inputObjInspectors[tag];
+    int r = batch.size;
+    for (int k = 0; k < fields.length; k++) {
+      Object field = rowInspector.getStructFieldData(row, fields[k]);
+      ColumnVector column = columns[k];
+      if (field == null) {
+        column.setNull(r);
+      } else if (column instanceof LongColumnVector) {
+        ((LongColumnVector) column).vector[r] =
+            PrimitiveObjectInspectorUtils.getLong(field, fieldObjectInspectors[k]);
+      } else {
+        ((DoubleColumnVector) column).vector[r] =
+            PrimitiveObjectInspectorUtils.getDouble(field, fieldObjectInspectors[k]);
+      }
+    }
+    batch.size++;
+    if (batch.size == VectorizedRowBatch.DEFAULT_SIZE) {
+      forward(batch, inputObjInspectors[tag]);
+      batch.reset();
+    }
+  }
+
+  /**
+   * Forward a batch read by the input format, after the rows copied so far.
+   */
+  private void processBatch(VectorizedRowBatch input, int tag) throws HiveException {
+    if (batch.size > 0) {
+      forward(batch, inputObjInspectors[tag]);
+      batch.reset();
+    }
+    for (int k = 0; k < fields.length; k++) {
+      int position = positions[k];
+      ColumnVector column = position < input.cols.length ? input.cols[position] : null;
+      if (column == null || column == nullColumns[k]) {
+        // the file was written before the column was added to the table
+        if (nullColumns[k] == null) {
+          nullColumns[k] = columns[k] instanceof DoubleColumnVector ? new DoubleColumnVector()
+              : new LongColumnVector();
+        }
+        column = nullColumns[k];
+        Arrays.fill(column.isNull, true);
+        column.noNulls = false;
+        input.setColumns(position, new ColumnVector[] {column});
+      } else if (column.getClass() != columns[k].getClass()) {
+        throw new HiveException("Column " + vectorColumns.get(k) + " is read as a "
+            + column.getClass().getSimpleName() + " instead of a "
+            + columns[k].getClass().getSimpleName());
+      }
+    }
+    forward(input, inputObjInspectors[tag]);
+  }
+
+  @Override
+  public void closeOp(boolean abort) throws HiveException {
+    if (!abort && batch != null && batch.size > 0) {
+      forward(batch, inputObjInspectors[0]);
+      batch.reset();
+    }
+    super.closeOp(abort);
+  }
+}
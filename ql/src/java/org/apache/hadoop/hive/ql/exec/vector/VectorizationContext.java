@@ -0,0 +1,456 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.ArithmeticOperator;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.CastExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.CompareOperator;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.ConstantExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.DoubleArithmeticExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterAnd;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterColumn;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterDoubleCompare;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterLongCompare;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.FilterOr;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.IdentityExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.LongArithmeticExpression;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.UDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.UDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.UDFOPPlus;
+import org.apache.hadoop.hive.ql.udf.UDFToByte;
+import org.apache.hadoop.hive.ql.udf.UDFToDouble;
+import org.apache.hadoop.hive.ql.udf.UDFToFloat;
+import org.apache.hadoop.hive.ql.udf.UDFToInteger;
+import org.apache.hadoop.hive.ql.udf.UDFToLong;
+import org.apache.hadoop.hive.ql.udf.UDFToShort;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * VectorizationContext.
+ *
+ * Compiles the expressions of an operator into vector expressions over the columns of its input
+ * batches. The columns of the batch are the fields of the input row, followed by the scratch
+ * columns allocated for the results of the expressions and for the constants.
+ *
+ * Only numeric and boolean columns, the arithmetic operators, the numeric conversions, the
+ * comparisons, and/or, not of a comparison and is [not] null are supported; compiling any other
+ * expression fails, and the plan is left in row mode. A context created without an input row
+ * inspector only validates the expressions of a plan.
+ */
+public class VectorizationContext {
+
+  private static final Map<Class<?>, ArithmeticOperator> ARITHMETIC_UDFS =
+      new HashMap<Class<?>, ArithmeticOperator>();
+  private static final Map<Class<?>, CompareOperator> COMPARE_UDFS =
+      new HashMap<Class<?>, CompareOperator>();
+  private static final Map<Class<?>, PrimitiveCategory> CAST_UDFS =
+      new HashMap<Class<?>, PrimitiveCategory>();
+  static {
+    ARITHMETIC_UDFS.put(UDFOPPlus.class, ArithmeticOperator.ADD);
+    ARITHMETIC_UDFS.put(UDFOPMinus.class, ArithmeticOperator.SUBTRACT);
+    ARITHMETIC_UDFS.put(UDFOPMultiply.class, ArithmeticOperator.MULTIPLY);
+    ARITHMETIC_UDFS.put(UDFOPDivide.class, ArithmeticOperator.DIVIDE);
+    COMPARE_UDFS.put(GenericUDFOPEqual.class, CompareOperator.EQUAL);
+    COMPARE_UDFS.put(GenericUDFOPNotEqual.class, CompareOperator.NOT_EQUAL);
+    COMPARE_UDFS.put(GenericUDFOPLessThan.class, CompareOperator.LESS);
+    COMPARE_UDFS.put(GenericUDFOPEqualOrLessThan.class, CompareOperator.LESS_EQUAL);
+    COMPARE_UDFS.put(GenericUDFOPGreaterThan.class, CompareOperator.GREATER);
+    COMPARE_UDFS.put(GenericUDFOPEqualOrGreaterThan.class, CompareOperator.GREATER_EQUAL);
+    CAST_UDFS.put(UDFToByte.class, PrimitiveCategory.BYTE);
+    CAST_UDFS.put(UDFToShort.class, PrimitiveCategory.SHORT);
+    CAST_UDFS.put(UDFToInteger.class, PrimitiveCategory.INT);
+    CAST_UDFS.put(UDFToLong.class, PrimitiveCategory.LONG);
+    CAST_UDFS.put(UDFToFloat.class, PrimitiveCategory.FLOAT);
+    CAST_UDFS.put(UDFToDouble.class, PrimitiveCategory.DOUBLE);
+  }
+
+  private final StructObjectInspector inputObjectInspector;
+  private final int numInputColumns;
+  // the types of the columns of the batch, null for the fields which are not vectorized
+  private final List<PrimitiveCategory> columnCategories = new ArrayList<PrimitiveCategory>();
+  private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+  private final List<ConstantExpression> constants = new ArrayList<ConstantExpression>();
+
+  /**
+   * A context for the batches of rows of the given inspector.
+   */
+  public VectorizationContext(StructObjectInspector inputObjectInspector) {
+    this.inputObjectInspector = inputObjectInspector;
+    List<? extends StructField> fields = inputObjectInspector.getAllStructFieldRefs();
+    numInputColumns = fields.size();
+    for (StructField field : fields) {
+      columnCategories.add(getVectorCategory(field.getFieldObjectInspector()));
+    }
+  }
+
+  /**
+   * A context which only validates expressions.
+   */
+  public VectorizationContext() {
+    inputObjectInspector = null;
+    numInputColumns = 0;
+  }
+
+  /**
+   * @return the category of the values of the inspector if they can be kept in a column vector,
+   *         or null
+   */
+  public static PrimitiveCategory getVectorCategory(ObjectInspector oi) {
+    if (oi.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return null;
+    }
+    return getVectorCategory(((PrimitiveObjectInspector) oi).getPrimitiveCategory());
+  }
+
+  public static PrimitiveCategory getVectorCategory(TypeInfo typeInfo) {
+    if (!(typeInfo instanceof PrimitiveTypeInfo)) {
+      return null;
+    }
+    return getVectorCategory(((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory());
+  }
+
+  private static PrimitiveCategory getVectorCategory(PrimitiveCategory category) {
+    switch (category) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+    case FLOAT:
+    case DOUBLE:
+      return category;
+    default:
+      return null;
+    }
+  }
+
+  public static boolean isDouble(PrimitiveCategory category) {
+    return category == PrimitiveCategory.FLOAT || category == PrimitiveCategory.DOUBLE;
+  }
+
+  public int getNumInputColumns() {
+    return numInputColumns;
+  }
+
+  /**
+   * @return the category of a column of the batch
+   */
+  public PrimitiveCategory getColumnCategory(int column) {
+    return columnCategories.get(column);
+  }
+
+  /**
+   * @return a new column vector for each vectorized input column, null for the others
+   */
+  public ColumnVector[] createInputColumns() {
+    ColumnVector[] columns = new ColumnVector[numInputColumns];
+    for (int i = 0; i < numInputColumns; i++) {
+      if (columnCategories.get(i) != null) {
+        columns[i] = newColumnVector(columnCategories.get(i));
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * @return the scratch columns of the expressions compiled so far, with the values of the
+   *         constants, to be installed in the batches after the input columns
+   */
+  public ColumnVector[] createScratchColumns() {
+    ColumnVector[] columns = new ColumnVector[columnCategories.size() - numInputColumns];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = newColumnVector(columnCategories.get(numInputColumns + i));
+    }
+    for (ConstantExpression constant : constants) {
+      constant.fill(columns[constant.getOutputColumn() - numInputColumns]);
+    }
+    return columns;
+  }
+
+  private static ColumnVector newColumnVector(PrimitiveCategory category) {
+    return isDouble(category) ? new DoubleColumnVector() : new LongColumnVector();
+  }
+
+  private int allocateColumn(PrimitiveCategory category) {
+    columnCategories.add(category);
+    return columnCategories.size() - 1;
+  }
+
+  private int getInputColumn(ExprNodeColumnDesc column) throws HiveException {
+    String name = column.getColumn();
+    Integer index = columnIndexes.get(name);
+    if (index == null) {
+      if (inputObjectInspector == null) {
+        index = allocateColumn(getVectorCategory(column.getTypeInfo()));
+      } else {
+        StructField field = inputObjectInspector.getStructFieldRef(name);
+        index = inputObjectInspector.getAllStructFieldRefs().indexOf(field);
+      }
+      columnIndexes.put(name, index);
+    }
+    if (columnCategories.get(index) == null) {
+      throw new HiveException("Column " + name + " of type " + column.getTypeString()
+          + " is not vectorized");
+    }
+    return index;
+  }
+
+  private static HiveException unsupported(ExprNodeDesc expr) {
+    return new HiveException("Expression " + expr.getExprString()
+        + " is not supported in vectorized mode");
+  }
+
+  private static Class<?> getUdfClass(GenericUDF udf) {
+    if (udf instanceof GenericUDFBridge) {
+      Class<? extends UDF> udfClass = ((GenericUDFBridge) udf).getUdfClass();
+      return udfClass;
+    }
+    return udf.getClass();
+  }
+
+  /**
+   * Compile an expression which computes a value.
+   */
+  public VectorExpression getVectorExpression(ExprNodeDesc expr) throws HiveException {
+    PrimitiveCategory category = getVectorCategory(expr.getTypeInfo());
+    if (category == null) {
+      throw unsupported(expr);
+    }
+    if (expr instanceof ExprNodeColumnDesc) {
+      return new IdentityExpression(getInputColumn((ExprNodeColumnDesc) expr));
+    }
+    if (expr instanceof ExprNodeConstantDesc) {
+      return getConstantExpression((ExprNodeConstantDesc) expr, category);
+    }
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      throw unsupported(expr);
+    }
+
+    ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) expr;
+    List<ExprNodeDesc> children = func.getChildExprs();
+    Class<?> udfClass = getUdfClass(func.getGenericUDF());
+    ArithmeticOperator arithmetic = ARITHMETIC_UDFS.get(udfClass);
+    if (arithmetic != null && children.size() == 2) {
+      boolean isDouble = isDouble(category);
+      VectorExpression child1 = getVectorExpression(children.get(0), isDouble);
+      VectorExpression child2 = getVectorExpression(children.get(1), isDouble);
+      if (!isDouble && (isDouble(getCategory(child1)) || isDouble(getCategory(child2)))) {
+        throw unsupported(expr);
+      }
+      VectorExpression result;
+      if (isDouble) {
+        result = new DoubleArithmeticExpression(arithmetic, child1.getOutputColumn(),
+            child2.getOutputColumn(), allocateColumn(category), category);
+      } else if (arithmetic != ArithmeticOperator.DIVIDE) {
+        result = new LongArithmeticExpression(arithmetic, child1.getOutputColumn(),
+            child2.getOutputColumn(), allocateColumn(category), category);
+      } else {
+        throw unsupported(expr);
+      }
+      result.setChildExpressions(child1, child2);
+      return result;
+    }
+
+    PrimitiveCategory castCategory = CAST_UDFS.get(udfClass);
+    if (castCategory != null && castCategory == category && children.size() == 1) {
+      VectorExpression child = getVectorExpression(children.get(0));
+      VectorExpression result = new CastExpression(child.getOutputColumn(),
+          allocateColumn(category), category);
+      result.setChildExpressions(child);
+      return result;
+    }
+    throw unsupported(expr);
+  }
+
+  /**
+   * Compile an expression, converted to a double if asked.
+   */
+  private VectorExpression getVectorExpression(ExprNodeDesc expr, boolean toDouble)
+      throws HiveException {
+    VectorExpression result = getVectorExpression(expr);
+    if (!toDouble || isDouble(getCategory(result))) {
+      return result;
+    }
+    VectorExpression cast = new CastExpression(result.getOutputColumn(),
+        allocateColumn(PrimitiveCategory.DOUBLE), PrimitiveCategory.DOUBLE);
+    cast.setChildExpressions(result);
+    return cast;
+  }
+
+  private PrimitiveCategory getCategory(VectorExpression expr) {
+    return columnCategories.get(expr.getOutputColumn());
+  }
+
+  private VectorExpression getConstantExpression(ExprNodeConstantDesc expr,
+      PrimitiveCategory category) throws HiveException {
+    Object value = expr.getValue();
+    ConstantExpression constant;
+    if (value instanceof Boolean) {
+      constant = new ConstantExpression(allocateColumn(category),
+          ((Boolean) value).booleanValue() ? 1L : 0L);
+    } else if (!(value instanceof Number)) {
+      throw unsupported(expr);
+    } else if (isDouble(category)) {
+      constant = new ConstantExpression(allocateColumn(category), ((Number) value).doubleValue());
+    } else {
+      constant = new ConstantExpression(allocateColumn(category), ((Number) value).longValue());
+    }
+    constants.add(constant);
+    return constant;
+  }
+
+  /**
+   * Compile a predicate into a filter of the rows of the batch.
+   */
+  public VectorExpression getFilterExpression(ExprNodeDesc expr) throws HiveException {
+    if (expr instanceof ExprNodeColumnDesc) {
+      int column = getInputColumn((ExprNodeColumnDesc) expr);
+      if (columnCategories.get(column) != PrimitiveCategory.BOOLEAN) {
+        throw unsupported(expr);
+      }
+      return new FilterColumn(FilterColumn.Condition.IS_TRUE, column);
+    }
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      throw unsupported(expr);
+    }
+
+    ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) expr;
+    List<ExprNodeDesc> children = func.getChildExprs();
+    GenericUDF udf = func.getGenericUDF();
+    if (udf instanceof GenericUDFOPAnd || udf instanceof GenericUDFOPOr) {
+      VectorExpression[] filters = new VectorExpression[children.size()];
+      for (int i = 0; i < filters.length; i++) {
+        filters[i] = getFilterExpression(children.get(i));
+      }
+      return udf instanceof GenericUDFOPAnd ? new FilterAnd(filters) : new FilterOr(filters);
+    }
+    if (udf instanceof GenericUDFOPNot && children.size() == 1) {
+      return getNegatedFilterExpression(children.get(0));
+    }
+    if (udf instanceof GenericUDFOPNull || udf instanceof GenericUDFOPNotNull) {
+      return getNullFilterExpression(children.get(0), udf instanceof GenericUDFOPNull);
+    }
+    CompareOperator compare = COMPARE_UDFS.get(udf.getClass());
+    if (compare != null && children.size() == 2) {
+      return getCompareExpression(compare, children.get(0), children.get(1));
+    }
+    throw unsupported(expr);
+  }
+
+  /**
+   * not is supported on comparisons and null checks, which it inverts: a row where the values
+   * compared are null is filtered out either way.
+   */
+  private VectorExpression getNegatedFilterExpression(ExprNodeDesc expr) throws HiveException {
+    if (expr instanceof ExprNodeGenericFuncDesc) {
+      ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) expr;
+      List<ExprNodeDesc> children = func.getChildExprs();
+      GenericUDF udf = func.getGenericUDF();
+      if (udf instanceof GenericUDFOPNull || udf instanceof GenericUDFOPNotNull) {
+        return getNullFilterExpression(children.get(0), udf instanceof GenericUDFOPNotNull);
+      }
+      CompareOperator compare = COMPARE_UDFS.get(udf.getClass());
+      if (compare != null && children.size() == 2) {
+        return getCompareExpression(compare.negate(), children.get(0), children.get(1));
+      }
+    }
+    throw unsupported(expr);
+  }
+
+  private VectorExpression getNullFilterExpression(ExprNodeDesc expr, boolean isNull)
+      throws HiveException {
+    VectorExpression child = getVectorExpression(expr);
+    VectorExpression result = new FilterColumn(isNull ? FilterColumn.Condition.IS_NULL
+        : FilterColumn.Condition.IS_NOT_NULL, child.getOutputColumn());
+    result.setChildExpressions(child);
+    return result;
+  }
+
+  private VectorExpression getCompareExpression(CompareOperator compare, ExprNodeDesc left,
+      ExprNodeDesc right) throws HiveException {
+    PrimitiveCategory leftCategory = getVectorCategory(left.getTypeInfo());
+    PrimitiveCategory rightCategory = getVectorCategory(right.getTypeInfo());
+    if (leftCategory == null || rightCategory == null
+        || (leftCategory == PrimitiveCategory.BOOLEAN) != (rightCategory == PrimitiveCategory.BOOLEAN)) {
+      throw new HiveException("Comparison of " + left.getExprString() + " and "
+          + right.getExprString() + " is not supported in vectorized mode");
+    }
+    boolean isDouble = isDouble(leftCategory) || isDouble(rightCategory);
+    VectorExpression child1 = getVectorExpression(left, isDouble);
+    VectorExpression child2 = getVectorExpression(right, isDouble);
+    VectorExpression result;
+    if (isDouble) {
+      result = new FilterDoubleCompare(compare, child1.getOutputColumn(),
+          child2.getOutputColumn());
+    } else {
+      result = new FilterLongCompare(compare, child1.getOutputColumn(), child2.getOutputColumn());
+    }
+    result.setChildExpressions(child1, child2);
+    return result;
+  }
+
+  /**
+   * @return whether the expression can be compiled, as a filter or as a value
+   */
+  public static boolean isSupported(ExprNodeDesc expr, boolean filter) {
+    try {
+      VectorizationContext context = new VectorizationContext();
+      if (filter) {
+        context.getFilterExpression(expr);
+      } else {
+        context.getVectorExpression(expr);
+      }
+      return true;
+    } catch (HiveException e) {
+      return false;
+    }
+  }
+}
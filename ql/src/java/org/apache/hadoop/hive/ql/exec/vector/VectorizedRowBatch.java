@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * VectorizedRowBatch.
+ *
+ * A batch of rows passed between the vectorized operators, as one column vector per field of the
+ * row of the operator, followed by the scratch columns of the expressions of the operators. A
+ * column of a type which is not vectorized is null.
+ *
+ * When selectedInUse is set, the rows of the batch are the first size positions of selected, and
+ * the others were filtered out. Otherwise the rows are the positions 0 to size - 1.
+ *
+ * A batch is the value of the record readers which read a split a batch of rows at a time, so it
+ * is a Writable, but it is only passed in memory and is never serialized.
+ */
+public class VectorizedRowBatch implements Writable {
+
+  public static final int DEFAULT_SIZE = 1024;
+
+  public ColumnVector[] cols;
+  public int size;
+  public final int[] selected;
+  public boolean selectedInUse;
+
+  public VectorizedRowBatch(int numCols) {
+    cols = new ColumnVector[numCols];
+    selected = new int[DEFAULT_SIZE];
+  }
+
+  /**
+   * Install columns from the given position, growing the columns if needed.
+   */
+  public void setColumns(int position, ColumnVector[] columns) {
+    if (cols.length < position + columns.length) {
+      ColumnVector[] newCols = new ColumnVector[position + columns.length];
+      System.arraycopy(cols, 0, newCols, 0, cols.length);
+      cols = newCols;
+    }
+    System.arraycopy(columns, 0, cols, position, columns.length);
+  }
+
+  /**
+   * Start a new batch.
+   */
+  public void reset() {
+    size = 0;
+    selectedInUse = false;
+    for (ColumnVector col : cols) {
+      if (col != null) {
+        col.reset();
+      }
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    throw new UnsupportedOperationException("A batch of rows is not serialized");
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    throw new UnsupportedOperationException("A batch of rows is not serialized");
+  }
+}
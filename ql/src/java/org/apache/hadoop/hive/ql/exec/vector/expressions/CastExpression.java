@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+
+/**
+ * CastExpression.
+ *
+ * Convert a numeric column to a numeric type, with the rounding and wrap around of the java
+ * casts, as the conversion UDFs do.
+ */
+public class CastExpression extends VectorExpression {
+
+  private final int inputColumn;
+  private final int outputColumn;
+  private final PrimitiveCategory outputCategory;
+
+  public CastExpression(int inputColumn, int outputColumn, PrimitiveCategory outputCategory) {
+    this.inputColumn = inputColumn;
+    this.outputColumn = outputColumn;
+    this.outputCategory = outputCategory;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+    ColumnVector input = batch.cols[inputColumn];
+    ColumnVector output = batch.cols[outputColumn];
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+
+    if (input instanceof LongColumnVector) {
+      long[] v = ((LongColumnVector) input).vector;
+      if (output instanceof DoubleColumnVector) {
+        double[] r = ((DoubleColumnVector) output).vector;
+        for (int j = 0; j < n; j++) {
+          int i = useSel ? sel[j] : j;
+          r[i] = v[i];
+        }
+        narrow(batch, r, outputCategory);
+      } else {
+        long[] r = ((LongColumnVector) output).vector;
+        System.arraycopy(v, 0, r, 0, v.length);
+        narrow(batch, r, outputCategory);
+      }
+    } else {
+      double[] v = ((DoubleColumnVector) input).vector;
+      if (output instanceof DoubleColumnVector) {
+        double[] r = ((DoubleColumnVector) output).vector;
+        System.arraycopy(v, 0, r, 0, v.length);
+        narrow(batch, r, outputCategory);
+      } else {
+        long[] r = ((LongColumnVector) output).vector;
+        // a double is cast to a smaller type through an int, as java does
+        boolean isLong = outputCategory == PrimitiveCategory.LONG;
+        for (int j = 0; j < n; j++) {
+          int i = useSel ? sel[j] : j;
+          r[i] = isLong ? (long) v[i] : (int) v[i];
+        }
+        narrow(batch, r, outputCategory);
+      }
+    }
+    propagateNulls(batch, output, input, null);
+  }
+
+  /**
+   * Wrap the values of the rows around the range of a smaller integer type.
+   */
+  static void narrow(VectorizedRowBatch batch, long[] r, PrimitiveCategory category) {
+    if (category == PrimitiveCategory.LONG) {
+      return;
+    }
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+    switch (category) {
+    case INT:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        r[i] = (int) r[i];
+      }
+      break;
+    case SHORT:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        r[i] = (short) r[i];
+      }
+      break;
+    case BYTE:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        r[i] = (byte) r[i];
+      }
+      break;
+    default:
+      break;
+    }
+  }
+
+  /**
+   * Round the values of the rows to floats.
+   */
+  static void narrow(VectorizedRowBatch batch, double[] r, PrimitiveCategory category) {
+    if (category != PrimitiveCategory.FLOAT) {
+      return;
+    }
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+    for (int j = 0; j < n; j++) {
+      int i = useSel ? sel[j] : j;
+      r[i] = (float) r[i];
+    }
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return outputColumn;
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * ConstantExpression.
+ *
+ * A numeric constant. Its scratch column is filled once with the value when it is created, so
+ * that the operators of the other expressions only deal with columns.
+ */
+public class ConstantExpression extends VectorExpression {
+
+  private final int outputColumn;
+  private final boolean isDouble;
+  private final long longValue;
+  private final double doubleValue;
+
+  public ConstantExpression(int outputColumn, long value) {
+    this.outputColumn = outputColumn;
+    isDouble = false;
+    longValue = value;
+    doubleValue = 0;
+  }
+
+  public ConstantExpression(int outputColumn, double value) {
+    this.outputColumn = outputColumn;
+    isDouble = true;
+    longValue = 0;
+    doubleValue = value;
+  }
+
+  /**
+   * Fill the scratch column of the constant.
+   */
+  public void fill(ColumnVector column) {
+    if (isDouble) {
+      Arrays.fill(((DoubleColumnVector) column).vector, doubleValue);
+    } else {
+      Arrays.fill(((LongColumnVector) column).vector, longValue);
+    }
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return outputColumn;
+  }
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * FilterAnd.
+ *
+ * Keep the rows where all the child filters are true: each filter only sees the rows the previous
+ * ones kept.
+ */
+public class FilterAnd extends VectorExpression {
+
+  public FilterAnd(VectorExpression... filters) {
+    setChildExpressions(filters);
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    for (VectorExpression filter : childExpressions) {
+      if (batch.size == 0) {
+        return;
+      }
+      filter.evaluate(batch);
+    }
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
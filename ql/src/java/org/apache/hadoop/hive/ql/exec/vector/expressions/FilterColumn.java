@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * FilterColumn.
+ *
+ * Keep the rows where a column is null, is not null, or where a boolean column is true.
+ */
+public class FilterColumn extends VectorExpression {
+
+  /**
+   * The condition on the column.
+   */
+  public static enum Condition {
+    IS_NULL, IS_NOT_NULL, IS_TRUE
+  }
+
+  private final Condition condition;
+  private final int column;
+
+  public FilterColumn(Condition condition, int column) {
+    this.condition = condition;
+    this.column = column;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+    ColumnVector input = batch.cols[column];
+    if (condition != Condition.IS_NULL) {
+      filterNulls(batch, input);
+      if (condition == Condition.IS_NOT_NULL) {
+        return;
+      }
+    }
+
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+    int newSize = 0;
+    if (condition == Condition.IS_NULL) {
+      if (input.noNulls) {
+        batch.size = 0;
+        return;
+      }
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (input.isNull[i]) {
+          sel[newSize++] = i;
+        }
+      }
+    } else {
+      long[] v = ((LongColumnVector) input).vector;
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (v[i] != 0) {
+          sel[newSize++] = i;
+        }
+      }
+    }
+    batch.size = newSize;
+    batch.selectedInUse = true;
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
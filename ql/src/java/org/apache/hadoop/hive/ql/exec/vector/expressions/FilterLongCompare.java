@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * FilterLongCompare.
+ *
+ * Keep the rows where the comparison of two integer or boolean columns is true.
+ */
+public class FilterLongCompare extends VectorExpression {
+
+  private final CompareOperator operator;
+  private final int column1;
+  private final int column2;
+
+  public FilterLongCompare(CompareOperator operator, int column1, int column2) {
+    this.operator = operator;
+    this.column1 = column1;
+    this.column2 = column2;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+    LongColumnVector input1 = (LongColumnVector) batch.cols[column1];
+    LongColumnVector input2 = (LongColumnVector) batch.cols[column2];
+    filterNulls(batch, input1);
+    filterNulls(batch, input2);
+    long[] v1 = input1.vector;
+    long[] v2 = input2.vector;
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+    int newSize = 0;
+
+    switch (operator) {
+    case EQUAL:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (v1[i] == v2[i]) {
+          sel[newSize++] = i;
+        }
+      }
+      break;
+    case NOT_EQUAL:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (v1[i] != v2[i]) {
+          sel[newSize++] = i;
+        }
+      }
+      break;
+    case LESS:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (v1[i] < v2[i]) {
+          sel[newSize++] = i;
+        }
+      }
+      break;
+    case LESS_EQUAL:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (v1[i] <= v2[i]) {
+          sel[newSize++] = i;
+        }
+      }
+      break;
+    case GREATER:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (v1[i] > v2[i]) {
+          sel[newSize++] = i;
+        }
+      }
+      break;
+    default:
+      for (int j = 0; j < n; j++) {
+        int i = useSel ? sel[j] : j;
+        if (v1[i] >= v2[i]) {
+          sel[newSize++] = i;
+        }
+      }
+      break;
+    }
+    batch.size = newSize;
+    batch.selectedInUse = true;
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
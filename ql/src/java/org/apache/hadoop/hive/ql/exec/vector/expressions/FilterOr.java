@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * FilterOr.
+ *
+ * Keep the rows where one of the child filters is true. Each filter is evaluated on the rows the
+ * previous ones did not keep, and the kept rows are merged back in their original order.
+ */
+public class FilterOr extends VectorExpression {
+
+  private final int[] initialSelected = new int[VectorizedRowBatch.DEFAULT_SIZE];
+  private final int[] remaining = new int[VectorizedRowBatch.DEFAULT_SIZE];
+  private final boolean[] kept = new boolean[VectorizedRowBatch.DEFAULT_SIZE];
+
+  public FilterOr(VectorExpression... filters) {
+    setChildExpressions(filters);
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    int n = batch.size;
+    if (n == 0) {
+      return;
+    }
+    int[] sel = batch.selected;
+    if (batch.selectedInUse) {
+      System.arraycopy(sel, 0, initialSelected, 0, n);
+    } else {
+      for (int i = 0; i < n; i++) {
+        initialSelected[i] = i;
+      }
+    }
+    Arrays.fill(kept, false);
+
+    int numRemaining = n;
+    System.arraycopy(initialSelected, 0, remaining, 0, n);
+    for (VectorExpression filter : childExpressions) {
+      System.arraycopy(remaining, 0, sel, 0, numRemaining);
+      batch.size = numRemaining;
+      batch.selectedInUse = true;
+      filter.evaluate(batch);
+      for (int j = 0; j < batch.size; j++) {
+        kept[sel[j]] = true;
+      }
+
+      numRemaining = 0;
+      for (int j = 0; j < n; j++) {
+        int i = initialSelected[j];
+        if (!kept[i]) {
+          remaining[numRemaining++] = i;
+        }
+      }
+      if (numRemaining == 0) {
+        break;
+      }
+    }
+
+    int newSize = 0;
+    for (int j = 0; j < n; j++) {
+      int i = initialSelected[j];
+      if (kept[i]) {
+        sel[newSize++] = i;
+      }
+    }
+    batch.size = newSize;
+    batch.selectedInUse = true;
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return -1;
+  }
+}
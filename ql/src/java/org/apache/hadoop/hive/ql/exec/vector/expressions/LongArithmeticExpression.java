@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+
+/**
+ * LongArithmeticExpression.
+ *
+ * Add, subtract or multiply two integer columns. The result wraps around like the one of the
+ * integer type of the expression.
+ */
+public class LongArithmeticExpression extends VectorExpression {
+
+  private final ArithmeticOperator operator;
+  private final int column1;
+  private final int column2;
+  private final int outputColumn;
+  private final PrimitiveCategory outputCategory;
+
+  public LongArithmeticExpression(ArithmeticOperator operator, int column1, int column2,
+      int outputColumn, PrimitiveCategory outputCategory) {
+    if (operator == ArithmeticOperator.DIVIDE) {
+      throw new IllegalArgumentException("The division of integers is a double");
+    }
+    this.operator = operator;
+    this.column1 = column1;
+    this.column2 = column2;
+    this.outputColumn = outputColumn;
+    this.outputCategory = outputCategory;
+  }
+
+  @Override
+  public void evaluate(VectorizedRowBatch batch) {
+    evaluateChildren(batch);
+    LongColumnVector input1 = (LongColumnVector) batch.cols[column1];
+    LongColumnVector input2 = (LongColumnVector) batch.cols[column2];
+    LongColumnVector output = (LongColumnVector) batch.cols[outputColumn];
+    long[] v1 = input1.vector;
+    long[] v2 = input2.vector;
+    long[] r = output.vector;
+    int n = batch.size;
+    int[] sel = batch.selected;
+
+    if (batch.selectedInUse) {
+      switch (operator) {
+      case ADD:
+        for (int j = 0; j < n; j++) {
+          int i = sel[j];
+          r[i] = v1[i] + v2[i];
+        }
+        break;
+      case SUBTRACT:
+        for (int j = 0; j < n; j++) {
+          int i = sel[j];
+          r[i] = v1[i] - v2[i];
+        }
+        break;
+      default:
+        for (int j = 0; j < n; j++) {
+          int i = sel[j];
+          r[i] = v1[i] * v2[i];
+        }
+        break;
+      }
+    } else {
+      switch (operator) {
+      case ADD:
+        for (int i = 0; i < n; i++) {
+          r[i] = v1[i] + v2[i];
+        }
+        break;
+      case SUBTRACT:
+        for (int i = 0; i < n; i++) {
+          r[i] = v1[i] - v2[i];
+        }
+        break;
+      default:
+        for (int i = 0; i < n; i++) {
+          r[i] = v1[i] * v2[i];
+        }
+        break;
+      }
+    }
+    CastExpression.narrow(batch, r, outputCategory);
+    propagateNulls(batch, output, input1, input2);
+  }
+
+  @Override
+  public int getOutputColumn() {
+    return outputColumn;
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector.expressions;
+
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * VectorExpression.
+ *
+ * An expression evaluated on all the rows of a batch at once. A value expression writes its
+ * result to its output column, after evaluating its children into theirs. A filter expression
+ * has no output column: it removes the rows for which it is not true from the selected rows of
+ * the batch.
+ */
+public abstract class VectorExpression {
+
+  protected VectorExpression[] childExpressions;
+
+  public void setChildExpressions(VectorExpression... childExpressions) {
+    this.childExpressions = childExpressions;
+  }
+
+  public abstract void evaluate(VectorizedRowBatch batch);
+
+  /**
+   * @return the column of the result, or -1 for a filter
+   */
+  public abstract int getOutputColumn();
+
+  protected void evaluateChildren(VectorizedRowBatch batch) {
+    if (childExpressions != null) {
+      for (VectorExpression child : childExpressions) {
+        child.evaluate(batch);
+      }
+    }
+  }
+
+  /**
+   * The output of an expression is null where one of its inputs is.
+   */
+  protected static void propagateNulls(VectorizedRowBatch batch, ColumnVector output,
+      ColumnVector input1, ColumnVector input2) {
+    output.noNulls = input1.noNulls && (input2 == null || input2.noNulls);
+    if (output.noNulls) {
+      return;
+    }
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+    for (int j = 0; j < n; j++) {
+      int i = useSel ? sel[j] : j;
+      output.isNull[i] = (!input1.noNulls && input1.isNull[i])
+          || (input2 != null && !input2.noNulls && input2.isNull[i]);
+    }
+  }
+
+  /**
+   * Remove the rows where the column is null from the selected rows.
+   */
+  protected static void filterNulls(VectorizedRowBatch batch, ColumnVector column) {
+    if (column.noNulls) {
+      return;
+    }
+    int n = batch.size;
+    int[] sel = batch.selected;
+    boolean useSel = batch.selectedInUse;
+    int newSize = 0;
+    for (int j = 0; j < n; j++) {
+      int i = useSel ? sel[j] : j;
+      if (!column.isNull[i]) {
+        sel[newSize++] = i;
+      }
+    }
+    batch.size = newSize;
+    batch.selectedInUse = true;
+  }
+}
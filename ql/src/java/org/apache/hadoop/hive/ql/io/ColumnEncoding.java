@@ -0,0 +1,433 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * ColumnEncoding.
+ *
+ * The lightweight encodings the {@link RCFile.Writer} can store the values of
+ * a column of a row group with, before the block compression. The writer
+ * picks the encoding that makes the values smallest:
+ *
+ * <ul>
+ * <li>PLAIN: the serialized values one after the other.</li>
+ * <li>DICTIONARY: the number of distinct values, each distinct value as a
+ * vint length and its bytes, then the vint code of each value.</li>
+ * <li>RUN_LENGTH: for each run of equal values, the vint length of the run
+ * and the value once.</li>
+ * <li>DELTA: the integers written as text or as vlongs, as the text and the
+ * binary SerDes do, kept as the vlong difference from the previous integer,
+ * preceded by a byte telling which of the two forms the values were
+ * in.</li>
+ * </ul>
+ *
+ * The encodings are lossless on the serialized bytes, so the reader gives
+ * back exactly the values that were written, whatever the SerDe. The length
+ * of each value is kept in the key as for the plain values; empty values are
+ * left out of the delta encoded integers.
+ */
+public class ColumnEncoding {
+
+  public static final byte PLAIN = 0;
+  public static final byte DICTIONARY = 1;
+  public static final byte RUN_LENGTH = 2;
+  public static final byte DELTA = 3;
+
+  private static final byte DELTA_TEXT = 0;
+  private static final byte DELTA_VLONG = 1;
+
+  // the longest decimal integers the delta encoding parses, so that they
+  // cannot overflow a long
+  private static final int MAX_DECIMAL_DIGITS = 18;
+
+  private final Map<ByteBuffer, Integer> dictionary = new HashMap<ByteBuffer, Integer>();
+  private int[] codes = new int[0];
+  private long[] integers = new long[0];
+
+  /**
+   * Encodes the values of a column in one row group with the encoding that
+   * stores them in the fewest bytes.
+   *
+   * @param data
+   *          the values one after the other
+   * @param lengths
+   *          the length of each value
+   * @param count
+   *          the number of values
+   * @param length
+   *          the number of bytes of the values
+   * @param out
+   *          receives the encoded values, unless the values are left plain
+   * @return the encoding of the values in <code>out</code>, or PLAIN if no
+   *         encoding makes them smaller
+   */
+  public byte encode(byte[] data, int[] lengths, int count, int length,
+      NonSyncDataOutputBuffer out) throws IOException {
+    if (count == 0) {
+      return PLAIN;
+    }
+    if (codes.length < count) {
+      codes = new int[count];
+      integers = new long[count];
+    }
+
+    byte encoding = PLAIN;
+    long best = length;
+    long size = getRunLengthSize(data, lengths, count);
+    if (size < best) {
+      encoding = RUN_LENGTH;
+      best = size;
+    }
+    size = getDictionarySize(data, lengths, count);
+    if (size < best) {
+      encoding = DICTIONARY;
+      best = size;
+    }
+    byte form = DELTA_TEXT;
+    if (parseDecimals(data, lengths, count)) {
+      size = getDeltaSize(lengths, count);
+    } else if (parseVLongs(data, lengths, count)) {
+      form = DELTA_VLONG;
+      size = getDeltaSize(lengths, count);
+    } else {
+      size = Long.MAX_VALUE;
+    }
+    if (size < best) {
+      encoding = DELTA;
+    }
+
+    out.reset();
+    switch (encoding) {
+    case RUN_LENGTH:
+      writeRunLength(data, lengths, count, out);
+      break;
+    case DICTIONARY:
+      writeDictionary(data, lengths, count, out);
+      break;
+    case DELTA:
+      // the integers of the chosen form are still parsed, as the vlong form
+      // is only tried when the text one fails
+      writeDelta(form, lengths, count, out);
+      break;
+    default:
+      break;
+    }
+    dictionary.clear();
+    return encoding;
+  }
+
+  private static boolean equal(byte[] data, int start1, int start2, int length) {
+    for (int i = 0; i < length; i++) {
+      if (data[start1 + i] != data[start2 + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long getRunLengthSize(byte[] data, int[] lengths, int count) {
+    long size = 0;
+    int start = 0;
+    for (int i = 0; i < count;) {
+      int runStart = start;
+      int len = lengths[i];
+      int run = 1;
+      start += len;
+      i++;
+      while (i < count && lengths[i] == len && equal(data, runStart, start, len)) {
+        start += len;
+        run++;
+        i++;
+      }
+      size += WritableUtils.getVIntSize(run) + len;
+    }
+    return size;
+  }
+
+  private static void writeRunLength(byte[] data, int[] lengths, int count,
+      NonSyncDataOutputBuffer out) throws IOException {
+    int start = 0;
+    for (int i = 0; i < count;) {
+      int runStart = start;
+      int len = lengths[i];
+      int run = 1;
+      start += len;
+      i++;
+      while (i < count && lengths[i] == len && equal(data, runStart, start, len)) {
+        start += len;
+        run++;
+        i++;
+      }
+      WritableUtils.writeVInt(out, run);
+      out.write(data, runStart, len);
+    }
+  }
+
+  /**
+   * Builds the dictionary and the code of each value, and returns the size
+   * of the dictionary encoded values, or Long.MAX_VALUE if there are too many
+   * distinct values for the dictionary to pay.
+   */
+  private long getDictionarySize(byte[] data, int[] lengths, int count) {
+    dictionary.clear();
+    int maxSize = count / 2;
+    long size = 0;
+    int start = 0;
+    for (int i = 0; i < count; i++) {
+      ByteBuffer value = ByteBuffer.wrap(data, start, lengths[i]);
+      Integer code = dictionary.get(value);
+      if (code == null) {
+        if (dictionary.size() >= maxSize) {
+          return Long.MAX_VALUE;
+        }
+        code = dictionary.size();
+        dictionary.put(value, code);
+        size += WritableUtils.getVIntSize(lengths[i]) + lengths[i];
+      }
+      codes[i] = code;
+      size += WritableUtils.getVIntSize(code);
+      start += lengths[i];
+    }
+    return size + WritableUtils.getVIntSize(dictionary.size());
+  }
+
+  private void writeDictionary(byte[] data, int[] lengths, int count,
+      NonSyncDataOutputBuffer out) throws IOException {
+    WritableUtils.writeVInt(out, dictionary.size());
+    // the distinct values in the order of their codes: the first occurrence
+    // of each value, as the codes were given in that order
+    int nextCode = 0;
+    int start = 0;
+    for (int i = 0; i < count && nextCode < dictionary.size(); i++) {
+      if (codes[i] == nextCode) {
+        WritableUtils.writeVInt(out, lengths[i]);
+        out.write(data, start, lengths[i]);
+        nextCode++;
+      }
+      start += lengths[i];
+    }
+    for (int i = 0; i < count; i++) {
+      WritableUtils.writeVInt(out, codes[i]);
+    }
+  }
+
+  /**
+   * Parses all the non-empty values as decimal integers written the way
+   * Long.toString writes them.
+   */
+  private boolean parseDecimals(byte[] data, int[] lengths, int count) {
+    boolean any = false;
+    int start = 0;
+    for (int i = 0; i < count; i++) {
+      int len = lengths[i];
+      if (len > 0) {
+        if (!parseDecimal(data, start, len, i)) {
+          return false;
+        }
+        any = true;
+      }
+      start += len;
+    }
+    return any;
+  }
+
+  private boolean parseDecimal(byte[] data, int start, int len, int index) {
+    int i = start;
+    int end = start + len;
+    boolean negative = data[i] == '-';
+    if (negative) {
+      i++;
+    }
+    int digits = end - i;
+    if (digits == 0 || digits > MAX_DECIMAL_DIGITS) {
+      return false;
+    }
+    // no leading zeros and no negative zero, so the value is written back
+    // exactly as it was
+    if (data[i] == '0' && (digits > 1 || negative)) {
+      return false;
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = data[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return false;
+      }
+      value = value * 10 + digit;
+    }
+    integers[index] = negative ? -value : value;
+    return true;
+  }
+
+  /**
+   * Parses all the non-empty values as vlongs written the way
+   * WritableUtils.writeVLong writes them.
+   */
+  private boolean parseVLongs(byte[] data, int[] lengths, int count) {
+    boolean any = false;
+    int start = 0;
+    for (int i = 0; i < count; i++) {
+      int len = lengths[i];
+      if (len > 0) {
+        byte first = data[start];
+        if (WritableUtils.decodeVIntSize(first) != len) {
+          return false;
+        }
+        long value;
+        if (len == 1) {
+          value = first;
+        } else {
+          value = 0;
+          for (int j = 1; j < len; j++) {
+            value = (value << 8) | (data[start + j] & 0xFF);
+          }
+          if (WritableUtils.isNegativeVInt(first)) {
+            value = ~value;
+          }
+        }
+        if (WritableUtils.getVIntSize(value) != len) {
+          return false;
+        }
+        integers[i] = value;
+        any = true;
+      }
+      start += len;
+    }
+    return any;
+  }
+
+  private long getDeltaSize(int[] lengths, int count) {
+    long size = 1;
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      if (lengths[i] > 0) {
+        size += WritableUtils.getVIntSize(integers[i] - previous);
+        previous = integers[i];
+      }
+    }
+    return size;
+  }
+
+  private void writeDelta(byte form, int[] lengths, int count,
+      NonSyncDataOutputBuffer out) throws IOException {
+    out.writeByte(form);
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      if (lengths[i] > 0) {
+        WritableUtils.writeVLong(out, integers[i] - previous);
+        previous = integers[i];
+      }
+    }
+  }
+
+  /**
+   * Decodes the values of a column in one row group.
+   *
+   * @param encoding
+   *          the encoding of the values
+   * @param data
+   *          the encoded values
+   * @param length
+   *          the number of bytes of the encoded values
+   * @param lengths
+   *          the length of each decoded value
+   * @param count
+   *          the number of values
+   * @param out
+   *          receives the values one after the other
+   */
+  public static void decode(byte encoding, byte[] data, int length,
+      int[] lengths, int count, NonSyncDataOutputBuffer out) throws IOException {
+    NonSyncDataInputBuffer in = new NonSyncDataInputBuffer();
+    in.reset(data, length);
+    out.reset();
+    switch (encoding) {
+    case PLAIN:
+      out.write(data, 0, length);
+      break;
+    case DICTIONARY: {
+      int size = WritableUtils.readVInt(in);
+      int[] starts = new int[size];
+      int[] valueLengths = new int[size];
+      for (int code = 0; code < size; code++) {
+        valueLengths[code] = WritableUtils.readVInt(in);
+        starts[code] = in.getPosition();
+        in.skipBytes(valueLengths[code]);
+      }
+      for (int i = 0; i < count; i++) {
+        int code = WritableUtils.readVInt(in);
+        out.write(data, starts[code], valueLengths[code]);
+      }
+      break;
+    }
+    case RUN_LENGTH:
+      for (int i = 0; i < count;) {
+        int run = WritableUtils.readVInt(in);
+        int start = in.getPosition();
+        int len = lengths[i];
+        for (int j = 0; j < run; j++) {
+          out.write(data, start, len);
+        }
+        in.skipBytes(len);
+        i += run;
+      }
+      break;
+    case DELTA: {
+      byte form = in.readByte();
+      byte[] digits = new byte[MAX_DECIMAL_DIGITS + 1];
+      long value = 0;
+      for (int i = 0; i < count; i++) {
+        if (lengths[i] == 0) {
+          continue;
+        }
+        value += WritableUtils.readVLong(in);
+        if (form == DELTA_VLONG) {
+          WritableUtils.writeVLong(out, value);
+        } else {
+          writeDecimal(value, digits, out);
+        }
+      }
+      break;
+    }
+    default:
+      throw new IOException("Unknown RCFile column encoding " + encoding);
+    }
+  }
+
+  private static void writeDecimal(long value, byte[] digits, NonSyncDataOutputBuffer out)
+      throws IOException {
+    if (value < 0) {
+      out.write('-');
+      value = -value;
+    }
+    int pos = digits.length;
+    do {
+      digits[--pos] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+    out.write(digits, pos, digits.length - pos);
+  }
+}
@@ -0,0 +1,372 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * ColumnStatistics.
+ *
+ * The statistics of one column in one row group of an RCFile: the number of
+ * null values and, for the integer, floating point and string columns, the
+ * smallest and the largest value. A null count of -1 means the statistics
+ * are unknown, as for the row groups merged in from files written without
+ * statistics. The statistics of the files with column encodings can also
+ * keep the dictionary of the distinct values of the columns that have few of
+ * them.
+ */
+public class ColumnStatistics implements Writable {
+
+  /**
+   * The kind of values the smallest and largest values are kept for.
+   */
+  public static enum Kind {
+    NONE, LONG, DOUBLE, STRING
+  }
+
+  /**
+   * Strings longer than this are not kept, so that the key part of the row
+   * groups stays small. A row group with such a string has no min and max.
+   */
+  public static final int MAX_STRING_LENGTH = 256;
+
+  /**
+   * The most distinct values kept in the dictionary of a column.
+   */
+  public static final int MAX_DICTIONARY_SIZE = 32;
+
+  private Kind kind;
+  private long nullCount;
+  private boolean hasMinMax;
+  private boolean minMaxDisabled;
+
+  private long minLong;
+  private long maxLong;
+  private double minDouble;
+  private double maxDouble;
+  private final Text minString = new Text();
+  private final Text maxString = new Text();
+
+  private boolean keepDictionary;
+  private boolean hasDictionary;
+  private final Set<Object> dictionary = new HashSet<Object>();
+
+  public ColumnStatistics() {
+    this(Kind.NONE);
+  }
+
+  public ColumnStatistics(Kind kind) {
+    this.kind = kind;
+    reset();
+  }
+
+  /**
+   * Returns statistics that claim nothing about the column.
+   */
+  public static ColumnStatistics unknown() {
+    ColumnStatistics statistics = new ColumnStatistics();
+    statistics.nullCount = -1;
+    return statistics;
+  }
+
+  /**
+   * Keeps the dictionary of the distinct values from now on.
+   */
+  public void keepDictionary() {
+    keepDictionary = true;
+    reset();
+  }
+
+  public void reset() {
+    nullCount = 0;
+    hasMinMax = false;
+    minMaxDisabled = false;
+    dictionary.clear();
+    hasDictionary = keepDictionary && kind != Kind.NONE;
+  }
+
+  private void addToDictionary(Object value) {
+    if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+      hasDictionary = false;
+      dictionary.clear();
+      return;
+    }
+    dictionary.add(value);
+  }
+
+  public void addNull() {
+    nullCount++;
+  }
+
+  public void addLong(long value) {
+    if (hasDictionary && !dictionary.contains(value)) {
+      addToDictionary(value);
+    }
+    if (!hasMinMax) {
+      minLong = value;
+      maxLong = value;
+      hasMinMax = true;
+    } else if (value < minLong) {
+      minLong = value;
+    } else if (value > maxLong) {
+      maxLong = value;
+    }
+  }
+
+  public void addDouble(double value) {
+    // Double.compare as in the comparison UDFs, so NaN is the largest value;
+    // Double.equals agrees with it
+    if (hasDictionary && !dictionary.contains(value)) {
+      addToDictionary(value);
+    }
+    if (!hasMinMax) {
+      minDouble = value;
+      maxDouble = value;
+      hasMinMax = true;
+    } else if (Double.compare(value, minDouble) < 0) {
+      minDouble = value;
+    } else if (Double.compare(value, maxDouble) > 0) {
+      maxDouble = value;
+    }
+  }
+
+  public void addString(Text value) {
+    if (minMaxDisabled) {
+      return;
+    }
+    if (value.getLength() > MAX_STRING_LENGTH) {
+      minMaxDisabled = true;
+      hasMinMax = false;
+      hasDictionary = false;
+      dictionary.clear();
+      return;
+    }
+    if (hasDictionary && !dictionary.contains(value)) {
+      addToDictionary(new Text(value));
+    }
+    if (!hasMinMax) {
+      minString.set(value);
+      maxString.set(value);
+      hasMinMax = true;
+    } else if (value.compareTo(minString) < 0) {
+      minString.set(value);
+    } else if (value.compareTo(maxString) > 0) {
+      maxString.set(value);
+    }
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * @return the number of null values, or -1 if it is unknown
+   */
+  public long getNullCount() {
+    return nullCount;
+  }
+
+  /**
+   * @return whether the smallest and largest values are known
+   */
+  public boolean hasMinMax() {
+    return hasMinMax;
+  }
+
+  public long getMinLong() {
+    return minLong;
+  }
+
+  public long getMaxLong() {
+    return maxLong;
+  }
+
+  public double getMinDouble() {
+    return minDouble;
+  }
+
+  public double getMaxDouble() {
+    return maxDouble;
+  }
+
+  public Text getMinString() {
+    return minString;
+  }
+
+  public Text getMaxString() {
+    return maxString;
+  }
+
+  /**
+   * @return whether the distinct non-null values are known
+   */
+  public boolean hasDictionary() {
+    return hasDictionary;
+  }
+
+  /**
+   * @return the distinct non-null values, as Longs, Doubles or Texts for the
+   *         integer, floating point and string columns
+   */
+  public Set<Object> getDictionary() {
+    return dictionary;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    write(out, false);
+  }
+
+  /**
+   * Writes the statistics, with or without the dictionary. A dictionary that
+   * is not kept is written as unknown.
+   */
+  public void write(DataOutput out, boolean withDictionary) throws IOException {
+    out.writeByte(kind.ordinal());
+    WritableUtils.writeVLong(out, nullCount);
+    out.writeBoolean(hasMinMax);
+    if (hasMinMax) {
+      switch (kind) {
+      case LONG:
+        WritableUtils.writeVLong(out, minLong);
+        WritableUtils.writeVLong(out, maxLong);
+        break;
+      case DOUBLE:
+        out.writeDouble(minDouble);
+        out.writeDouble(maxDouble);
+        break;
+      case STRING:
+        minString.write(out);
+        maxString.write(out);
+        break;
+      default:
+        break;
+      }
+    }
+    if (!withDictionary) {
+      return;
+    }
+    if (!hasDictionary) {
+      WritableUtils.writeVInt(out, -1);
+      return;
+    }
+    WritableUtils.writeVInt(out, dictionary.size());
+    for (Object value : dictionary) {
+      switch (kind) {
+      case LONG:
+        WritableUtils.writeVLong(out, (Long) value);
+        break;
+      case DOUBLE:
+        out.writeDouble((Double) value);
+        break;
+      default:
+        ((Text) value).write(out);
+        break;
+      }
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    readFields(in, false);
+  }
+
+  public void readFields(DataInput in, boolean withDictionary) throws IOException {
+    int ordinal = in.readByte();
+    if (ordinal < 0 || ordinal >= Kind.values().length) {
+      throw new IOException("Unknown column statistics kind " + ordinal);
+    }
+    kind = Kind.values()[ordinal];
+    nullCount = WritableUtils.readVLong(in);
+    hasMinMax = in.readBoolean();
+    minMaxDisabled = false;
+    if (hasMinMax) {
+      switch (kind) {
+      case LONG:
+        minLong = WritableUtils.readVLong(in);
+        maxLong = WritableUtils.readVLong(in);
+        break;
+      case DOUBLE:
+        minDouble = in.readDouble();
+        maxDouble = in.readDouble();
+        break;
+      case STRING:
+        minString.readFields(in);
+        maxString.readFields(in);
+        break;
+      default:
+        hasMinMax = false;
+        break;
+      }
+    }
+    dictionary.clear();
+    hasDictionary = false;
+    if (!withDictionary) {
+      return;
+    }
+    int size = WritableUtils.readVInt(in);
+    for (int i = 0; i < size; i++) {
+      switch (kind) {
+      case LONG:
+        dictionary.add(WritableUtils.readVLong(in));
+        break;
+      case DOUBLE:
+        dictionary.add(in.readDouble());
+        break;
+      default:
+        Text value = new Text();
+        value.readFields(in);
+        dictionary.add(value);
+        break;
+      }
+    }
+    hasDictionary = size >= 0;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(kind).append(" nulls=").append(nullCount);
+    if (hasMinMax) {
+      switch (kind) {
+      case LONG:
+        sb.append(" min=").append(minLong).append(" max=").append(maxLong);
+        break;
+      case DOUBLE:
+        sb.append(" min=").append(minDouble).append(" max=").append(maxDouble);
+        break;
+      default:
+        sb.append(" min=").append(minString).append(" max=").append(maxString);
+        break;
+      }
+    }
+    if (hasDictionary) {
+      sb.append(" dictionary=").append(dictionary);
+    }
+    return sb.toString();
+  }
+}
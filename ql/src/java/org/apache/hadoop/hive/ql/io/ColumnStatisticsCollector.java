@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.Deserializer;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.Serializer;
+import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
+import org.apache.hadoop.hive.serde2.columnar.ColumnarSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ByteObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.FloatObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ShortObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * ColumnStatisticsCollector.
+ *
+ * Collects the {@link ColumnStatistics} of the rows appended to the current
+ * row group of an {@link RCFile.Writer}. The rows are read back with the
+ * table's SerDe, which only parses the fields that are asked for.
+ */
+public class ColumnStatisticsCollector {
+
+  private static final Log LOG = LogFactory.getLog(ColumnStatisticsCollector.class);
+
+  private final Deserializer deserializer;
+  private final StructObjectInspector rowOI;
+  private final StructField[] fields;
+  private final ObjectInspector[] fieldOIs;
+  private final ColumnStatistics[] statistics;
+
+  /**
+   * @param deserializer
+   *          the SerDe the rows were serialized with, initialized to read
+   *          all the columns, or null to only write
+   *          unknown statistics, as the block merge does for the row groups
+   *          of files without statistics
+   * @param columnNumber
+   *          the number of columns of the file
+   */
+  public ColumnStatisticsCollector(Deserializer deserializer, int columnNumber)
+      throws SerDeException {
+    this.deserializer = deserializer;
+    fields = new StructField[columnNumber];
+    fieldOIs = new ObjectInspector[columnNumber];
+    statistics = new ColumnStatistics[columnNumber];
+    if (deserializer == null) {
+      rowOI = null;
+      for (int i = 0; i < columnNumber; i++) {
+        statistics[i] = ColumnStatistics.unknown();
+      }
+      return;
+    }
+
+    rowOI = (StructObjectInspector) deserializer.getObjectInspector();
+    List<? extends StructField> allFields = rowOI.getAllStructFieldRefs();
+    for (int i = 0; i < columnNumber; i++) {
+      if (i >= allFields.size()) {
+        statistics[i] = ColumnStatistics.unknown();
+        continue;
+      }
+      fields[i] = allFields.get(i);
+      fieldOIs[i] = fields[i].getFieldObjectInspector();
+      statistics[i] = new ColumnStatistics(getKind(fieldOIs[i]));
+    }
+  }
+
+  /**
+   * Creates a collector for the rows of a table, or returns null if the
+   * rows of the table cannot be read back, in which case the file is
+   * written without statistics.
+   */
+  public static ColumnStatisticsCollector create(Configuration conf,
+      Properties tableProperties, int columnNumber) {
+    String serdeName = tableProperties.getProperty(Constants.SERIALIZATION_LIB,
+        ColumnarSerDe.class.getName());
+    try {
+      Deserializer deserializer = (Deserializer) ReflectionUtils.newInstance(
+          conf.getClassByName(serdeName), conf);
+      if (!(deserializer instanceof Serializer)
+          || ((Serializer) deserializer).getSerializedClass() != BytesRefArrayWritable.class) {
+        LOG.info("Not collecting RCFile column statistics for " + serdeName);
+        return null;
+      }
+      // the job may have set the columns its own input reads, which would make
+      // the SerDe return null for the others
+      Configuration serdeConf = new Configuration(conf);
+      ColumnProjectionUtils.setFullyReadColumns(serdeConf);
+      deserializer.initialize(serdeConf, tableProperties);
+      return new ColumnStatisticsCollector(deserializer, columnNumber);
+    } catch (Exception e) {
+      LOG.warn("Not collecting RCFile column statistics for " + serdeName, e);
+      return null;
+    }
+  }
+
+  private static ColumnStatistics.Kind getKind(ObjectInspector oi) {
+    if (oi.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+      return ColumnStatistics.Kind.NONE;
+    }
+    switch (((PrimitiveObjectInspector) oi).getPrimitiveCategory()) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return ColumnStatistics.Kind.LONG;
+    case FLOAT:
+    case DOUBLE:
+      return ColumnStatistics.Kind.DOUBLE;
+    case STRING:
+      return ColumnStatistics.Kind.STRING;
+    default:
+      return ColumnStatistics.Kind.NONE;
+    }
+  }
+
+  public void collect(BytesRefArrayWritable row) throws IOException {
+    if (rowOI == null) {
+      return;
+    }
+    Object struct;
+    try {
+      struct = deserializer.deserialize(row);
+    } catch (SerDeException e) {
+      throw new IOException(e);
+    }
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i] == null) {
+        continue;
+      }
+      Object value = rowOI.getStructFieldData(struct, fields[i]);
+      if (value == null) {
+        statistics[i].addNull();
+        continue;
+      }
+      ObjectInspector oi = fieldOIs[i];
+      switch (statistics[i].getKind()) {
+      case LONG:
+        statistics[i].addLong(getLong(oi, value));
+        break;
+      case DOUBLE:
+        statistics[i].addDouble(getDouble(oi, value));
+        break;
+      case STRING:
+        statistics[i].addString(
+            ((StringObjectInspector) oi).getPrimitiveWritableObject(value));
+        break;
+      default:
+        break;
+      }
+    }
+  }
+
+  private static long getLong(ObjectInspector oi, Object value) {
+    switch (((PrimitiveObjectInspector) oi).getPrimitiveCategory()) {
+    case BOOLEAN:
+      return ((BooleanObjectInspector) oi).get(value) ? 1 : 0;
+    case BYTE:
+      return ((ByteObjectInspector) oi).get(value);
+    case SHORT:
+      return ((ShortObjectInspector) oi).get(value);
+    case INT:
+      return ((IntObjectInspector) oi).get(value);
+    default:
+      return ((LongObjectInspector) oi).get(value);
+    }
+  }
+
+  private static double getDouble(ObjectInspector oi, Object value) {
+    if (((PrimitiveObjectInspector) oi).getPrimitiveCategory()
+        == PrimitiveObjectInspector.PrimitiveCategory.FLOAT) {
+      return ((FloatObjectInspector) oi).get(value);
+    }
+    return ((DoubleObjectInspector) oi).get(value);
+  }
+
+  /**
+   * Keeps the dictionary of the distinct values of each column, which the
+   * files with column encodings store.
+   */
+  public void keepDictionaries() {
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i] != null) {
+        statistics[i].keepDictionary();
+      }
+    }
+  }
+
+  /**
+   * @return the statistics of the rows collected since the last reset
+   */
+  public ColumnStatistics[] getStatistics() {
+    return statistics;
+  }
+
+  public void reset() {
+    if (rowOI == null) {
+      return;
+    }
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i] != null) {
+        statistics[i].reset();
+      }
+    }
+  }
+}
@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.io.Text;
+
+/**
+ * ColumnStatisticsFilter.
+ *
+ * Decides from the {@link ColumnStatistics} of an RCFile row group whether
+ * any row of the group can match the filter pushed to the table scan. Only
+ * the comparisons of a column with a constant, IS [NOT] NULL, AND and OR are
+ * looked at; any other expression may match any row. The equality with a
+ * constant is checked against the dictionary of the column when the row
+ * group has one, so that a value missing between the smallest and the
+ * largest one still skips the group.
+ */
+public class ColumnStatisticsFilter {
+
+  private static final int EQUAL = 0;
+  private static final int NOT_EQUAL = 1;
+  private static final int LESS = 2;
+  private static final int LESS_EQUAL = 3;
+  private static final int GREATER = 4;
+  private static final int GREATER_EQUAL = 5;
+
+  private final ExprNodeDesc filterExpr;
+  private final List<String> columnNames;
+
+  public ColumnStatisticsFilter(ExprNodeDesc filterExpr, List<String> columnNames) {
+    this.filterExpr = filterExpr;
+    this.columnNames = columnNames;
+  }
+
+  /**
+   * Creates the filter for the predicate pushed into the job configuration,
+   * or returns null if there is none.
+   */
+  public static ColumnStatisticsFilter create(Configuration conf) {
+    String filterExprSerialized = conf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+    String columns = conf.get(Constants.LIST_COLUMNS);
+    if (filterExprSerialized == null || columns == null) {
+      return null;
+    }
+    ExprNodeDesc filterExpr = Utilities.deserializeExpression(filterExprSerialized, conf);
+    return new ColumnStatisticsFilter(filterExpr, Arrays.asList(columns.split(",")));
+  }
+
+  /**
+   * @param numberRows
+   *          the number of rows in the row group
+   * @param statistics
+   *          the statistics of each column of the row group, or null if
+   *          there are none
+   * @return false if no row of the group can match the filter
+   */
+  public boolean mayMatch(int numberRows, ColumnStatistics[] statistics) {
+    if (statistics == null) {
+      return true;
+    }
+    return mayMatch(filterExpr, numberRows, statistics);
+  }
+
+  private boolean mayMatch(ExprNodeDesc expr, int numberRows,
+      ColumnStatistics[] statistics) {
+    if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+      return true;
+    }
+    GenericUDF udf = ((ExprNodeGenericFuncDesc) expr).getGenericUDF();
+    List<ExprNodeDesc> children = expr.getChildren();
+
+    if (udf instanceof GenericUDFOPAnd) {
+      for (ExprNodeDesc child : children) {
+        if (!mayMatch(child, numberRows, statistics)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (udf instanceof GenericUDFOPOr) {
+      for (ExprNodeDesc child : children) {
+        if (mayMatch(child, numberRows, statistics)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (udf instanceof GenericUDFOPNull || udf instanceof GenericUDFOPNotNull) {
+      ColumnStatistics column = getStatistics(children.get(0), statistics);
+      if (column == null || column.getNullCount() < 0) {
+        return true;
+      }
+      if (udf instanceof GenericUDFOPNull) {
+        return column.getNullCount() > 0;
+      }
+      return column.getNullCount() < numberRows;
+    }
+
+    int operator = getOperator(udf);
+    if (operator < 0 || children.size() != 2) {
+      return true;
+    }
+    ExprNodeDesc left = children.get(0);
+    ExprNodeDesc right = children.get(1);
+    if (left instanceof ExprNodeConstantDesc && right instanceof ExprNodeColumnDesc) {
+      ExprNodeDesc tmp = left;
+      left = right;
+      right = tmp;
+      operator = flip(operator);
+    }
+    if (!(left instanceof ExprNodeColumnDesc) || !(right instanceof ExprNodeConstantDesc)) {
+      return true;
+    }
+    ColumnStatistics column = getStatistics(left, statistics);
+    Object constant = ((ExprNodeConstantDesc) right).getValue();
+    if (column == null || column.getNullCount() < 0 || constant == null) {
+      return true;
+    }
+    if (column.getNullCount() == numberRows) {
+      // comparisons with null are never true
+      return false;
+    }
+    if (operator == EQUAL && column.hasDictionary()) {
+      Boolean found = dictionaryContains(column, constant);
+      if (found != null) {
+        return found;
+      }
+    }
+    if (!column.hasMinMax()) {
+      return true;
+    }
+    Integer cmpMin = compareToMin(column, constant);
+    Integer cmpMax = compareToMax(column, constant);
+    if (cmpMin == null || cmpMax == null) {
+      return true;
+    }
+    switch (operator) {
+    case EQUAL:
+      return cmpMin >= 0 && cmpMax <= 0;
+    case NOT_EQUAL:
+      return cmpMin != 0 || cmpMax != 0;
+    case LESS:
+      return cmpMin > 0;
+    case LESS_EQUAL:
+      return cmpMin >= 0;
+    case GREATER:
+      return cmpMax < 0;
+    default:
+      return cmpMax <= 0;
+    }
+  }
+
+  private ColumnStatistics getStatistics(ExprNodeDesc expr,
+      ColumnStatistics[] statistics) {
+    if (!(expr instanceof ExprNodeColumnDesc)) {
+      return null;
+    }
+    int index = columnNames.indexOf(((ExprNodeColumnDesc) expr).getColumn());
+    if (index < 0 || index >= statistics.length) {
+      // partition and virtual columns are not in the file
+      return null;
+    }
+    return statistics[index];
+  }
+
+  private static int getOperator(GenericUDF udf) {
+    if (udf instanceof GenericUDFOPEqual) {
+      return EQUAL;
+    }
+    if (udf instanceof GenericUDFOPNotEqual) {
+      return NOT_EQUAL;
+    }
+    if (udf instanceof GenericUDFOPLessThan) {
+      return LESS;
+    }
+    if (udf instanceof GenericUDFOPEqualOrLessThan) {
+      return LESS_EQUAL;
+    }
+    if (udf instanceof GenericUDFOPGreaterThan) {
+      return GREATER;
+    }
+    if (udf instanceof GenericUDFOPEqualOrGreaterThan) {
+      return GREATER_EQUAL;
+    }
+    return -1;
+  }
+
+  private static int flip(int operator) {
+    switch (operator) {
+    case LESS:
+      return GREATER;
+    case LESS_EQUAL:
+      return GREATER_EQUAL;
+    case GREATER:
+      return LESS;
+    case GREATER_EQUAL:
+      return LESS_EQUAL;
+    default:
+      return operator;
+    }
+  }
+
+  private static Integer compareToMin(ColumnStatistics column, Object constant) {
+    switch (column.getKind()) {
+    case LONG:
+      return compare(constant, column.getMinLong());
+    case DOUBLE:
+      return compare(constant, column.getMinDouble());
+    case STRING:
+      return compare(constant, column.getMinString());
+    default:
+      return null;
+    }
+  }
+
+  private static Integer compareToMax(ColumnStatistics column, Object constant) {
+    switch (column.getKind()) {
+    case LONG:
+      return compare(constant, column.getMaxLong());
+    case DOUBLE:
+      return compare(constant, column.getMaxDouble());
+    case STRING:
+      return compare(constant, column.getMaxString());
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Returns whether the dictionary of the column has a value equal to the
+   * constant, or null if they cannot be compared.
+   */
+  private static Boolean dictionaryContains(ColumnStatistics column, Object constant) {
+    for (Object value : column.getDictionary()) {
+      Integer cmp;
+      switch (column.getKind()) {
+      case LONG:
+        cmp = compare(constant, ((Long) value).longValue());
+        break;
+      case DOUBLE:
+        cmp = compare(constant, ((Double) value).doubleValue());
+        break;
+      case STRING:
+        cmp = compare(constant, (Text) value);
+        break;
+      default:
+        cmp = null;
+        break;
+      }
+      if (cmp == null) {
+        return null;
+      }
+      if (cmp == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compares the constant with a value of an integer column the way the
+   * comparison UDFs do: as longs, or as doubles if the constant is not an
+   * integer.
+   */
+  private static Integer compare(Object constant, long value) {
+    if (constant instanceof Byte || constant instanceof Short
+        || constant instanceof Integer || constant instanceof Long) {
+      long c = ((Number) constant).longValue();
+      return c < value ? -1 : (c == value ? 0 : 1);
+    }
+    return compare(constant, (double) value);
+  }
+
+  private static Integer compare(Object constant, double value) {
+    if (!(constant instanceof Number)) {
+      return null;
+    }
+    return Double.compare(((Number) constant).doubleValue(), value);
+  }
+
+  private static Integer compare(Object constant, Text value) {
+    if (!(constant instanceof String)) {
+      return null;
+    }
+    return new Text((String) constant).compareTo(value);
+  }
+}
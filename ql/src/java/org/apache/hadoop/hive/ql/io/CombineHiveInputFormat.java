@@ -26,11 +26,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +40,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.Operator;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.parse.SplitSample;
@@ -281,6 +284,8 @@ public class CombineHiveInputFormat<K extends WritableComparable, V extends Writ
     List<Path> inpFiles = new ArrayList<Path>();
     Map<CombinePathInputFormat, CombineFilter> poolMap =
       new HashMap<CombinePathInputFormat, CombineFilter>();
+    // the input paths of every pool, in the order the pools were created
+    Map<CombineFilter, List<Path>> poolPaths = new LinkedHashMap<CombineFilter, List<Path>>();
     Set<Path> poolSet = new HashSet<Path>();
 
     for (Path path : paths) {
@@ -373,21 +378,46 @@ public class CombineHiveInputFormat<K extends WritableComparable, V extends Writ
           if (!mrwork.isMapperCannotSpanPartns()) {
             poolMap.put(new CombinePathInputFormat(opList, inputFormatClassName), f);
           }
+          poolPaths.put(f, new ArrayList<Path>());
         } else {
           LOG.info("CombineHiveInputSplit: pool is already created for " + path +
                    "; using filter path " + filterPath);
           f.addPath(filterPath);
         }
+        poolPaths.get(f).add(path);
       }
     }
 
     // Processing directories
     List<InputSplitShim> iss = new ArrayList<InputSplitShim>();
+    int numThreads = HiveConf.getIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_GENERATION_THREADS);
     if (!mrwork.isMapperCannotSpanPartns()) {
-      iss = Arrays.asList(combine.getSplits(job, 1));
+      if (numThreads > 1 && poolPaths.size() > 1) {
+        // pools are combined independently of each other, so each one can be listed and
+        // combined on its own
+        List<CombineFilter> filters = new ArrayList<CombineFilter>();
+        List<Path[]> inputs = new ArrayList<Path[]>();
+        for (Map.Entry<CombineFilter, List<Path>> pool : poolPaths.entrySet()) {
+          filters.add(pool.getKey());
+          inputs.add(pool.getValue().toArray(new Path[0]));
+        }
+        iss = getSplitsInParallel(job, filters, inputs, numThreads);
+      } else {
+        iss = Arrays.asList(combine.getSplits(job, 1));
+      }
     } else {
-      for (Path path : inpDirs) {
-        processPaths(job, combine, iss, path);
+      if (numThreads > 1 && inpDirs.size() > 1) {
+        List<CombineFilter> filters = new ArrayList<CombineFilter>();
+        List<Path[]> inputs = new ArrayList<Path[]>();
+        for (Path path : inpDirs) {
+          filters.add(null);
+          inputs.add(new Path[] {path});
+        }
+        iss.addAll(getSplitsInParallel(job, filters, inputs, numThreads));
+      } else {
+        for (Path path : inpDirs) {
+          processPaths(job, combine, iss, path);
+        }
       }
 
       if (inpFiles.size() > 0) {
@@ -419,6 +449,41 @@ public class CombineHiveInputFormat<K extends WritableComparable, V extends Writ
     iss.addAll(Arrays.asList(combine.getSplits(currJob, 1)));
   }
 
+  /**
+   * Combine the splits of several groups of input paths concurrently, each group with its own
+   * CombineFileInputFormat, as getSplits keeps state in it. A group whose filter is not null is
+   * combined in a single pool with that filter.
+   *
+   * @return the splits of all the groups, in the order of the groups
+   */
+  private List<InputSplitShim> getSplitsInParallel(final JobConf job,
+      List<CombineFilter> filters, List<Path[]> inputs, int numThreads) throws IOException {
+    LOG.info("Using " + Math.min(numThreads, inputs.size()) + " threads to combine the splits of "
+        + inputs.size() + " groups of paths");
+    List<Callable<InputSplitShim[]>> tasks = new ArrayList<Callable<InputSplitShim[]>>();
+    for (int i = 0; i < inputs.size(); i++) {
+      final CombineFilter filter = filters.get(i);
+      final Path[] paths = inputs.get(i);
+      tasks.add(new Callable<InputSplitShim[]>() {
+        public InputSplitShim[] call() throws IOException {
+          CombineFileInputFormatShim combine = ShimLoader.getHadoopShims()
+              .getCombineFileInputFormat();
+          JobConf currJob = new JobConf(job);
+          if (filter != null) {
+            combine.createPool(currJob, filter);
+          }
+          FileInputFormat.setInputPaths(currJob, paths);
+          return combine.getSplits(currJob, 1);
+        }
+      });
+    }
+    List<InputSplitShim> iss = new ArrayList<InputSplitShim>();
+    for (InputSplitShim[] groupSplits : runSplitTasks(tasks, Math.min(numThreads, tasks.size()))) {
+      iss.addAll(Arrays.asList(groupSplits));
+    }
+    return iss;
+  }
+
   /**
    * This function is used to sample inputs for clauses like "TABLESAMPLE(1 PERCENT)"
    *
@@ -19,10 +19,16 @@
 package org.apache.hadoop.hive.ql.io;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.ExecMapper;
+import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.io.CombineHiveInputFormat.CombineHiveInputSplit;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.shims.HadoopShims.InputSplitShim;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -62,7 +68,35 @@ public class CombineHiveRecordReader<K extends WritableComparable, V extends Wri
         .getStartOffsets()[partition], hsplit.getLengths()[partition], hsplit
         .getLocations());
 
-    this.setRecordReader(inputFormat.getRecordReader(fsplit, jobConf, reporter));
+    // the readers of the paths share the key and the value of the first one, so the split is
+    // read a batch of rows at a time only if all its paths can be; the files of a directory
+    // are read alike
+    MapredWork work = Utilities.getMapRedWork(jobConf);
+    Map<Path, Properties> dirProperties = new HashMap<Path, Properties>();
+    Properties batchProperties = null;
+    for (Path path : hsplit.getPaths()) {
+      Properties properties;
+      if (dirProperties.containsKey(path.getParent())) {
+        properties = dirProperties.get(path.getParent());
+      } else {
+        properties = HiveInputFormat.getBatchProperties(work, inputFormat, jobConf, path,
+            false);
+        dirProperties.put(path.getParent(), properties);
+      }
+      if (properties == null) {
+        batchProperties = null;
+        break;
+      }
+      if (path.equals(fsplit.getPath())) {
+        batchProperties = properties;
+      }
+    }
+    if (batchProperties != null) {
+      this.setRecordReader(HiveInputFormat.getBatchRecordReader(inputFormat, fsplit, jobConf,
+          batchProperties));
+    } else {
+      this.setRecordReader(inputFormat.getRecordReader(fsplit, jobConf, reporter));
+    }
 
     this.initIOContext(fsplit, jobConf, inputFormatClass, this.recordReader);
   }
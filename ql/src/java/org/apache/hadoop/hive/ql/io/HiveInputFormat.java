@@ -23,24 +23,40 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.common.HiveInterruptCallback;
+import org.apache.hadoop.hive.common.HiveInterruptUtils;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.io.HiveIOExceptionHandlerUtil;
 import org.apache.hadoop.hive.ql.exec.Operator;
 import org.apache.hadoop.hive.ql.exec.TableScanOperator;
 import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.VectorTableScanOperator;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.MapredWork;
 import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.serde.Constants;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.shims.ShimLoader;
 import org.apache.hadoop.io.Writable;
@@ -182,7 +198,7 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
    */
   protected static Map<Class, InputFormat<WritableComparable, Writable>> inputFormats;
 
-  public static InputFormat<WritableComparable, Writable> getInputFormatFromCache(
+  public static synchronized InputFormat<WritableComparable, Writable> getInputFormatFromCache(
     Class inputFormatClass, JobConf job) throws IOException {
 
     if (inputFormats == null) {
@@ -237,8 +253,15 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
         cloneJobConf);
     RecordReader innerReader = null;
     try {
-      innerReader = inputFormat.getRecordReader(inputSplit,
-        cloneJobConf, reporter);
+      Properties batchProperties = getBatchProperties(mrwork, inputFormat,
+          cloneJobConf, hsplit.getPath(), nonNative);
+      if (batchProperties != null) {
+        innerReader = getBatchRecordReader(inputFormat, inputSplit,
+            cloneJobConf, batchProperties);
+      } else {
+        innerReader = inputFormat.getRecordReader(inputSplit,
+          cloneJobConf, reporter);
+      }
     } catch (Exception e) {
       innerReader = HiveIOExceptionHandlerUtil
           .handleRecordReaderCreationException(e, cloneJobConf);
@@ -248,6 +271,59 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
     return rr;
   }
 
+  /**
+   * The splits of a path can be read a batch of rows at a time when its
+   * input format can read batches, and all the operators reading it are
+   * vectorized table scans of columns of the table, and not of partition or
+   * virtual columns, and the input format can decode all the columns
+   * projected in the job configuration.
+   *
+   * @return the properties of the partition of the path, from which the
+   *         types of the columns are decoded, or null if the path is read a
+   *         row at a time
+   */
+  static Properties getBatchProperties(MapredWork work, InputFormat inputFormat,
+      JobConf job, Path path, boolean nonNative) throws IOException {
+    if (!(inputFormat instanceof VectorizedInputFormat)
+        || work.getPathToAliases() == null) {
+      return null;
+    }
+    List<String> aliases = getAliases(work, path.toString(),
+        path.toUri().getPath(), nonNative);
+    if (aliases.isEmpty()) {
+      return null;
+    }
+    PartitionDesc part = HiveFileFormatUtils.getPartitionDescFromPathRecursively(
+        work.getPathToPartitionInfo(), path, null);
+    Properties properties = part.getProperties();
+    String columns = properties == null ? null
+        : properties.getProperty(Constants.LIST_COLUMNS);
+    if (columns == null) {
+      return null;
+    }
+    List<String> tableColumns = Arrays.asList(columns.split(","));
+    for (String alias : aliases) {
+      Operator<? extends Serializable> op = work.getAliasToWork().get(alias);
+      if (!(op instanceof VectorTableScanOperator) || !tableColumns.containsAll(
+          ((VectorTableScanOperator) op).getVectorColumns())) {
+        return null;
+      }
+    }
+    if (!((VectorizedInputFormat) inputFormat).canDecode(job, properties)) {
+      return null;
+    }
+    return properties;
+  }
+
+  /**
+   * @return a record reader whose values are the batches of rows of the split
+   */
+  static RecordReader getBatchRecordReader(InputFormat inputFormat,
+      InputSplit split, JobConf job, Properties properties) throws IOException {
+    return new VectorizedBatchRecordReader(((VectorizedInputFormat) inputFormat)
+        .getVectorizedRecordReader(split, job, properties));
+  }
+
   protected Map<String, PartitionDesc> pathToPartitionInfo;
   MapredWork mrwork = null;
 
@@ -256,7 +332,7 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
     pathToPartitionInfo = mrwork.getPathToPartitionInfo();
   }
 
-  public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+  public InputSplit[] getSplits(final JobConf job, int numSplits) throws IOException {
 
     init(job);
 
@@ -264,34 +340,51 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
     if (dirs.length == 0) {
       throw new IOException("No input paths specified in job");
     }
-    JobConf newjob = new JobConf(job);
+    final int numDirSplits = numSplits / dirs.length;
+    final InputSplitCache splitCache = InputSplitCache.get(job);
+    int numThreads = Math.min(dirs.length,
+        HiveConf.getIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_GENERATION_THREADS));
     ArrayList<InputSplit> result = new ArrayList<InputSplit>();
 
-    // for each dir, get the InputFormat, and do getSplits.
-    for (Path dir : dirs) {
-      PartitionDesc part = getPartitionDescFromPath(pathToPartitionInfo, dir);
-      // create a new InputFormat instance if this is the first time to see this
-      // class
-      Class inputFormatClass = part.getInputFileFormatClass();
-      InputFormat inputFormat = getInputFormatFromCache(inputFormatClass, job);
-      Utilities.copyTableJobPropertiesToConf(part.getTableDesc(), newjob);
-
-      // Make filter pushdown information available to getSplits.
-      ArrayList<String> aliases =
-        mrwork.getPathToAliases().get(dir.toUri().toString());
-      if ((aliases != null) && (aliases.size() == 1)) {
-        Operator op = mrwork.getAliasToWork().get(aliases.get(0));
-        if ((op != null) && (op instanceof TableScanOperator)) {
-          TableScanOperator tableScan = (TableScanOperator) op;
-          pushFilters(newjob, tableScan);
+    if (numThreads <= 1) {
+      JobConf newjob = new JobConf(job);
+
+      // for each dir, get the InputFormat, and do getSplits.
+      for (Path dir : dirs) {
+        PartitionDesc part = getPartitionDescFromPath(pathToPartitionInfo, dir);
+        // create a new InputFormat instance if this is the first time to see this
+        // class
+        Class inputFormatClass = part.getInputFileFormatClass();
+        InputFormat inputFormat = getInputFormatFromCache(inputFormatClass, job);
+        InputSplit[] iss = getDirSplits(newjob, dir, part, inputFormat, numDirSplits, splitCache);
+        for (InputSplit is : iss) {
+          result.add(new HiveInputSplit(is, inputFormatClass.getName()));
         }
       }
-
-      FileInputFormat.setInputPaths(newjob, dir);
-      newjob.setInputFormat(inputFormat.getClass());
-      InputSplit[] iss = inputFormat.getSplits(newjob, numSplits / dirs.length);
-      for (InputSplit is : iss) {
-        result.add(new HiveInputSplit(is, inputFormatClass.getName()));
+    } else {
+      // the dirs are listed concurrently, each with its own copy of the job, as the filter
+      // pushed for one dir must not be seen by the others
+      LOG.info("Using " + numThreads + " threads to compute the splits of " + dirs.length
+          + " dirs");
+      List<Class> inputFormatClasses = new ArrayList<Class>(dirs.length);
+      List<Callable<InputSplit[]>> tasks = new ArrayList<Callable<InputSplit[]>>(dirs.length);
+      for (final Path dir : dirs) {
+        final PartitionDesc part = getPartitionDescFromPath(pathToPartitionInfo, dir);
+        Class inputFormatClass = part.getInputFileFormatClass();
+        final InputFormat inputFormat = getInputFormatFromCache(inputFormatClass, job);
+        inputFormatClasses.add(inputFormatClass);
+        tasks.add(new Callable<InputSplit[]>() {
+          public InputSplit[] call() throws IOException {
+            return getDirSplits(new JobConf(job), dir, part, inputFormat, numDirSplits,
+                splitCache);
+          }
+        });
+      }
+      List<InputSplit[]> dirSplits = runSplitTasks(tasks, numThreads);
+      for (int i = 0; i < dirs.length; i++) {
+        for (InputSplit is : dirSplits.get(i)) {
+          result.add(new HiveInputSplit(is, inputFormatClasses.get(i).getName()));
+        }
       }
     }
 
@@ -300,6 +393,89 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
     return result.toArray(new HiveInputSplit[result.size()]);
   }
 
+  /**
+   * Get the splits of one input dir, from the split cache if it is enabled and the dir did not
+   * change since its splits were cached.
+   */
+  private InputSplit[] getDirSplits(JobConf newjob, Path dir, PartitionDesc part,
+      InputFormat inputFormat, int numSplits, InputSplitCache splitCache) throws IOException {
+    Utilities.copyTableJobPropertiesToConf(part.getTableDesc(), newjob);
+
+    // Make filter pushdown information available to getSplits.
+    ArrayList<String> aliases =
+      mrwork.getPathToAliases().get(dir.toUri().toString());
+    if ((aliases != null) && (aliases.size() == 1)) {
+      Operator op = mrwork.getAliasToWork().get(aliases.get(0));
+      if ((op != null) && (op instanceof TableScanOperator)) {
+        TableScanOperator tableScan = (TableScanOperator) op;
+        pushFilters(newjob, tableScan);
+      }
+    }
+
+    FileInputFormat.setInputPaths(newjob, dir);
+    newjob.setInputFormat(inputFormat.getClass());
+
+    // the splits of non-native tables do not come from the files of the dir
+    TableDesc tableDesc = part.getTableDesc();
+    if (splitCache == null || (tableDesc != null && tableDesc.isNonNative())) {
+      return inputFormat.getSplits(newjob, numSplits);
+    }
+    String key = splitCache.getKey(dir, inputFormat.getClass(), numSplits, newjob);
+    InputSplit[] iss = splitCache.lookup(key, dir, newjob);
+    if (iss == null) {
+      long modificationTime = splitCache.getModificationTime(dir, newjob);
+      iss = inputFormat.getSplits(newjob, numSplits);
+      splitCache.put(key, modificationTime, iss);
+    }
+    return iss;
+  }
+
+  /**
+   * Run the given split computations on a pool of numThreads threads, and return their results
+   * in the order of the tasks. The pool is shut down if the query is interrupted.
+   */
+  protected static <T> List<T> runSplitTasks(List<Callable<T>> tasks, int numThreads)
+      throws IOException {
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    HiveInterruptCallback interrup = HiveInterruptUtils.add(new HiveInterruptCallback() {
+      @Override
+      public void interrupt() {
+        // tasks still in the queue are cancelled so that nobody waits for them
+        for (Runnable r : executor.shutdownNow()) {
+          ((Future<?>) r).cancel(true);
+        }
+      }
+    });
+    try {
+      List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+      for (Callable<T> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      List<T> results = new ArrayList<T>(tasks.size());
+      for (Future<T> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted when waiting for the splits", e);
+        } catch (CancellationException e) {
+          throw new IOException("Split computation was interrupted", e);
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw new IOException(e.getCause());
+        }
+      }
+      HiveInterruptUtils.checkInterrupted();
+      return results;
+    } finally {
+      executor.shutdownNow();
+      HiveInterruptUtils.remove(interrup);
+    }
+  }
+
   public void validateInput(JobConf job) throws IOException {
 
     init(job);
@@ -385,8 +561,34 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
       return;
     }
 
-    ArrayList<String> aliases = new ArrayList<String>();
-    Iterator<Entry<String, ArrayList<String>>> iterator = this.mrwork
+    List<String> aliases = getAliases(this.mrwork, splitPath,
+        splitPathWithNoSchema, nonNative);
+    for (String alias : aliases) {
+      Operator<? extends Serializable> op = this.mrwork.getAliasToWork().get(
+          alias);
+      if (op != null && op instanceof TableScanOperator) {
+        TableScanOperator tableScan = (TableScanOperator) op;
+
+        // push down projections
+        ArrayList<Integer> list = tableScan.getNeededColumnIDs();
+        if (list != null) {
+          ColumnProjectionUtils.appendReadColumnIDs(jobConf, list);
+        } else {
+          ColumnProjectionUtils.setFullyReadColumns(jobConf);
+        }
+
+        pushFilters(jobConf, tableScan);
+      }
+    }
+  }
+
+  /**
+   * @return the aliases of the operators which read the split path
+   */
+  private static List<String> getAliases(MapredWork work, String splitPath,
+      String splitPathWithNoSchema, boolean nonNative) {
+    List<String> aliases = new ArrayList<String>();
+    Iterator<Entry<String, ArrayList<String>>> iterator = work
         .getPathToAliases().entrySet().iterator();
 
     while (iterator.hasNext()) {
@@ -414,23 +616,6 @@ public class HiveInputFormat<K extends WritableComparable, V extends Writable>
         }
       }
     }
-
-    for (String alias : aliases) {
-      Operator<? extends Serializable> op = this.mrwork.getAliasToWork().get(
-          alias);
-      if (op != null && op instanceof TableScanOperator) {
-        TableScanOperator tableScan = (TableScanOperator) op;
-
-        // push down projections
-        ArrayList<Integer> list = tableScan.getNeededColumnIDs();
-        if (list != null) {
-          ColumnProjectionUtils.appendReadColumnIDs(jobConf, list);
-        } else {
-          ColumnProjectionUtils.setFullyReadColumns(jobConf);
-        }
-
-        pushFilters(jobConf, tableScan);
-      }
-    }
+    return aliases;
   }
 }
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.mapred.InputSplit;
+
+/**
+ * Process-wide LRU cache from input directory to the splits its input format computed for it, so
+ * that the queries of a long running process such as HiveServer do not list the same unchanged
+ * directories again.
+ *
+ * The input formats list the files of a directory themselves, so the splits are cached rather
+ * than the listing. An entry remembers the modification time of the directory when its splits
+ * were computed, and is dropped on lookup if it changed since, which happens whenever a file is
+ * added to, removed from or renamed in the directory. Files modified in place and changes below
+ * sub-directories are not seen.
+ *
+ * The key also holds the configuration the splits depend on: the input format, the requested
+ * number of splits, the pushed filter, the minimum split size and the path filter.
+ */
+public final class InputSplitCache {
+  private static final Log LOG = LogFactory.getLog("hive.ql.io.InputSplitCache");
+
+  private static InputSplitCache instance;
+
+  private final int maxSize;
+  private final Map<String, Entry> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private static class Entry {
+    private final long modificationTime;
+    private final InputSplit[] splits;
+
+    Entry(long modificationTime, InputSplit[] splits) {
+      this.modificationTime = modificationTime;
+      this.splits = splits;
+    }
+  }
+
+  private InputSplitCache(final int maxSize) {
+    this.maxSize = maxSize;
+    cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get the cache, or null if it is disabled by hive.exec.split.cache.size. The cache is
+   * re-created if the configured size changes.
+   */
+  public static synchronized InputSplitCache get(Configuration conf) {
+    int size = HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVE_SPLIT_CACHE_SIZE);
+    if (size <= 0) {
+      return null;
+    }
+    if (instance == null || instance.maxSize != size) {
+      instance = new InputSplitCache(size);
+    }
+    return instance;
+  }
+
+  /**
+   * Build the cache key of the splits of a directory.
+   */
+  public String getKey(Path dir, Class inputFormatClass, int numSplits, Configuration conf)
+      throws IOException {
+    StringBuilder sb = new StringBuilder();
+    sb.append(dir.makeQualified(dir.getFileSystem(conf))).append('\n');
+    sb.append(inputFormatClass.getName()).append('\n');
+    sb.append(numSplits).append('\n');
+    sb.append(conf.get("mapred.min.split.size", "")).append('\n');
+    sb.append(conf.get("mapred.input.pathFilter.class", "")).append('\n');
+    sb.append(conf.get(TableScanDesc.FILTER_EXPR_CONF_STR, ""));
+    return sb.toString();
+  }
+
+  /**
+   * Look up the splits of a directory.
+   *
+   * @return the cached splits, or null if they are not cached or out of date
+   */
+  public InputSplit[] lookup(String key, Path dir, Configuration conf) throws IOException {
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+    }
+    if (entry != null && entry.modificationTime != getModificationTime(dir, conf)) {
+      synchronized (cache) {
+        if (cache.get(key) == entry) {
+          cache.remove(key);
+        }
+      }
+      invalidations.incrementAndGet();
+      LOG.info(dir + " changed, drop its cached splits");
+      entry = null;
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Split cache hit for " + dir + ", hits: " + hits + ", misses: " + misses);
+    }
+    return entry.splits;
+  }
+
+  /**
+   * Cache the splits of a directory. The modification time must be read before the splits are
+   * computed, so that a change made meanwhile invalidates the entry.
+   */
+  public void put(String key, long modificationTime, InputSplit[] splits) {
+    Entry entry = new Entry(modificationTime, splits);
+    synchronized (cache) {
+      cache.put(key, entry);
+    }
+  }
+
+  /**
+   * Get the modification time of a directory, or -1 if it does not exist.
+   */
+  public long getModificationTime(Path dir, Configuration conf) throws IOException {
+    FileSystem fs = dir.getFileSystem(conf);
+    try {
+      FileStatus status = fs.getFileStatus(dir);
+      return status.getModificationTime();
+    } catch (FileNotFoundException e) {
+      return -1;
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+}
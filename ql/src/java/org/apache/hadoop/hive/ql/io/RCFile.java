@@ -102,7 +102,9 @@ import org.apache.hadoop.util.ReflectionUtils;
  * <h5 id="Header">RC Header</h5>
  * <ul>
  * <li>version - 3 bytes of magic header <b>SEQ</b>, followed by 1 byte of
- * actual version number (e.g. SEQ4 or SEQ6)</li>
+ * actual version number (e.g. SEQ4 or SEQ6). SEQ7 files have column
+ * statistics in the key part of every record. SEQ8 files also have the
+ * {@link ColumnEncoding} of every column of every record.</li>
  * <li>keyClassName -KeyBuffer's class name</li>
  * <li>valueClassName - ValueBuffer's class name</li>
  * <li>compression - A boolean which specifies if compression is turned on for
@@ -128,19 +130,25 @@ import org.apache.hadoop.util.ReflectionUtils;
  * <li>Column_1_row_1_value_plain_length</li>
  * <li>Column_1_row_2_value_plain_length</li>
  * <li>...</li>
+ * <li>Column_1_encoding (version 8 only)</li>
  * <li>Column_2_ondisk_length(vint)</li>
  * <li>Column_2_row_1_value_plain_length</li>
  * <li>Column_2_row_2_value_plain_length</li>
  * <li>...</li>
+ * <li>Column_2_encoding (version 8 only)</li>
+ * <li>...</li>
+ * <li>Column_1_statistics (version 7 and 8)</li>
+ * <li>Column_2_statistics (version 7 and 8)</li>
+ * <li>...</li>
  * </ul>
  * </li>
  * </li>
  * <li>Value part
  * <ul>
  * <li>Compressed or plain data of [column_1_row_1_value,
- * column_1_row_2_value,....]</li>
+ * column_1_row_2_value,....], encoded in version 8</li>
  * <li>Compressed or plain data of [column_2_row_1_value,
- * column_2_row_2_value,....]</li>
+ * column_2_row_2_value,....], encoded in version 8</li>
  * </ul>
  * </li>
  * </ul>
@@ -159,6 +167,8 @@ public class RCFile {
   public static final String TOLERATE_CORRUPTIONS_CONF_STR =
     "hive.io.rcfile.tolerate.corruptions";
 
+  public static final String COLUMN_ENCODINGS_CONF_STR = "hive.io.rcfile.column.encodings";
+
   // HACK: We actually need BlockMissingException, but that is not available
   // in all hadoop versions.
   public static final String BLOCK_MISSING_MESSAGE =
@@ -169,6 +179,8 @@ public class RCFile {
    * SequenceFile's format.
    */
   private static final byte VERSION_WITH_METADATA = (byte) 6;
+  private static final byte VERSION_WITH_STATISTICS = (byte) 7;
+  private static final byte VERSION_WITH_ENCODINGS = (byte) 8;
   private static final byte[] VERSION = new byte[] {
       (byte) 'S', (byte) 'E', (byte) 'Q', VERSION_WITH_METADATA
       };
@@ -193,10 +205,14 @@ public class RCFile {
    * <li>column_1_row_1_value_plain_length,</li>
    * <li>column_1_row_2_value_plain_length,</li>
    * <li>....</li>
+   * <li>column_1_encoding(byte), only in version 8 files,</li>
    * <li>column_2_ondisk_length(vint),</li>
    * <li>column_2_row_1_value_plain_length,</li>
    * <li>column_2_row_2_value_plain_length,</li>
    * <li>.... .</li>
+   * <li>the {@link ColumnStatistics} of each column, only in version 7 and 8
+   * files; version 8 files also keep the dictionary of the columns with few
+   * distinct values.</li>
    * <li>{the end of the key part}</li>
    * </ul>
    */
@@ -210,12 +226,84 @@ public class RCFile {
     private int numberRows = 0;
     // how many columns
     private int columnNumber = 0;
+    // each column's statistics in a split, null if the file has none
+    private ColumnStatistics[] statistics = null;
+    private NonSyncDataOutputBuffer statisticsBuffer = null;
+    // the ColumnEncoding of each column in a split, null if the file has none
+    private byte[] encodings = null;
 
     // return the number of columns recorded in this file's header
     public int getColumnNumber() {
       return columnNumber;
     }
 
+    // return the number of rows in this split
+    public int getNumberRows() {
+      return numberRows;
+    }
+
+    /**
+     * Returns the statistics of each column in this split, or null if the
+     * file was written without statistics.
+     */
+    public ColumnStatistics[] getStatistics() {
+      return statistics;
+    }
+
+    void setStatistics(ColumnStatistics[] statistics) {
+      this.statistics = statistics;
+    }
+
+    /**
+     * Returns the {@link ColumnEncoding} of each column in this split, or null
+     * if the file was written without column encodings.
+     */
+    public byte[] getEncodings() {
+      return encodings;
+    }
+
+    void setEncodings(byte[] encodings) {
+      this.encodings = encodings;
+    }
+
+    /** Returns whether the values of a column are not stored plain. */
+    boolean isEncoded(int columnIndex) {
+      return encodings != null && encodings[columnIndex] != ColumnEncoding.PLAIN;
+    }
+
+    private boolean hasEncodedColumns() {
+      for (int i = 0; encodings != null && i < encodings.length; i++) {
+        if (isEncoded(i)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Puts the length of each value of a column in this split in
+     * <code>lengths</code>, which must have room for
+     * {@link #getNumberRows()} values.
+     */
+    void getValueLengths(int columnIndex, int[] lengths, NonSyncDataInputBuffer in)
+        throws IOException {
+      NonSyncDataOutputBuffer buf = allCellValLenBuffer[columnIndex];
+      in.reset(buf.getData(), buf.getLength());
+      int prvLength = -1;
+      for (int i = 0; i < numberRows;) {
+        int length = (int) WritableUtils.readVLong(in);
+        if (length < 0) {
+          // a run of the previous length
+          for (int run = ~length; run > 0; run--) {
+            lengths[i++] = prvLength;
+          }
+        } else {
+          lengths[i++] = length;
+          prvLength = length;
+        }
+      }
+    }
+
     public KeyBuffer(){
     }
 
@@ -264,11 +352,29 @@ public class RCFile {
           allCellValLenBuffer[i].reset();
         }
         allCellValLenBuffer[i].write(in, bufLen);
+        if (encodings != null) {
+          encodings[i] = in.readByte();
+        }
+      }
+      if (statistics != null) {
+        for (int i = 0; i < columnNumber; i++) {
+          statistics[i].readFields(in, encodings != null);
+        }
       }
     }
 
     @Override
     public void write(DataOutput out) throws IOException {
+      write(out, statistics != null, encodings != null);
+    }
+
+    /**
+     * Writes the key, with or without the column statistics and the column
+     * encodings. The statistics of a key read from a file without statistics
+     * are written as unknown, and its columns as plain.
+     */
+    void write(DataOutput out, boolean withStatistics, boolean withEncodings)
+        throws IOException {
       // out.writeInt(numberRows);
       WritableUtils.writeVLong(out, numberRows);
       for (int i = 0; i < eachColumnValueLen.length; i++) {
@@ -278,9 +384,32 @@ public class RCFile {
         int bufLen = colRowsLenBuf.getLength();
         WritableUtils.writeVLong(out, bufLen);
         out.write(colRowsLenBuf.getData(), 0, bufLen);
+        if (withEncodings) {
+          out.writeByte(encodings != null ? encodings[i] : ColumnEncoding.PLAIN);
+        }
+      }
+      if (withStatistics) {
+        NonSyncDataOutputBuffer buf = serializeStatistics(withEncodings);
+        out.write(buf.getData(), 0, buf.getLength());
       }
     }
 
+    private NonSyncDataOutputBuffer serializeStatistics(boolean withDictionaries)
+        throws IOException {
+      if (statisticsBuffer == null) {
+        statisticsBuffer = new NonSyncDataOutputBuffer();
+      }
+      statisticsBuffer.reset();
+      for (int i = 0; i < eachColumnValueLen.length; i++) {
+        if (statistics != null) {
+          statistics[i].write(statisticsBuffer, withDictionaries);
+        } else {
+          ColumnStatistics.unknown().write(statisticsBuffer, withDictionaries);
+        }
+      }
+      return statisticsBuffer;
+    }
+
     /**
      * get number of bytes to store the keyBuffer.
      *
@@ -288,6 +417,10 @@ public class RCFile {
      * @throws IOException
      */
     public int getSize() throws IOException {
+      return getSize(statistics != null, encodings != null);
+    }
+
+    int getSize(boolean withStatistics, boolean withEncodings) throws IOException {
       int ret = 0;
       ret += WritableUtils.getVIntSize(numberRows);
       for (int i = 0; i < eachColumnValueLen.length; i++) {
@@ -295,6 +428,12 @@ public class RCFile {
         ret += WritableUtils.getVIntSize(eachColumnUncompressedValueLen[i]);
         ret += WritableUtils.getVIntSize(allCellValLenBuffer[i].getLength());
         ret += allCellValLenBuffer[i].getLength();
+        if (withEncodings) {
+          ret += 1;
+        }
+      }
+      if (withStatistics) {
+        ret += serializeStatistics(withEncodings).getLength();
       }
 
       return ret;
@@ -316,6 +455,9 @@ public class RCFile {
    * <li>Compressed or plain data of [column_2_row_1_value,
    * column_2_row_2_value,....]</li>
    * </ul>
+   * In version 8 files the values of a column are stored with the
+   * {@link ColumnEncoding} given in the key before they are compressed; they
+   * are decoded when they are loaded.
    */
   public static class ValueBuffer implements WritableComparable {
 
@@ -347,10 +489,16 @@ public class RCFile {
         decompressBuffer.reset(compressedData.getData(),
             keyBuffer.eachColumnValueLen[colIndex]);
 
-        NonSyncDataOutputBuffer decompressedColBuf = loadedColumnsValueBuffer[index];
+        boolean encoded = keyBuffer.isEncoded(colIndex);
+        NonSyncDataOutputBuffer decompressedColBuf = encoded
+            ? decodeBuffer : loadedColumnsValueBuffer[index];
         decompressedColBuf.reset();
         decompressedColBuf.write(valueIn,
             keyBuffer.eachColumnUncompressedValueLen[colIndex]);
+        if (encoded) {
+          decode(colIndex, decodeBuffer, loadedColumnsValueBuffer[index]);
+          decompressedColBuf = loadedColumnsValueBuffer[index];
+        }
         decompressedFlag[index] = true;
         numCompressed--;
         return decompressedColBuf.getData();
@@ -361,6 +509,9 @@ public class RCFile {
     private NonSyncDataOutputBuffer[] loadedColumnsValueBuffer = null;
     private NonSyncDataOutputBuffer[] compressedColumnsValueBuffer = null;
     private boolean[] decompressedFlag = null;
+    // set true for the columns of an uncompressed file whose encoded values
+    // are kept in compressedColumnsValueBuffer
+    private boolean[] encodedFlag = null;
     private int numCompressed;
     private LazyDecompressionCallbackImpl[] lazyDecompressCallbackObjs = null;
     private boolean lazyDecompress = true;
@@ -380,6 +531,11 @@ public class RCFile {
     NonSyncDataInputBuffer decompressBuffer = new NonSyncDataInputBuffer();
     CompressionInputStream deflatFilter = null;
 
+    // used to decode the encoded columns
+    private final NonSyncDataOutputBuffer decodeBuffer = new NonSyncDataOutputBuffer();
+    private final NonSyncDataInputBuffer decodeLengthsIn = new NonSyncDataInputBuffer();
+    private int[] decodeLengths = new int[0];
+
     public ValueBuffer() throws IOException {
     }
 
@@ -424,6 +580,7 @@ public class RCFile {
       loadedColumnsValueBuffer = new NonSyncDataOutputBuffer[columnNumber
           - skipped];
       decompressedFlag = new boolean[columnNumber - skipped];
+      encodedFlag = new boolean[columnNumber - skipped];
       lazyDecompressCallbackObjs = new LazyDecompressionCallbackImpl[columnNumber
           - skipped];
       compressedColumnsValueBuffer = new NonSyncDataOutputBuffer[columnNumber
@@ -479,9 +636,16 @@ public class RCFile {
         }
 
         NonSyncDataOutputBuffer valBuf;
+        encodedFlag[addIndex] = codec == null && keyBuffer.isEncoded(i);
         if (codec != null){
            // load into compressed buf first
           valBuf = compressedColumnsValueBuffer[addIndex];
+        } else if (encodedFlag[addIndex]) {
+          // keep the encoded values, which write() writes back
+          if (compressedColumnsValueBuffer[addIndex] == null) {
+            compressedColumnsValueBuffer[addIndex] = new NonSyncDataOutputBuffer();
+          }
+          valBuf = compressedColumnsValueBuffer[addIndex];
         } else {
           valBuf = loadedColumnsValueBuffer[addIndex];
         }
@@ -493,6 +657,8 @@ public class RCFile {
             lazyDecompressCallbackObjs[addIndex].decompress();
             decompressedFlag[addIndex] = true;
           }
+        } else if (encodedFlag[addIndex]) {
+          decode(i, valBuf, loadedColumnsValueBuffer[addIndex]);
         }
         addIndex++;
       }
@@ -512,12 +678,35 @@ public class RCFile {
           out.write(currentBuf.getData(), 0, currentBuf.getLength());
         }
       } else {
-        for (NonSyncDataOutputBuffer currentBuf : loadedColumnsValueBuffer) {
+        for (int i = 0; i < loadedColumnsValueBuffer.length; i++) {
+          NonSyncDataOutputBuffer currentBuf = encodedFlag[i]
+              ? compressedColumnsValueBuffer[i] : loadedColumnsValueBuffer[i];
           out.write(currentBuf.getData(), 0, currentBuf.getLength());
         }
       }
     }
 
+    /**
+     * Decodes the encoded values of a column.
+     *
+     * @param colIndex
+     *          the column
+     * @param encoded
+     *          the encoded values
+     * @param decoded
+     *          receives the plain values
+     */
+    private void decode(int colIndex, NonSyncDataOutputBuffer encoded,
+        NonSyncDataOutputBuffer decoded) throws IOException {
+      int numberRows = keyBuffer.numberRows;
+      if (decodeLengths.length < numberRows) {
+        decodeLengths = new int[numberRows];
+      }
+      keyBuffer.getValueLengths(colIndex, decodeLengths, decodeLengthsIn);
+      ColumnEncoding.decode(keyBuffer.encodings[colIndex], encoded.getData(),
+          encoded.getLength(), decodeLengths, numberRows, decoded);
+    }
+
     public void clearColumnBuffer() throws IOException {
       decompressBuffer.reset();
     }
@@ -612,6 +801,9 @@ public class RCFile {
 
     KeyBuffer key = null;
     ValueBuffer value = null;
+    private final ColumnStatisticsCollector statisticsCollector;
+    // picks the encoding of each column, null to write all the values plain
+    private final ColumnEncoding columnEncoding;
     private final int[] plainTotalColumnLength;
     private final int[] comprTotalColumnLength;
 
@@ -623,6 +815,11 @@ public class RCFile {
       NonSyncDataOutputBuffer columnValBuffer;
       // used to store each value's length
       NonSyncDataOutputBuffer valLenBuffer;
+      // each value's length and the encoded values, only when the values
+      // are encoded
+      int[] valLengths;
+      int valCount;
+      NonSyncDataOutputBuffer encodedValBuffer;
 
       /*
        * use a run-length encoding. We only record run length if a same
@@ -634,14 +831,24 @@ public class RCFile {
       int runLength = 0;
       int prevValueLength = -1;
 
-      ColumnBuffer() throws IOException {
+      ColumnBuffer(boolean encoded) throws IOException {
         columnValBuffer = new NonSyncDataOutputBuffer();
         valLenBuffer = new NonSyncDataOutputBuffer();
+        if (encoded) {
+          valLengths = new int[16];
+          encodedValBuffer = new NonSyncDataOutputBuffer();
+        }
       }
 
       public void append(BytesRefWritable data) throws IOException {
         data.writeDataTo(columnValBuffer);
         int currentLen = data.getLength();
+        if (valLengths != null) {
+          if (valCount == valLengths.length) {
+            valLengths = Arrays.copyOf(valLengths, valCount * 2);
+          }
+          valLengths[valCount++] = currentLen;
+        }
 
         if (prevValueLength < 0) {
           startNewGroup(currentLen);
@@ -667,6 +874,7 @@ public class RCFile {
         columnValBuffer.reset();
         prevValueLength = -1;
         runLength = 0;
+        valCount = 0;
       }
 
       public void flushGroup() throws IOException {
@@ -721,10 +929,32 @@ public class RCFile {
      */
     public Writer(FileSystem fs, Configuration conf, Path name,
         Progressable progress, Metadata metadata, CompressionCodec codec) throws IOException {
+      this(fs, conf, name, progress, metadata, codec, null);
+    }
+
+    /**
+     * Constructs a RCFile Writer.
+     *
+     * @param fs
+     *          the file system used
+     * @param conf
+     *          the configuration file
+     * @param name
+     *          the file name
+     * @param progress
+     * @param metadata
+     * @param statisticsCollector
+     *          collects the column statistics of each record, or null to
+     *          write a file without statistics
+     * @throws IOException
+     */
+    public Writer(FileSystem fs, Configuration conf, Path name,
+        Progressable progress, Metadata metadata, CompressionCodec codec,
+        ColumnStatisticsCollector statisticsCollector) throws IOException {
       this(fs, conf, name, fs.getConf().getInt("io.file.buffer.size", 4096),
               ShimLoader.getHadoopShims().getDefaultReplication(fs, name),
               ShimLoader.getHadoopShims().getDefaultBlockSize(fs, name), progress,
-          metadata, codec);
+          metadata, codec, statisticsCollector);
     }
 
     /**
@@ -747,6 +977,40 @@ public class RCFile {
     public Writer(FileSystem fs, Configuration conf, Path name, int bufferSize,
         short replication, long blockSize, Progressable progress,
         Metadata metadata, CompressionCodec codec) throws IOException {
+      this(fs, conf, name, bufferSize, replication, blockSize, progress,
+          metadata, codec, null);
+    }
+
+    /**
+     *
+     * Constructs a RCFile Writer.
+     *
+     * @param fs
+     *          the file system used
+     * @param conf
+     *          the configuration file
+     * @param name
+     *          the file name
+     * @param bufferSize
+     * @param replication
+     * @param blockSize
+     * @param progress
+     * @param metadata
+     * @param statisticsCollector
+     *          collects the column statistics of each record, or null to
+     *          write a file without statistics
+     * @throws IOException
+     */
+    public Writer(FileSystem fs, Configuration conf, Path name, int bufferSize,
+        short replication, long blockSize, Progressable progress,
+        Metadata metadata, CompressionCodec codec,
+        ColumnStatisticsCollector statisticsCollector) throws IOException {
+      this.statisticsCollector = statisticsCollector;
+      columnEncoding = conf.getBoolean(COLUMN_ENCODINGS_CONF_STR, false)
+          ? new ColumnEncoding() : null;
+      if (statisticsCollector != null && columnEncoding != null) {
+        statisticsCollector.keepDictionaries();
+      }
       RECORD_INTERVAL = conf.getInt(RECORD_INTERVAL_CONF_STR, RECORD_INTERVAL);
       columnNumber = conf.getInt(COLUMN_NUMBER_CONF_STR, 0);
 
@@ -763,7 +1027,7 @@ public class RCFile {
 
       columnBuffers = new ColumnBuffer[columnNumber];
       for (int i = 0; i < columnNumber; i++) {
-        columnBuffers[i] = new ColumnBuffer();
+        columnBuffers[i] = new ColumnBuffer(hasEncodings());
       }
 
       init(name, conf, fs.create(name, true, bufferSize, replication,
@@ -772,6 +1036,9 @@ public class RCFile {
       writeFileHeader();
       finalizeFileHeader();
       key = new KeyBuffer(columnNumber);
+      if (hasEncodings()) {
+        key.setEncodings(new byte[columnNumber]);
+      }
       value = new ValueBuffer(key);
 
       plainTotalColumnLength = new int[columnNumber];
@@ -780,7 +1047,26 @@ public class RCFile {
 
     /** Write the initial part of file header. */
     void initializeFileHeader() throws IOException {
-      out.write(VERSION);
+      out.write(VERSION, 0, VERSION.length - 1);
+      if (hasEncodings()) {
+        out.write(VERSION_WITH_ENCODINGS);
+      } else {
+        out.write(hasStatistics() ? VERSION_WITH_STATISTICS : VERSION_WITH_METADATA);
+      }
+    }
+
+    /**
+     * Returns whether the records of this file have column statistics. The
+     * files with column encodings always have them, which are unknown when
+     * no statistics are collected.
+     */
+    public boolean hasStatistics() {
+      return statisticsCollector != null || hasEncodings();
+    }
+
+    /** Returns whether the columns of this file may be encoded. */
+    public boolean hasEncodings() {
+      return columnEncoding != null;
     }
 
     /** Write the final part of file header. */
@@ -884,6 +1170,9 @@ public class RCFile {
       }
 
       BytesRefArrayWritable columns = (BytesRefArrayWritable) val;
+      if (statisticsCollector != null) {
+        statisticsCollector.collect(columns);
+      }
       int size = columns.size();
       for (int i = 0; i < size; i++) {
         BytesRefWritable cu = columns.get(i);
@@ -917,6 +1206,17 @@ public class RCFile {
         currentBuf.flushGroup();
 
         NonSyncDataOutputBuffer columnValue = currentBuf.columnValBuffer;
+        if (hasEncodings()) {
+          byte encoding = columnEncoding.encode(columnValue.getData(),
+              currentBuf.valLengths, currentBuf.valCount, columnValue.getLength(),
+              currentBuf.encodedValBuffer);
+          key.encodings[columnIndex] = encoding;
+          if (encoding != ColumnEncoding.PLAIN) {
+            columnValue = currentBuf.encodedValBuffer;
+          }
+        }
+        // the number of bytes stored before the compression
+        int storedLen = columnValue.getLength();
 
         if (isCompressed()) {
           compressionBuffer[columnIndex].reset();
@@ -927,25 +1227,28 @@ public class RCFile {
           deflateFilter[columnIndex].finish();
           int colLen = compressionBuffer[columnIndex].getLength();
           key.setColumnLenInfo(colLen, currentBuf.valLenBuffer,
-              columnValuePlainLength[columnIndex], columnIndex);
+              storedLen, columnIndex);
           value.setColumnValueBuffer(compressionBuffer[columnIndex],
               columnIndex);
           valueLength += colLen;
           plainTotalColumnLength[columnIndex] += columnValuePlainLength[columnIndex];
           comprTotalColumnLength[columnIndex] += colLen;
         } else {
-          int colLen = columnValuePlainLength[columnIndex];
+          int colLen = storedLen;
           key.setColumnLenInfo(colLen, currentBuf.valLenBuffer, colLen,
               columnIndex);
           value.setColumnValueBuffer(columnValue, columnIndex);
           valueLength += colLen;
-          plainTotalColumnLength[columnIndex] += colLen;
+          plainTotalColumnLength[columnIndex] += columnValuePlainLength[columnIndex];
           comprTotalColumnLength[columnIndex] += colLen;
         }
         columnValuePlainLength[columnIndex] = 0;
       }
 
-      int keyLength = key.getSize();
+      if (statisticsCollector != null) {
+        key.setStatistics(statisticsCollector.getStatistics());
+      }
+      int keyLength = key.getSize(hasStatistics(), hasEncodings());
       if (keyLength < 0) {
         throw new IOException("negative length keys not allowed: " + key);
       }
@@ -956,11 +1259,11 @@ public class RCFile {
       out.writeInt(keyLength); // key portion length
       if (!isCompressed()) {
         out.writeInt(keyLength);
-        key.write(out); // key
+        key.write(out, hasStatistics(), hasEncodings()); // key
       } else {
         keyCompressionBuffer.reset();
         keyDeflateFilter.resetState();
-        key.write(keyDeflateOut);
+        key.write(keyDeflateOut, hasStatistics(), hasEncodings());
         keyDeflateOut.flush();
         keyDeflateFilter.finish();
         int compressedKeyLen = keyCompressionBuffer.getLength();
@@ -971,6 +1274,9 @@ public class RCFile {
 
       // clear the columnBuffers
       clearColumnBuffers();
+      if (statisticsCollector != null) {
+        statisticsCollector.reset();
+      }
 
       bufferedRecords = 0;
       columnBufferSize = 0;
@@ -981,6 +1287,22 @@ public class RCFile {
      */
     public void flushBlock(KeyBuffer keyBuffer, ValueBuffer valueBuffer,
         int recordLen, int keyLength, int compressedKeyLen) throws IOException {
+      boolean withStatistics = hasStatistics();
+      boolean withEncodings = hasEncodings();
+      if (!withEncodings && keyBuffer.hasEncodedColumns()) {
+        throw new IOException("The block has encoded columns, which a file "
+            + "without column encodings cannot have");
+      }
+      if (withStatistics != (keyBuffer.getStatistics() != null)
+          || withEncodings != (keyBuffer.getEncodings() != null)) {
+        // the block comes from a file of another version: drop its
+        // statistics, or write them as unknown, and write its columns as
+        // plain ones
+        int newKeyLength = keyBuffer.getSize(withStatistics, withEncodings);
+        recordLen += newKeyLength - keyLength;
+        keyLength = newKeyLength;
+        compressedKeyLen = newKeyLength;
+      }
       checkAndWriteSync(); // sync
       out.writeInt(recordLen); // total record length
       out.writeInt(keyLength); // key portion length
@@ -989,7 +1311,7 @@ public class RCFile {
         //compress key and write key out
         keyCompressionBuffer.reset();
         keyDeflateFilter.resetState();
-        keyBuffer.write(keyDeflateOut);
+        keyBuffer.write(keyDeflateOut, withStatistics, withEncodings);
         keyDeflateOut.flush();
         keyDeflateFilter.finish();
         compressedKeyLen = keyCompressionBuffer.getLength();
@@ -997,7 +1319,7 @@ public class RCFile {
         out.write(keyCompressionBuffer.getData(), 0, compressedKeyLen);
       } else {
         out.writeInt(compressedKeyLen);
-        keyBuffer.write(out);
+        keyBuffer.write(out, withStatistics, withEncodings);
       }
 
       valueBuffer.write(out); // value
@@ -1241,8 +1563,8 @@ public class RCFile {
 
       // Set 'version'
       version = versionBlock[3];
-      if (version > VERSION[3]) {
-        throw new VersionMismatchException(VERSION[3], version);
+      if (version > VERSION_WITH_ENCODINGS) {
+        throw new VersionMismatchException(VERSION_WITH_ENCODINGS, version);
       }
 
       try {
@@ -1374,7 +1696,28 @@ public class RCFile {
     }
 
     private KeyBuffer createKeyBuffer() {
-      return new KeyBuffer(columnNumber);
+      KeyBuffer keyBuffer = new KeyBuffer(columnNumber);
+      if (hasStatistics()) {
+        ColumnStatistics[] statistics = new ColumnStatistics[columnNumber];
+        for (int i = 0; i < columnNumber; i++) {
+          statistics[i] = new ColumnStatistics();
+        }
+        keyBuffer.setStatistics(statistics);
+      }
+      if (hasEncodings()) {
+        keyBuffer.setEncodings(new byte[columnNumber]);
+      }
+      return keyBuffer;
+    }
+
+    /** Returns whether the records of this file have column statistics. */
+    public boolean hasStatistics() {
+      return version >= VERSION_WITH_STATISTICS;
+    }
+
+    /** Returns whether the columns of this file may be encoded. */
+    public boolean hasEncodings() {
+      return version >= VERSION_WITH_ENCODINGS;
     }
 
     /**
@@ -1551,6 +1894,41 @@ public class RCFile {
       return rest;
     }
 
+    /**
+     * Fetch the bytes of all the values of a given column in the current
+     * buffer, without building a row or a {@link BytesRefWritable} per value.
+     * The values are stored one after the other; the length of each is put
+     * in <code>lengths</code>. Like {@link #getColumn}, it does not change
+     * the result of {@link #next(LongWritable)} and
+     * {@link #getCurrentRow(BytesRefArrayWritable)}.
+     *
+     * @param columnID
+     * @param lengths
+     *          receives the length of each value; it must have room for
+     *          {@link KeyBuffer#getNumberRows()} values
+     * @return the uncompressed bytes of the values, or null if the column is
+     *         not read
+     * @throws IOException
+     */
+    public synchronized byte[] getColumnValues(int columnID, int[] lengths)
+        throws IOException {
+      int selColIdx = revPrjColIDs[columnID];
+      if (selColIdx == -1) {
+        return null;
+      }
+
+      if (!currentValue.inited) {
+        currentValueBuffer();
+      }
+
+      currentKey.getValueLengths(columnID, lengths, fetchColumnTempBuf);
+
+      if (currentValue.decompressedFlag[selColIdx]) {
+        return currentValue.loadedColumnsValueBuffer[selColIdx].getData();
+      }
+      return currentValue.lazyDecompressCallbackObjs[selColIdx].decompress();
+    }
+
     /**
      * Read in next key buffer and throw any data in current key buffer and
      * current value buffer. It will influence the result of
@@ -0,0 +1,375 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.nio.charset.CharacterCodingException;
+
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.serde2.lazy.LazyByte;
+import org.apache.hadoop.hive.serde2.lazy.LazyInteger;
+import org.apache.hadoop.hive.serde2.lazy.LazyLong;
+import org.apache.hadoop.hive.serde2.lazy.LazyShort;
+import org.apache.hadoop.hive.serde2.lazy.LazyUtils;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinaryUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.Text;
+
+/**
+ * RCFileColumnDecoder.
+ *
+ * Decodes the values of an RCFile column, as stored by ColumnarSerDe or
+ * LazyBinaryColumnarSerDe, straight into a column vector. Values which the
+ * SerDe would read as null are null in the vector.
+ */
+public abstract class RCFileColumnDecoder {
+
+  /**
+   * The single byte LazyBinaryColumnarSerDe stores empty strings as, since
+   * an empty value means null.
+   */
+  private static final byte BINARY_EMPTY_STRING = (byte) 0xBF;
+
+  /**
+   * Create a decoder for a column, or return null if the column's type is
+   * not decoded into a vector.
+   *
+   * @param binary
+   *          whether the column was stored by LazyBinaryColumnarSerDe
+   * @param nullSequence
+   *          the null sequence of ColumnarSerDe
+   * @param escaped
+   *          whether ColumnarSerDe escapes the strings
+   */
+  public static RCFileColumnDecoder create(TypeInfo type, boolean binary,
+      Text nullSequence, boolean escaped) {
+    if (type.getCategory() != Category.PRIMITIVE) {
+      return null;
+    }
+    PrimitiveCategory category = ((PrimitiveTypeInfo) type).getPrimitiveCategory();
+    switch (category) {
+    case BOOLEAN:
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return binary ? new BinaryLongDecoder(category)
+          : new TextLongDecoder(category, nullSequence);
+    case FLOAT:
+    case DOUBLE:
+      return binary ? new BinaryDoubleDecoder(category)
+          : new TextDoubleDecoder(category, nullSequence);
+    case STRING:
+      if (binary) {
+        return new BinaryStringDecoder();
+      }
+      // escaped strings would have to be copied to be unescaped
+      return escaped ? null : new TextStringDecoder(nullSequence);
+    default:
+      return null;
+    }
+  }
+
+  public abstract ColumnVector createColumnVector();
+
+  /**
+   * Decode n values into the rows 0 to n - 1 of the column vector.
+   *
+   * @param data
+   *          the bytes of the column's values
+   * @param starts
+   *          the offset of each value in data
+   * @param lengths
+   *          the length of each value
+   * @param from
+   *          the index of the first value to decode
+   */
+  public abstract void decode(byte[] data, int[] starts, int[] lengths,
+      int from, int n, ColumnVector column);
+
+  /**
+   * Base of the decoders of ColumnarSerDe, which stores a null as the null
+   * sequence.
+   */
+  abstract static class TextDecoder extends RCFileColumnDecoder {
+
+    private final byte[] nullBytes;
+    private final int nullLength;
+
+    TextDecoder(Text nullSequence) {
+      nullBytes = nullSequence.getBytes();
+      nullLength = nullSequence.getLength();
+    }
+
+    protected boolean isNull(byte[] data, int start, int length) {
+      return length == nullLength
+          && LazyUtils.compare(data, start, length, nullBytes, 0, nullLength) == 0;
+    }
+  }
+
+  static class TextLongDecoder extends TextDecoder {
+
+    private final PrimitiveCategory category;
+
+    TextLongDecoder(PrimitiveCategory category, Text nullSequence) {
+      super(nullSequence);
+      this.category = category;
+    }
+
+    @Override
+    public ColumnVector createColumnVector() {
+      return new LongColumnVector();
+    }
+
+    @Override
+    public void decode(byte[] data, int[] starts, int[] lengths, int from,
+        int n, ColumnVector column) {
+      long[] vector = ((LongColumnVector) column).vector;
+      for (int i = 0; i < n; i++) {
+        int start = starts[from + i];
+        int length = lengths[from + i];
+        if (isNull(data, start, length)) {
+          column.setNull(i);
+          continue;
+        }
+        try {
+          switch (category) {
+          case BOOLEAN:
+            if (isWord(data, start, length, "TRUE")) {
+              vector[i] = 1;
+            } else if (isWord(data, start, length, "FALSE")) {
+              vector[i] = 0;
+            } else {
+              column.setNull(i);
+            }
+            break;
+          case BYTE:
+            vector[i] = LazyByte.parseByte(data, start, length);
+            break;
+          case SHORT:
+            vector[i] = LazyShort.parseShort(data, start, length);
+            break;
+          case INT:
+            vector[i] = LazyInteger.parseInt(data, start, length);
+            break;
+          default:
+            vector[i] = LazyLong.parseLong(data, start, length);
+            break;
+          }
+        } catch (NumberFormatException e) {
+          // as in LazyPrimitive, a value which does not parse is null
+          column.setNull(i);
+        }
+      }
+    }
+
+    /**
+     * Whether the value is the given upper case word, ignoring case, as
+     * LazyBoolean reads it.
+     */
+    private static boolean isWord(byte[] data, int start, int length, String word) {
+      if (length != word.length()) {
+        return false;
+      }
+      for (int j = 0; j < length; j++) {
+        if (Character.toUpperCase(data[start + j]) != word.charAt(j)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  static class TextDoubleDecoder extends TextDecoder {
+
+    private final boolean isFloat;
+
+    TextDoubleDecoder(PrimitiveCategory category, Text nullSequence) {
+      super(nullSequence);
+      isFloat = category == PrimitiveCategory.FLOAT;
+    }
+
+    @Override
+    public ColumnVector createColumnVector() {
+      return new DoubleColumnVector();
+    }
+
+    @Override
+    public void decode(byte[] data, int[] starts, int[] lengths, int from,
+        int n, ColumnVector column) {
+      double[] vector = ((DoubleColumnVector) column).vector;
+      for (int i = 0; i < n; i++) {
+        int start = starts[from + i];
+        int length = lengths[from + i];
+        if (isNull(data, start, length)) {
+          column.setNull(i);
+          continue;
+        }
+        try {
+          // parsed from a String as in LazyFloat and LazyDouble
+          String value = Text.decode(data, start, length);
+          vector[i] = isFloat ? Float.parseFloat(value) : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+          column.setNull(i);
+        } catch (CharacterCodingException e) {
+          column.setNull(i);
+        }
+      }
+    }
+  }
+
+  static class TextStringDecoder extends TextDecoder {
+
+    TextStringDecoder(Text nullSequence) {
+      super(nullSequence);
+    }
+
+    @Override
+    public ColumnVector createColumnVector() {
+      return new BytesColumnVector();
+    }
+
+    @Override
+    public void decode(byte[] data, int[] starts, int[] lengths, int from,
+        int n, ColumnVector column) {
+      BytesColumnVector bytes = (BytesColumnVector) column;
+      for (int i = 0; i < n; i++) {
+        int start = starts[from + i];
+        int length = lengths[from + i];
+        if (isNull(data, start, length)) {
+          column.setNull(i);
+        } else {
+          bytes.setRef(i, data, start, length);
+        }
+      }
+    }
+  }
+
+  /**
+   * Decoder of LazyBinaryColumnarSerDe integers and booleans. An empty value
+   * is null.
+   */
+  static class BinaryLongDecoder extends RCFileColumnDecoder {
+
+    private final PrimitiveCategory category;
+    private final LazyBinaryUtils.VInt vInt = new LazyBinaryUtils.VInt();
+    private final LazyBinaryUtils.VLong vLong = new LazyBinaryUtils.VLong();
+
+    BinaryLongDecoder(PrimitiveCategory category) {
+      this.category = category;
+    }
+
+    @Override
+    public ColumnVector createColumnVector() {
+      return new LongColumnVector();
+    }
+
+    @Override
+    public void decode(byte[] data, int[] starts, int[] lengths, int from,
+        int n, ColumnVector column) {
+      long[] vector = ((LongColumnVector) column).vector;
+      for (int i = 0; i < n; i++) {
+        int start = starts[from + i];
+        if (lengths[from + i] == 0) {
+          column.setNull(i);
+          continue;
+        }
+        switch (category) {
+        case BOOLEAN:
+          vector[i] = data[start] == 0 ? 0 : 1;
+          break;
+        case BYTE:
+          vector[i] = data[start];
+          break;
+        case SHORT:
+          vector[i] = LazyBinaryUtils.byteArrayToShort(data, start);
+          break;
+        case INT:
+          LazyBinaryUtils.readVInt(data, start, vInt);
+          vector[i] = vInt.value;
+          break;
+        default:
+          LazyBinaryUtils.readVLong(data, start, vLong);
+          vector[i] = vLong.value;
+          break;
+        }
+      }
+    }
+  }
+
+  static class BinaryDoubleDecoder extends RCFileColumnDecoder {
+
+    private final boolean isFloat;
+
+    BinaryDoubleDecoder(PrimitiveCategory category) {
+      isFloat = category == PrimitiveCategory.FLOAT;
+    }
+
+    @Override
+    public ColumnVector createColumnVector() {
+      return new DoubleColumnVector();
+    }
+
+    @Override
+    public void decode(byte[] data, int[] starts, int[] lengths, int from,
+        int n, ColumnVector column) {
+      double[] vector = ((DoubleColumnVector) column).vector;
+      for (int i = 0; i < n; i++) {
+        int start = starts[from + i];
+        if (lengths[from + i] == 0) {
+          column.setNull(i);
+        } else if (isFloat) {
+          vector[i] = Float.intBitsToFloat(LazyBinaryUtils.byteArrayToInt(data, start));
+        } else {
+          vector[i] = Double.longBitsToDouble(LazyBinaryUtils.byteArrayToLong(data, start));
+        }
+      }
+    }
+  }
+
+  static class BinaryStringDecoder extends RCFileColumnDecoder {
+
+    @Override
+    public ColumnVector createColumnVector() {
+      return new BytesColumnVector();
+    }
+
+    @Override
+    public void decode(byte[] data, int[] starts, int[] lengths, int from,
+        int n, ColumnVector column) {
+      BytesColumnVector bytes = (BytesColumnVector) column;
+      for (int i = 0; i < n; i++) {
+        int start = starts[from + i];
+        int length = lengths[from + i];
+        if (length == 0) {
+          column.setNull(i);
+        } else if (length == 1 && data[start] == BINARY_EMPTY_STRING) {
+          bytes.setRef(i, data, start, 0);
+        } else {
+          bytes.setRef(i, data, start, length);
+        }
+      }
+    }
+  }
+}
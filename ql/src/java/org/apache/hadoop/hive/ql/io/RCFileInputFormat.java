@@ -20,6 +20,7 @@ package org.apache.hadoop.hive.ql.io;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Properties;
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -41,7 +42,7 @@ import org.apache.hadoop.mapred.Reporter;
  * @param <V>
  */
 public class RCFileInputFormat<K extends LongWritable, V extends BytesRefArrayWritable>
-    extends FileInputFormat<K, V> implements InputFormatChecker {
+    extends FileInputFormat<K, V> implements InputFormatChecker, VectorizedInputFormat {
 
   public RCFileInputFormat() {
     setMinSplitSize(SequenceFile.SYNC_INTERVAL);
@@ -57,6 +58,17 @@ public class RCFileInputFormat<K extends LongWritable, V extends BytesRefArrayWr
     return new RCFileRecordReader(job, (FileSplit) split);
   }
 
+  @Override
+  public VectorizedRecordReader getVectorizedRecordReader(InputSplit split,
+      JobConf job, Properties tableProperties) throws IOException {
+    return new RCFileVectorizedRecordReader(job, (FileSplit) split, tableProperties);
+  }
+
+  @Override
+  public boolean canDecode(JobConf job, Properties tableProperties) {
+    return RCFileVectorizedRecordReader.canDecode(job, tableProperties);
+  }
+
   @Override
   public boolean validateInput(FileSystem fs, HiveConf conf,
       ArrayList<FileStatus> files) throws IOException {
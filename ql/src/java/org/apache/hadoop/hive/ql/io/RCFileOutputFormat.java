@@ -25,6 +25,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
 import org.apache.hadoop.io.Writable;
@@ -131,9 +132,13 @@ public class RCFileOutputFormat extends
     }
 
     RCFileOutputFormat.setColumnNumber(jc, cols.length);
+    ColumnStatisticsCollector statistics = null;
+    if (HiveConf.getBoolVar(jc, HiveConf.ConfVars.HIVE_RCFILE_COLUMN_STATS)) {
+      statistics = ColumnStatisticsCollector.create(jc, tableProperties, cols.length);
+    }
     final RCFile.Writer outWriter = Utilities.createRCFileWriter
       (jc, finalOutPath.getFileSystem(jc),
-       finalOutPath, isCompressed);
+       finalOutPath, isCompressed, statistics);
 
     return new org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter() {
       public void write(Writable r) throws IOException {
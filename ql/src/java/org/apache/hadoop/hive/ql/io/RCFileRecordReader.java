@@ -20,9 +20,12 @@ package org.apache.hadoop.hive.ql.io;
 
 import java.io.IOException;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.io.RCFile.KeyBuffer;
 import org.apache.hadoop.hive.ql.io.RCFile.Reader;
 import org.apache.hadoop.hive.serde2.columnar.BytesRefArrayWritable;
 import org.apache.hadoop.io.LongWritable;
@@ -33,17 +36,25 @@ import org.apache.hadoop.util.ReflectionUtils;
 /**
  * RCFileRecordReader.
  *
+ * When the file has column statistics and a filter was pushed to the table
+ * scan, the row groups whose statistics show that no row can match the
+ * filter are skipped without reading their values.
+ *
  * @param <K>
  * @param <V>
  */
 public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayWritable>
     implements RecordReader<LongWritable, BytesRefArrayWritable> {
 
+  private static final Log LOG = LogFactory.getLog(RCFileRecordReader.class);
+
   private final Reader in;
   private final long start;
   private final long end;
   private boolean more = true;
   protected Configuration conf;
+  private final ColumnStatisticsFilter statisticsFilter;
+  private long skippedRowGroups = 0;
 
   public RCFileRecordReader(Configuration conf, FileSplit split)
       throws IOException {
@@ -59,6 +70,13 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
 
     this.start = in.getPosition();
     more = start < end;
+
+    if (in.hasStatistics()
+        && !conf.getBoolean(RCFile.TOLERATE_CORRUPTIONS_CONF_STR, false)) {
+      statisticsFilter = ColumnStatisticsFilter.create(conf);
+    } else {
+      statisticsFilter = null;
+    }
   }
 
   public Class<?> getKeyClass() {
@@ -95,6 +113,13 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
       return false;
     }
 
+    if (statisticsFilter != null && !in.hasRecordsInBuffer()) {
+      more = nextMatchingRowGroup();
+      if (!more) {
+        return false;
+      }
+    }
+
     more = in.next(key);
     if (!more) {
       return false;
@@ -108,6 +133,27 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
     return more;
   }
 
+  /**
+   * Read the keys of the next row groups until one may have rows matching
+   * the filter. The values of the skipped row groups are never read.
+   *
+   * @return false if there is no such row group in this split
+   */
+  private boolean nextMatchingRowGroup() throws IOException {
+    while (in.nextColumnsBatch()) {
+      if (in.lastSeenSyncPos() >= end) {
+        return false;
+      }
+      KeyBuffer keyBuffer = in.getCurrentKeyBufferObj();
+      if (statisticsFilter.mayMatch(keyBuffer.getNumberRows(),
+          keyBuffer.getStatistics())) {
+        return true;
+      }
+      skippedRowGroups++;
+    }
+    return false;
+  }
+
   /**
    * Return the progress within the input split.
    *
@@ -142,6 +188,10 @@ public class RCFileRecordReader<K extends LongWritable, V extends BytesRefArrayW
   }
 
   public void close() throws IOException {
+    if (skippedRowGroups > 0) {
+      LOG.info("Skipped " + skippedRowGroups + " row groups of " + in
+          + " by their column statistics");
+    }
     in.close();
   }
 }
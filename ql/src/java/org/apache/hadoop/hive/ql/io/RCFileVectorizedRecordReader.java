@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.RCFile.KeyBuffer;
+import org.apache.hadoop.hive.ql.io.RCFile.Reader;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.columnar.ColumnarSerDe;
+import org.apache.hadoop.hive.serde2.columnar.LazyBinaryColumnarSerDe;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe.SerDeParameters;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.mapred.FileSplit;
+
+/**
+ * RCFileVectorizedRecordReader.
+ *
+ * Reads an RCFile split a batch of rows at a time. The projected columns of
+ * each row group are read once, and their values are decoded straight from
+ * the column buffers into the column vectors, with no row object or
+ * BytesRefWritable per value. Only tables whose projected columns can all be
+ * decoded are read, see {@link #canDecode}. Like {@link RCFileRecordReader},
+ * it skips the row groups whose column statistics cannot match the pushed
+ * filter.
+ *
+ * The column vectors belong to the reader, which puts them in the batch at
+ * each read: the readers of the files of a combined split share the batch
+ * created by the first one.
+ */
+public class RCFileVectorizedRecordReader implements VectorizedRecordReader {
+
+  private final Reader in;
+  private final long start;
+  private final long end;
+  private boolean more = true;
+
+  private final int columnNumber;
+  // the columns decoded, their decoders and their vectors
+  private final int[] columnIds;
+  private final RCFileColumnDecoder[] decoders;
+  private final ColumnVector[] columns;
+  private final ColumnStatisticsFilter statisticsFilter;
+
+  // the current row group
+  private final byte[][] values;
+  private final int[][] starts;
+  private final int[][] lengths;
+  private int rowsInGroup = 0;
+  private int nextRowInGroup = 0;
+
+  public RCFileVectorizedRecordReader(Configuration conf, FileSplit split,
+      Properties tableProperties) throws IOException {
+    String serdeName = tableProperties.getProperty(Constants.SERIALIZATION_LIB);
+    if (!isColumnarSerDe(serdeName)) {
+      throw new IOException("Columns stored by " + serdeName + " are not decoded");
+    }
+    SerDeParameters serdeParams;
+    try {
+      serdeParams = LazySimpleSerDe.initSerdeParams(conf, tableProperties, serdeName);
+    } catch (SerDeException e) {
+      throw new IOException(e);
+    }
+    List<TypeInfo> columnTypes = serdeParams.getColumnTypes();
+
+    Path path = split.getPath();
+    FileSystem fs = path.getFileSystem(conf);
+    in = new RCFile.Reader(fs, path, conf);
+    end = split.getStart() + split.getLength();
+    if (split.getStart() > in.getPosition()) {
+      in.sync(split.getStart()); // sync to start
+    }
+    start = in.getPosition();
+    more = start < end;
+    columnNumber = in.getCurrentKeyBufferObj().getColumnNumber();
+
+    List<Integer> ids = new ArrayList<Integer>();
+    List<RCFileColumnDecoder> columnDecoders = new ArrayList<RCFileColumnDecoder>();
+    for (int id : getReadColumnIds(conf, columnNumber)) {
+      if (id >= columnNumber || id >= columnTypes.size()) {
+        continue;
+      }
+      // a column left out of the batches would be read as null
+      RCFileColumnDecoder decoder = createDecoder(serdeName, serdeParams, id);
+      if (decoder == null) {
+        throw new IOException("Column " + serdeParams.getColumnNames().get(id) + " of type "
+            + columnTypes.get(id) + " is not decoded");
+      }
+      ids.add(id);
+      columnDecoders.add(decoder);
+    }
+    columnIds = new int[ids.size()];
+    decoders = new RCFileColumnDecoder[ids.size()];
+    columns = new ColumnVector[ids.size()];
+    for (int k = 0; k < columnIds.length; k++) {
+      columnIds[k] = ids.get(k);
+      decoders[k] = columnDecoders.get(k);
+      columns[k] = decoders[k].createColumnVector();
+    }
+    values = new byte[columnIds.length][];
+    starts = new int[columnIds.length][];
+    lengths = new int[columnIds.length][];
+
+    if (in.hasStatistics()) {
+      statisticsFilter = ColumnStatisticsFilter.create(conf);
+    } else {
+      statisticsFilter = null;
+    }
+  }
+
+  /**
+   * Whether the reader can decode all the columns projected in the
+   * configuration, which must be stored by ColumnarSerDe or
+   * LazyBinaryColumnarSerDe.
+   */
+  public static boolean canDecode(Configuration conf, Properties tableProperties) {
+    String serdeName = tableProperties.getProperty(Constants.SERIALIZATION_LIB);
+    if (!isColumnarSerDe(serdeName)) {
+      return false;
+    }
+    SerDeParameters serdeParams;
+    try {
+      serdeParams = LazySimpleSerDe.initSerdeParams(conf, tableProperties, serdeName);
+    } catch (SerDeException e) {
+      return false;
+    }
+    int columnCount = serdeParams.getColumnTypes().size();
+    for (int id : getReadColumnIds(conf, columnCount)) {
+      if (id < columnCount && createDecoder(serdeName, serdeParams, id) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isColumnarSerDe(String serdeName) {
+    return ColumnarSerDe.class.getName().equals(serdeName)
+        || LazyBinaryColumnarSerDe.class.getName().equals(serdeName);
+  }
+
+  /**
+   * @return the ids of the projected columns, or of all the columns if no
+   *         projection is set
+   */
+  private static List<Integer> getReadColumnIds(Configuration conf, int columnCount) {
+    List<Integer> readColumnIds = ColumnProjectionUtils.getReadColumnIDs(conf);
+    if (readColumnIds.isEmpty()) {
+      for (int i = 0; i < columnCount; i++) {
+        readColumnIds.add(i);
+      }
+    }
+    return readColumnIds;
+  }
+
+  private static RCFileColumnDecoder createDecoder(String serdeName,
+      SerDeParameters serdeParams, int id) {
+    return RCFileColumnDecoder.create(serdeParams.getColumnTypes().get(id),
+        LazyBinaryColumnarSerDe.class.getName().equals(serdeName),
+        serdeParams.getNullSequence(), serdeParams.isEscaped());
+  }
+
+  @Override
+  public VectorizedRowBatch createBatch() {
+    VectorizedRowBatch batch = new VectorizedRowBatch(columnNumber);
+    installColumns(batch);
+    return batch;
+  }
+
+  /**
+   * Put the column vectors of the reader in the batch, and null at the other
+   * positions.
+   */
+  private void installColumns(VectorizedRowBatch batch) {
+    if (batch.cols.length == columnNumber) {
+      Arrays.fill(batch.cols, null);
+    } else {
+      batch.cols = new ColumnVector[columnNumber];
+    }
+    for (int k = 0; k < columnIds.length; k++) {
+      batch.cols[columnIds[k]] = columns[k];
+    }
+  }
+
+  @Override
+  public boolean next(VectorizedRowBatch batch) throws IOException {
+    installColumns(batch);
+    batch.reset();
+    if (nextRowInGroup == rowsInGroup && !nextRowGroup()) {
+      return false;
+    }
+    int n = Math.min(VectorizedRowBatch.DEFAULT_SIZE, rowsInGroup - nextRowInGroup);
+    for (int k = 0; k < columnIds.length; k++) {
+      decoders[k].decode(values[k], starts[k], lengths[k], nextRowInGroup, n,
+          columns[k]);
+    }
+    batch.size = n;
+    nextRowInGroup += n;
+    return true;
+  }
+
+  /**
+   * Read the decoded columns of the next row group of the split which may
+   * match the filter.
+   */
+  private boolean nextRowGroup() throws IOException {
+    while (more) {
+      if (!in.nextColumnsBatch() || in.lastSeenSyncPos() >= end) {
+        more = false;
+        break;
+      }
+      KeyBuffer keyBuffer = in.getCurrentKeyBufferObj();
+      int numberRows = keyBuffer.getNumberRows();
+      if (numberRows == 0 || (statisticsFilter != null
+          && !statisticsFilter.mayMatch(numberRows, keyBuffer.getStatistics()))) {
+        continue;
+      }
+
+      for (int k = 0; k < columnIds.length; k++) {
+        if (lengths[k] == null || lengths[k].length < numberRows) {
+          lengths[k] = new int[numberRows];
+          starts[k] = new int[numberRows];
+        }
+        values[k] = in.getColumnValues(columnIds[k], lengths[k]);
+        int offset = 0;
+        for (int i = 0; i < numberRows; i++) {
+          starts[k][i] = offset;
+          offset += lengths[k][i];
+        }
+      }
+      rowsInGroup = numberRows;
+      nextRowInGroup = 0;
+      return true;
+    }
+    rowsInGroup = 0;
+    nextRowInGroup = 0;
+    return false;
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    if (end == start) {
+      return 0.0f;
+    } else {
+      return Math.min(1.0f, (in.getPosition() - start) / (float) (end - start));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * An input format that can also read its splits a batch of rows at a time.
+ */
+public interface VectorizedInputFormat {
+
+  /**
+   * Create a reader that decodes the columns projected in the job
+   * configuration into column vectors.
+   *
+   * @param tableProperties
+   *          the properties of the table or partition, which give the types
+   *          of the columns and how the SerDe stored them
+   */
+  VectorizedRecordReader getVectorizedRecordReader(InputSplit split,
+      JobConf job, Properties tableProperties) throws IOException;
+
+  /**
+   * Whether the reader can decode all the columns projected in the job
+   * configuration. A table stored by another SerDe, or a column of a type the
+   * reader does not decode, must be read a row at a time.
+   *
+   * @param tableProperties
+   *          the properties of the table or partition
+   */
+  boolean canDecode(JobConf job, Properties tableProperties);
+}
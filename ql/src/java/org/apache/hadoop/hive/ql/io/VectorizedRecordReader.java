@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+
+/**
+ * A record reader that reads a batch of rows at a time, as primitive column
+ * vectors, instead of one row object at a time.
+ */
+public interface VectorizedRecordReader {
+
+  /**
+   * Create a batch to read into. It has a column vector at the position of
+   * each column the reader decodes, and null at the others.
+   */
+  VectorizedRowBatch createBatch();
+
+  /**
+   * Read the next rows into the batch, at most
+   * {@link VectorizedRowBatch#DEFAULT_SIZE} of them.
+   *
+   * @return false if there are no more rows
+   */
+  boolean next(VectorizedRowBatch batch) throws IOException;
+
+  /**
+   * @return 0.0 to 1.0 of the input read so far
+   */
+  float getProgress() throws IOException;
+
+  void close() throws IOException;
+}
@@ -27,11 +27,13 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.io.ColumnStatisticsCollector;
 import org.apache.hadoop.hive.ql.io.RCFile;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.session.SessionState.LogHelper;
 import org.apache.hadoop.hive.shims.CombineHiveKey;
 import org.apache.hadoop.hive.shims.ShimLoader;
+import org.apache.hadoop.io.SequenceFile.Metadata;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapred.JobConf;
@@ -125,7 +127,18 @@ public class RCFileMergeMapper extends MapReduceBase implements
         codec = key.codec;
         columnNumber = key.keyBuffer.getColumnNumber();
         jc.setInt(RCFile.COLUMN_NUMBER_CONF_STR, columnNumber);
-        outWriter = new RCFile.Writer(fs, jc, outPath, null, codec);
+        // the encoded blocks are copied as they are, so the output file has
+        // column encodings if the first block has them
+        jc.setBoolean(RCFile.COLUMN_ENCODINGS_CONF_STR,
+            key.keyBuffer.getEncodings() != null);
+        // keep the column statistics if the first block has them; blocks of
+        // files without statistics are then written with unknown ones
+        ColumnStatisticsCollector statistics = null;
+        if (key.keyBuffer.getStatistics() != null) {
+          statistics = new ColumnStatisticsCollector(null, columnNumber);
+        }
+        outWriter = new RCFile.Writer(fs, jc, outPath, null, new Metadata(),
+            codec, statistics);
       }
 
       boolean sameCodec = ((codec == key.codec) || codec.getClass().equals(
@@ -73,6 +73,7 @@ import org.apache.hadoop.hive.metastore.api.PrincipalType;
 import org.apache.hadoop.hive.metastore.api.PrivilegeBag;
 import org.apache.hadoop.hive.metastore.api.Role;
 import org.apache.hadoop.hive.metastore.api.SerDeInfo;
+import org.apache.hadoop.hive.ql.exec.ContentSummaryCache;
 import org.apache.hadoop.hive.ql.exec.Utilities;
 import org.apache.hadoop.hive.ql.index.HiveIndexHandler;
 import org.apache.hadoop.hive.ql.session.CreateTableAutomaticGrant;
@@ -373,6 +374,7 @@ public class Hive {
         newTbl.getParameters().remove(Constants.DDL_TIME);
       }
       getMSC().alter_table(t.getDbName(), t.getTableName(), newTbl.getTTable());
+      ContentSummaryCache.invalidate(newTbl.getPath());
     } catch (MetaException e) {
       throw new HiveException("Unable to alter table.", e);
     } catch (TException e) {
@@ -423,6 +425,7 @@ public class Hive {
       }
       getMSC().alter_partition(t.getDbName(), t.getTableName(),
           newPart.getTPartition());
+      invalidateContentSummaries(newPart.getLocation());
 
     } catch (MetaException e) {
       throw new HiveException("Unable to alter partition.", e);
@@ -468,6 +471,8 @@ public class Hive {
       }
       getMSC().renamePartition(tbl.getDbName(), tbl.getTableName(), pvals,
           newPart.getTPartition());
+      ContentSummaryCache.invalidate(tbl.getPath());
+      invalidateContentSummaries(newPart.getLocation());
 
     } catch (InvalidOperationException e){
       throw new HiveException("Unable to rename partition.", e);
@@ -804,7 +809,11 @@ public class Hive {
       boolean ignoreUnknownTab) throws HiveException {
 
     try {
+      Table tbl = ContentSummaryCache.isCreated() ? getTable(dbName, tableName, false) : null;
       getMSC().dropTable(dbName, tableName, deleteData, ignoreUnknownTab);
+      if (tbl != null) {
+        ContentSummaryCache.invalidate(tbl.getPath());
+      }
     } catch (NoSuchObjectException e) {
       if (!ignoreUnknownTab) {
         throw new HiveException(e);
@@ -896,6 +905,36 @@ public class Hive {
       throw new HiveException("Unable to fetch table " + tableName, e);
     }
 
+    return convertTable(tTable);
+  }
+
+  /**
+   * Returns metadata of the tables of a database, fetched by one metastore call.
+   *
+   * @param dbName
+   *          the name of the database
+   * @param tableNames
+   *          the names of the tables
+   * @return the tables, tables not found are omitted and there is no guarantee of ordering.
+   * @throws HiveException
+   */
+  public List<Table> getTableObjectsByName(String dbName, List<String> tableNames)
+      throws HiveException {
+    List<org.apache.hadoop.hive.metastore.api.Table> tTables;
+    try {
+      tTables = getMSC().getTableObjectsByName(dbName, tableNames);
+    } catch (Exception e) {
+      throw new HiveException("Unable to fetch tables " + tableNames, e);
+    }
+    List<Table> tables = new ArrayList<Table>(tTables.size());
+    for (org.apache.hadoop.hive.metastore.api.Table tTable : tTables) {
+      tables.add(convertTable(tTable));
+    }
+    return tables;
+  }
+
+  private Table convertTable(org.apache.hadoop.hive.metastore.api.Table tTable)
+      throws HiveException {
     // For non-views, we need to do some extra fixes
     if (!TableType.VIRTUAL_VIEW.toString().equals(tTable.getTableType())) {
       // Fix the non-printable chars
@@ -1151,6 +1190,7 @@ public class Hive {
         FileSystem fs = FileSystem.get(tbl.getDataLocation(), getConf());
         Hive.copyFiles(loadPath, newPartPath, fs);
       }
+      ContentSummaryCache.invalidate(newPartPath);
 
       // recreate the partition if it existed before
       if (!holdDDLTime) {
@@ -1260,6 +1300,7 @@ public class Hive {
     } else {
       tbl.copyFiles(loadPath);
     }
+    ContentSummaryCache.invalidate(tbl.getPath());
 
     if (!holdDDLTime) {
       try {
@@ -1464,7 +1505,15 @@ public class Hive {
   public boolean dropPartition(String db_name, String tbl_name,
       List<String> part_vals, boolean deleteData) throws HiveException {
     try {
-      return getMSC().dropPartition(db_name, tbl_name, part_vals, deleteData);
+      boolean dropped = getMSC().dropPartition(db_name, tbl_name, part_vals, deleteData);
+      // the partitions of a table are usually below its location
+      if (ContentSummaryCache.isCreated()) {
+        Table tbl = getTable(db_name, tbl_name, false);
+        if (tbl != null) {
+          ContentSummaryCache.invalidate(tbl.getPath());
+        }
+      }
+      return dropped;
     } catch (NoSuchObjectException e) {
       throw new HiveException("Partition or table doesn't exist.", e);
     } catch (Exception e) {
@@ -1927,6 +1976,15 @@ public class Hive {
     }
   }
 
+  /**
+   * Drop the cached content summaries of the location of a partition, if it has one.
+   */
+  private static void invalidateContentSummaries(String location) {
+    if (location != null) {
+      ContentSummaryCache.invalidate(new Path(location));
+    }
+  }
+
   static protected void copyFiles(Path srcf, Path destf, FileSystem fs)
       throws HiveException {
     try {
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluatorFactory;
+import org.apache.hadoop.hive.ql.exec.ExprNodeSharedEvaluator;
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
+import org.apache.hadoop.hive.ql.exec.SelectOperator;
+import org.apache.hadoop.hive.ql.lib.DefaultGraphWalker;
+import org.apache.hadoop.hive.ql.lib.DefaultRuleDispatcher;
+import org.apache.hadoop.hive.ql.lib.Dispatcher;
+import org.apache.hadoop.hive.ql.lib.GraphWalker;
+import org.apache.hadoop.hive.ql.lib.Node;
+import org.apache.hadoop.hive.ql.lib.NodeProcessor;
+import org.apache.hadoop.hive.ql.lib.NodeProcessorCtx;
+import org.apache.hadoop.hive.ql.lib.Rule;
+import org.apache.hadoop.hive.ql.lib.RuleRegExp;
+import org.apache.hadoop.hive.ql.parse.ParseContext;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeNullDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+
+/**
+ * The transformation step that simplifies the expressions of the select and filter operators.
+ *
+ * Deterministic function calls whose arguments are all constants, e.g. casts of literals or date
+ * arithmetic on literals, are replaced by their value. Identical deterministic subexpressions of
+ * an operator are then replaced by a single instance, which the operator evaluates once per row
+ * (see ExprNodeEvaluatorFactory.get(List, RowCounter)).
+ */
+public class ExpressionOptimizer implements Transform {
+
+  private static final Log LOG = LogFactory.getLog(ExpressionOptimizer.class.getName());
+
+  @Override
+  public ParseContext transform(ParseContext pctx) throws SemanticException {
+    Map<Rule, NodeProcessor> opRules = new LinkedHashMap<Rule, NodeProcessor>();
+    opRules.put(new RuleRegExp("R1", "SEL%"), new SelectProc());
+    opRules.put(new RuleRegExp("R2", "FIL%"), new FilterProc());
+
+    Dispatcher disp = new DefaultRuleDispatcher(null, opRules, null);
+    GraphWalker ogw = new DefaultGraphWalker(disp);
+
+    ArrayList<Node> topNodes = new ArrayList<Node>();
+    topNodes.addAll(pctx.getTopOps().values());
+    ogw.startWalking(topNodes, null);
+    return pctx;
+  }
+
+  /**
+   * Optimize the columns of a select operator, and the column expression map entries which
+   * refer to them.
+   */
+  static class SelectProc implements NodeProcessor {
+
+    @Override
+    public Object process(Node nd, Stack<Node> stack, NodeProcessorCtx procCtx,
+        Object... nodeOutputs) throws SemanticException {
+      SelectOperator op = (SelectOperator) nd;
+      SelectDesc conf = op.getConf();
+      if (conf.isSelStarNoCompute() || conf.getColList() == null) {
+        return null;
+      }
+
+      List<ExprNodeDesc> colList = conf.getColList();
+      ArrayList<ExprNodeDesc> newColList = new ArrayList<ExprNodeDesc>(colList.size());
+      for (ExprNodeDesc col : colList) {
+        newColList.add(foldConstants(col));
+      }
+      shareCommonSubexpressions(newColList);
+
+      Map<String, ExprNodeDesc> colExprMap = op.getColumnExprMap();
+      if (colExprMap != null) {
+        for (Map.Entry<String, ExprNodeDesc> entry : colExprMap.entrySet()) {
+          for (int i = 0; i < colList.size(); i++) {
+            if (entry.getValue() == colList.get(i)) {
+              entry.setValue(newColList.get(i));
+              break;
+            }
+          }
+        }
+      }
+      conf.setColList(newColList);
+      return null;
+    }
+  }
+
+  /**
+   * Optimize the predicate of a filter operator.
+   */
+  static class FilterProc implements NodeProcessor {
+
+    @Override
+    public Object process(Node nd, Stack<Node> stack, NodeProcessorCtx procCtx,
+        Object... nodeOutputs) throws SemanticException {
+      FilterDesc conf = ((FilterOperator) nd).getConf();
+      List<ExprNodeDesc> predicate = new ArrayList<ExprNodeDesc>(1);
+      predicate.add(foldConstants(conf.getPredicate()));
+      shareCommonSubexpressions(predicate);
+      conf.setPredicate(predicate.get(0));
+      return null;
+    }
+  }
+
+  /**
+   * Replace the deterministic function calls of an expression whose arguments are constants by
+   * their value. The expression is changed in place; the returned expression replaces it.
+   */
+  public static ExprNodeDesc foldConstants(ExprNodeDesc desc) {
+    if (!(desc instanceof ExprNodeGenericFuncDesc)) {
+      return desc;
+    }
+    ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) desc;
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>(func.getChildExprs().size());
+    boolean allConstant = true;
+    for (ExprNodeDesc child : func.getChildExprs()) {
+      ExprNodeDesc folded = foldConstants(child);
+      children.add(folded);
+      if (!(folded instanceof ExprNodeConstantDesc) && !(folded instanceof ExprNodeNullDesc)) {
+        allConstant = false;
+      }
+    }
+    func.setChildExprs(children);
+
+    GenericUDF udf = func.getGenericUDF();
+    if (!allConstant || !FunctionRegistry.isDeterministic(udf)
+        || FunctionRegistry.isStateful(udf)) {
+      return func;
+    }
+    try {
+      // GenericUDF.initializeAndFoldConstants computes the value of a call on constants
+      ExprNodeEvaluator evaluator = ExprNodeEvaluatorFactory.get(func);
+      ObjectInspector oi = evaluator.initialize(null);
+      if (!(oi instanceof ConstantObjectInspector) || oi.getCategory() != Category.PRIMITIVE) {
+        return func;
+      }
+      PrimitiveObjectInspector poi = (PrimitiveObjectInspector) oi;
+      TypeInfo typeInfo = TypeInfoUtils.getTypeInfoFromObjectInspector(oi);
+      Object value = poi.getPrimitiveJavaObject(
+          ((ConstantObjectInspector) oi).getWritableConstantValue());
+      // Null results keep the call, as a null constant has no type
+      if (value == null || poi.getPrimitiveCategory() == PrimitiveCategory.VOID
+          || !typeInfo.equals(func.getTypeInfo())) {
+        return func;
+      }
+      return new ExprNodeConstantDesc(typeInfo, value);
+    } catch (Exception e) {
+      // The call fails on these constants: leave it to fail at run time, as it did before
+      LOG.debug("Cannot fold " + func.getExprString(), e);
+      return func;
+    }
+  }
+
+  /**
+   * Replace the identical deterministic function calls of a list of expressions, e.g. the columns
+   * of an operator, by a single instance. The expressions are changed in place.
+   */
+  public static void shareCommonSubexpressions(List<ExprNodeDesc> descs) {
+    List<ExprNodeDesc> seen = new ArrayList<ExprNodeDesc>();
+    for (int i = 0; i < descs.size(); i++) {
+      descs.set(i, share(descs.get(i), seen));
+    }
+  }
+
+  private static ExprNodeDesc share(ExprNodeDesc desc, List<ExprNodeDesc> seen) {
+    if (!(desc instanceof ExprNodeGenericFuncDesc)) {
+      return desc;
+    }
+    ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) desc;
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>(func.getChildExprs().size());
+    for (ExprNodeDesc child : func.getChildExprs()) {
+      children.add(share(child, seen));
+    }
+    func.setChildExprs(children);
+
+    if (!ExprNodeSharedEvaluator.isShareable(func)) {
+      return func;
+    }
+    for (ExprNodeDesc other : seen) {
+      if (other == func || other.isSame(func)) {
+        return other;
+      }
+    }
+    seen.add(func);
+    return func;
+  }
+}
@@ -74,6 +74,9 @@ public class Optimizer {
     if(HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVEOPTREDUCEDEDUPLICATION)) {
       transformations.add(new ReduceSinkDeDuplication());
     }
+    if (HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVEOPTEXPRESSIONS)) {
+      transformations.add(new ExpressionOptimizer());
+    }
   }
 
   /**
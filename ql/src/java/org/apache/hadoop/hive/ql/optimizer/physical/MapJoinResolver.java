@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.Context;
 import org.apache.hadoop.hive.ql.exec.ConditionalTask;
 import org.apache.hadoop.hive.ql.exec.MapredLocalTask;
@@ -123,6 +124,11 @@ public class MapJoinResolver implements PhysicalPlanResolver {
         // and return all the dummy parent
         LocalMapJoinProcCtx  localMapJoinProcCtx= adjustLocalTask(localTask);
         List<Operator<? extends Serializable>> dummyOps = localMapJoinProcCtx.getDummyParentOp();
+        if (HiveConf.getBoolVar(physicalContext.getConf(),
+            HiveConf.ConfVars.HIVEOPTRUNTIMEFILTER)) {
+          RuntimeFilterGenerator.generate(physicalContext.getParseContext(), mapredWork,
+              localwork);
+        }
 
         // create new local work and setup the dummy ops
         MapredLocalWork newLocalWork = new MapredLocalWork();
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer.physical;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.ColumnInfo;
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator;
+import org.apache.hadoop.hive.ql.exec.MapJoinOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.SelectOperator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.parse.ParseContext;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.HashTableSinkDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapredLocalWork;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.plan.RuntimeFilterDesc;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * RuntimeFilterGenerator.
+ *
+ * Adds the runtime filters of the map joins of a task. A join key of a small table whose big
+ * table key is a plain column of the big table scan is collected by the local task; the
+ * map-reduce task then prunes the partitions of the big table with it if the column is a
+ * partition column, and the table scan drops the rows whose column is outside the range of the
+ * keys otherwise. Only inner and left semi joins qualify, since the other joins keep the big
+ * table rows which match no key, and null-safe keys are skipped, since null keys are not
+ * collected.
+ */
+public final class RuntimeFilterGenerator {
+
+  private RuntimeFilterGenerator() {
+  }
+
+  public static void generate(ParseContext pctx, MapredWork mapredWork,
+      MapredLocalWork localWork) {
+    // the keys of a bucket map join are collected once per bucket
+    if (localWork.getBucketMapjoinContext() != null) {
+      return;
+    }
+    List<HashTableSinkOperator> sinks = new ArrayList<HashTableSinkOperator>();
+    for (Operator<? extends Serializable> op : localWork.getAliasToWork().values()) {
+      findHashTableSinks(op, sinks);
+    }
+
+    for (Operator<? extends Serializable> op : mapredWork.getAliasToWork().values()) {
+      if (!(op instanceof TableScanOperator)) {
+        continue;
+      }
+      TableScanOperator tableScan = (TableScanOperator) op;
+      Table table = pctx.getTopToTable().get(tableScan);
+      List<Operator<? extends Serializable>> path = getPathToMapJoin(tableScan);
+      if (table == null || path == null) {
+        continue;
+      }
+      MapJoinOperator mapJoin = (MapJoinOperator) path.get(path.size() - 1);
+      MapJoinDesc mapJoinDesc = mapJoin.getConf();
+      HashTableSinkDesc sinkDesc = null;
+      for (HashTableSinkOperator sink : sinks) {
+        // the hash table sink is created from the map join descriptor, and shares its keys
+        if (sink.getConf().getKeys() == mapJoinDesc.getKeys()) {
+          sinkDesc = sink.getConf();
+        }
+      }
+      if (sinkDesc == null || !isFiltering(mapJoinDesc.getConds())
+          || mapJoin.getParentOperators().indexOf(path.get(path.size() - 2))
+          != mapJoinDesc.getPosBigTable()) {
+        continue;
+      }
+
+      List<RuntimeFilterDesc> filters = new ArrayList<RuntimeFilterDesc>();
+      Byte bigTag = mapJoinDesc.getTagOrder()[mapJoinDesc.getPosBigTable()];
+      List<ExprNodeDesc> bigKeys = mapJoinDesc.getKeys().get(bigTag);
+      boolean[] nullSafes = mapJoinDesc.getNullSafes();
+      for (int i = 0; i < bigKeys.size(); i++) {
+        // a null-safe key matches the big table rows whose column is null, which a runtime
+        // filter drops
+        if (nullSafes != null && nullSafes[i]) {
+          continue;
+        }
+        TypeInfo typeInfo = bigKeys.get(i).getTypeInfo();
+        String column = getScanColumn(bigKeys.get(i), path);
+        if (column == null || !isFilterable(typeInfo)) {
+          continue;
+        }
+        boolean partitionColumn = isPartitionColumn(table, column);
+        for (Map.Entry<Byte, List<ExprNodeDesc>> keys : mapJoinDesc.getKeys().entrySet()) {
+          Byte tag = keys.getKey();
+          // the small table key is compared without conversion
+          if (tag.equals(bigTag) || !keys.getValue().get(i).getTypeInfo().equals(typeInfo)) {
+            continue;
+          }
+          filters.add(new RuntimeFilterDesc(tag, i, column, partitionColumn,
+              Utilities.generateRuntimeFilterPath(localWork.getTmpFileURI(),
+              mapJoinDesc.getDumpFilePrefix(), tag, i)));
+        }
+      }
+      if (!filters.isEmpty()) {
+        tableScan.getConf().setRuntimeFilters(filters);
+        sinkDesc.setRuntimeFilters(filters);
+      }
+    }
+  }
+
+  private static void findHashTableSinks(Operator<? extends Serializable> op,
+      List<HashTableSinkOperator> sinks) {
+    if (op instanceof HashTableSinkOperator) {
+      if (!sinks.contains(op)) {
+        sinks.add((HashTableSinkOperator) op);
+      }
+      return;
+    }
+    if (op.getChildOperators() != null) {
+      for (Operator<? extends Serializable> child : op.getChildOperators()) {
+        findHashTableSinks(child, sinks);
+      }
+    }
+  }
+
+  /**
+   * Return the operators from a table scan to the map join it feeds through filters and selects
+   * only, or null if there is no such map join.
+   */
+  private static List<Operator<? extends Serializable>> getPathToMapJoin(
+      TableScanOperator tableScan) {
+    List<Operator<? extends Serializable>> path = new ArrayList<Operator<? extends Serializable>>();
+    Operator<? extends Serializable> op = tableScan;
+    while (true) {
+      path.add(op);
+      if (op.getChildOperators() == null || op.getChildOperators().size() != 1) {
+        return null;
+      }
+      op = op.getChildOperators().get(0);
+      if (op instanceof MapJoinOperator) {
+        path.add(op);
+        return path;
+      }
+      if (!(op instanceof FilterOperator) && !(op instanceof SelectOperator)) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Return the column of the table scan an expression of the map join input is, or null if it is
+   * not a plain column.
+   */
+  private static String getScanColumn(ExprNodeDesc expr,
+      List<Operator<? extends Serializable>> path) {
+    for (int i = path.size() - 2; i >= 0; i--) {
+      if (!(expr instanceof ExprNodeColumnDesc)) {
+        return null;
+      }
+      Operator<? extends Serializable> op = path.get(i);
+      String column = ((ExprNodeColumnDesc) expr).getColumn();
+      if (op instanceof TableScanOperator) {
+        for (ColumnInfo columnInfo : op.getSchema().getSignature()) {
+          if (columnInfo.getInternalName().equals(column) && !columnInfo.getIsVirtualCol()) {
+            return column;
+          }
+        }
+        return null;
+      }
+      if (op instanceof SelectOperator
+          && !((SelectOperator) op).getConf().isSelStarNoCompute()) {
+        expr = op.getColumnExprMap() == null ? null : op.getColumnExprMap().get(column);
+      }
+    }
+    return null;
+  }
+
+  private static boolean isFiltering(JoinCondDesc[] conds) {
+    for (JoinCondDesc cond : conds) {
+      if (cond.getType() != JoinDesc.INNER_JOIN && cond.getType() != JoinDesc.LEFT_SEMI_JOIN) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isFilterable(TypeInfo typeInfo) {
+    if (typeInfo.getCategory() != Category.PRIMITIVE) {
+      return false;
+    }
+    PrimitiveCategory category = ((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory();
+    return category != PrimitiveCategory.BINARY && category != PrimitiveCategory.VOID
+        && category != PrimitiveCategory.UNKNOWN;
+  }
+
+  private static boolean isPartitionColumn(Table table, String column) {
+    if (!table.isPartitioned()) {
+      return false;
+    }
+    for (FieldSchema partCol : table.getPartCols()) {
+      if (partCol.getName().equals(column)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
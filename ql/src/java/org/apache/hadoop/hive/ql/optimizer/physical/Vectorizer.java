@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer.physical;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.ConditionalTask;
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.MapRedTask;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.PrimitiveAggregations;
+import org.apache.hadoop.hive.ql.exec.SelectOperator;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.Task;
+import org.apache.hadoop.hive.ql.exec.vector.VectorFilterOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorGroupByOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorSelectOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorTableScanOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizationContext;
+import org.apache.hadoop.hive.ql.lib.DefaultGraphWalker;
+import org.apache.hadoop.hive.ql.lib.Dispatcher;
+import org.apache.hadoop.hive.ql.lib.GraphWalker;
+import org.apache.hadoop.hive.ql.lib.Node;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+
+/**
+ * Vectorizer.
+ *
+ * Replaces the map-side chains of table scan, filters, selects and hash group by whose
+ * expressions and aggregations are all supported in vectorized mode by their vectorized
+ * operators. The other map-side plans are left in row mode.
+ */
+public class Vectorizer implements PhysicalPlanResolver {
+
+  private static final Log LOG = LogFactory.getLog(Vectorizer.class.getName());
+
+  // the null keys of a group are kept in a mask of a long
+  private static final int MAX_KEYS = 63;
+
+  @Override
+  public PhysicalContext resolve(PhysicalContext physicalContext) throws SemanticException {
+    Dispatcher dispatcher = new VectorizerTaskDispatcher();
+    GraphWalker ogw = new DefaultGraphWalker(dispatcher);
+    ArrayList<Node> topNodes = new ArrayList<Node>();
+    topNodes.addAll(physicalContext.rootTasks);
+    ogw.startWalking(topNodes, null);
+    return physicalContext;
+  }
+
+  /**
+   * Vectorize the map-side plans of the map-reduce tasks, including the tasks a conditional
+   * task chooses from.
+   */
+  static class VectorizerTaskDispatcher implements Dispatcher {
+
+    @Override
+    public Object dispatch(Node nd, Stack<Node> stack, Object... nodeOutputs)
+        throws SemanticException {
+      Task<? extends Serializable> task = (Task<? extends Serializable>) nd;
+      if (task instanceof ConditionalTask) {
+        for (Task<? extends Serializable> tsk : ((ConditionalTask) task).getListTasks()) {
+          if (tsk instanceof MapRedTask) {
+            vectorize(((MapRedTask) tsk).getWork());
+          }
+        }
+      } else if (task instanceof MapRedTask) {
+        vectorize(((MapRedTask) task).getWork());
+      }
+      return null;
+    }
+  }
+
+  static void vectorize(MapredWork work) {
+    Map<String, Operator<? extends Serializable>> aliasToWork = work.getAliasToWork();
+    for (Map.Entry<String, Operator<? extends Serializable>> entry : aliasToWork.entrySet()) {
+      Operator<? extends Serializable> op = entry.getValue();
+      if (op.getClass() != TableScanOperator.class) {
+        continue;
+      }
+      TableScanOperator tableScan = (TableScanOperator) op;
+      ArrayList<String> vectorColumns = new ArrayList<String>();
+      List<Operator<? extends Serializable>> chain = validate(tableScan, vectorColumns);
+      if (chain == null) {
+        continue;
+      }
+      LOG.info("Vectorizing the map-side plan of " + entry.getKey());
+      entry.setValue(replace(chain, vectorColumns));
+    }
+  }
+
+  /**
+   * @return the operators of the chain from the table scan to the group by, or null if it cannot
+   *         be vectorized; the columns of the scan used by the chain are added to vectorColumns
+   */
+  private static List<Operator<? extends Serializable>> validate(TableScanOperator tableScan,
+      List<String> vectorColumns) {
+    if (tableScan.getConf() != null && tableScan.getConf().isGatherStats()) {
+      return null;
+    }
+    List<Operator<? extends Serializable>> chain = new ArrayList<Operator<? extends Serializable>>();
+    chain.add(tableScan);
+    // the columns are the ones of the scan until a select computes its own
+    boolean scanColumns = true;
+    Operator<? extends Serializable> op = tableScan;
+    while (true) {
+      List<Operator<? extends Serializable>> children = op.getChildOperators();
+      if (children == null || children.size() != 1) {
+        return null;
+      }
+      op = children.get(0);
+      if (op.getParentOperators().size() != 1) {
+        return null;
+      }
+      chain.add(op);
+
+      if (op.getClass() == FilterOperator.class) {
+        FilterDesc filter = ((FilterOperator) op).getConf();
+        if (filter.isSortedFilter()
+            || !VectorizationContext.isSupported(filter.getPredicate(), true)) {
+          return null;
+        }
+        if (scanColumns) {
+          addColumns(vectorColumns, filter.getPredicate());
+        }
+      } else if (op.getClass() == SelectOperator.class) {
+        SelectOperator select = (SelectOperator) op;
+        if (select.getConf().isSelStarNoCompute()) {
+          continue;
+        }
+        for (ExprNodeDesc expr : select.getConf().getColList()) {
+          if (!VectorizationContext.isSupported(expr, false)) {
+            return null;
+          }
+          if (scanColumns) {
+            addColumns(vectorColumns, expr);
+          }
+        }
+        scanColumns = false;
+      } else if (op.getClass() == GroupByOperator.class) {
+        GroupByDesc groupBy = ((GroupByOperator) op).getConf();
+        if (!validateGroupBy(groupBy)) {
+          return null;
+        }
+        if (scanColumns) {
+          for (ExprNodeDesc key : groupBy.getKeys()) {
+            addColumns(vectorColumns, key);
+          }
+          for (AggregationDesc aggr : groupBy.getAggregators()) {
+            for (ExprNodeDesc parameter : aggr.getParameters()) {
+              addColumns(vectorColumns, parameter);
+            }
+          }
+        }
+        return chain;
+      } else {
+        return null;
+      }
+    }
+  }
+
+  private static void addColumns(List<String> columns, ExprNodeDesc expr) {
+    if (expr.getCols() == null) {
+      return;
+    }
+    for (String column : expr.getCols()) {
+      if (!columns.contains(column)) {
+        columns.add(column);
+      }
+    }
+  }
+
+  private static boolean validateGroupBy(GroupByDesc groupBy) {
+    if (groupBy.getMode() != GroupByDesc.Mode.HASH || groupBy.getBucketGroup()
+        || groupBy.getGroupKeyNotReductionKey() || groupBy.getKeys().size() > MAX_KEYS) {
+      return false;
+    }
+    for (ExprNodeDesc key : groupBy.getKeys()) {
+      if (!VectorizationContext.isSupported(key, false)) {
+        return false;
+      }
+    }
+
+    List<AggregationDesc> aggrs = groupBy.getAggregators();
+    GenericUDAFEvaluator[] evaluators = new GenericUDAFEvaluator[aggrs.size()];
+    ObjectInspector[][] parameterObjectInspectors = new ObjectInspector[aggrs.size()][];
+    for (int i = 0; i < evaluators.length; i++) {
+      AggregationDesc aggr = aggrs.get(i);
+      evaluators[i] = aggr.getGenericUDAFEvaluator();
+      List<ExprNodeDesc> parameters = aggr.getParameters();
+      parameterObjectInspectors[i] = new ObjectInspector[parameters.size()];
+      for (int j = 0; j < parameters.size(); j++) {
+        if (!VectorizationContext.isSupported(parameters.get(j), false)) {
+          return false;
+        }
+        parameterObjectInspectors[i][j] = TypeInfoUtils
+            .getStandardWritableObjectInspectorFromTypeInfo(parameters.get(j).getTypeInfo());
+      }
+    }
+    return PrimitiveAggregations.create(aggrs, evaluators, parameterObjectInspectors) != null;
+  }
+
+  /**
+   * Replace the operators of the chain by their vectorized operators.
+   *
+   * @return the new table scan
+   */
+  private static Operator<? extends Serializable> replace(
+      List<Operator<? extends Serializable>> chain, ArrayList<String> vectorColumns) {
+    TableScanOperator tableScan = (TableScanOperator) chain.get(0);
+    VectorTableScanOperator vectorTableScan = new VectorTableScanOperator();
+    vectorTableScan.setConf(tableScan.getConf());
+    vectorTableScan.setTableDesc(tableScan.getTableDesc());
+    vectorTableScan.setNeededColumnIDs(tableScan.getNeededColumnIDs());
+    vectorTableScan.setVectorColumns(vectorColumns);
+
+    Operator<? extends Serializable> parent = copy(tableScan, vectorTableScan);
+    for (int i = 1; i < chain.size(); i++) {
+      Operator<? extends Serializable> op = chain.get(i);
+      Operator<? extends Serializable> vectorOp;
+      if (op instanceof FilterOperator) {
+        VectorFilterOperator filter = new VectorFilterOperator();
+        filter.setConf(((FilterOperator) op).getConf());
+        vectorOp = filter;
+      } else if (op instanceof SelectOperator) {
+        VectorSelectOperator select = new VectorSelectOperator();
+        select.setConf(((SelectOperator) op).getConf());
+        vectorOp = select;
+      } else {
+        VectorGroupByOperator groupBy = new VectorGroupByOperator();
+        groupBy.setConf(((GroupByOperator) op).getConf());
+        vectorOp = groupBy;
+      }
+      copy(op, vectorOp);
+
+      List<Operator<? extends Serializable>> parents =
+          new ArrayList<Operator<? extends Serializable>>();
+      parents.add(parent);
+      vectorOp.setParentOperators(parents);
+      List<Operator<? extends Serializable>> children =
+          new ArrayList<Operator<? extends Serializable>>();
+      children.add(vectorOp);
+      parent.setChildOperators(children);
+      parent = vectorOp;
+    }
+
+    // the operators below the group by now read from the vectorized one
+    GroupByOperator groupBy = (GroupByOperator) chain.get(chain.size() - 1);
+    parent.setChildOperators(groupBy.getChildOperators());
+    if (groupBy.getChildOperators() != null) {
+      for (Operator<? extends Serializable> child : groupBy.getChildOperators()) {
+        child.replaceParent(groupBy, parent);
+      }
+    }
+    return vectorTableScan;
+  }
+
+  /**
+   * Copy the properties of an operator which are not specific to its class.
+   */
+  private static Operator<? extends Serializable> copy(Operator<? extends Serializable> from,
+      Operator<? extends Serializable> to) {
+    to.setId(from.getIdentifier());
+    to.setOperatorId(from.getOperatorId());
+    to.setSchema(from.getSchema());
+    to.setColumnExprMap(from.getColumnExprMap());
+    to.setCounterNames(from.getCounterNames());
+    to.setCounterNameToEnum(from.getCounterNameToEnum());
+    return to;
+  }
+}
@@ -194,7 +194,10 @@ public enum ErrorMsg {
   INSERT_INTO_DYNAMICPARTITION_IFNOTEXISTS(
       "Dynamic partitions do not support IF NOT EXISTS. Specified partitions with value :"),
   DROP_PARTITION_NON_STRING_PARTCOLS_NONEQUALITY("Drop partitions for a non string partition " 
-      + "columns is not allowed using non-equality")
+      + "columns is not allowed using non-equality"),
+  WINDOWING_INVALID_FUNCTION("Invalid window function"),
+  WINDOWING_INVALID_FRAME("Invalid window frame"),
+  WINDOWING_NOT_ALLOWED("Window function is only allowed in the SELECT clause")
       ;
 
   private String mesg;
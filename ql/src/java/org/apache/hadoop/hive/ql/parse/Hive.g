@@ -216,6 +216,7 @@ TOK_USERSCRIPTCOLSCHEMA;
 TOK_RECORDREADER;
 TOK_RECORDWRITER;
 TOK_LEFTSEMIJOIN;
+TOK_LEFTANTIJOIN;
 TOK_LATERAL_VIEW;
 TOK_TABALIAS;
 TOK_ANALYZE;
@@ -257,6 +258,12 @@ TOK_TABNAME;
 TOK_TABSRC;
 TOK_RESTRICT;
 TOK_CASCADE;
+TOK_WINDOWSPEC;
+TOK_WINDOWROWS;
+TOK_WINDOWRANGE;
+TOK_WINDOWPRECEDING;
+TOK_WINDOWFOLLOWING;
+TOK_WINDOWCURRENT;
 }
 
 
@@ -1638,6 +1645,7 @@ joinToken
     | KW_RIGHT KW_OUTER KW_JOIN   -> TOK_RIGHTOUTERJOIN
     | KW_FULL  KW_OUTER KW_JOIN   -> TOK_FULLOUTERJOIN
     | KW_LEFT  KW_SEMI  KW_JOIN   -> TOK_LEFTSEMIJOIN
+    | KW_LEFT  KW_ANTI  KW_JOIN   -> TOK_LEFTANTIJOIN
     ;
 
 lateralView
@@ -2349,6 +2357,7 @@ KW_TRIGGER: 'TRIGGER';
 KW_RECORDREADER: 'RECORDREADER';
 KW_RECORDWRITER: 'RECORDWRITER';
 KW_SEMI: 'SEMI';
+KW_ANTI: 'ANTI';
 KW_LATERAL: 'LATERAL';
 KW_TOUCH: 'TOUCH';
 KW_ARCHIVE: 'ARCHIVE';
@@ -148,6 +148,8 @@ import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.ql.plan.UDTFDesc;
 import org.apache.hadoop.hive.ql.plan.UnionDesc;
+import org.apache.hadoop.hive.ql.plan.WindowFunctionDesc;
+import org.apache.hadoop.hive.ql.plan.WindowingDesc;
 import org.apache.hadoop.hive.ql.plan.FilterDesc.sampleDesc;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hadoop.hive.ql.session.SessionState.ResourceType;
@@ -410,7 +412,10 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
         || exprTokenType == HiveParser.TOK_FUNCTIONDI
         || exprTokenType == HiveParser.TOK_FUNCTIONSTAR) {
       assert (expressionTree.getChildCount() != 0);
-      if (expressionTree.getChild(0).getType() == HiveParser.Identifier) {
+      // a window function is computed by the windowing operator, but its
+      // arguments may contain aggregations
+      if (expressionTree.getChild(0).getType() == HiveParser.Identifier
+          && !isWindowFunction(expressionTree)) {
         String functionName = unescapeIdentifier(expressionTree.getChild(0)
             .getText());
         if (FunctionRegistry.getGenericUDAFResolver(functionName) != null) {
@@ -601,6 +606,7 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
         || (node.getToken().getType() == HiveParser.TOK_RIGHTOUTERJOIN)
         || (node.getToken().getType() == HiveParser.TOK_FULLOUTERJOIN)
         || (node.getToken().getType() == HiveParser.TOK_LEFTSEMIJOIN)
+        || (node.getToken().getType() == HiveParser.TOK_LEFTANTIJOIN)
         || (node.getToken().getType() == HiveParser.TOK_UNIQUEJOIN)) {
       return true;
     }
@@ -1369,6 +1375,7 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
         if ((rightCondAl1.size() != 0)
             || ((rightCondAl1.size() == 0) && (rightCondAl2.size() == 0))) {
           if (type.equals(JoinType.LEFTOUTER) ||
+                type.equals(JoinType.LEFTANTI) ||
                 type.equals(JoinType.FULLOUTER)) {
             if (conf.getBoolVar(HiveConf.ConfVars.HIVEOUTERJOINSUPPORTSFILTERS)) {
               joinTree.getFilters().get(0).add(joinCond);
@@ -1411,6 +1418,7 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
         }
       } else if (rightCondAl1.size() != 0) {
         if (type.equals(JoinType.LEFTOUTER)
+            || type.equals(JoinType.LEFTANTI)
             || type.equals(JoinType.FULLOUTER)) {
           if (conf.getBoolVar(HiveConf.ConfVars.HIVEOUTERJOINSUPPORTSFILTERS)) {
             joinTree.getFilters().get(0).add(joinCond);
@@ -1482,6 +1490,7 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
 
       if (!leftAliasNull) {
         if (type.equals(JoinType.LEFTOUTER)
+            || type.equals(JoinType.LEFTANTI)
             || type.equals(JoinType.FULLOUTER)) {
           if (conf.getBoolVar(HiveConf.ConfVars.HIVEOUTERJOINSUPPORTSFILTERS)) {
             joinTree.getFilters().get(0).add(joinCond);
@@ -2111,7 +2120,8 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
       throws SemanticException {
     ASTNode selExprList = qb.getParseInfo().getSelForClause(dest);
 
-    Operator<?> op = genSelectPlan(selExprList, qb, input);
+    Operator<?> op = genSelectPlan(selExprList, qb, genWindowingPlan(
+        selExprList, input));
 
     if (LOG.isDebugEnabled()) {
       LOG.debug("Created Select Plan for clause: " + dest);
@@ -2357,6 +2367,335 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
     return output;
   }
 
+  /**
+   * Returns whether the expression is a window function, whose last child is
+   * the window specification.
+   */
+  static boolean isWindowFunction(ASTNode expr) {
+    int type = expr.getType();
+    return (type == HiveParser.TOK_FUNCTION
+        || type == HiveParser.TOK_FUNCTIONDI
+        || type == HiveParser.TOK_FUNCTIONSTAR)
+        && expr.getChildCount() > 1
+        && expr.getChild(expr.getChildCount() - 1).getType() == HiveParser.TOK_WINDOWSPEC;
+  }
+
+  /**
+   * DFS-scan the expression tree to find all window functions. The key is the
+   * toStringTree() representation of the function.
+   */
+  private void getWindowFunctions(ASTNode expr,
+      LinkedHashMap<String, ASTNode> functions) {
+    if (isWindowFunction(expr)) {
+      functions.put(expr.toStringTree(), expr);
+      return;
+    }
+    for (int i = 0; i < expr.getChildCount(); i++) {
+      getWindowFunctions((ASTNode) expr.getChild(i), functions);
+    }
+  }
+
+  /**
+   * Generate the windowing operators computing the window functions in the
+   * select list. Window functions of the same partitioning and ordering are
+   * computed together, by a ReduceSink distributing by the partition columns
+   * and sorting by the partition and order columns, followed by a windowing
+   * operator in the reducer. The select list finds the functions in the row
+   * resolver of the last windowing operator as pre-calculated expressions.
+   */
+  private Operator<?> genWindowingPlan(ASTNode selExprList, Operator<?> input)
+      throws SemanticException {
+    LinkedHashMap<String, ASTNode> functions = new LinkedHashMap<String, ASTNode>();
+    for (int i = 0; i < selExprList.getChildCount(); ++i) {
+      ASTNode selExpr = (ASTNode) selExprList.getChild(i);
+      if (selExpr.getType() == HiveParser.TOK_SELEXPR) {
+        getWindowFunctions((ASTNode) selExpr.getChild(0), functions);
+      }
+    }
+
+    LinkedHashMap<String, List<ASTNode>> functionsBySpec = new LinkedHashMap<String, List<ASTNode>>();
+    for (ASTNode function : functions.values()) {
+      ASTNode spec = (ASTNode) function.getChild(function.getChildCount() - 1);
+      ASTNode partitionExprs = (ASTNode) spec
+          .getFirstChildWithType(HiveParser.TOK_DISTRIBUTEBY);
+      ASTNode sortExprs = (ASTNode) spec
+          .getFirstChildWithType(HiveParser.TOK_SORTBY);
+      String key = (partitionExprs == null ? "" : partitionExprs.toStringTree())
+          + " " + (sortExprs == null ? "" : sortExprs.toStringTree());
+      List<ASTNode> specFunctions = functionsBySpec.get(key);
+      if (specFunctions == null) {
+        specFunctions = new ArrayList<ASTNode>();
+        functionsBySpec.put(key, specFunctions);
+      }
+      specFunctions.add(function);
+    }
+
+    Operator<?> output = input;
+    for (List<ASTNode> specFunctions : functionsBySpec.values()) {
+      output = genWindowingPlan(specFunctions, output);
+    }
+    return output;
+  }
+
+  @SuppressWarnings("nls")
+  private Operator<?> genWindowingPlan(List<ASTNode> functions,
+      Operator<?> input) throws SemanticException {
+    ASTNode spec = (ASTNode) functions.get(0).getChild(
+        functions.get(0).getChildCount() - 1);
+    ASTNode partitionExprs = (ASTNode) spec
+        .getFirstChildWithType(HiveParser.TOK_DISTRIBUTEBY);
+    ASTNode sortExprs = (ASTNode) spec
+        .getFirstChildWithType(HiveParser.TOK_SORTBY);
+    RowResolver inputRR = opParseCtx.get(input).getRowResolver();
+
+    // Distribute by the partition columns, and sort by the partition columns
+    // followed by the order columns
+    ArrayList<ExprNodeDesc> partitionCols = new ArrayList<ExprNodeDesc>();
+    ArrayList<ExprNodeDesc> sortCols = new ArrayList<ExprNodeDesc>();
+    StringBuilder order = new StringBuilder();
+    if (partitionExprs != null) {
+      for (int i = 0; i < partitionExprs.getChildCount(); ++i) {
+        ExprNodeDesc exprNode = genExprNodeDesc((ASTNode) partitionExprs
+            .getChild(i), inputRR);
+        partitionCols.add(exprNode);
+        sortCols.add(exprNode);
+        order.append("+");
+      }
+    }
+    if (sortExprs != null) {
+      for (int i = 0; i < sortExprs.getChildCount(); ++i) {
+        ASTNode cl = (ASTNode) sortExprs.getChild(i);
+        if (cl.getType() == HiveParser.TOK_TABSORTCOLNAMEDESC) {
+          order.append("-");
+        } else {
+          order.append("+");
+        }
+        sortCols.add(genExprNodeDesc((ASTNode) cl.getChild(0), inputRR));
+      }
+    }
+
+    Map<String, ExprNodeDesc> colExprMap = new HashMap<String, ExprNodeDesc>();
+    ArrayList<ExprNodeDesc> valueCols = new ArrayList<ExprNodeDesc>();
+    for (ColumnInfo colInfo : inputRR.getColumnInfos()) {
+      valueCols.add(new ExprNodeColumnDesc(colInfo.getType(), colInfo
+          .getInternalName(), colInfo.getTabAlias(), colInfo
+          .getIsVirtualCol()));
+      colExprMap.put(colInfo.getInternalName(), valueCols
+          .get(valueCols.size() - 1));
+    }
+    ArrayList<String> outputColumns = new ArrayList<String>();
+    for (int i = 0; i < valueCols.size(); i++) {
+      outputColumns.add(getColumnInternalName(i));
+    }
+
+    // Without partition columns the whole input is a single partition
+    int numReducers = partitionCols.isEmpty() ? 1 : -1;
+    Operator interim = putOpInsertMap(OperatorFactory.getAndMakeChild(PlanUtils
+        .getReduceSinkDesc(sortCols, valueCols, outputColumns, false, -1,
+        partitionCols, order.toString(), numReducers),
+        new RowSchema(inputRR.getColumnInfos()), input), inputRR);
+    interim.setColumnExprMap(colExprMap);
+
+    // After GROUP BY the columns still resolve to group by expressions only
+    RowResolver extractRR = new RowResolver();
+    extractRR.setIsExprResolver(inputRR.getIsExprResolver());
+    int pos = 0;
+    for (ColumnInfo colInfo : inputRR.getColumnInfos()) {
+      String[] info = inputRR.reverseLookup(colInfo.getInternalName());
+      extractRR.put(info[0], info[1], new ColumnInfo(
+          getColumnInternalName(pos), colInfo.getType(), info[0],
+          colInfo.getIsVirtualCol(), colInfo.isHiddenVirtualCol()));
+      pos++;
+    }
+    Operator extract = putOpInsertMap(OperatorFactory.getAndMakeChild(
+        new ExtractDesc(new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo,
+        Utilities.ReduceField.VALUE.toString(), "", false)), new RowSchema(
+        extractRR.getColumnInfos()), interim), extractRR);
+
+    // The windowing operator outputs its input columns followed by the
+    // window functions
+    ArrayList<ExprNodeDesc> windowPartitionCols = new ArrayList<ExprNodeDesc>();
+    if (partitionExprs != null) {
+      for (int i = 0; i < partitionExprs.getChildCount(); ++i) {
+        windowPartitionCols.add(genExprNodeDesc((ASTNode) partitionExprs
+            .getChild(i), extractRR));
+      }
+    }
+    ArrayList<ExprNodeDesc> windowOrderCols = new ArrayList<ExprNodeDesc>();
+    if (sortExprs != null) {
+      for (int i = 0; i < sortExprs.getChildCount(); ++i) {
+        windowOrderCols.add(genExprNodeDesc((ASTNode) sortExprs.getChild(i)
+            .getChild(0), extractRR));
+      }
+    }
+
+    RowResolver outputRR = new RowResolver();
+    outputRR.setIsExprResolver(inputRR.getIsExprResolver());
+    ArrayList<String> outputColumnNames = new ArrayList<String>();
+    Map<String, ExprNodeDesc> windowColExprMap = new HashMap<String, ExprNodeDesc>();
+    pos = 0;
+    for (ColumnInfo colInfo : extractRR.getColumnInfos()) {
+      String[] info = extractRR.reverseLookup(colInfo.getInternalName());
+      String field = getColumnInternalName(pos);
+      outputRR.put(info[0], info[1], new ColumnInfo(field, colInfo.getType(),
+          info[0], colInfo.getIsVirtualCol(), colInfo.isHiddenVirtualCol()));
+      outputColumnNames.add(field);
+      windowColExprMap.put(field, new ExprNodeColumnDesc(colInfo.getType(),
+          colInfo.getInternalName(), colInfo.getTabAlias(), colInfo
+          .getIsVirtualCol()));
+      pos++;
+    }
+
+    ArrayList<WindowFunctionDesc> windowFunctions = new ArrayList<WindowFunctionDesc>();
+    for (ASTNode function : functions) {
+      WindowFunctionDesc desc = getWindowFunctionDesc(function, sortExprs != null,
+          extractRR);
+      TypeInfo returnType;
+      if (desc.getGenericUDAFEvaluator() != null) {
+        returnType = getGenericUDAFInfo(desc.getGenericUDAFEvaluator(),
+            GenericUDAFEvaluator.Mode.COMPLETE, desc.getParameters()).returnType;
+      } else if (desc.getParameters().isEmpty()) {
+        returnType = TypeInfoFactory.intTypeInfo;
+      } else {
+        returnType = desc.getParameters().get(0).getTypeInfo();
+      }
+      windowFunctions.add(desc);
+
+      String field = getColumnInternalName(pos);
+      outputRR.putExpression(function, new ColumnInfo(field, returnType, "",
+          false));
+      outputColumnNames.add(field);
+      pos++;
+    }
+
+    Operator output = putOpInsertMap(OperatorFactory.getAndMakeChild(
+        new WindowingDesc(windowPartitionCols, windowOrderCols,
+        windowFunctions, outputColumnNames), new RowSchema(outputRR
+        .getColumnInfos()), extract), outputRR);
+    output.setColumnExprMap(windowColExprMap);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Created Windowing Plan row schema: " + outputRR.toString());
+    }
+    return output;
+  }
+
+  private WindowFunctionDesc getWindowFunctionDesc(ASTNode function,
+      boolean hasOrder, RowResolver inputRR) throws SemanticException {
+    String functionName = unescapeIdentifier(function.getChild(0).getText())
+        .toLowerCase();
+    ASTNode spec = (ASTNode) function.getChild(function.getChildCount() - 1);
+    ASTNode frame = (ASTNode) spec.getFirstChildWithType(HiveParser.TOK_WINDOWROWS);
+    if (frame == null) {
+      frame = (ASTNode) spec.getFirstChildWithType(HiveParser.TOK_WINDOWRANGE);
+    }
+
+    int numArgs = function.getChildCount() - 2;
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+
+    if (functionName.equals("row_number") || functionName.equals("rank")
+        || functionName.equals("dense_rank")) {
+      if (function.getType() != HiveParser.TOK_FUNCTION || numArgs != 0
+          || frame != null) {
+        throw new SemanticException(ErrorMsg.WINDOWING_INVALID_FUNCTION
+            .getMsg(function));
+      }
+      return new WindowFunctionDesc(functionName, parameters, null, 0, false,
+          0, 0);
+    }
+
+    if (functionName.equals("lag") || functionName.equals("lead")) {
+      // lag(expr [, offset [, default]])
+      if (function.getType() != HiveParser.TOK_FUNCTION || numArgs < 1
+          || numArgs > 3 || frame != null) {
+        throw new SemanticException(ErrorMsg.WINDOWING_INVALID_FUNCTION
+            .getMsg(function));
+      }
+      parameters.add(genExprNodeDesc((ASTNode) function.getChild(1), inputRR));
+      int offset = 1;
+      if (numArgs > 1) {
+        offset = getWindowOffset((ASTNode) function.getChild(2),
+            ErrorMsg.WINDOWING_INVALID_FUNCTION);
+      }
+      if (numArgs > 2) {
+        parameters.add(genExprNodeDesc((ASTNode) function.getChild(3), inputRR));
+      }
+      return new WindowFunctionDesc(functionName, parameters, null, offset,
+          false, 0, 0);
+    }
+
+    if (function.getType() == HiveParser.TOK_FUNCTIONDI
+        || FunctionRegistry.getGenericUDAFResolver(functionName) == null) {
+      throw new SemanticException(ErrorMsg.WINDOWING_INVALID_FUNCTION
+          .getMsg(function));
+    }
+    for (int i = 1; i <= numArgs; i++) {
+      parameters.add(genExprNodeDesc((ASTNode) function.getChild(i), inputRR));
+    }
+    GenericUDAFEvaluator evaluator = getGenericUDAFEvaluator(functionName,
+        parameters, function, false,
+        function.getType() == HiveParser.TOK_FUNCTIONSTAR);
+
+    // The default frame is from the start of the partition to the last peer
+    // of the current row, or the whole partition without ORDER BY
+    boolean rangeFrame = true;
+    int frameStart = WindowFunctionDesc.UNBOUNDED_PRECEDING;
+    int frameEnd = hasOrder ? 0 : WindowFunctionDesc.UNBOUNDED_FOLLOWING;
+    if (frame != null) {
+      rangeFrame = frame.getType() == HiveParser.TOK_WINDOWRANGE;
+      frameStart = getWindowFrameBound((ASTNode) frame.getChild(0));
+      frameEnd = frame.getChildCount() > 1 ? getWindowFrameBound((ASTNode) frame
+          .getChild(1)) : 0;
+      // RANGE frames with value offsets are not supported
+      if (frameStart == WindowFunctionDesc.UNBOUNDED_FOLLOWING
+          || frameEnd == WindowFunctionDesc.UNBOUNDED_PRECEDING
+          || frameStart > frameEnd
+          || (rangeFrame && ((frameStart != 0
+          && frameStart != WindowFunctionDesc.UNBOUNDED_PRECEDING)
+          || (frameEnd != 0 && frameEnd != WindowFunctionDesc.UNBOUNDED_FOLLOWING)))) {
+        throw new SemanticException(ErrorMsg.WINDOWING_INVALID_FRAME
+            .getMsg(frame));
+      }
+    }
+    return new WindowFunctionDesc(functionName, parameters, evaluator, 0,
+        rangeFrame, frameStart, frameEnd);
+  }
+
+  private int getWindowFrameBound(ASTNode bound) throws SemanticException {
+    switch (bound.getType()) {
+    case HiveParser.TOK_WINDOWCURRENT:
+      return 0;
+    case HiveParser.TOK_WINDOWPRECEDING:
+      return bound.getChildCount() == 0 ? WindowFunctionDesc.UNBOUNDED_PRECEDING
+          : -getWindowOffset((ASTNode) bound.getChild(0),
+          ErrorMsg.WINDOWING_INVALID_FRAME);
+    case HiveParser.TOK_WINDOWFOLLOWING:
+      return bound.getChildCount() == 0 ? WindowFunctionDesc.UNBOUNDED_FOLLOWING
+          : getWindowOffset((ASTNode) bound.getChild(0),
+          ErrorMsg.WINDOWING_INVALID_FRAME);
+    default:
+      throw new SemanticException(ErrorMsg.WINDOWING_INVALID_FRAME.getMsg(bound));
+    }
+  }
+
+  /**
+   * Offsets of window functions and frames are non-negative integer literals.
+   */
+  private int getWindowOffset(ASTNode offset, ErrorMsg error)
+      throws SemanticException {
+    if (offset.getType() == HiveParser.Number) {
+      try {
+        int value = Integer.parseInt(offset.getText());
+        if (value >= 0 && value < Integer.MAX_VALUE) {
+          return value;
+        }
+      } catch (NumberFormatException e) {
+        // fall through
+      }
+    }
+    throw new SemanticException(error.getMsg(offset));
+  }
+
   /**
    * Class to store GenericUDAF related information.
    */
@@ -5399,6 +5738,13 @@ public class SemanticAnalyzer extends BaseSemanticAnalyzer {
       joinTree.setNoSemiJoin(false);
       condn[0] = new JoinCond(0, 1, JoinType.LEFTSEMI);
       break;
+    case HiveParser.TOK_LEFTANTIJOIN:
+      // the rhs only contributes its distinct join keys, like a semijoin, but
+      // unmatched lhs rows are the ones preserved, like an outer join
+      joinTree.setNoOuterJoin(false);
+      joinTree.setNoSemiJoin(false);
+      condn[0] = new JoinCond(0, 1, JoinType.LEFTANTI);
+      break;
     default:
       condn[0] = new JoinCond(0, 1, JoinType.INNER);
       joinTree.setNoOuterJoin(true);
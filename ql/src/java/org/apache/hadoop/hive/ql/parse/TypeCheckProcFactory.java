@@ -831,6 +831,14 @@ public final class TypeCheckProcFactory {
         return desc;
       }
 
+      // Window functions are computed by the windowing operator below the
+      // select, so they are not allowed anywhere else.
+      if (((ASTNode) nd).getType() == HiveParser.TOK_WINDOWSPEC) {
+        ctx.setError(ErrorMsg.WINDOWING_NOT_ALLOWED.getMsg((ASTNode) nd),
+            (ASTNode) nd);
+        return null;
+      }
+
       if (ctx.getError() != null) {
         return null;
       }
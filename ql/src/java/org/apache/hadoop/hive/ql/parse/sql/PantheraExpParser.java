@@ -27,8 +27,10 @@ public class PantheraExpParser extends PantheraParser_PLSQLParser {
   public static final int PANTHERA_LIMIT = 999;
   public static final int LEFTSEMI_VK = 998;
   public static final int LIMIT_VK = 997;
+  public static final int LEFTANTI_VK = 996;
 
   public static final String LEFTSEMI_STR = "leftsemi";
+  public static final String LEFTANTI_STR = "leftanti";
   public static final String LEFT_STR="left";
 
   public PantheraExpParser(TokenStream input, PantheraParser gPantheraParser) {
@@ -18,6 +18,10 @@
 
 package org.apache.hadoop.hive.ql.parse.sql;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.conf.HiveConf;
@@ -57,15 +61,26 @@ public class SqlASTTranslator {
   public ASTNode translate(SqlASTNode sqlASTRoot) throws SqlXlateException {
     ASTNode ret = null;
     LOG.info("Starting Translation from SQL AST to Hive AST");
-    LOG.info("Original SQL AST : " + sqlASTRoot.toStringTree());
 
     TranslateContext context = new TranslateContext(conf);
+    Set<String> tblNames = new HashSet<String>();
+    SqlXlateUtil.getAllTblNames(sqlASTRoot, tblNames);
+    context.getMeta().prefetchTables(tblNames);
 
     if (transformer == null) {
       transformer = TransformerBuilder.buildTransformer();
     }
     transformer.transformAST(sqlASTRoot, context);
-    LOG.info("Transformed SQL AST : " + sqlASTRoot.toStringTree());
+    if (LOG.isInfoEnabled()) {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, Long> entry : context.getTransformTime().entrySet()) {
+        sb.append(' ').append(entry.getKey()).append(':').append(entry.getValue() / 1000000);
+      }
+      LOG.info("Transformer spend time(ms):" + sb);
+    }
+    if (context.isTraceEnabled()) {
+      TranslationTrace.trace("Transformed SQL AST", sqlASTRoot.toStringTree());
+    }
 
     HiveASTGenerator generator = GeneratorFactory.getGenerator(sqlASTRoot);
     ASTNode hiveTopNode = new ASTNode();
@@ -84,7 +99,9 @@ public class SqlASTTranslator {
     ret = (ASTNode) hiveTopNode.getChild(0);
 
     // potential validation, optimization here
-    LOG.info("Generated Hive AST : " + ret.toStringTree().replace('(', '[').replace(')', ']'));
+    if (context.isTraceEnabled()) {
+      TranslationTrace.trace("Generated Hive AST", ret.toStringTree());
+    }
     return ret;
   }
 
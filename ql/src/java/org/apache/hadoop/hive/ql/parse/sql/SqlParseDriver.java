@@ -242,6 +242,19 @@ public class SqlParseDriver {
     // pre-parse phase
     command = preparse(command);
     LOG.info("Pre-Parsing Completed");
+
+    // a traced command is always translated
+    SqlTranslationCache cache = conf == null || TranslationTrace.isEnabled(conf) ? null
+        : SqlTranslationCache.get(conf);
+    String cacheKey = null;
+    if (cache != null) {
+      cacheKey = cache.getKey(command, conf);
+      ASTNode cachedAST = cache.lookup(cacheKey, conf);
+      if (cachedAST != null) {
+        LOG.info("Translation found in cache.");
+        return cachedAST;
+      }
+    }
     // Lexing phase
     SqlLexer lexer = new SqlLexer(new ANTLRStringStream(command));
 
@@ -270,7 +283,9 @@ public class SqlParseDriver {
 
     // Translate phase
     SqlASTNode sqlAST = (SqlASTNode) r.getTree();
-    LOG.info("SQL AST before translation : " + sqlAST.toStringTree());
+    if (TranslationTrace.isEnabled(conf)) {
+      TranslationTrace.trace("SQL AST before translation", sqlAST.toStringTree());
+    }
     SqlASTTranslator trans = null;
     ASTNode hiveAST = null;
     try {
@@ -280,8 +295,10 @@ public class SqlParseDriver {
       LOG.error("SQL transform error :" + e.toString());
       throw e;
     }
-    LOG.info("Hive AST after translation : " + hiveAST.toStringTree());
     LOG.info("Translation Completed.");
+    if (cache != null) {
+      cache.put(cacheKey, hiveAST, conf);
+    }
     return hiveAST;
   }
 }
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse.sql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.runtime.CommonToken;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.UnknownDBException;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.parse.ASTNode;
+import org.apache.hadoop.hive.ql.parse.HiveParser;
+import org.apache.hadoop.hive.ql.stats.StatsSetupConst;
+
+/**
+ * Process-wide LRU cache from SQL command to translated Hive AST, so that a repeated SQL command
+ * skips parsing and translation.
+ *
+ * The key is the pre-parsed command, the current database and the configuration the translator
+ * depends on. Every entry remembers the metadata and the statistics of the tables referred by its
+ * Hive AST, and is dropped on lookup if any of them was altered, dropped, re-created or had its
+ * statistics updated since. The tables are checked in one metastore call per database.
+ *
+ * Cached and returned trees are deep copies, as semantic analysis may change the tree it is given.
+ */
+public final class SqlTranslationCache {
+  private static final Log LOG = LogFactory.getLog("hive.ql.parse.sql.SqlTranslationCache");
+
+  private static SqlTranslationCache instance;
+
+  private static final String[] STATS = {StatsSetupConst.TOTAL_SIZE, StatsSetupConst.ROW_COUNT,
+      StatsSetupConst.RAW_DATA_SIZE, StatsSetupConst.NUM_FILES, StatsSetupConst.NUM_PARTITIONS};
+
+  private final int maxSize;
+  private final Map<String, Entry> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private static class Entry {
+    private final ASTNode tree;
+    // full table name -> metadata fingerprint when the entry was cached
+    private final Map<String, String> tables;
+
+    Entry(ASTNode tree, Map<String, String> tables) {
+      this.tree = tree;
+      this.tables = tables;
+    }
+  }
+
+  private SqlTranslationCache(final int maxSize) {
+    this.maxSize = maxSize;
+    cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get the cache, or null if it is disabled by hive.sql.translation.cache.size. The cache is
+   * re-created if the configured size changes.
+   */
+  public static synchronized SqlTranslationCache get(HiveConf conf) {
+    int size = HiveConf.getIntVar(conf, HiveConf.ConfVars.HIVE_SQL_TRANSLATION_CACHE_SIZE);
+    if (size <= 0) {
+      return null;
+    }
+    if (instance == null || instance.maxSize != size) {
+      instance = new SqlTranslationCache(size);
+    }
+    return instance;
+  }
+
+  /**
+   * Build the cache key of a pre-parsed command.
+   */
+  public String getKey(String command, HiveConf conf) throws SqlXlateException {
+    StringBuilder sb = new StringBuilder();
+    sb.append(getDb(conf).getCurrentDatabase()).append('\n');
+    sb.append(HiveConf.getBoolVar(conf, HiveConf.ConfVars.HIVEOPTSQLJOINREORDER)).append('\n');
+    sb.append(command.trim());
+    return sb.toString();
+  }
+
+  /**
+   * Look up the translated Hive AST of a command.
+   *
+   * @return copy of the cached Hive AST, or null if it is not cached or out of date
+   */
+  public ASTNode lookup(String key, HiveConf conf) throws SqlXlateException {
+    Entry entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+    }
+    if (entry != null && !isValid(entry, conf)) {
+      synchronized (cache) {
+        if (cache.get(key) == entry) {
+          cache.remove(key);
+        }
+      }
+      invalidations.incrementAndGet();
+      entry = null;
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("SQL translation cache hit, hits: " + hits + ", misses: " + misses);
+    }
+    return copy(entry.tree);
+  }
+
+  /**
+   * Cache the translated Hive AST of a command.
+   */
+  public void put(String key, ASTNode tree, HiveConf conf) throws SqlXlateException {
+    Hive db = getDb(conf);
+    Set<String> names = new HashSet<String>();
+    collectTables(tree, db.getCurrentDatabase(), names);
+    Entry entry = new Entry(copy(tree), getFingerprints(db, names));
+    synchronized (cache) {
+      cache.put(key, entry);
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  private boolean isValid(Entry entry, HiveConf conf) throws SqlXlateException {
+    Map<String, String> fingerprints = getFingerprints(getDb(conf), entry.tables.keySet());
+    for (Map.Entry<String, String> table : entry.tables.entrySet()) {
+      if (!table.getValue().equals(fingerprints.get(table.getKey()))) {
+        LOG.info("Metadata of " + table.getKey() + " changed, drop cached translation");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the fingerprints of the tables, or "" for a missing table.
+   *
+   * @param fullNames
+   *          full names of tables, as db.table
+   * @return full table name -> fingerprint
+   */
+  private Map<String, String> getFingerprints(Hive db, Set<String> fullNames)
+      throws SqlXlateException {
+    Map<String, List<String>> dbTables = new HashMap<String, List<String>>();
+    Map<String, String> fingerprints = new HashMap<String, String>();
+    for (String fullName : fullNames) {
+      int dot = fullName.indexOf('.');
+      String dbName = fullName.substring(0, dot);
+      List<String> names = dbTables.get(dbName);
+      if (names == null) {
+        names = new ArrayList<String>();
+        dbTables.put(dbName, names);
+      }
+      names.add(fullName.substring(dot + 1));
+      fingerprints.put(fullName, "");
+    }
+    for (Map.Entry<String, List<String>> tables : dbTables.entrySet()) {
+      List<Table> tabs;
+      try {
+        tabs = db.getTableObjectsByName(tables.getKey(), tables.getValue());
+      } catch (HiveException e) {
+        if (e.getCause() instanceof UnknownDBException) {
+          continue;
+        }
+        throw new SqlXlateException("HiveException thrown : " + e);
+      }
+      for (Table tab : tabs) {
+        fingerprints.put((tab.getDbName() + "." + tab.getTableName()).toLowerCase(),
+            getFingerprint(tab));
+      }
+    }
+    return fingerprints;
+  }
+
+  /**
+   * The fingerprint covers the schema, the last DDL time and the statistics of a table, which
+   * are all kept in its parameters, e.g. totalSize used to order joins.
+   */
+  private String getFingerprint(Table tab) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(tab.getTTable().getCreateTime()).append(tab.getCols());
+    Map<String, String> parameters = new TreeMap<String, String>(tab.getParameters());
+    for (String stat : STATS) {
+      sb.append(stat).append('=').append(parameters.remove(stat)).append(',');
+    }
+    sb.append(parameters);
+    return sb.toString();
+  }
+
+  private static void collectTables(ASTNode node, String currentDb, Set<String> tables) {
+    if (node.getType() == HiveParser.TOK_TABNAME) {
+      String name = node.getChildCount() == 2 ? node.getChild(0).getText() + "."
+          + node.getChild(1).getText() : currentDb + "." + node.getChild(0).getText();
+      tables.add(name.toLowerCase());
+      return;
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      collectTables((ASTNode) node.getChild(i), currentDb, tables);
+    }
+  }
+
+  private static ASTNode copy(ASTNode src) {
+    ASTNode node = new ASTNode(src.getToken() == null ? null : new CommonToken(src.getToken()));
+    for (int i = 0; i < src.getChildCount(); i++) {
+      node.addChild(copy((ASTNode) src.getChild(i)));
+    }
+    return node;
+  }
+
+  private static Hive getDb(HiveConf conf) throws SqlXlateException {
+    try {
+      return Hive.get(conf);
+    } catch (HiveException e) {
+      throw new SqlXlateException("HiveException thrown : " + e);
+    }
+  }
+}
@@ -19,6 +19,7 @@
 package org.apache.hadoop.hive.ql.parse.sql;
 
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -41,6 +42,7 @@ import org.apache.hadoop.hive.ql.parse.ASTNode;
 import org.apache.hadoop.hive.ql.parse.HiveParser;
 import org.apache.hadoop.hive.ql.parse.RowResolver;
 import org.apache.hadoop.hive.ql.parse.sql.transformer.QueryInfo.Column;
+import org.apache.hadoop.hive.ql.stats.StatsSetupConst;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
@@ -71,7 +73,9 @@ public final class SqlXlateUtil {
    */
   public static ASTNode newASTNode(int ttype, String text) {
     ASTNode n = new ASTNode(new org.antlr.runtime.CommonToken(ttype, text));
-    LOG.debug("creating ASTNode :" + n.toString());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("creating ASTNode :" + n.toString());
+    }
     return n;
   }
 
@@ -84,7 +88,9 @@ public final class SqlXlateUtil {
    */
   public static ASTNode newASTNode(org.antlr.runtime.Token token) {
     ASTNode n = new ASTNode(token);
-    LOG.debug("creating ASTNode :" + n.toString());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("creating ASTNode :" + n.toString());
+    }
     return n;
   }
 
@@ -135,7 +141,9 @@ public final class SqlXlateUtil {
    */
   public static SqlASTNode newSqlASTNode(org.antlr33.runtime.Token token) {
     SqlASTNode n = new SqlASTNode(token);
-    LOG.debug("creating SqlASTNode :" + n.toString());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("creating SqlASTNode :" + n.toString());
+    }
     return n;
   }
 
@@ -339,6 +347,30 @@ public final class SqlXlateUtil {
     }
   }
 
+  /**
+   * Collect names of all tables referred in SQL AST subtree, including those within sub-queries.
+   *
+   * @param n
+   *          root of SQL AST subtree
+   * @param tblNames
+   *          result set, table name is qualified as schema.table if it has schema
+   */
+  public static void getAllTblNames(CommonTree n, Set<String> tblNames) {
+    if (n.getType() == PantheraParser_PLSQLParser.DIRECT_MODE && n.getChildCount() > 0) {
+      CommonTree tableViewName = (CommonTree) n.getChild(0);
+      String name = tableViewName.getChild(0).getText();
+      if (tableViewName.getChildCount() > 1) {
+        // schema.table
+        name += ("." + tableViewName.getChild(1).getText());
+      }
+      tblNames.add(name);
+      return;
+    }
+    for (int i = 0; i < n.getChildCount(); i++) {
+      getAllTblNames((CommonTree) n.getChild(i), tblNames);
+    }
+  }
+
   /**
    * Collect all src table names and aliases in from clause.
    *
@@ -706,14 +738,19 @@ public final class SqlXlateUtil {
   public static class HiveMetadata {
     protected final Hive db;
     protected final HiveConf conf;
+    // full table name -> table, so that each table is fetched from metastore once per translation
+    protected HashMap<String, Table> tblMap;
     protected HashMap<String, RowResolver> tblRRMap;
+    protected HashMap<String, Long> tblSizeMap;
 
     public HiveMetadata(HiveConf conf) throws SqlXlateException {
       try {
         // prevent from calling
         this.conf = conf;
         db = Hive.get(conf);
+        tblMap = new HashMap<String, Table>();
         tblRRMap = new HashMap<String, RowResolver>();
+        tblSizeMap = new HashMap<String, Long>();
       } catch (HiveException e) {
         throw new SqlXlateException("HiveException thrown : " + e);
       }
@@ -727,11 +764,11 @@ public final class SqlXlateUtil {
      * @throws SqlXlateException
      */
     private Table getMetaDataForAlias(String tabName) throws SqlXlateException {
-      try {
-        return db.getTable(tabName);
-      } catch (HiveException e) {
-        throw new SqlXlateException("HiveException thrown : " + e);
+      int dot = tabName.indexOf('.');
+      if (dot < 0) {
+        return getMetaDataForAlias(null, tabName);
       }
+      return getMetaDataForAlias(tabName.substring(0, dot), tabName.substring(dot + 1));
     }
 
     /**
@@ -742,10 +779,62 @@ public final class SqlXlateUtil {
      * @throws SqlXlateException
      */
     private Table getMetaDataForAlias(String dbName, String tabName) throws SqlXlateException {
-      try {
-        return db.getTable(dbName, tabName);
-      } catch (HiveException e) {
-        throw new SqlXlateException("HiveException thrown : " + e);
+      if (dbName == null) {
+        dbName = db.getCurrentDatabase();
+      }
+      String tbl = getFullTblName(dbName, tabName).toLowerCase();
+      Table tab = tblMap.get(tbl);
+      if (tab == null) {
+        try {
+          tab = db.getTable(dbName, tabName);
+        } catch (HiveException e) {
+          throw new SqlXlateException("HiveException thrown : " + e);
+        }
+        tblMap.put(tbl, tab);
+      }
+      return tab;
+    }
+
+    /**
+     * Fetch meta data of tables with one metastore call per database, so that the tables are
+     * not fetched one by one later.
+     *
+     * @param tblNames
+     *          table names, optionally qualified as schema.table
+     */
+    public void prefetchTables(Set<String> tblNames) {
+      if (conf == null) {
+        // no metastore
+        return;
+      }
+      Map<String, List<String>> dbTblNames = new HashMap<String, List<String>>();
+      for (String tblName : tblNames) {
+        int dot = tblName.indexOf('.');
+        String dbName = dot < 0 ? db.getCurrentDatabase() : tblName.substring(0, dot);
+        String tabName = dot < 0 ? tblName : tblName.substring(dot + 1);
+        if (tblMap.containsKey(getFullTblName(dbName, tabName).toLowerCase())) {
+          continue;
+        }
+        List<String> names = dbTblNames.get(dbName);
+        if (names == null) {
+          names = new ArrayList<String>();
+          dbTblNames.put(dbName, names);
+        }
+        names.add(tabName);
+      }
+      for (Map.Entry<String, List<String>> entry : dbTblNames.entrySet()) {
+        if (entry.getValue().size() < 2) {
+          // no round trip to save
+          continue;
+        }
+        try {
+          for (Table tab : db.getTableObjectsByName(entry.getKey(), entry.getValue())) {
+            tblMap.put(getFullTblName(tab.getDbName(), tab.getTableName()).toLowerCase(), tab);
+          }
+        } catch (HiveException e) {
+          // tables are fetched one by one then
+          LOG.warn("Failed to fetch tables " + entry.getValue() + " : " + e);
+        }
       }
     }
 
@@ -768,7 +857,7 @@ public final class SqlXlateUtil {
             return null;
           }
           RowResolver rr = getRRForTblInternal(tab);
-          tblRRMap.put(tblName, rr);
+          tblRRMap.put(tbl, rr);
           return rr;
         }
       } catch (HiveException e) {
@@ -799,6 +888,41 @@ public final class SqlXlateUtil {
       }
     }
 
+    /**
+     * Get estimated size in bytes of table from the totalSize statistic gathered by StatsTask. The
+     * file system is not scanned, so that translating a query does not list table locations.
+     *
+     * @param tblName
+     *          table name, optionally qualified as schema.table
+     * @return size of table, or -1 if it is unknown (view, missing table or no statistics)
+     */
+    public long getTableSize(String tblName) {
+      Long size = tblSizeMap.get(tblName);
+      if (size == null) {
+        size = getTableSizeInternal(tblName);
+        tblSizeMap.put(tblName, size);
+      }
+      return size;
+    }
+
+    private long getTableSizeInternal(String tblName) {
+      try {
+        Table tab = getMetaDataForAlias(tblName);
+        if (tab == null || tab.isView()) {
+          return -1;
+        }
+        String totalSize = tab.getParameters().get(StatsSetupConst.TOTAL_SIZE);
+        if (totalSize != null) {
+          return Long.parseLong(totalSize);
+        }
+      } catch (SqlXlateException e) {
+        LOG.debug("Can not get size of table " + tblName + ": " + e);
+      } catch (NumberFormatException e) {
+        LOG.debug("Can not get size of table " + tblName + ": " + e);
+      }
+      return -1;
+    }
+
     /**
      * Get full name string of table
      *
@@ -866,7 +990,8 @@ public final class SqlXlateUtil {
         || op.getType() == HiveParser.TOK_LEFTOUTERJOIN
         || op.getType() == HiveParser.TOK_RIGHTOUTERJOIN
         || op.getType() == HiveParser.TOK_FULLOUTERJOIN
-        || op.getType() == HiveParser.TOK_LEFTSEMIJOIN) {
+        || op.getType() == HiveParser.TOK_LEFTSEMIJOIN
+        || op.getType() == HiveParser.TOK_LEFTANTIJOIN) {
       return true;
     } else {
       return false;
@@ -19,9 +19,11 @@ package org.apache.hadoop.hive.ql.parse.sql;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.antlr33.runtime.tree.CommonTree;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateUtil.HiveMetadata;
 import org.apache.hadoop.hive.ql.parse.sql.transformer.QueryInfo;
@@ -34,17 +36,25 @@ import org.apache.hadoop.hive.ql.parse.sql.transformer.QueryInfo;
  */
 public class TranslateContext {
   public final static String JOIN_TYPE_NODE_BALL = "joinTypeNode";
+  public final static String HINT_BALL = "hint";
 
   private HiveConf conf;
   private HiveMetadata meta;
   private QueryInfo qInfoRoot;
   private final Map<Object, Object> basket = new HashMap<Object, Object>();
   private List<QueryInfo> qInfoList;// without QueryInfo root
+  // snapshot of the SQL AST when QueryInfo was built, to skip rebuilding it for an unchanged tree
+  private List<Object> qInfoSnapshot;
+  // transformer name -> time(ns) spent in it, excluding the transformers it decorates
+  private final Map<String, Long> transformTime = new LinkedHashMap<String, Long>();
+  private long nestedTransformTime;
+  private final boolean traceEnabled;
   SqlXlateUtil.AliasGenerator aliasGen = new SqlXlateUtil.AliasGenerator();
 
   public TranslateContext(HiveConf conf) throws SqlXlateException {
     this.conf = conf;
     meta = new HiveMetadata(conf);
+    traceEnabled = TranslationTrace.isEnabled(conf);
   }
 
   public List<QueryInfo> getqInfoList() {
@@ -86,7 +96,34 @@ public class TranslateContext {
     }
   }
 
+  public boolean isTraceEnabled() {
+    return traceEnabled;
+  }
+
+  public List<Object> getQInfoSnapshot() {
+    return qInfoSnapshot;
+  }
+
+  public void setQInfoSnapshot(List<Object> qInfoSnapshot) {
+    this.qInfoSnapshot = qInfoSnapshot;
+  }
+
+  public Map<String, Long> getTransformTime() {
+    return transformTime;
+  }
+
+  public void addTransformTime(String transformer, long time) {
+    Long total = transformTime.get(transformer);
+    transformTime.put(transformer, total == null ? time : total + time);
+  }
+
+  public long getNestedTransformTime() {
+    return nestedTransformTime;
+  }
 
+  public void setNestedTransformTime(long nestedTransformTime) {
+    this.nestedTransformTime = nestedTransformTime;
+  }
 
   public Object getBallFromBasket(Object name) {
     return basket.get(name);
@@ -96,6 +133,41 @@ public class TranslateContext {
     basket.put(name, value);
   }
 
+  /**
+   * Add a Hive join hint (e.g. HiveParser.TOK_STREAMTABLE) for an alias to the select list
+   * generated for the given SQL select node.
+   */
+  public void addHint(CommonTree select, int hintType, String alias) {
+    Map<CommonTree, Map<Integer, List<String>>> hints =
+        (Map<CommonTree, Map<Integer, List<String>>>) basket.get(HINT_BALL);
+    if (hints == null) {
+      hints = new HashMap<CommonTree, Map<Integer, List<String>>>();
+      basket.put(HINT_BALL, hints);
+    }
+    Map<Integer, List<String>> selectHints = hints.get(select);
+    if (selectHints == null) {
+      selectHints = new LinkedHashMap<Integer, List<String>>();
+      hints.put(select, selectHints);
+    }
+    List<String> aliases = selectHints.get(hintType);
+    if (aliases == null) {
+      aliases = new ArrayList<String>();
+      selectHints.put(hintType, aliases);
+    }
+    if (!aliases.contains(alias)) {
+      aliases.add(alias);
+    }
+  }
+
+  /**
+   * @return hint type -> aliases of the given SQL select node, null if it has no hint
+   */
+  public Map<Integer, List<String>> getHints(CommonTree select) {
+    Map<CommonTree, Map<Integer, List<String>>> hints =
+        (Map<CommonTree, Map<Integer, List<String>>>) basket.get(HINT_BALL);
+    return hints == null ? null : hints.get(select);
+  }
+
   public Map<Object, Object> getBasket() {
     return basket;
   }
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse.sql;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.session.SessionState;
+
+/**
+ * Trace of the SQL translation stages, enabled per session by hive.sql.translation.trace.
+ *
+ * Rendering a tree of a large query builds big strings, so callers check isEnabled() before
+ * rendering any snapshot. A snapshot is logged and printed to the session console.
+ */
+public final class TranslationTrace {
+  private static final Log LOG = LogFactory.getLog("hive.ql.parse.sql.TranslationTrace");
+
+  private TranslationTrace() {
+  }
+
+  public static boolean isEnabled(HiveConf conf) {
+    return conf != null && HiveConf.getBoolVar(conf, HiveConf.ConfVars.HIVE_SQL_TRANSLATION_TRACE);
+  }
+
+  /**
+   * Output the snapshot of a translation stage.
+   *
+   * @param stage
+   *          name of the stage
+   * @param snapshot
+   *          rendered tree after the stage
+   */
+  public static void trace(String stage, String snapshot) {
+    String msg = stage + " : " + snapshot;
+    if (SessionState.get() != null) {
+      SessionState.getConsole().printInfo(msg);
+    } else {
+      LOG.info(msg);
+    }
+  }
+}
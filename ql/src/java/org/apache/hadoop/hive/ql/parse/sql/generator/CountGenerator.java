@@ -34,15 +34,22 @@ public class CountGenerator extends BaseHiveASTGenerator {
     ASTNode ret = SqlXlateUtil.newASTNode(HiveParser.Identifier, currentSqlNode.getText());
     super.attachHiveNode(hiveRoot, currentHiveNode, ret);
 
-    CommonTree node = (CommonTree) (currentSqlNode.getChildCount() == 1 ? currentSqlNode
+    // the window specification of an analytic count is the last child
+    CommonTree over = (CommonTree) currentSqlNode
+        .getFirstChildWithType(PantheraParser_PLSQLParser.OVER_VK);
+    int argCount = currentSqlNode.getChildCount() - (over == null ? 0 : 1);
+    CommonTree node = (CommonTree) (argCount == 1 ? currentSqlNode
         .getChild(0) : currentSqlNode.getChild(1));
-    if (node.getType() == PantheraParser_PLSQLParser.ASTERISK) {
-      return true;
+    if (node.getType() != PantheraParser_PLSQLParser.ASTERISK) {
+      ASTNode hiveNode = new ASTNode();
+      GeneratorFactory.getGenerator(node).generateHiveAST(null, null, hiveNode, node,
+          context);
+      super.attachHiveNode(hiveRoot, currentHiveNode, (ASTNode) hiveNode.getChild(0));
+    }
+    if (over != null) {
+      return GeneratorFactory.getGenerator(over).generateHiveAST(hiveRoot, sqlRoot,
+          currentHiveNode, over, context);
     }
-    ASTNode hiveNode = new ASTNode();
-    GeneratorFactory.getGenerator(node).generateHiveAST(null, null, hiveNode, node,
-        context);
-    super.attachHiveNode(hiveRoot, currentHiveNode, (ASTNode) hiveNode.getChild(0));
     return true;
   }
 
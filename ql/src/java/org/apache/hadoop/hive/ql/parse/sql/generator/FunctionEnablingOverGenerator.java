@@ -23,6 +23,8 @@ import org.apache.hadoop.hive.ql.parse.HiveParser;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateUtil;
 import org.apache.hadoop.hive.ql.parse.sql.TranslateContext;
 
+import br.com.porcelli.parser.plsql.PantheraParser_PLSQLParser;
+
 public class FunctionEnablingOverGenerator extends BaseHiveASTGenerator implements HiveASTGenerator {
 
   @Override
@@ -30,8 +32,18 @@ public class FunctionEnablingOverGenerator extends BaseHiveASTGenerator implemen
       CommonTree currentSqlNode, TranslateContext context) throws Exception {
     ASTNode ret = SqlXlateUtil.newASTNode(HiveParser.Identifier, currentSqlNode.getText());
     super.attachHiveNode(hiveRoot, currentHiveNode, ret);
-    return super.generateChildren(hiveRoot, sqlRoot, currentHiveNode, (CommonTree) currentSqlNode
-        .getChild(0), context);
+    if (!super.generateChildren(hiveRoot, sqlRoot, currentHiveNode, (CommonTree) currentSqlNode
+        .getChild(0), context)) {
+      return false;
+    }
+    // the window specification follows the arguments
+    CommonTree over = (CommonTree) currentSqlNode
+        .getFirstChildWithType(PantheraParser_PLSQLParser.OVER_VK);
+    if (over != null) {
+      return GeneratorFactory.getGenerator(over).generateHiveAST(hiveRoot, sqlRoot,
+          currentHiveNode, over, context);
+    }
+    return true;
   }
 
 }
@@ -106,6 +106,9 @@ public class GeneratorFactory {
     genMap.put(PantheraParser_PLSQLParser.ALIAS, new NothingGenerator());
     genMap.put(PantheraParser_PLSQLParser.FUNCTION_ENABLING_OVER,
         new FunctionEnablingOverGenerator());
+    genMap.put(PantheraParser_PLSQLParser.FUNCTION_ENABLING_WITHIN_OR_OVER,
+        new FunctionEnablingOverGenerator());
+    genMap.put(PantheraParser_PLSQLParser.OVER_VK, new OverGenerator());
     genMap.put(PantheraParser_PLSQLParser.ARGUMENTS, new NothingGenerator());
     genMap.put(PantheraParser_PLSQLParser.ARGUMENT, new NothingGenerator());
     genMap.put(PantheraParser_PLSQLParser.SQL92_RESERVED_HAVING, new HavingGenerator());
@@ -135,6 +138,7 @@ public class GeneratorFactory {
     genMap.put(PantheraParser_PLSQLParser.RIGHT_VK, new NothingGenerator());
     genMap.put(PantheraParser_PLSQLParser.CROSS_VK, new NothingGenerator());
     genMap.put(PantheraExpParser.LEFTSEMI_VK, new NothingGenerator());
+    genMap.put(PantheraExpParser.LEFTANTI_VK, new NothingGenerator());
     genMap.put(PantheraParser_PLSQLParser.SQL92_RESERVED_ASC, new NothingGenerator());
     genMap.put(PantheraParser_PLSQLParser.SQL92_RESERVED_DESC, new NothingGenerator());
     genMap.put(PantheraParser_PLSQLParser.SQL92_RESERVED_DISTINCT, new NothingGenerator());
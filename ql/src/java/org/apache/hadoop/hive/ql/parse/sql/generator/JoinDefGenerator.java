@@ -41,6 +41,8 @@ public class JoinDefGenerator extends BaseHiveASTGenerator {
       join = super.newHiveASTNode(HiveParser.TOK_CROSSJOIN, "TOK_CROSSJOIN");
     } else if (currentSqlNode.getChild(0).getType() == PantheraExpParser.LEFTSEMI_VK) {
       join = super.newHiveASTNode(HiveParser.TOK_LEFTSEMIJOIN, "TOK_LEFTSEMIJOIN");
+    } else if (currentSqlNode.getChild(0).getType() == PantheraExpParser.LEFTANTI_VK) {
+      join = super.newHiveASTNode(HiveParser.TOK_LEFTANTIJOIN, "TOK_LEFTANTIJOIN");
     } else {
       join = super.newHiveASTNode(HiveParser.TOK_JOIN, "TOK_JOIN");
     }
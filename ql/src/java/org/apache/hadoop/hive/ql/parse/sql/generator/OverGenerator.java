@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.parse.sql.generator;
+
+import org.antlr33.runtime.tree.CommonTree;
+import org.apache.hadoop.hive.ql.parse.ASTNode;
+import org.apache.hadoop.hive.ql.parse.HiveParser;
+import org.apache.hadoop.hive.ql.parse.sql.SqlXlateException;
+import org.apache.hadoop.hive.ql.parse.sql.SqlXlateUtil;
+import org.apache.hadoop.hive.ql.parse.sql.TranslateContext;
+
+import br.com.porcelli.parser.plsql.PantheraParser_PLSQLParser;
+
+/**
+ * Generate the window specification of an analytic function.<br>
+ * OVER (PARTITION BY p ORDER BY o ROWS BETWEEN 2 PRECEDING AND CURRENT ROW) is generated as<br>
+ * ^(TOK_WINDOWSPEC ^(TOK_DISTRIBUTEBY p) ^(TOK_SORTBY ^(TOK_TABSORTCOLNAMEASC o))
+ * ^(TOK_WINDOWROWS ^(TOK_WINDOWPRECEDING 2) TOK_WINDOWCURRENT)).<br>
+ * An unbounded bound is TOK_WINDOWPRECEDING or TOK_WINDOWFOLLOWING without offset.
+ */
+public class OverGenerator extends BaseHiveASTGenerator {
+
+  @Override
+  public boolean generate(ASTNode hiveRoot, CommonTree sqlRoot, ASTNode currentHiveNode,
+      CommonTree currentSqlNode, TranslateContext context) throws Exception {
+    ASTNode spec = SqlXlateUtil.newASTNode(HiveParser.TOK_WINDOWSPEC, "TOK_WINDOWSPEC");
+    super.attachHiveNode(hiveRoot, currentHiveNode, spec);
+
+    for (int i = 0; i < currentSqlNode.getChildCount(); i++) {
+      CommonTree node = (CommonTree) currentSqlNode.getChild(i);
+      ASTNode ret;
+      switch (node.getType()) {
+      case PantheraParser_PLSQLParser.PARTITION_VK:
+        ret = SqlXlateUtil.newASTNode(HiveParser.TOK_DISTRIBUTEBY, "TOK_DISTRIBUTEBY");
+        super.attachHiveNode(hiveRoot, spec, ret);
+        if (!super.generateChildren(hiveRoot, sqlRoot, ret, node, context)) {
+          return false;
+        }
+        break;
+      case PantheraParser_PLSQLParser.SQL92_RESERVED_ORDER:
+        ret = SqlXlateUtil.newASTNode(HiveParser.TOK_SORTBY, "TOK_SORTBY");
+        super.attachHiveNode(hiveRoot, spec, ret);
+        // ORDER_BY_ELEMENTS generates a query level ORDER BY, so generate its elements directly
+        CommonTree elements = (CommonTree) node
+            .getFirstChildWithType(PantheraParser_PLSQLParser.ORDER_BY_ELEMENTS);
+        if (elements == null) {
+          throw new SqlXlateException("Unsupported window order:" + node.toStringTree());
+        }
+        if (!super.generateChildren(hiveRoot, sqlRoot, ret, elements, context)) {
+          return false;
+        }
+        break;
+      case PantheraParser_PLSQLParser.ROWS_VK:
+      case PantheraParser_PLSQLParser.RANGE_VK:
+        ret = node.getType() == PantheraParser_PLSQLParser.ROWS_VK ? SqlXlateUtil.newASTNode(
+            HiveParser.TOK_WINDOWROWS, "TOK_WINDOWROWS") : SqlXlateUtil.newASTNode(
+            HiveParser.TOK_WINDOWRANGE, "TOK_WINDOWRANGE");
+        super.attachHiveNode(hiveRoot, spec, ret);
+        CommonTree bounds = (CommonTree) node.getChild(0);
+        if (bounds.getType() == PantheraParser_PLSQLParser.SQL92_RESERVED_BETWEEN) {
+          if (!generateBound(hiveRoot, sqlRoot, ret, (CommonTree) bounds.getChild(0), context)
+              || !generateBound(hiveRoot, sqlRoot, ret, (CommonTree) bounds.getChild(1), context)) {
+            return false;
+          }
+        } else if (!generateBound(hiveRoot, sqlRoot, ret, bounds, context)) {
+          return false;
+        }
+        break;
+      default:
+        throw new SqlXlateException("Unsupported window specification:" + node.getText());
+      }
+    }
+    return true;
+  }
+
+  private boolean generateBound(ASTNode hiveRoot, CommonTree sqlRoot, ASTNode frame,
+      CommonTree bound, TranslateContext context) throws Exception {
+    ASTNode ret;
+    switch (bound.getType()) {
+    case PantheraParser_PLSQLParser.UNBOUNDED_VK:
+      if (bound.getChild(0).getType() == PantheraParser_PLSQLParser.PRECEDING_VK) {
+        ret = SqlXlateUtil.newASTNode(HiveParser.TOK_WINDOWPRECEDING, "TOK_WINDOWPRECEDING");
+      } else {
+        ret = SqlXlateUtil.newASTNode(HiveParser.TOK_WINDOWFOLLOWING, "TOK_WINDOWFOLLOWING");
+      }
+      super.attachHiveNode(hiveRoot, frame, ret);
+      return true;
+    case PantheraParser_PLSQLParser.SQL92_RESERVED_CURRENT:
+      ret = SqlXlateUtil.newASTNode(HiveParser.TOK_WINDOWCURRENT, "TOK_WINDOWCURRENT");
+      super.attachHiveNode(hiveRoot, frame, ret);
+      return true;
+    case PantheraParser_PLSQLParser.PRECEDING_VK:
+      ret = SqlXlateUtil.newASTNode(HiveParser.TOK_WINDOWPRECEDING, "TOK_WINDOWPRECEDING");
+      break;
+    case PantheraParser_PLSQLParser.FOLLOWING_VK:
+      ret = SqlXlateUtil.newASTNode(HiveParser.TOK_WINDOWFOLLOWING, "TOK_WINDOWFOLLOWING");
+      break;
+    default:
+      throw new SqlXlateException("Unsupported window frame bound:" + bound.getText());
+    }
+    super.attachHiveNode(hiveRoot, frame, ret);
+    // the offset
+    return super.generateChildren(hiveRoot, sqlRoot, ret, bound, context);
+  }
+
+}
@@ -37,7 +37,9 @@ public class PostCascatedElementGenerator extends BaseHiveASTGenerator {
       currentHiveNode.deleteChild(0);
       currentHiveNode.deleteChild(0);
       SqlXlateUtil.attachChild(currentHiveNode, dot);
-      LOG.debug("Generated Cascated Element : " + dot.toStringTree());
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Generated Cascated Element : " + dot.toStringTree());
+      }
       return true;
     }
     return true;
@@ -17,9 +17,13 @@
  */
 package org.apache.hadoop.hive.ql.parse.sql.generator;
 
+import java.util.List;
+import java.util.Map;
+
 import org.antlr33.runtime.tree.CommonTree;
 import org.apache.hadoop.hive.ql.parse.ASTNode;
 import org.apache.hadoop.hive.ql.parse.HiveParser;
+import org.apache.hadoop.hive.ql.parse.sql.SqlXlateUtil;
 import org.apache.hadoop.hive.ql.parse.sql.TranslateContext;
 
 import br.com.porcelli.parser.plsql.PantheraParser_PLSQLParser;
@@ -37,8 +41,33 @@ public class SelectListGenerator extends BaseHiveASTGenerator {
       ret = super.newHiveASTNode(HiveParser.TOK_SELECT, "TOK_SELECT");
     }
     super.attachHiveNode(hiveRoot, currentHiveNode, ret);
+    generateHints(ret, parent, context);
     return super.generateChildren(hiveRoot, sqlRoot, ret, currentSqlNode, context);
 
   }
 
+  /**
+   * Generate the hint list of the select, which has to be the first child of TOK_SELECT.
+   */
+  private void generateHints(ASTNode select, CommonTree sqlSelect, TranslateContext context) {
+    Map<Integer, List<String>> hints = context.getHints(sqlSelect);
+    if (hints == null || hints.isEmpty()) {
+      return;
+    }
+    ASTNode hintList = super.newHiveASTNode(HiveParser.TOK_HINTLIST, "TOK_HINTLIST");
+    for (Map.Entry<Integer, List<String>> entry : hints.entrySet()) {
+      ASTNode hint = super.newHiveASTNode(HiveParser.TOK_HINT, "TOK_HINT");
+      String hintName = entry.getKey() == HiveParser.TOK_MAPJOIN ? "TOK_MAPJOIN"
+          : "TOK_STREAMTABLE";
+      SqlXlateUtil.attachChild(hint, super.newHiveASTNode(entry.getKey(), hintName));
+      ASTNode argList = super.newHiveASTNode(HiveParser.TOK_HINTARGLIST, "TOK_HINTARGLIST");
+      for (String alias : entry.getValue()) {
+        SqlXlateUtil.attachChild(argList, super.newHiveASTNode(HiveParser.Identifier, alias));
+      }
+      SqlXlateUtil.attachChild(hint, argList);
+      SqlXlateUtil.attachChild(hintList, hint);
+    }
+    SqlXlateUtil.attachChild(select, hintList);
+  }
+
 }
@@ -18,11 +18,10 @@
 package org.apache.hadoop.hive.ql.parse.sql.transformer;
 
 import org.antlr33.runtime.tree.CommonTree;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateException;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateUtil;
 import org.apache.hadoop.hive.ql.parse.sql.TranslateContext;
+import org.apache.hadoop.hive.ql.parse.sql.TranslationTrace;
 
 /**
  * Do something before or after transform.
@@ -30,31 +29,34 @@ import org.apache.hadoop.hive.ql.parse.sql.TranslateContext;
  *
  */
 public abstract class BaseSqlASTTransformer implements SqlASTTransformer {
-  private static final Log LOG = LogFactory.getLog(BaseSqlASTTransformer.class);
 
 
   @Override
   public void transformAST(CommonTree tree, TranslateContext context) throws SqlXlateException {
     String myself = this.getClass().getSimpleName();
-    long begin = System.currentTimeMillis();
+    long outerNestedTime = context.getNestedTransformTime();
+    context.setNestedTransformTime(0);
+    long begin = System.nanoTime();
 
     transform(tree, context);
 
-    long end = System.currentTimeMillis();
+    long time = System.nanoTime() - begin;
 
-    // performance log
-    LOG.info(myself + " spend time(ms):" + (end - begin));
+    // performance log, the decorated transformers are called inside transform()
+    context.addTransformTime(myself, time - context.getNestedTransformTime());
+    context.setNestedTransformTime(outerNestedTime + time);
 
     // track log
-    QueryInfo qf = context.getQInfoRoot();
-    LOG.info("After " + myself + ", sql ast is:"
-        + tree.toStringTree().replace('(', '[').replace(')', ']'));
-    LOG.info("After " + myself + ", sql ast type is:"
-        + SqlXlateUtil.toTypeStringTree(tree));
-    LOG.info("After " + myself + ", query info is:"
-        + (qf == null ? "null" : qf.toStringTree().replace('(', '[').replace(')', ']')));
-    LOG.info("After " + myself + ", filterBlock is:"
-        + (qf == null ? "null" : qf.toFilterBlockStringTree().replace('(', '[').replace(')', ']')));
+    if (context.isTraceEnabled()) {
+      QueryInfo qf = context.getQInfoRoot();
+      TranslationTrace.trace("After " + myself + ", sql ast", tree.toStringTree());
+      TranslationTrace.trace("After " + myself + ", sql ast type", SqlXlateUtil
+          .toTypeStringTree(tree));
+      TranslationTrace.trace("After " + myself + ", query info", qf == null ? "null" : qf
+          .toStringTree());
+      TranslationTrace.trace("After " + myself + ", filterBlock", qf == null ? "null" : qf
+          .toFilterBlockStringTree());
+    }
   }
 
   protected abstract void transform(CommonTree tree, TranslateContext context)
@@ -22,12 +22,17 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.antlr33.runtime.tree.CommonTree;
 import org.antlr33.runtime.tree.Tree;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.parse.HiveParser;
 import org.apache.hadoop.hive.ql.parse.sql.PantheraExpParser;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateException;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateUtil;
@@ -42,6 +47,7 @@ import br.com.porcelli.parser.plsql.PantheraParser_PLSQLParser;
  *
  */
 public class CrossJoinTransformer extends BaseSqlASTTransformer {
+  private static final Log LOG = LogFactory.getLog(CrossJoinTransformer.class);
   SqlASTTransformer tf;
 
   private static class JoinPair<T> {
@@ -124,6 +130,12 @@ public class CrossJoinTransformer extends BaseSqlASTTransformer {
           transformWhereCondition(context, qf, (CommonTree) where.getChild(0).getChild(0), joinInfo);
         }
         //
+        // Pick the join order of comma-joined tables by their size.
+        //
+        if (HiveConf.getBoolVar(context.getConf(), HiveConf.ConfVars.HIVEOPTSQLJOINREORDER)) {
+          reorderJoin(context, node, from, joinInfo);
+        }
+        //
         // Transform the from clause tree using the generated join operation info.
         //
         transformFromClause(qf, from, joinInfo);
@@ -310,6 +322,131 @@ public class CrossJoinTransformer extends BaseSqlASTTransformer {
     return table;
   }
 
+  /**
+   * Reorder the tables of a from clause which consists only of cross joins (e.g. the comma-separated
+   * table list of a multiple-table select) into a left-deep join order chosen by table size.
+   *
+   * The largest table is put first, then the smallest table that has an equality join condition
+   * with the already joined tables is added, until all tables are joined. Under the usual
+   * fact/dimension key relationship every join then keeps the intermediate result no larger than
+   * the largest table, and the small dimension tables, which can be converted into map joins, are
+   * joined before any other large table. A table without join condition to the joined ones is only
+   * added when no connected table is left.
+   *
+   * A reduce-side join buffers every input but the last one and streams the last one, so the
+   * largest table is also given a STREAMTABLE hint. The join reorder optimizer then streams each
+   * join input that contains it instead of buffering it.
+   *
+   * The from clause is kept as is if it has an explicit join, a sub-query, a table whose size is
+   * unknown, or if the select list is an unqualified asterisk whose column order depends on the
+   * table order.
+   */
+  private void reorderJoin(TranslateContext context, CommonTree select, CommonTree from,
+      JoinInfo joinInfo) {
+    CommonTree topTableRef = (CommonTree) from.getChild(0);
+    int tableCount = topTableRef.getChildCount();
+    // Hive already streams the largest table of a single join.
+    if (tableCount < 3
+        || select.getFirstChildWithType(PantheraParser_PLSQLParser.ASTERISK) != null) {
+      return;
+    }
+
+    List<CommonTree> tableRefElements = new ArrayList<CommonTree>();
+    tableRefElements.add((CommonTree) topTableRef.getChild(0));
+    for (int i = 1; i < tableCount; i++) {
+      CommonTree joinNode = (CommonTree) topTableRef.getChild(i);
+      if (joinNode.getType() != PantheraParser_PLSQLParser.JOIN_DEF
+          || joinNode.getChildCount() != 2
+          || joinNode.getChild(0).getType() != PantheraParser_PLSQLParser.CROSS_VK
+          || !joinNode.getChild(0).getText().equals("cross")) {
+        return;
+      }
+      tableRefElements.add((CommonTree) joinNode.getChild(1));
+    }
+
+    List<String> tables = new ArrayList<String>();
+    List<Long> sizes = new ArrayList<Long>();
+    for (CommonTree tableRefElement : tableRefElements) {
+      Map<String, String> aliasNamePair = new HashMap<String, String>();
+      SqlXlateUtil.getSrcTblAliasNamePair(tableRefElement, aliasNamePair);
+      if (aliasNamePair.size() != 1) {
+        return;
+      }
+      Map.Entry<String, String> entry = aliasNamePair.entrySet().iterator().next();
+      if (entry.getValue() == null) {
+        // sub-query
+        return;
+      }
+      long size = context.getMeta().getTableSize(entry.getValue());
+      if (size < 0) {
+        return;
+      }
+      tables.add(entry.getKey());
+      sizes.add(size);
+    }
+
+    List<Integer> order = enumerateJoinOrder(tables, sizes, joinInfo);
+    LOG.debug("Join order of " + tables + " with size " + sizes + " is " + order);
+    topTableRef.setChild(0, tableRefElements.get(order.get(0)));
+    for (int i = 1; i < tableCount; i++) {
+      topTableRef.getChild(i).setChild(1, tableRefElements.get(order.get(i)));
+    }
+    context.addHint(select, HiveParser.TOK_STREAMTABLE, tables.get(order.get(0)).toLowerCase());
+  }
+
+  /**
+   * Greedy left-deep join enumeration, see {@link #reorderJoin}. Ties keep the original order.
+   *
+   * @return positions of the tables in join order
+   */
+  private List<Integer> enumerateJoinOrder(List<String> tables, List<Long> sizes,
+      JoinInfo joinInfo) {
+    List<Integer> order = new ArrayList<Integer>();
+    Set<String> joinedTables = new HashSet<String>();
+    Set<Integer> remaining = new LinkedHashSet<Integer>();
+    for (int i = 0; i < tables.size(); i++) {
+      remaining.add(i);
+    }
+
+    int next = 0;
+    for (int i : remaining) {
+      if (sizes.get(i) > sizes.get(next)) {
+        next = i;
+      }
+    }
+    while (true) {
+      order.add(next);
+      joinedTables.add(tables.get(next));
+      remaining.remove(next);
+      if (remaining.isEmpty()) {
+        break;
+      }
+
+      int smallestConnected = -1;
+      int smallest = -1;
+      for (int i : remaining) {
+        if (smallest < 0 || sizes.get(i) < sizes.get(smallest)) {
+          smallest = i;
+        }
+        if ((smallestConnected < 0 || sizes.get(i) < sizes.get(smallestConnected))
+            && isConnected(tables.get(i), joinedTables, joinInfo)) {
+          smallestConnected = i;
+        }
+      }
+      next = smallestConnected >= 0 ? smallestConnected : smallest;
+    }
+    return order;
+  }
+
+  private boolean isConnected(String table, Set<String> joinedTables, JoinInfo joinInfo) {
+    for (String joinedTable : joinedTables) {
+      if (joinInfo.joinPairInfo.containsKey(new JoinPair<String>(joinedTable, table))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void transformFromClause(QueryInfo qf, CommonTree oldFrom, JoinInfo joinInfo)
       throws SqlXlateException {
     Set<String> alreadyJoinedTables = new HashSet<String>();
@@ -393,6 +530,9 @@ public class CrossJoinTransformer extends BaseSqlASTTransformer {
         if (joinNode.getChild(0).getText().equals(PantheraExpParser.LEFTSEMI_STR)) {
           ((CommonTree) joinNode.getChild(0)).getToken().setType(PantheraExpParser.LEFTSEMI_VK);
           joinNode.addChild(newOnNode);
+        } else if (joinNode.getChild(0).getText().equals(PantheraExpParser.LEFTANTI_STR)) {
+          ((CommonTree) joinNode.getChild(0)).getToken().setType(PantheraExpParser.LEFTANTI_VK);
+          joinNode.addChild(newOnNode);
         } else if (joinNode.getChild(0).getText().equals(PantheraExpParser.LEFT_STR)) {
           ((CommonTree) joinNode.getChild(0)).getToken().setType(PantheraExpParser.LEFT_VK);
           joinNode.addChild(newOnNode);
@@ -23,6 +23,8 @@ import java.util.Map;
 import java.util.Stack;
 
 import org.antlr33.runtime.tree.CommonTree;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.ql.exec.ColumnInfo;
 import org.apache.hadoop.hive.ql.parse.ASTNode;
 import org.apache.hadoop.hive.ql.parse.HiveParser;
@@ -40,6 +42,7 @@ import br.com.porcelli.parser.plsql.PantheraParser_PLSQLParser;
  *
  */
 public class PrepareQueryInfoTransformer extends BaseSqlASTTransformer {
+  private static final Log LOG = LogFactory.getLog(PrepareQueryInfoTransformer.class);
 
   SqlASTTransformer tf;
   private final SqlXlateUtil.AliasGenerator aliasGen = new SqlXlateUtil.AliasGenerator();
@@ -47,8 +50,65 @@ public class PrepareQueryInfoTransformer extends BaseSqlASTTransformer {
   @Override
   public void transform(CommonTree tree, TranslateContext context) throws SqlXlateException {
     this.tf.transformAST(tree, context);
+    // QueryInfo refers to tree nodes, it is still valid if no node was added, removed or changed.
+    if (context.getQInfoRoot() != null && context.getQInfoSnapshot() != null
+        && isUnchanged(tree, context.getQInfoSnapshot())) {
+      LOG.debug("SQL AST is not changed, skip rebuilding query info.");
+      return;
+    }
     prepareQueryInfo(tree, context);
+    // snapshot after preparing as it may add alias to the tree.
+    context.setQInfoSnapshot(snapshot(tree));
+  }
+
+  /**
+   * Snapshot of the tree: the identity, token type, text and child count of each node, in
+   * preorder.
+   */
+  static List<Object> snapshot(CommonTree tree) {
+    List<Object> snapshot = new ArrayList<Object>();
+    snapshot(tree, snapshot);
+    return snapshot;
+  }
+
+  private static void snapshot(CommonTree node, List<Object> snapshot) {
+    snapshot.add(node);
+    snapshot.add(node.getType());
+    snapshot.add(node.getText());
+    snapshot.add(node.getChildCount());
+    for (int i = 0; i < node.getChildCount(); i++) {
+      snapshot((CommonTree) node.getChild(i), snapshot);
+    }
+  }
+
+  /**
+   * Whether the tree is exactly the tree of the snapshot: the same nodes, tokens and shape.
+   */
+  static boolean isUnchanged(CommonTree tree, List<Object> snapshot) {
+    return compare(tree, snapshot, 0) == snapshot.size();
+  }
+
+  /**
+   * Compare the subtree with the snapshot from the index.
+   *
+   * @return the index after the subtree, or -1 if they differ
+   */
+  private static int compare(CommonTree node, List<Object> snapshot, int index) {
+    if (index + 4 > snapshot.size() || snapshot.get(index) != node
+        || !snapshot.get(index + 1).equals(node.getType())
+        || !equals((String) snapshot.get(index + 2), node.getText())
+        || !snapshot.get(index + 3).equals(node.getChildCount())) {
+      return -1;
+    }
+    index += 4;
+    for (int i = 0; i < node.getChildCount() && index >= 0; i++) {
+      index = compare((CommonTree) node.getChild(i), snapshot, index);
+    }
+    return index;
+  }
 
+  private static boolean equals(String s1, String s2) {
+    return s1 == null ? s2 == null : s1.equals(s2);
   }
 
   public PrepareQueryInfoTransformer(SqlASTTransformer tf) {
@@ -110,7 +110,9 @@ public class SubQUnnestTransformer extends BaseSqlASTTransformer {
 
   void transformFilterBlock(QueryInfo qf, TranslateContext context) throws SqlXlateException {
     if (!this.hasSubQuery(qf)) {
-      LOG.info("skip subq transform:" + qf.toStringTree());
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("skip subq transform:" + qf.toStringTree());
+      }
       return;
     }
     FilterBlock fb = qf.getFilterBlockTreeRoot();
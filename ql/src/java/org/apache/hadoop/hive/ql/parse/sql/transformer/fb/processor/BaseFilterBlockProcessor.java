@@ -987,36 +987,6 @@ public abstract class BaseFilterBlockProcessor implements FilterBlockProcessor {
     return on;
   }
 
-  CommonTree buildNotIn4Minus(CommonTree minuendSelect, CommonTree substrahendSelect)
-      throws SqlXlateException {
-    CommonTree notIn = FilterBlockUtil
-        .createSqlASTNode(PantheraParser_PLSQLParser.NOT_IN, "NOT_IN");
-    FilterBlockUtil.attachChild(notIn, this.buildNotInParameter(minuendSelect));
-    FilterBlockUtil.attachChild(notIn, substrahendSelect);
-    return notIn;
-  }
-
-  private CommonTree buildNotInParameter(CommonTree select) throws SqlXlateException {
-    CommonTree selectList = (CommonTree) select
-        .getFirstChildWithType(PantheraParser_PLSQLParser.SELECT_LIST);
-    if (selectList == null) {
-      throw new SqlXlateException("unsupport select * from subquery.");
-    }
-    if (selectList.getChildCount() == 1) {
-      return FilterBlockUtil.cloneTree((CommonTree) selectList.getChild(0).getChild(0).getChild(0));
-    }
-    CommonTree vectorExpr = FilterBlockUtil.createSqlASTNode(
-        PantheraParser_PLSQLParser.VECTOR_EXPR, "VECTOR_EXPR");
-    for (int i = 0; i < selectList.getChildCount(); i++) {
-
-      CommonTree expr = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.EXPR, "EXPR");
-      FilterBlockUtil.attachChild(vectorExpr, expr);
-      FilterBlockUtil.attachChild(expr, FilterBlockUtil.cloneTree((CommonTree) selectList.getChild(
-          i).getChild(0).getChild(0)));
-    }
-    return vectorExpr;
-  }
-
   /**
    * add SELECT_ITEM for subq IN
    *
@@ -1098,6 +1068,100 @@ public abstract class BaseFilterBlockProcessor implements FilterBlockProcessor {
     return selectList;
   }
 
+  /**
+   * create a one-row select over sub query which counts all rows and the rows with non-null compare
+   * key. It is the NULL check of NOT IN.
+   *
+   * @param select
+   *          sub query
+   * @param columnAlias
+   *          alias of the compare key in sub query's SELECT_LIST
+   * @return count select, whose SELECT_LIST is (count(*), count(compare key))
+   */
+  CommonTree createNullCheckSelect(CommonTree select, CommonTree columnAlias) {
+    CommonTree selectList = FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.SELECT_LIST, "SELECT_LIST");
+    this.addCountSelectItem(selectList, FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.ASTERISK, "*"));
+    CommonTree expr = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.EXPR, "EXPR");
+    FilterBlockUtil.attachChild(expr, this.createCascatedElement(FilterBlockUtil
+        .dupNode((CommonTree) columnAlias.getChild(0))));
+    this.addCountSelectItem(selectList, expr);
+    return this.reCreateBottomSelect(this.createTableRefElement(select), selectList);
+  }
+
+  private CommonTree addCountSelectItem(CommonTree selectList, CommonTree countParameter) {
+    CommonTree selectItem = FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.SELECT_ITEM, "SELECT_ITEM");
+    FilterBlockUtil.attachChild(selectList, selectItem);
+    CommonTree expr = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.EXPR, "EXPR");
+    FilterBlockUtil.attachChild(selectItem, expr);
+    CommonTree standardFunction = FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.STANDARD_FUNCTION, "STANDARD_FUNCTION");
+    FilterBlockUtil.attachChild(expr, standardFunction);
+    CommonTree count = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.COUNT_VK,
+        "count");
+    FilterBlockUtil.attachChild(standardFunction, count);
+    FilterBlockUtil.attachChild(count, countParameter);
+    return this.addAlias(selectItem);
+  }
+
+  /**
+   * build WHERE for NOT IN which is transformed to left anti join.<br>
+   * count(*) = 0 or (compare key is not null and count(*) = count(compare key))
+   *
+   * @param compareKey
+   *          top select's compare key
+   * @param nullCheckAlias
+   *          table alias of the count select
+   * @param nullCheckSelect
+   *          count select created by createNullCheckSelect
+   * @return
+   */
+  CommonTree buildNotInNullCheckWhere(CommonTree compareKey, CommonTree nullCheckAlias,
+      CommonTree nullCheckSelect) {
+    CommonTree selectList = (CommonTree) nullCheckSelect
+        .getFirstChildWithType(PantheraParser_PLSQLParser.SELECT_LIST);
+    String tableAlias = nullCheckAlias.getChild(0).getText();
+    String countAll = selectList.getChild(0).getChild(1).getChild(0).getText();
+    String countKey = selectList.getChild(1).getChild(1).getChild(0).getText();
+
+    // sub query is empty
+    CommonTree isEmpty = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.EQUALS_OP,
+        "=");
+    FilterBlockUtil.attachChild(isEmpty, FilterBlockUtil.createCascatedElementBranch(tableAlias,
+        countAll));
+    FilterBlockUtil.attachChild(isEmpty, SqlXlateUtil.newSqlASTNode(
+        PantheraExpParser.UNSIGNED_INTEGER, "0"));
+
+    // compare key is not null and there is no null in sub query
+    CommonTree isNotNull = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.IS_NOT_NULL,
+        "IS_NOT_NULL");
+    FilterBlockUtil.attachChild(isNotNull, compareKey);
+    CommonTree noNull = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.EQUALS_OP,
+        "=");
+    FilterBlockUtil.attachChild(noNull, FilterBlockUtil.createCascatedElementBranch(tableAlias,
+        countAll));
+    FilterBlockUtil.attachChild(noNull, FilterBlockUtil.createCascatedElementBranch(tableAlias,
+        countKey));
+    CommonTree and = FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.SQL92_RESERVED_AND, "and");
+    FilterBlockUtil.attachChild(and, isNotNull);
+    FilterBlockUtil.attachChild(and, noNull);
+
+    CommonTree or = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.SQL92_RESERVED_OR,
+        "or");
+    FilterBlockUtil.attachChild(or, isEmpty);
+    FilterBlockUtil.attachChild(or, and);
+    CommonTree where = FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.SQL92_RESERVED_WHERE, "where");
+    CommonTree logicExpr = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.LOGIC_EXPR,
+        "LOGIC_EXPR");
+    FilterBlockUtil.attachChild(where, logicExpr);
+    FilterBlockUtil.attachChild(logicExpr, or);
+    return where;
+  }
+
   CommonTree reCreateBottomSelect(CommonTree tableRefElement, CommonTree selectList) {
     CommonTree select = FilterBlockUtil.createSqlASTNode(
         PantheraParser_PLSQLParser.SQL92_RESERVED_SELECT, "select");
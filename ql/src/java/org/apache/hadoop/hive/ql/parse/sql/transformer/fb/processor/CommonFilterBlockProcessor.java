@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.antlr33.runtime.tree.CommonTree;
+import org.apache.hadoop.hive.ql.parse.HiveParser;
 import org.apache.hadoop.hive.ql.parse.sql.PantheraExpParser;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateException;
 import org.apache.hadoop.hive.ql.parse.sql.SqlXlateUtil;
@@ -124,12 +125,58 @@ public abstract class CommonFilterBlockProcessor extends BaseFilterBlockProcesso
   }
 
   /**
-   * process compare operator with correlated
+   * process compare operator with correlated.<br>
+   * sub query is grouped by its correlated keys, so it is inner joined on the correlated
+   * conditions and only the compare condition is left in WHERE. It is one shuffle instead of
+   * filtering a cross join.<br>
+   * Not equal or OR correlated condition can't be join key, process it by cross join.
    *
-   * @param joinType
    * @throws SqlXlateException
    */
   void processCompareC() throws SqlXlateException {
+    // detect not equal correlated condition before transforming.
+    super.getFilterkey();
+    if (super.hasNotEqualCorrelated
+        || SqlXlateUtil.hasNodeTypeInTree(fb.getASTNode(),
+            PantheraParser_PLSQLParser.SQL92_RESERVED_OR)) {
+      this.processCompareCByCrossJoin();
+      return;
+    }
+    this.makeTop();
+    // inner join
+    this.makeJoin(null);
+
+    CommonTree compareKeyAlias1 = super.addSelectItem((CommonTree) topSelect
+        .getFirstChildWithType(PantheraParser_PLSQLParser.SELECT_LIST), (CommonTree) this.subQNode
+        .getFirstChildWithType(PantheraParser_PLSQLParser.CASCATED_ELEMENT));
+
+    // select list
+    CommonTree compareKeyAlias2 = super.addAlias((CommonTree) ((CommonTree) bottomSelect
+        .getFirstChildWithType(PantheraParser_PLSQLParser.SELECT_LIST)).getChild(0));
+    super.rebuildSelectListByFilter(false, true, bottomAlias, topAlias);
+
+    this.makeEnd();
+
+    // on
+    FilterBlockUtil.deleteBranch(bottomSelect, PantheraParser_PLSQLParser.SQL92_RESERVED_WHERE);
+    CommonTree on = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.SQL92_RESERVED_ON,
+        "on");
+    CommonTree logicExpr = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.LOGIC_EXPR,
+        "LOGIC_EXPR");
+    FilterBlockUtil.attachChild(on, logicExpr);
+    FilterBlockUtil.attachChild(logicExpr, fb.getASTNode());
+    FilterBlockUtil.attachChild(join, on);
+
+    // where
+    CommonTree compare = FilterBlockUtil.dupNode(subQNode);
+    FilterBlockUtil.attachChild(compare, super.createCascatedElement(FilterBlockUtil
+        .cloneTree((CommonTree) compareKeyAlias1.getChild(0))));
+    FilterBlockUtil.attachChild(compare, super.createCascatedElement(FilterBlockUtil
+        .cloneTree((CommonTree) compareKeyAlias2.getChild(0))));
+    super.builldSimpleWhere(compare);
+  }
+
+  private void processCompareCByCrossJoin() throws SqlXlateException {
 
     this.makeTop();
     this.makeJoin(FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.CROSS_VK, "cross"));
@@ -279,57 +326,88 @@ public abstract class CommonFilterBlockProcessor extends BaseFilterBlockProcesso
   }
 
   /**
-   * process not in with uncorrelated
+   * process not in with uncorrelated.<br>
+   * sub query is the right side of a left anti join on compare key, so it is a partitioned join.
+   * For NULL semantics, the one-row count of sub query is cross joined and checked in WHERE: no
+   * row is returned if sub query returns NULL, and NULL compare key is returned only if sub query
+   * is empty. The one-row side of the cross join is map joined.<br>
+   * Multi parameter NOT IN is not supported: whether a row qualifies depends on which columns of
+   * each sub query row are NULL, which can't be checked by counts.
    *
-   * @param joinType
    * @throws SqlXlateException
    */
   void processNotInUC() throws SqlXlateException {
-    CommonTree joinType = FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.CROSS_VK,
-        "cross");
+    if (super.subQNode.getChild(0).getType() == PantheraParser_PLSQLParser.VECTOR_EXPR) {
+      throw new SqlXlateException("unsupported multi parameter NOT IN, rewrite it as NOT EXISTS:"
+          + subQNode.getChild(0).toStringTree());
+    }
     this.makeTop();
 
-
     // add compare item
     List<CommonTree> compareElementAlias = super.addSelectItems4In(topSelect, super.subQNode);
+    if (compareElementAlias == null) {
+      throw new SqlXlateException("unsupported NOT IN parameter:" + subQNode.getChild(0).getText());
+    }
+    CommonTree compareKeyAlias = (CommonTree) compareElementAlias.get(0).getChild(0);
 
-
-    this.makeJoin(joinType);
-    super.rebuildCollectSet();
+    this.makeJoin(FilterBlockUtil.createSqlASTNode(PantheraExpParser.LEFTANTI_VK,
+        PantheraExpParser.LEFTANTI_STR));
 
     // compare alias from subq
-    List<CommonTree> comparSubqAlias = super.buildSelectListAlias(bottomAlias,
-        (CommonTree) bottomSelect.getFirstChildWithType(PantheraParser_PLSQLParser.SELECT_LIST));
+    CommonTree comparSubqAlias = super.addAlias((CommonTree) ((CommonTree) bottomSelect
+        .getFirstChildWithType(PantheraParser_PLSQLParser.SELECT_LIST)).getChild(0));
+
+    // on
+    CommonTree on = super.buildOn(FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.EQUALS_OP, "="), super.createCascatedElementWithTableName(
+        FilterBlockUtil.dupNode((CommonTree) topAlias.getChild(0)), FilterBlockUtil
+            .dupNode(compareKeyAlias)), super.createCascatedElementWithTableName(FilterBlockUtil
+        .dupNode((CommonTree) bottomAlias.getChild(0)), FilterBlockUtil
+        .dupNode((CommonTree) comparSubqAlias.getChild(0))));
+    FilterBlockUtil.attachChild(join, on);
 
+    // cross join NULL check, it is one row.
+    CommonTree nullCheckSelect = super.createNullCheckSelect(FilterBlockUtil
+        .cloneTree(bottomSelect), comparSubqAlias);
+    CommonTree nullCheckAlias = super.buildJoin(FilterBlockUtil.createSqlASTNode(
+        PantheraParser_PLSQLParser.CROSS_VK, "cross"), super.createJoin(closingSelect),
+        nullCheckSelect);
+    super.context.addHint(closingSelect, HiveParser.TOK_MAPJOIN, nullCheckAlias.getChild(0)
+        .getText().toLowerCase());
 
     this.makeEnd();
 
     // where
-    // FIXME which is first?
-    CommonTree where = super.buildWhere(FilterBlockUtil.dupNode(subQNode), comparSubqAlias,
-        compareElementAlias);
+    CommonTree where = super.buildNotInNullCheckWhere(super.createCascatedElementWithTableName(
+        FilterBlockUtil.dupNode((CommonTree) topAlias.getChild(0)), FilterBlockUtil
+            .dupNode(compareKeyAlias)), nullCheckAlias, nullCheckSelect);
     FilterBlockUtil.attachChild(closingSelect, where);
-    super.rebuildArrayContains((CommonTree) where.getChild(0));
   }
 
   /**
-   * process not exists with correlated
+   * process not exists with correlated by left anti join on correlated keys, so it is one
+   * shuffle.<br>
+   * Not equal correlated condition can't be join key, process it by left join.
    *
-   * @param joinType
    * @throws SqlXlateException
    */
   void processNotExistsC() throws SqlXlateException {
-    // minuend tree
-    CommonTree minuendSelect = FilterBlockUtil.cloneTree(topSelect);
+    // detect not equal correlated condition before transforming.
+    super.getFilterkey();
+    if (super.hasNotEqualCorrelated) {
+      this.processNotExistsCByLeftJoin();
+      return;
+    }
+    this.makeTop();
 
-    this.processExistsC();
+    // CrossJoinTransformer will change it to LEFTANTI_VK when build ON.
+    this.makeJoin(FilterBlockUtil.createSqlASTNode(PantheraParser_PLSQLParser.CROSS_VK,
+        PantheraExpParser.LEFTANTI_STR));
 
-    // not in
-    super.subQNode = super.buildNotIn4Minus(minuendSelect, topSelect);
-    bottomSelect = topSelect;
-    topSelect = minuendSelect;
-    // super.fbContext.setLogicTopSelect(topSelect);
-    this.processNotInUC();
+    super.processSelectAsterisk(bottomSelect);
+    super.rebuildSelectListByFilter(false, false, bottomAlias, topAlias);
+    this.makeEnd();
+    super.buildWhereByFB(null, null, null);
   }
 
   void processNotExistsCByLeftJoin() throws SqlXlateException {
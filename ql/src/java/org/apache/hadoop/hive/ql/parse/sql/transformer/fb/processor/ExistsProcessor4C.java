@@ -33,7 +33,7 @@ public class ExistsProcessor4C extends CommonFilterBlockProcessor {
     boolean isNot = super.subQNode.getParent().getType() == PantheraParser_PLSQLParser.SQL92_RESERVED_NOT ? true
         : false;
     if (isNot) {
-      super.processNotExistsCByLeftJoin();
+      super.processNotExistsC();
     } else {
       super.processExistsC();
     }
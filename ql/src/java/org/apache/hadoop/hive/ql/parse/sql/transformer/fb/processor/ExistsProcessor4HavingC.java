@@ -34,7 +34,7 @@ public class ExistsProcessor4HavingC extends CommonFilterBlockProcessor {
     boolean isNot = super.subQNode.getParent().getType() == PantheraParser_PLSQLParser.SQL92_RESERVED_NOT ? true
         : false;
     if (isNot) {
-      super.processNotExistsCByLeftJoin();
+      super.processNotExistsC();
     } else {
       super.processExistsC();
     }
@@ -102,7 +102,7 @@ public class ExprNodeConstantDesc extends ExprNodeDesc implements Serializable {
     if (!typeInfo.equals(dest.getTypeInfo())) {
       return false;
     }
-    if (!value.equals(dest.getValue())) {
+    if (value == null ? dest.getValue() != null : !value.equals(dest.getValue())) {
       return false;
     }
 
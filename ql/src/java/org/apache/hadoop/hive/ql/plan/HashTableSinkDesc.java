@@ -84,6 +84,9 @@ public class HashTableSinkDesc extends JoinDesc implements Serializable {
   //map join dump file name
   private String dumpFilePrefix;
 
+  // the small table keys to collect for the big table scan
+  private List<RuntimeFilterDesc> runtimeFilters;
+
   public HashTableSinkDesc() {
     bucketFileNameMapping = new LinkedHashMap<String, Integer>();
   }
@@ -153,6 +156,14 @@ public class HashTableSinkDesc extends JoinDesc implements Serializable {
     this.dumpFilePrefix = dumpFilePrefix;
   }
 
+  public List<RuntimeFilterDesc> getRuntimeFilters() {
+    return runtimeFilters;
+  }
+
+  public void setRuntimeFilters(List<RuntimeFilterDesc> runtimeFilters) {
+    this.runtimeFilters = runtimeFilters;
+  }
+
   public boolean isHandleSkewJoin() {
     return handleSkewJoin;
   }
@@ -63,6 +63,9 @@ public class JoinCondDesc implements Serializable {
     case LEFTSEMI:
       type = JoinDesc.LEFT_SEMI_JOIN;
       break;
+    case LEFTANTI:
+      type = JoinDesc.LEFT_ANTI_JOIN;
+      break;
     default:
       assert false;
     }
@@ -130,6 +133,9 @@ public class JoinCondDesc implements Serializable {
     case JoinDesc.LEFT_SEMI_JOIN:
       sb.append("Left Semi Join ");
       break;
+    case JoinDesc.LEFT_ANTI_JOIN:
+      sb.append("Left Anti Join ");
+      break;
     default:
       sb.append("Unknow Join ");
       break;
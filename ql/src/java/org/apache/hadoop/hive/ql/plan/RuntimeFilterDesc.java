@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.plan;
+
+import java.io.Serializable;
+
+/**
+ * Runtime filter Descriptor implementation.
+ *
+ * A join key of a small table of a map join which is a plain column of the big table. The local
+ * task collects the values of the key into a file, and the map-reduce task then skips the
+ * partitions (for a partition column) or the rows (for another column) of the big table which
+ * cannot match any of them.
+ */
+public class RuntimeFilterDesc implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private Byte tag;
+  private int keyIndex;
+  private String column;
+  private boolean partitionColumn;
+  private String path;
+
+  // the range of the small table keys, set when the map-reduce task starts
+  private boolean loaded;
+  private String minValue;
+  private String maxValue;
+
+  public RuntimeFilterDesc() {
+  }
+
+  public RuntimeFilterDesc(Byte tag, int keyIndex, String column, boolean partitionColumn,
+      String path) {
+    this.tag = tag;
+    this.keyIndex = keyIndex;
+    this.column = column;
+    this.partitionColumn = partitionColumn;
+    this.path = path;
+  }
+
+  /**
+   * @return the tag of the small table in the map join
+   */
+  public Byte getTag() {
+    return tag;
+  }
+
+  public void setTag(Byte tag) {
+    this.tag = tag;
+  }
+
+  /**
+   * @return the position of the key in the join keys
+   */
+  public int getKeyIndex() {
+    return keyIndex;
+  }
+
+  public void setKeyIndex(int keyIndex) {
+    this.keyIndex = keyIndex;
+  }
+
+  /**
+   * @return the column of the big table which is joined with the key
+   */
+  public String getColumn() {
+    return column;
+  }
+
+  public void setColumn(String column) {
+    this.column = column;
+  }
+
+  public boolean isPartitionColumn() {
+    return partitionColumn;
+  }
+
+  public void setPartitionColumn(boolean partitionColumn) {
+    this.partitionColumn = partitionColumn;
+  }
+
+  /**
+   * @return the local file the keys are collected into
+   */
+  public String getPath() {
+    return path;
+  }
+
+  public void setPath(String path) {
+    this.path = path;
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  public void setLoaded(boolean loaded) {
+    this.loaded = loaded;
+  }
+
+  /**
+   * @return the smallest key, or null if the small table has no key
+   */
+  public String getMinValue() {
+    return minValue;
+  }
+
+  public void setMinValue(String minValue) {
+    this.minValue = minValue;
+  }
+
+  public String getMaxValue() {
+    return maxValue;
+  }
+
+  public void setMaxValue(String maxValue) {
+    this.maxValue = maxValue;
+  }
+}
@@ -51,6 +51,11 @@ public class TableScanDesc implements Serializable {
 
   private ExprNodeDesc filterExpr;
 
+  /**
+   * The keys of the small tables of a map join the scanned rows are joined with.
+   */
+  private List<RuntimeFilterDesc> runtimeFilters;
+
   public static final String FILTER_EXPR_CONF_STR =
     "hive.io.filter.expr.serialized";
 
@@ -84,6 +89,14 @@ public class TableScanDesc implements Serializable {
     this.filterExpr = filterExpr;
   }
 
+  public List<RuntimeFilterDesc> getRuntimeFilters() {
+    return runtimeFilters;
+  }
+
+  public void setRuntimeFilters(List<RuntimeFilterDesc> runtimeFilters) {
+    this.runtimeFilters = runtimeFilters;
+  }
+
   public void setAlias(String alias) {
     this.alias = alias;
   }
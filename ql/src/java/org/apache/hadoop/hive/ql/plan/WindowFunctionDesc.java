@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.plan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+
+/**
+ * WindowFunctionDesc.
+ *
+ * A function evaluated by the windowing operator over the partition of the
+ * current row. It is either a ranking function (row_number, rank,
+ * dense_rank), an offset function (lag, lead) or an aggregation over a frame
+ * of the partition.
+ *
+ * The bounds of the frame are offsets to the current row: negative is
+ * PRECEDING, positive is FOLLOWING, 0 is CURRENT ROW, and UNBOUNDED is
+ * Integer.MIN_VALUE or Integer.MAX_VALUE. In a RANGE frame the current row
+ * bound includes all the peers of the current row.
+ */
+public class WindowFunctionDesc implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final int UNBOUNDED_PRECEDING = Integer.MIN_VALUE;
+  public static final int UNBOUNDED_FOLLOWING = Integer.MAX_VALUE;
+
+  private String functionName;
+  private ArrayList<ExprNodeDesc> parameters;
+
+  /**
+   * The evaluator of an aggregation, null for ranking and offset functions.
+   * It is serialized the same way as in AggregationDesc.
+   */
+  private GenericUDAFEvaluator genericUDAFEvaluator;
+
+  /**
+   * Offset of lag and lead.
+   */
+  private int offset;
+
+  private boolean rangeFrame;
+  private int frameStart;
+  private int frameEnd;
+
+  public WindowFunctionDesc() {
+  }
+
+  public WindowFunctionDesc(final String functionName,
+      final ArrayList<ExprNodeDesc> parameters,
+      final GenericUDAFEvaluator genericUDAFEvaluator, final int offset,
+      final boolean rangeFrame, final int frameStart, final int frameEnd) {
+    this.functionName = functionName;
+    this.parameters = parameters;
+    this.genericUDAFEvaluator = genericUDAFEvaluator;
+    this.offset = offset;
+    this.rangeFrame = rangeFrame;
+    this.frameStart = frameStart;
+    this.frameEnd = frameEnd;
+  }
+
+  public String getFunctionName() {
+    return functionName;
+  }
+
+  public void setFunctionName(final String functionName) {
+    this.functionName = functionName;
+  }
+
+  public ArrayList<ExprNodeDesc> getParameters() {
+    return parameters;
+  }
+
+  public void setParameters(final ArrayList<ExprNodeDesc> parameters) {
+    this.parameters = parameters;
+  }
+
+  public GenericUDAFEvaluator getGenericUDAFEvaluator() {
+    return genericUDAFEvaluator;
+  }
+
+  public void setGenericUDAFEvaluator(
+      final GenericUDAFEvaluator genericUDAFEvaluator) {
+    this.genericUDAFEvaluator = genericUDAFEvaluator;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public void setOffset(final int offset) {
+    this.offset = offset;
+  }
+
+  public boolean getRangeFrame() {
+    return rangeFrame;
+  }
+
+  public void setRangeFrame(final boolean rangeFrame) {
+    this.rangeFrame = rangeFrame;
+  }
+
+  public int getFrameStart() {
+    return frameStart;
+  }
+
+  public void setFrameStart(final int frameStart) {
+    this.frameStart = frameStart;
+  }
+
+  public int getFrameEnd() {
+    return frameEnd;
+  }
+
+  public void setFrameEnd(final int frameEnd) {
+    this.frameEnd = frameEnd;
+  }
+
+  @Explain(displayName = "expr")
+  public String getExprString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(functionName);
+    sb.append("(");
+    boolean first = true;
+    for (ExprNodeDesc exp : parameters) {
+      if (first) {
+        first = false;
+      } else {
+        sb.append(", ");
+      }
+      sb.append(exp.getExprString());
+    }
+    sb.append(")");
+    if (genericUDAFEvaluator != null) {
+      sb.append(rangeFrame ? " range between " : " rows between ");
+      sb.append(getBoundString(frameStart));
+      sb.append(" and ");
+      sb.append(getBoundString(frameEnd));
+    } else if (offset != 0) {
+      sb.append(" offset ");
+      sb.append(offset);
+    }
+    return sb.toString();
+  }
+
+  private static String getBoundString(int bound) {
+    if (bound == UNBOUNDED_PRECEDING) {
+      return "unbounded preceding";
+    } else if (bound == UNBOUNDED_FOLLOWING) {
+      return "unbounded following";
+    } else if (bound == 0) {
+      return "current row";
+    } else if (bound < 0) {
+      return -bound + " preceding";
+    } else {
+      return bound + " following";
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.plan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * WindowingDesc.
+ *
+ */
+@Explain(displayName = "Windowing Operator")
+public class WindowingDesc implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private ArrayList<ExprNodeDesc> partitionCols;
+  private ArrayList<ExprNodeDesc> orderCols;
+  private ArrayList<WindowFunctionDesc> functions;
+  private ArrayList<String> outputColumnNames;
+
+  public WindowingDesc() {
+  }
+
+  public WindowingDesc(final ArrayList<ExprNodeDesc> partitionCols,
+      final ArrayList<ExprNodeDesc> orderCols,
+      final ArrayList<WindowFunctionDesc> functions,
+      final ArrayList<String> outputColumnNames) {
+    this.partitionCols = partitionCols;
+    this.orderCols = orderCols;
+    this.functions = functions;
+    this.outputColumnNames = outputColumnNames;
+  }
+
+  @Explain(displayName = "partition by")
+  public ArrayList<ExprNodeDesc> getPartitionCols() {
+    return partitionCols;
+  }
+
+  public void setPartitionCols(final ArrayList<ExprNodeDesc> partitionCols) {
+    this.partitionCols = partitionCols;
+  }
+
+  @Explain(displayName = "order by")
+  public ArrayList<ExprNodeDesc> getOrderCols() {
+    return orderCols;
+  }
+
+  public void setOrderCols(final ArrayList<ExprNodeDesc> orderCols) {
+    this.orderCols = orderCols;
+  }
+
+  @Explain(displayName = "functions")
+  public ArrayList<WindowFunctionDesc> getFunctions() {
+    return functions;
+  }
+
+  public void setFunctions(final ArrayList<WindowFunctionDesc> functions) {
+    this.functions = functions;
+  }
+
+  @Explain(displayName = "outputColumnNames")
+  public ArrayList<String> getOutputColumnNames() {
+    return outputColumnNames;
+  }
+
+  public void setOutputColumnNames(final ArrayList<String> outputColumnNames) {
+    this.outputColumnNames = outputColumnNames;
+  }
+}
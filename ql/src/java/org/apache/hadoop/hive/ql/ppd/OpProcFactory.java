@@ -479,7 +479,8 @@ public final class OpProcFactory {
         } else if (conds[i].getType() == JoinDesc.RIGHT_OUTER_JOIN) {
           aliases.addAll(posToAliasMap.get(i+1));
           break;
-        } else if (conds[i].getType() == JoinDesc.LEFT_OUTER_JOIN) {
+        } else if (conds[i].getType() == JoinDesc.LEFT_OUTER_JOIN
+            || conds[i].getType() == JoinDesc.LEFT_ANTI_JOIN) {
           continue;
         }
       }
@@ -760,10 +761,12 @@ public final class OpProcFactory {
 
     TableScanDesc tableScanDesc = tableScanOp.getConf();
     Table tbl = owi.getParseContext().getTopToTable().get(tableScanOp);
-    if (HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVEOPTINDEXFILTER)) {
+    if (HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVEOPTINDEXFILTER)
+        || HiveConf.getBoolVar(hiveConf, HiveConf.ConfVars.HIVEOPTRCFILESTATSFILTER)) {
       // attach the original predicate to the table scan operator for index
       // optimizations that require the pushed predicate before pcr & later
-      // optimizations are applied
+      // optimizations are applied, and for the RCFile readers that skip row
+      // groups by their column statistics
       tableScanDesc.setFilterExpr(originalPredicate);
     }
     if (!tbl.isNonNative()) {
@@ -86,6 +86,9 @@ public class PredicatePushDown implements Transform {
     opRules.put(new RuleRegExp("R6", "LIM%"), OpProcFactory.getLIMProc());
     opRules.put(new RuleRegExp("R7", "UDTF%"), OpProcFactory.getUDTFProc());
     opRules.put(new RuleRegExp("R8", "LVF%"), OpProcFactory.getLVFProc());
+    // window functions are computed over the whole partition, so no
+    // predicate is pushed below the windowing operator
+    opRules.put(new RuleRegExp("R9", "WIN%"), OpProcFactory.getSCRProc());
 
     // The dispatcher fires the processor corresponding to the closest matching
     // rule and passes the context along
@@ -22,7 +22,6 @@ import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 
-import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
 import org.apache.hadoop.hive.ql.exec.UDF;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
@@ -121,6 +120,11 @@ public class GenericUDFBridge extends GenericUDF implements Serializable {
    */
   transient Method udfMethod;
 
+  /**
+   * The invoker of udfMethod.
+   */
+  transient UDFInvoker udfInvoker;
+
   /**
    * Helper to convert the parameters before passing to udfMethod.
    */
@@ -153,6 +157,7 @@ public class GenericUDFBridge extends GenericUDF implements Serializable {
     }
     udfMethod = udf.getResolver().getEvalMethod(argumentTypeInfos);
     udfMethod.setAccessible(true);
+    udfInvoker = UDFInvoker.get(udf, udfMethod);
 
     // Create parameter converters
     conversionHelper = new ConversionHelper(udfMethod, arguments);
@@ -178,8 +183,7 @@ public class GenericUDFBridge extends GenericUDF implements Serializable {
     }
 
     // Call the function
-    Object result = FunctionRegistry.invoke(udfMethod, udf, conversionHelper
-        .convertIfNecessary(realArguments));
+    Object result = udfInvoker.invoke(conversionHelper.convertIfNecessary(realArguments));
 
     return result;
   }
@@ -0,0 +1,371 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.generic;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFBaseNumericOp;
+import org.apache.hadoop.hive.ql.udf.UDFBaseNumericUnaryOp;
+import org.apache.hadoop.hive.ql.udf.UDFOPDivide;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * UDFInvoker.
+ *
+ * Calls the evaluate method of a UDF resolved by GenericUDFBridge, with the converted arguments.
+ * The methods of the numeric operators (+, -, *, %, pmod, unary - and +, and /) are called
+ * directly by an invoker bound to their signature, since these are evaluated for most rows;
+ * the other methods are called by reflection.
+ */
+public abstract class UDFInvoker {
+
+  protected final UDF udf;
+  protected final Method method;
+
+  protected UDFInvoker(UDF udf, Method method) {
+    this.udf = udf;
+    this.method = method;
+  }
+
+  /**
+   * Call the method with the arguments, which are only used during the call.
+   */
+  public abstract Object invoke(Object[] arguments) throws HiveException;
+
+  /**
+   * @return the invoker of the resolved method of a UDF
+   */
+  public static UDFInvoker get(UDF udf, Method method) {
+    Class<?>[] types = method.getParameterTypes();
+    if (udf instanceof UDFBaseNumericOp && types.length == 2 && types[0] == types[1]) {
+      Class<?> type = types[0];
+      if (type == ByteWritable.class) {
+        return new ByteOpInvoker(udf, method);
+      }
+      if (type == ShortWritable.class) {
+        return new ShortOpInvoker(udf, method);
+      }
+      if (type == IntWritable.class) {
+        return new IntOpInvoker(udf, method);
+      }
+      if (type == LongWritable.class) {
+        return new LongOpInvoker(udf, method);
+      }
+      if (type == FloatWritable.class) {
+        return new FloatOpInvoker(udf, method);
+      }
+      if (type == DoubleWritable.class) {
+        return new DoubleOpInvoker(udf, method);
+      }
+    }
+    if (udf instanceof UDFBaseNumericUnaryOp && types.length == 1) {
+      Class<?> type = types[0];
+      if (type == ByteWritable.class) {
+        return new ByteUnaryOpInvoker(udf, method);
+      }
+      if (type == ShortWritable.class) {
+        return new ShortUnaryOpInvoker(udf, method);
+      }
+      if (type == IntWritable.class) {
+        return new IntUnaryOpInvoker(udf, method);
+      }
+      if (type == LongWritable.class) {
+        return new LongUnaryOpInvoker(udf, method);
+      }
+      if (type == FloatWritable.class) {
+        return new FloatUnaryOpInvoker(udf, method);
+      }
+      if (type == DoubleWritable.class) {
+        return new DoubleUnaryOpInvoker(udf, method);
+      }
+    }
+    if (udf instanceof UDFOPDivide && types.length == 2 && types[0] == DoubleWritable.class
+        && types[1] == DoubleWritable.class) {
+      return new DivideInvoker(udf, method);
+    }
+    return new ReflectionInvoker(udf, method);
+  }
+
+  /**
+   * The same error as the one of a call by reflection.
+   */
+  protected HiveException error(Exception e, Object[] arguments) {
+    return new HiveException("Unable to execute method " + method + "  on object " + udf
+        + " of class " + udf.getClass().getName() + " with arguments "
+        + Arrays.toString(arguments), e);
+  }
+
+  /**
+   * Call the method by reflection.
+   */
+  static class ReflectionInvoker extends UDFInvoker {
+
+    ReflectionInvoker(UDF udf, Method method) {
+      super(udf, method);
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      return FunctionRegistry.invoke(method, udf, arguments);
+    }
+  }
+
+  static class DivideInvoker extends UDFInvoker {
+    private final UDFOPDivide op;
+
+    DivideInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFOPDivide) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((DoubleWritable) arguments[0], (DoubleWritable) arguments[1]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class ByteOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericOp op;
+
+    ByteOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((ByteWritable) arguments[0], (ByteWritable) arguments[1]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class ShortOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericOp op;
+
+    ShortOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((ShortWritable) arguments[0], (ShortWritable) arguments[1]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class IntOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericOp op;
+
+    IntOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((IntWritable) arguments[0], (IntWritable) arguments[1]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class LongOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericOp op;
+
+    LongOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((LongWritable) arguments[0], (LongWritable) arguments[1]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class FloatOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericOp op;
+
+    FloatOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((FloatWritable) arguments[0], (FloatWritable) arguments[1]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class DoubleOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericOp op;
+
+    DoubleOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((DoubleWritable) arguments[0], (DoubleWritable) arguments[1]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class ByteUnaryOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericUnaryOp op;
+
+    ByteUnaryOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericUnaryOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((ByteWritable) arguments[0]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class ShortUnaryOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericUnaryOp op;
+
+    ShortUnaryOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericUnaryOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((ShortWritable) arguments[0]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class IntUnaryOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericUnaryOp op;
+
+    IntUnaryOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericUnaryOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((IntWritable) arguments[0]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class LongUnaryOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericUnaryOp op;
+
+    LongUnaryOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericUnaryOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((LongWritable) arguments[0]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class FloatUnaryOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericUnaryOp op;
+
+    FloatUnaryOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericUnaryOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((FloatWritable) arguments[0]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+
+  static class DoubleUnaryOpInvoker extends UDFInvoker {
+    private final UDFBaseNumericUnaryOp op;
+
+    DoubleUnaryOpInvoker(UDF udf, Method method) {
+      super(udf, method);
+      op = (UDFBaseNumericUnaryOp) udf;
+    }
+
+    @Override
+    public Object invoke(Object[] arguments) throws HiveException {
+      try {
+        return op.evaluate((DoubleWritable) arguments[0]);
+      } catch (RuntimeException e) {
+        throw error(e, arguments);
+      }
+    }
+  }
+}
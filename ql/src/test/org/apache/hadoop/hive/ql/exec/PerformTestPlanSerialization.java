@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hive.ql.exec;
+
+import java.beans.XMLDecoder;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+
+/**
+ * PerformTestPlanSerialization.
+ *
+ * Compares the size and the serialization and deserialization time of the XML and the binary
+ * plan formats, over the map-reduce plans of the compiler tests (results/compiler/plan/*.q.xml).
+ *
+ * Usage: PerformTestPlanSerialization [-count iterations] [plan directory]
+ */
+public class PerformTestPlanSerialization {
+
+  private static final String MASK = "#### A masked pattern was here ####";
+
+  /**
+   * Load the tasks of a compiler test result. The masked lines of the expected output are the
+   * XML header and string values, so they are put back as such.
+   */
+  private static Object loadTasks(File file) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        "UTF-8"));
+    try {
+      String line;
+      boolean header = true;
+      while ((line = reader.readLine()) != null) {
+        if (line.contains(MASK)) {
+          line = header ? "<java version=\"1.6.0\" class=\"java.beans.XMLDecoder\">"
+              : "<string>masked</string>";
+        }
+        if (line.trim().startsWith("<object")) {
+          header = false;
+        }
+        sb.append(line).append('\n');
+      }
+    } finally {
+      reader.close();
+    }
+    XMLDecoder d = new XMLDecoder(new ByteArrayInputStream(sb.toString().getBytes("UTF-8")),
+        null, null);
+    try {
+      return d.readObject();
+    } finally {
+      d.close();
+    }
+  }
+
+  private static void collectWorks(Task<? extends Serializable> task, List<MapredWork> works) {
+    if (task.getWork() instanceof MapredWork && !works.contains(task.getWork())) {
+      works.add((MapredWork) task.getWork());
+    }
+    if (task instanceof ConditionalTask && ((ConditionalTask) task).getListTasks() != null) {
+      for (Task<? extends Serializable> t : ((ConditionalTask) task).getListTasks()) {
+        collectWorks(t, works);
+      }
+    }
+    if (task.getChildTasks() != null) {
+      for (Task<? extends Serializable> t : task.getChildTasks()) {
+        collectWorks(t, works);
+      }
+    }
+  }
+
+  private static byte[] serialize(MapredWork work, boolean binary) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    if (binary) {
+      PlanSerializer.serialize(work, baos);
+    } else {
+      Utilities.serializeMapRedWork(work, baos);
+    }
+    return baos.toByteArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws Exception {
+    int count = 100;
+    String dir = "ql/src/test/results/compiler/plan";
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-count")) {
+        count = Integer.parseInt(args[++i]);
+      } else {
+        dir = args[i];
+      }
+    }
+
+    List<MapredWork> works = new ArrayList<MapredWork>();
+    File[] files = new File(dir).listFiles();
+    for (File file : files) {
+      if (file.getName().endsWith(".q.xml")) {
+        collectWorks((Task<? extends Serializable>) loadTasks(file), works);
+      }
+    }
+    System.out.println("Loaded " + works.size() + " map-reduce plans from " + dir);
+
+    for (boolean binary : new boolean[] {false, true}) {
+      long size = 0;
+      long serializeTime = 0;
+      long deserializeTime = 0;
+      for (int i = 0; i < count; i++) {
+        for (MapredWork work : works) {
+          long start = System.nanoTime();
+          byte[] bytes = serialize(work, binary);
+          long mid = System.nanoTime();
+          Utilities.deserializeMapRedWork(new ByteArrayInputStream(bytes), null);
+          long end = System.nanoTime();
+          // the first round warms up
+          if (i > 0 || count == 1) {
+            serializeTime += mid - start;
+            deserializeTime += end - mid;
+          }
+          if (i == 0) {
+            size += bytes.length;
+          }
+        }
+      }
+      int rounds = Math.max(count - 1, 1);
+      System.out.println((binary ? "binary" : "xml") + ": total size " + size + " bytes, "
+          + "serialize " + serializeTime / rounds / 1000 + " us, deserialize "
+          + deserializeTime / rounds / 1000 + " us per round of all plans");
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+
+/**
+ * Unittest for ContentSummaryCache.
+ */
+public class TestContentSummaryCache extends TestCase {
+
+  private HiveConf conf;
+  private ContentSummaryCache cache;
+
+  @Override
+  protected void setUp() {
+    conf = new HiveConf(TestContentSummaryCache.class);
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVE_INPUT_SUMMARY_CACHE_SIZE, 3);
+    HiveConf.setLongVar(conf, HiveConf.ConfVars.HIVE_INPUT_SUMMARY_CACHE_TTL, 600);
+    cache = ContentSummaryCache.get(conf);
+    cache.clear();
+  }
+
+  public void testDisabled() {
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVE_INPUT_SUMMARY_CACHE_SIZE, 0);
+    assertNull(ContentSummaryCache.get(conf));
+    assertTrue(ContentSummaryCache.isCreated());
+  }
+
+  public void testLookup() {
+    ContentSummary cs = new ContentSummary(10, 2, 1);
+    assertNull(cache.lookup("hdfs://nn/warehouse/t/p=1"));
+    cache.put("hdfs://nn/warehouse/t/p=1", cs);
+    assertSame(cs, cache.lookup("hdfs://nn/warehouse/t/p=1"));
+    assertSame(cache, ContentSummaryCache.get(conf));
+  }
+
+  public void testInvalidate() {
+    ContentSummary cs = new ContentSummary(10, 2, 1);
+    cache.put("hdfs://nn/warehouse/t/p=1", cs);
+    cache.put("hdfs://nn/warehouse/t/p=10", cs);
+    cache.put("hdfs://nn/warehouse/t2", cs);
+
+    // a partition does not drop its siblings sharing a prefix
+    ContentSummaryCache.invalidate(new Path("hdfs://nn/warehouse/t/p=1"));
+    assertNull(cache.lookup("hdfs://nn/warehouse/t/p=1"));
+    assertNotNull(cache.lookup("hdfs://nn/warehouse/t/p=10"));
+
+    // a table drops all its partitions, but not the tables sharing a prefix
+    cache.put("hdfs://nn/warehouse/t/p=1", cs);
+    ContentSummaryCache.invalidate(new Path("/warehouse/t"));
+    assertEquals(1, cache.size());
+    assertNotNull(cache.lookup("hdfs://nn/warehouse/t2"));
+
+    // a partition drops its table
+    ContentSummaryCache.invalidate(new Path("hdfs://nn/warehouse/t2/p=1"));
+    assertEquals(0, cache.size());
+  }
+
+  public void testEviction() {
+    for (int i = 0; i < 4; i++) {
+      cache.put("/warehouse/t" + i, new ContentSummary(i, 1, 1));
+    }
+    assertEquals(3, cache.size());
+    assertNull(cache.lookup("/warehouse/t0"));
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCount;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde2.objectinspector.InspectableObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * TestGroupByOperator.
+ *
+ */
+public class TestGroupByOperator extends TestCase {
+
+  private File localDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    localDir = File.createTempFile("groupby", ".dir");
+    localDir.delete();
+    localDir.mkdirs();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] files = localDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    localDir.delete();
+  }
+
+  public void testSpillAndMerge() throws Exception {
+    checkSpillAndMerge(false);
+  }
+
+  public void testSpillAndMergePrimitive() throws Exception {
+    checkSpillAndMerge(true);
+  }
+
+  /**
+   * With no memory for the hash table, every new entry spills a run. The
+   * runs are merged at close, so each key is forwarded once, in key order,
+   * with the sum and the count of all its rows.
+   */
+  private void checkSpillAndMerge(boolean primitive) throws Exception {
+    int[][] rows = new int[50][];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = new int[] {i % 7, i};
+    }
+    List<String> expected = new ArrayList<String>();
+    for (int k = 0; k < 7; k++) {
+      long sum = 0;
+      long count = 0;
+      for (int[] row : rows) {
+        if (row[0] == k) {
+          sum += row[1];
+          count++;
+        }
+      }
+      expected.add(k + "," + sum + "," + count);
+    }
+
+    GroupByOperator op = groupBy(Arrays.asList(column("k")),
+        Arrays.asList(sum(), count(false)));
+    List<String> result = run(op, rows, true, primitive);
+
+    assertEquals(expected, result);
+    assertTrue(op.getStats().get(GroupByOperator.Counter.HASH_TABLE_FLUSHES) > 0);
+    // the runs and their directory are deleted after the merge
+    assertEquals(0, localDir.listFiles().length);
+  }
+
+  /**
+   * The partial aggregations of a distinct aggregation cannot be merged, so
+   * the hash table is still flushed, and a group may be forwarded more than
+   * once.
+   */
+  public void testDistinctFlushes() throws Exception {
+    int[][] rows = new int[30][];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = new int[] {i % 3, i % 6};
+    }
+
+    GroupByOperator op = groupBy(Arrays.asList(column("k"), column("v")),
+        Arrays.asList(count(true)));
+    List<String> result = run(op, rows, true, true);
+
+    assertTrue(result.size() > 6);
+    Map<String, Integer> groups = new HashMap<String, Integer>();
+    for (String row : result) {
+      assertTrue(row, row.endsWith(",1"));
+      groups.put(row, groups.containsKey(row) ? groups.get(row) + 1 : 1);
+    }
+    assertEquals(6, groups.size());
+    for (int k = 0; k < 3; k++) {
+      assertTrue(groups.containsKey(k + "," + k + ",1"));
+      assertTrue(groups.containsKey(k + "," + (k + 3) + ",1"));
+    }
+    assertEquals(0, localDir.listFiles().length);
+  }
+
+  /**
+   * Spilling is off by default: the hash table is flushed, and a key may be
+   * forwarded more than once.
+   */
+  public void testSpillDisabledByDefault() throws Exception {
+    int[][] rows = new int[20][];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = new int[] {i % 2, i};
+    }
+
+    GroupByOperator op = groupBy(Arrays.asList(column("k")),
+        Arrays.asList(sum(), count(false)));
+    List<String> result = run(op, rows, false, false);
+
+    assertEquals(rows.length, result.size());
+    long total = 0;
+    for (String row : result) {
+      total += Long.parseLong(row.split(",")[2]);
+    }
+    assertEquals(rows.length, total);
+  }
+
+  private static ExprNodeDesc column(String name) {
+    return new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, name, "", false);
+  }
+
+  private static AggregationDesc sum() throws Exception {
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    parameters.add(column("v"));
+    GenericUDAFEvaluator evaluator = new GenericUDAFSum()
+        .getEvaluator(new TypeInfo[] {TypeInfoFactory.intTypeInfo});
+    return new AggregationDesc("sum", evaluator, parameters, false,
+        GenericUDAFEvaluator.Mode.PARTIAL1);
+  }
+
+  private static AggregationDesc count(boolean distinct) throws Exception {
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    parameters.add(column("v"));
+    GenericUDAFEvaluator evaluator = new GenericUDAFCount()
+        .getEvaluator(new TypeInfo[] {TypeInfoFactory.intTypeInfo});
+    return new AggregationDesc("count", evaluator, parameters, distinct,
+        GenericUDAFEvaluator.Mode.PARTIAL1);
+  }
+
+  /**
+   * A map-side hash group by with no memory for its hash table, so that it
+   * is full after every new entry.
+   */
+  private static GroupByOperator groupBy(List<ExprNodeDesc> keys,
+      List<AggregationDesc> aggregators) {
+    ArrayList<String> outputColumnNames = new ArrayList<String>();
+    for (int i = 0; i < keys.size() + aggregators.size(); i++) {
+      outputColumnNames.add("_col" + i);
+    }
+    GroupByDesc desc = new GroupByDesc(GroupByDesc.Mode.HASH,
+        outputColumnNames, new ArrayList<ExprNodeDesc>(keys),
+        new ArrayList<AggregationDesc>(aggregators), false, 0.0f, 0.9f);
+    return (GroupByOperator) OperatorFactory.get(desc);
+  }
+
+  /**
+   * Run the group by over the (k, v) rows.
+   *
+   * @return the output rows as comma-separated values
+   */
+  private List<String> run(GroupByOperator op, int[][] rows, boolean spill,
+      boolean primitive) throws Exception {
+    CollectOperator collect = (CollectOperator) OperatorFactory
+        .getAndMakeChild(new CollectDesc(Integer.valueOf(1000)), op);
+
+    List<ObjectInspector> fieldInspectors = new ArrayList<ObjectInspector>();
+    for (int i = 0; i < 2; i++) {
+      fieldInspectors
+          .add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+    }
+    StructObjectInspector rowInspector = ObjectInspectorFactory
+        .getStandardStructObjectInspector(Arrays.asList("k", "v"),
+        fieldInspectors);
+
+    JobConf conf = new JobConf(TestGroupByOperator.class);
+    conf.set("job.local.dir", localDir.getAbsolutePath());
+    if (spill) {
+      HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVEMAPAGGRHASHSPILL, true);
+    }
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVEMAPAGGRHASHPRIMITIVE,
+        primitive);
+    op.initialize(conf, new ObjectInspector[] {rowInspector});
+    for (int[] values : rows) {
+      List<Object> row = new ArrayList<Object>();
+      for (int value : values) {
+        row.add(new IntWritable(value));
+      }
+      op.process(row, 0);
+    }
+    op.close(false);
+
+    List<String> result = new ArrayList<String>();
+    InspectableObject io = new InspectableObject();
+    for (collect.retrieve(io); io.o != null; collect.retrieve(io)) {
+      StringBuilder sb = new StringBuilder();
+      for (Object field : ((StructObjectInspector) io.oi)
+          .getStructFieldsDataAsList(io.o)) {
+        if (sb.length() > 0) {
+          sb.append(',');
+        }
+        sb.append(field);
+      }
+      result.add(sb.toString());
+    }
+    return result;
+  }
+}
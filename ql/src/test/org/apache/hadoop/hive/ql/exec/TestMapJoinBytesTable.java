@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectCtx;
+import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinHashTable;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinSingleKey;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.lazybinary.LazyBinarySerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+
+/**
+ * TestMapJoinBytesTable.
+ *
+ */
+public class TestMapJoinBytesTable extends TestCase {
+
+  private static final int VALUE_TAG = 1;
+
+  private SerDe initSerDe(int tag, String columns, String types, ObjectInspector standardOI)
+      throws Exception {
+    TableDesc desc = new TableDesc(LazyBinarySerDe.class, SequenceFileInputFormat.class,
+        SequenceFileOutputFormat.class, Utilities.makeProperties("columns", columns,
+        "columns.types", types));
+    SerDe serde = new LazyBinarySerDe();
+    serde.initialize(null, desc.getProperties());
+    if (standardOI == null) {
+      standardOI = ObjectInspectorUtils.getStandardObjectInspector(serde.getObjectInspector(),
+          ObjectInspectorCopyOption.WRITABLE);
+    }
+    MapJoinMetaData.put(Integer.valueOf(tag), new HashTableSinkObjectCtx(standardOI, serde,
+        desc, null));
+    return serde;
+  }
+
+  private void initMetaData(String keyType) throws Exception {
+    MapJoinMetaData.clear();
+    initSerDe(-1, "key", keyType, null);
+    List<String> names = new ArrayList<String>();
+    names.add("tmp_0");
+    List<ObjectInspector> fields = new ArrayList<ObjectInspector>();
+    fields.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    initSerDe(VALUE_TAG, "value", "string", ObjectInspectorFactory
+        .getStandardStructObjectInspector(names, fields));
+  }
+
+  private AbstractMapJoinKey getKey(int i, boolean intKey) {
+    return new MapJoinSingleKey(intKey ? new IntWritable(i) : new Text("key_" + i));
+  }
+
+  /**
+   * Fill a hash table where key i has i % 3 + 1 rows.
+   */
+  private void fill(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable,
+      boolean intKey) throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+      for (int j = 0; j <= i % 3; j++) {
+        rows.add(new Object[] {new Text("val_" + i + "_" + j)});
+      }
+      hashTable.put(getKey(i, intKey), new MapJoinObjectValue(VALUE_TAG, rows));
+    }
+  }
+
+  private void checkDump(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable,
+      boolean intKey) throws Exception {
+    File file = File.createTempFile("hashtable", ".compact");
+    file.deleteOnExit();
+    hashTable.flushMemoryCacheToPersistent(file, true);
+    hashTable.close();
+
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> loaded =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    loaded.initilizePersistentHash(file.getPath());
+    assertEquals(1000, loaded.size());
+    for (int i = 0; i < 1000; i++) {
+      MapJoinObjectValue value = loaded.get(getKey(i, intKey));
+      assertNotNull(value);
+      MapJoinRowContainer<Object[]> rows = value.getObj();
+      assertEquals(i % 3 + 1, rows.size());
+      int j = 0;
+      for (Object[] row = rows.first(); row != null; row = rows.next(), j++) {
+        assertEquals(new Text("val_" + i + "_" + j), row[0]);
+      }
+    }
+    assertNull(loaded.get(getKey(1000, intKey)));
+    loaded.close();
+  }
+
+  public void testCompactHashTable() throws Exception {
+    initMetaData("int");
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    fill(hashTable, true);
+    checkDump(hashTable, true);
+  }
+
+  public void testLongKeyHashTable() throws Exception {
+    initMetaData("int");
+    List<ObjectInspector> keyOIs = new ArrayList<ObjectInspector>();
+    keyOIs.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+    assertTrue(MapJoinHashTable.isLongKey(keyOIs));
+
+    MapJoinHashTable hashTable = new MapJoinHashTable(true, 1);
+    fill(hashTable, true);
+    assertEquals(1000, hashTable.size());
+    assertEquals(3, hashTable.get(getKey(2, true)).getObj().size());
+    checkDump(hashTable, true);
+  }
+
+  public void testBytesKeyHashTable() throws Exception {
+    initMetaData("string");
+    MapJoinHashTable hashTable = new MapJoinHashTable(false, 1);
+    fill(hashTable, false);
+    assertEquals(1000, hashTable.size());
+    assertEquals(2, hashTable.get(getKey(1, false)).getObj().size());
+    checkDump(hashTable, false);
+  }
+
+  private void checkRemove(MapJoinHashTable hashTable, boolean intKey) throws Exception {
+    for (int i = 0; i < 1000; i += 2) {
+      hashTable.remove(getKey(i, intKey));
+    }
+    // removing a key does not hide the keys probed after it
+    assertEquals(500, hashTable.size());
+    for (int i = 0; i < 1000; i++) {
+      MapJoinObjectValue value = hashTable.get(getKey(i, intKey));
+      if (i % 2 == 0) {
+        assertNull(value);
+      } else {
+        assertEquals(i % 3 + 1, value.getObj().size());
+      }
+    }
+    hashTable.put(getKey(0, intKey), hashTable.get(getKey(1, intKey)));
+    assertEquals(2, hashTable.get(getKey(0, intKey)).getObj().size());
+  }
+
+  public void testRemoveFromHashTable() throws Exception {
+    initMetaData("int");
+    MapJoinHashTable hashTable = new MapJoinHashTable(true, 1);
+    fill(hashTable, true);
+    checkRemove(hashTable, true);
+
+    initMetaData("string");
+    hashTable = new MapJoinHashTable(false, 1);
+    fill(hashTable, false);
+    checkRemove(hashTable, false);
+  }
+
+  public void testLoadHashTable() throws Exception {
+    initMetaData("string");
+    MapJoinHashTable hashTable = new MapJoinHashTable(false, 1);
+    fill(hashTable, false);
+    File file = File.createTempFile("hashtable", ".compact");
+    file.deleteOnExit();
+    hashTable.flushMemoryCacheToPersistent(file);
+    hashTable.close();
+
+    MapJoinHashTable loaded = new MapJoinHashTable(false, 1);
+    loaded.initilizePersistentHash(file.getPath());
+    assertEquals(1000, loaded.size());
+    assertEquals(2, loaded.get(getKey(1, false)).getObj().size());
+    assertNull(loaded.get(getKey(1000, false)));
+    loaded.close();
+    assertEquals(0, loaded.size());
+  }
+
+  /**
+   * Add a row to a hash table the way the local task does.
+   */
+  private void addRow(HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable, int i,
+      int j) throws Exception {
+    Object[] row = new Object[] {new Text("val_" + i + "_" + j)};
+    MapJoinObjectValue o = hashTable.get(getKey(i, false));
+    if (o == null) {
+      MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+      rows.add(row);
+      hashTable.put(getKey(i, false), new MapJoinObjectValue(VALUE_TAG, rows));
+    } else {
+      o.getObj().add(row);
+    }
+  }
+
+  public void testSpilledPartitions() throws Exception {
+    initMetaData("string");
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    hashTable.setNumPartitions(4);
+    for (int i = 0; i < 1000; i++) {
+      addRow(hashTable, i, 0);
+    }
+    assertTrue(hashTable.spillPartition());
+    assertTrue(hashTable.spillPartition());
+    // the rows of the spilled keys added later are merged with the spilled ones
+    for (int i = 0; i < 1000; i++) {
+      addRow(hashTable, i, 1);
+    }
+    int spilledKeys = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (hashTable.getSpilledPartition(getKey(i, false)) >= 0) {
+        spilledKeys++;
+      }
+    }
+    assertTrue(spilledKeys > 0 && spilledKeys < 1000);
+    assertEquals(1000 - spilledKeys, hashTable.size());
+
+    File file = File.createTempFile("hashtable", ".dump");
+    file.deleteOnExit();
+    hashTable.flushMemoryCacheToPersistent(file, false);
+    hashTable.close();
+
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> loaded =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    loaded.initilizePersistentHash(file.getPath());
+    assertEquals(4, loaded.getNumPartitions());
+    assertEquals(1000 - spilledKeys, loaded.size());
+    for (int partition = 0; partition < 4; partition++) {
+      loaded.loadSpilledPartition(partition);
+      for (int i = 0; i < 1000; i++) {
+        AbstractMapJoinKey key = getKey(i, false);
+        int spilledPartition = loaded.getSpilledPartition(key);
+        MapJoinObjectValue value = loaded.get(key);
+        if (spilledPartition >= 0 && spilledPartition != partition) {
+          assertNull(value);
+          continue;
+        }
+        assertNotNull(value);
+        MapJoinRowContainer<Object[]> rows = value.getObj();
+        assertEquals(2, rows.size());
+        assertEquals(new Text("val_" + i + "_0"), rows.first()[0]);
+        assertEquals(new Text("val_" + i + "_1"), rows.next()[0]);
+      }
+    }
+    loaded.close();
+  }
+}
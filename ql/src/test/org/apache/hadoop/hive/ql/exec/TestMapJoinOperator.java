@@ -0,0 +1,272 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.exec.HashTableSinkOperator.HashTableSinkObjectCtx;
+import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinRowContainer;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinSingleKey;
+import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.JoinCondDesc;
+import org.apache.hadoop.hive.ql.plan.JoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapJoinDesc;
+import org.apache.hadoop.hive.ql.plan.MapredLocalWork;
+import org.apache.hadoop.hive.ql.plan.PlanUtils;
+import org.apache.hadoop.hive.ql.plan.TableDesc;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.InspectableObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * TestMapJoinOperator.
+ *
+ */
+public class TestMapJoinOperator extends TestCase {
+
+  private static final String DUMP_FILE_PREFIX = "test";
+  private static final int NUM_PARTITIONS = 4;
+  // keys 0..99 are in the small table, key k with k % 2 + 1 rows, and keys 100..119 are not
+  private static final int SMALL_KEYS = 100;
+  private static final int BIG_KEYS = 120;
+
+  private File baseDir;
+  private int spilledKeys;
+
+  @Override
+  protected void setUp() throws Exception {
+    baseDir = File.createTempFile("mapjoin", ".dir");
+    baseDir.delete();
+    baseDir.mkdirs();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] files = baseDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    baseDir.delete();
+    MapJoinMetaData.clear();
+  }
+
+  public void testInnerJoinSpilledPartitions() throws Exception {
+    checkJoin(JoinDesc.INNER_JOIN);
+  }
+
+  public void testLeftOuterJoinSpilledPartitions() throws Exception {
+    checkJoin(JoinDesc.LEFT_OUTER_JOIN);
+  }
+
+  /**
+   * Join the big table with a small table which has spilled partitions. The big table rows of the
+   * spilled partitions are joined in a second pass at close, so the output is compared as a
+   * sorted list.
+   */
+  private void checkJoin(int joinType) throws Exception {
+    boolean outer = joinType == JoinDesc.LEFT_OUTER_JOIN;
+    MapJoinDesc desc = getDesc(joinType);
+    writeHashTable(desc);
+    assertTrue(spilledKeys > 0 && spilledKeys < SMALL_KEYS);
+
+    List<String> expected = new ArrayList<String>();
+    for (int k = 0; k < BIG_KEYS; k++) {
+      if (k >= SMALL_KEYS) {
+        if (outer) {
+          expected.add("b_" + k + ",null");
+        }
+        continue;
+      }
+      for (int j = 0; j <= k % 2; j++) {
+        expected.add("b_" + k + ",s_" + k + "_" + j);
+      }
+    }
+    Collections.sort(expected);
+
+    List<String> result = join(desc);
+    Collections.sort(result);
+    assertEquals(expected, result);
+  }
+
+  private static ExprNodeDesc column(String name, boolean intType) {
+    return new ExprNodeColumnDesc(intType ? TypeInfoFactory.intTypeInfo
+        : TypeInfoFactory.stringTypeInfo, name, "", false);
+  }
+
+  private static TableDesc getValueTableDesc() {
+    return PlanUtils.getMapJoinValueTableDesc(Arrays.asList(new FieldSchema("value", "string",
+        null)));
+  }
+
+  /**
+   * A map join of the big table 0 and the small table 1 on their int keys, which outputs their
+   * string values.
+   */
+  private static MapJoinDesc getDesc(int joinType) {
+    Map<Byte, List<ExprNodeDesc>> keys = new HashMap<Byte, List<ExprNodeDesc>>();
+    Map<Byte, List<ExprNodeDesc>> values = new HashMap<Byte, List<ExprNodeDesc>>();
+    Map<Byte, List<ExprNodeDesc>> filters = new HashMap<Byte, List<ExprNodeDesc>>();
+    List<TableDesc> valueTblDescs = new ArrayList<TableDesc>();
+    for (byte tag = 0; tag < 2; tag++) {
+      keys.put(tag, Arrays.asList(column("key", true)));
+      values.put(tag, Arrays.asList(column("value", false)));
+      filters.put(tag, new ArrayList<ExprNodeDesc>());
+      valueTblDescs.add(getValueTableDesc());
+    }
+    TableDesc keyTblDesc = PlanUtils.getMapJoinKeyTableDesc(Arrays.asList(new FieldSchema(
+        "key", "int", null)));
+    MapJoinDesc desc = new MapJoinDesc(keys, keyTblDesc, values, valueTblDescs, valueTblDescs,
+        Arrays.asList("_col0", "_col1"), 0, new JoinCondDesc[] {new JoinCondDesc(0, 1,
+        joinType)}, filters, joinType == JoinDesc.INNER_JOIN, DUMP_FILE_PREFIX);
+    desc.setTagOrder(new Byte[] {Byte.valueOf((byte) 0), Byte.valueOf((byte) 1)});
+    return desc;
+  }
+
+  private static void putMetaData(int tag, TableDesc desc) throws Exception {
+    SerDe serde = (SerDe) ReflectionUtils.newInstance(desc.getDeserializerClass(), null);
+    serde.initialize(null, desc.getProperties());
+    MapJoinMetaData.put(Integer.valueOf(tag), new HashTableSinkObjectCtx(ObjectInspectorUtils
+        .getStandardObjectInspector(serde.getObjectInspector(),
+        ObjectInspectorCopyOption.WRITABLE), serde, desc, null));
+  }
+
+  /**
+   * Dump the hash table of the small table the way the local task does, with two of its
+   * partitions spilled.
+   */
+  private void writeHashTable(MapJoinDesc desc) throws Exception {
+    MapJoinMetaData.clear();
+    putMetaData(-1, desc.getKeyTblDesc());
+    putMetaData(1, getValueTableDesc());
+
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    hashTable.setNumPartitions(NUM_PARTITIONS);
+    for (int j = 0; j < 2; j++) {
+      for (int k = 0; k < SMALL_KEYS; k++) {
+        if (j > k % 2) {
+          continue;
+        }
+        AbstractMapJoinKey key = new MapJoinSingleKey(new IntWritable(k));
+        Object[] row = new Object[] {new Text("s_" + k + "_" + j)};
+        MapJoinObjectValue o = hashTable.get(key);
+        if (o == null) {
+          MapJoinRowContainer<Object[]> rows = new MapJoinRowContainer<Object[]>();
+          rows.add(row);
+          hashTable.put(key, new MapJoinObjectValue(1, rows));
+        } else {
+          o.getObj().add(row);
+        }
+      }
+      if (j == 0) {
+        // the second rows of the spilled keys are added to the spilled partitions
+        assertTrue(hashTable.spillPartition());
+        assertTrue(hashTable.spillPartition());
+      }
+    }
+    spilledKeys = 0;
+    for (int k = 0; k < SMALL_KEYS; k++) {
+      if (hashTable.getSpilledPartition(new MapJoinSingleKey(new IntWritable(k))) >= 0) {
+        spilledKeys++;
+      }
+    }
+
+    File file = new File(Utilities.generatePath(baseDir.getPath(), DUMP_FILE_PREFIX,
+        Byte.valueOf((byte) 1), "-"));
+    hashTable.flushMemoryCacheToPersistent(file, false);
+    hashTable.close();
+    MapJoinMetaData.clear();
+  }
+
+  /**
+   * Run the map join over the big table rows.
+   *
+   * @return the output rows as comma-separated values
+   */
+  private List<String> join(MapJoinDesc desc) throws Exception {
+    MapJoinOperator op = (MapJoinOperator) OperatorFactory.get(desc);
+    CollectOperator collect = (CollectOperator) OperatorFactory
+        .getAndMakeChild(new CollectDesc(Integer.valueOf(1000)), op);
+
+    MapredLocalWork localWork = new MapredLocalWork();
+    localWork.setInputFileChangeSensitive(false);
+    localWork.setTmpFileURI(baseDir.getPath());
+    ExecMapperContext context = new ExecMapperContext();
+    context.setLocalWork(localWork);
+    op.setExecContext(context);
+
+    List<ObjectInspector> fieldInspectors = new ArrayList<ObjectInspector>();
+    fieldInspectors.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+    fieldInspectors.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    StructObjectInspector rowInspector = ObjectInspectorFactory
+        .getStandardStructObjectInspector(Arrays.asList("key", "value"), fieldInspectors);
+
+    JobConf conf = new JobConf(TestMapJoinOperator.class);
+    conf.set("mapred.job.tracker", "local");
+    op.initialize(conf, new ObjectInspector[] {rowInspector, rowInspector});
+    op.cleanUpInputFileChanged();
+    for (int k = 0; k < BIG_KEYS; k++) {
+      List<Object> row = new ArrayList<Object>();
+      row.add(new IntWritable(k));
+      row.add(new Text("b_" + k));
+      op.process(row, 0);
+    }
+    op.close(false);
+
+    List<String> result = new ArrayList<String>();
+    InspectableObject io = new InspectableObject();
+    for (collect.retrieve(io); io.o != null; collect.retrieve(io)) {
+      StringBuilder sb = new StringBuilder();
+      for (Object field : ((StructObjectInspector) io.oi).getStructFieldsDataAsList(io.o)) {
+        if (sb.length() > 0) {
+          sb.append(',');
+        }
+        sb.append(field);
+      }
+      result.add(sb.toString());
+    }
+    return result;
+  }
+}
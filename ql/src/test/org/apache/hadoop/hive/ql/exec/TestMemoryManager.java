@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.persistence.AbstractMapJoinKey;
+import org.apache.hadoop.hive.ql.exec.persistence.HashMapWrapper;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinObjectValue;
+import org.apache.hadoop.hive.ql.exec.persistence.MapJoinSingleKey;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * TestMemoryManager.
+ *
+ */
+public class TestMemoryManager extends TestCase {
+
+  public void testEstimateSize() {
+    assertEquals(0, MemoryManager.estimateSize(null));
+    // header and int
+    assertEquals(24, MemoryManager.estimateSize(new IntWritable(1)));
+    assertEquals(24, MemoryManager.estimateSize(new LongWritable(1)));
+
+    long small = MemoryManager.estimateSize(new Text("a"));
+    long large = MemoryManager.estimateSize(new Text(new byte[1000]));
+    assertTrue(large - small >= 999);
+
+    List<Object> row = new ArrayList<Object>();
+    row.add(new Text("a"));
+    row.add(new IntWritable(1));
+    assertTrue(MemoryManager.estimateSize(row) > small + 24);
+    // the key object and its text
+    assertEquals(24 + small, MemoryManager.estimateSize(new MapJoinSingleKey(new Text("a"))));
+  }
+
+  public void testReserve() throws Exception {
+    MemoryManager memoryManager = MemoryManager.getInstance();
+    memoryManager.reset();
+    memoryManager.reserve(1000);
+    assertEquals(1000, memoryManager.getUsedMemory());
+    memoryManager.release(400);
+    assertEquals(600, memoryManager.getUsedMemory());
+    assertEquals(1000, memoryManager.getPeakMemory());
+    assertFalse(memoryManager.isExceeded(0.5f));
+    memoryManager.reset();
+
+    HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue> hashTable =
+        new HashMapWrapper<AbstractMapJoinKey, MapJoinObjectValue>();
+    hashTable.addMemoryUsage(new MapJoinSingleKey(new IntWritable(1)), 100);
+    hashTable.addMemoryUsage(new MapJoinSingleKey(new IntWritable(2)), 200);
+    assertEquals(300, hashTable.getCurrentMemory());
+    assertEquals(300, memoryManager.getUsedMemory());
+    hashTable.close();
+    assertEquals(0, memoryManager.getUsedMemory());
+  }
+
+  public void testHeapExceeded() {
+    MemoryManager memoryManager = MemoryManager.getInstance();
+    memoryManager.reset();
+    // the heap is checked whatever is reserved
+    assertTrue(memoryManager.isHeapExceeded(0.0f));
+    assertFalse(memoryManager.isHeapExceeded(1.0f));
+  }
+}
@@ -18,13 +18,18 @@
 
 package org.apache.hadoop.hive.ql.exec;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
+import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
 import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
@@ -103,10 +108,52 @@ public class TestPlan extends TestCase {
       // verify that the two are equal
       assertEquals(v1, baos.toString());
 
+      // the binary plan reads back to the same plan
+      baos.reset();
+      JobConf binaryJob = new JobConf(TestPlan.class);
+      HiveConf.setVar(binaryJob, HiveConf.ConfVars.PLANFORMAT, "binary");
+      Utilities.serializeMapRedWork(mrwork, baos, binaryJob);
+      assertTrue(PlanSerializer.isBinaryPlan(new ByteArrayInputStream(baos.toByteArray())));
+      MapredWork mrwork3 = Utilities.deserializeMapRedWork(
+          new ByteArrayInputStream(baos.toByteArray()), job);
+      baos.reset();
+      Utilities.serializeMapRedWork(mrwork3, baos);
+      baos.close();
+      assertEquals(v1, baos.toString());
+
     } catch (Exception excp) {
       excp.printStackTrace();
       throw excp;
     }
     System.out.println("Serialization/Deserialization of plan successful");
   }
+
+  public void testBinaryPlanFallsBackToXml() throws Exception {
+    // a Number the binary format can not re-create
+    Properties properties = new Properties();
+    properties.put("counter", new AtomicInteger(1));
+    try {
+      PlanSerializer.serialize(properties, new ByteArrayOutputStream());
+      fail("a value which can not be re-created is not written");
+    } catch (IOException e) {
+      // expected
+    }
+
+    TableDesc tblDesc = new TableDesc();
+    tblDesc.setProperties(properties);
+    LinkedHashMap<String, PartitionDesc> pt = new LinkedHashMap<String, PartitionDesc>();
+    pt.put("/tmp/testfolder", new PartitionDesc(tblDesc, null));
+    MapredWork mrwork = new MapredWork();
+    mrwork.setPathToPartitionInfo(pt);
+
+    JobConf job = new JobConf(TestPlan.class);
+    HiveConf.setVar(job, HiveConf.ConfVars.PLANFORMAT, "binary");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    Utilities.serializeMapRedWork(mrwork, baos, job);
+    byte[] plan = baos.toByteArray();
+    assertFalse(PlanSerializer.isBinaryPlan(new ByteArrayInputStream(plan)));
+    MapredWork mrwork2 = Utilities.deserializeMapRedWork(new ByteArrayInputStream(plan), job);
+    assertTrue(mrwork2.getPathToPartitionInfo().get("/tmp/testfolder").getTableDesc()
+        .getProperties().get("counter") instanceof AtomicInteger);
+  }
 }
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.IntWritable;
+
+/**
+ * TestPrimitiveAggregations.
+ *
+ */
+public class TestPrimitiveAggregations extends TestCase {
+
+  private static final String[] NAMES = {"count", "count", "sum", "min", "max", "avg"};
+
+  private void checkSameResults(GenericUDAFEvaluator.Mode mode) throws Exception {
+    ObjectInspector intOI = PrimitiveObjectInspectorFactory.writableIntObjectInspector;
+    List<AggregationDesc> aggrs = new ArrayList<AggregationDesc>();
+    GenericUDAFEvaluator[] evaluators = new GenericUDAFEvaluator[NAMES.length];
+    ObjectInspector[][] parameterOIs = new ObjectInspector[NAMES.length][];
+    ObjectInspector[] outputOIs = new ObjectInspector[NAMES.length];
+    AggregationBuffer[][] buffers = new AggregationBuffer[2][NAMES.length];
+    for (int i = 0; i < NAMES.length; i++) {
+      // the first count is count(*)
+      parameterOIs[i] = i == 0 ? new ObjectInspector[0] : new ObjectInspector[] {intOI};
+      evaluators[i] = FunctionRegistry.getGenericUDAFEvaluator(NAMES[i],
+          Arrays.asList(parameterOIs[i]), false, i == 0);
+      outputOIs[i] = evaluators[i].init(mode, parameterOIs[i]);
+      aggrs.add(new AggregationDesc(NAMES[i], evaluators[i], new ArrayList<ExprNodeDesc>(),
+          false, mode));
+      buffers[0][i] = evaluators[i].getNewAggregationBuffer();
+      buffers[1][i] = evaluators[i].getNewAggregationBuffer();
+    }
+
+    PrimitiveAggregations primitiveAggregations = PrimitiveAggregations.create(aggrs, evaluators,
+        parameterOIs);
+    assertNotNull(primitiveAggregations);
+    int[] groups = {primitiveAggregations.newGroup(), primitiveAggregations.newGroup()};
+
+    // the second group only has nulls
+    for (int row = 0; row < 1000; row++) {
+      int g = row % 2;
+      IntWritable value = g == 0 && row % 3 != 0 ? new IntWritable(row - 500) : null;
+      for (int i = 0; i < NAMES.length; i++) {
+        evaluators[i].aggregate(buffers[g][i], i == 0 ? new Object[0] : new Object[] {value});
+        primitiveAggregations.aggregate(i, groups[g], value);
+      }
+    }
+
+    for (int g = 0; g < 2; g++) {
+      for (int i = 0; i < NAMES.length; i++) {
+        Object expected = evaluators[i].evaluate(buffers[g][i]);
+        Object actual = primitiveAggregations.evaluate(i, groups[g]);
+        if (expected == null) {
+          assertNull(NAMES[i], actual);
+        } else {
+          assertEquals(NAMES[i], 0, ObjectInspectorUtils.compare(expected, outputOIs[i], actual,
+              outputOIs[i]));
+        }
+      }
+    }
+  }
+
+  public void testPartialResults() throws Exception {
+    checkSameResults(GenericUDAFEvaluator.Mode.PARTIAL1);
+  }
+
+  public void testCompleteResults() throws Exception {
+    checkSameResults(GenericUDAFEvaluator.Mode.COMPLETE);
+  }
+
+  public void testUnsupportedAggregation() throws Exception {
+    ObjectInspector[] parameterOIs = {
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector};
+    GenericUDAFEvaluator evaluator = FunctionRegistry.getGenericUDAFEvaluator("max",
+        Arrays.asList(parameterOIs), false, false);
+    evaluator.init(GenericUDAFEvaluator.Mode.PARTIAL1, parameterOIs);
+    List<AggregationDesc> aggrs = new ArrayList<AggregationDesc>();
+    aggrs.add(new AggregationDesc("max", evaluator, new ArrayList<ExprNodeDesc>(), false,
+        GenericUDAFEvaluator.Mode.PARTIAL1));
+    assertNull(PrimitiveAggregations.create(aggrs, new GenericUDAFEvaluator[] {evaluator},
+        new ObjectInspector[][] {parameterOIs}));
+  }
+}
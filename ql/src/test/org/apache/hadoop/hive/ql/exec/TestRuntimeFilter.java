@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * TestRuntimeFilter.
+ *
+ */
+public class TestRuntimeFilter extends TestCase {
+
+  private final Configuration conf = new Configuration();
+
+  private RuntimeFilter writeAndRead(RuntimeFilter filter) throws Exception {
+    File file = File.createTempFile("runtimefilter", ".keys");
+    file.deleteOnExit();
+    Path path = new Path(file.getAbsolutePath());
+    filter.write(path, conf);
+    return RuntimeFilter.read(path, conf);
+  }
+
+  private static RuntimeFilter stringFilter(int maxValues, String... keys) {
+    RuntimeFilter filter = new RuntimeFilter(
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector, maxValues);
+    for (String key : keys) {
+      filter.add(key == null ? null : new Text(key));
+    }
+    return filter;
+  }
+
+  public void testDistinctValues() throws Exception {
+    RuntimeFilter filter = writeAndRead(
+        stringFilter(10, "2012-01-03", "2012-01-01", null, "2012-01-03"));
+    assertEquals("2012-01-01", filter.getMinValue());
+    assertEquals("2012-01-03", filter.getMaxValue());
+    assertTrue(filter.mayContain("2012-01-01"));
+    assertTrue(filter.mayContain("2012-01-03"));
+    assertFalse(filter.mayContain("2012-01-02"));
+    assertFalse(filter.mayContain("2012-01-04"));
+    assertFalse(filter.mayContain(null));
+  }
+
+  public void testRange() throws Exception {
+    // too many values to keep them
+    RuntimeFilter filter = writeAndRead(
+        stringFilter(2, "2012-01-03", "2012-01-01", "2012-01-05"));
+    assertEquals("2012-01-01", filter.getMinValue());
+    assertEquals("2012-01-05", filter.getMaxValue());
+    assertTrue(filter.mayContain("2012-01-02"));
+    assertTrue(filter.mayContain("2012-01-05"));
+    assertFalse(filter.mayContain("2011-12-31"));
+    assertFalse(filter.mayContain("2012-01-06"));
+  }
+
+  public void testNoKey() throws Exception {
+    RuntimeFilter filter = writeAndRead(stringFilter(10, (String) null));
+    assertNull(filter.getMinValue());
+    assertFalse(filter.mayContain("2012-01-01"));
+
+    assertNull(RuntimeFilter.read(new Path(
+        System.getProperty("java.io.tmpdir"), "runtimefilter.missing"), conf));
+  }
+
+  public void testNumericRange() throws Exception {
+    RuntimeFilter filter = new RuntimeFilter(
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector, 0);
+    for (int key : new int[] {3, -3, 7, 0}) {
+      filter.add(new IntWritable(key));
+    }
+    filter = writeAndRead(filter);
+    assertEquals("-3", filter.getMinValue());
+    assertEquals("7", filter.getMaxValue());
+  }
+
+  private static RuntimeFilter intFilter(int maxValues, int... keys) {
+    RuntimeFilter filter = new RuntimeFilter(
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector, maxValues);
+    for (int key : keys) {
+      filter.add(new IntWritable(key));
+    }
+    return filter;
+  }
+
+  private static RuntimeFilter doubleFilter(int maxValues, double... keys) {
+    RuntimeFilter filter = new RuntimeFilter(
+        PrimitiveObjectInspectorFactory.writableDoubleObjectInspector, maxValues);
+    for (double key : keys) {
+      filter.add(new DoubleWritable(key));
+    }
+    return filter;
+  }
+
+  public void testIntPartitionValues() throws Exception {
+    RuntimeFilter filter = writeAndRead(intFilter(10, 10, 1, 3));
+    // partition values are converted to int as the join does
+    assertTrue(filter.mayContain("01"));
+    assertTrue(filter.mayContain("10"));
+    assertTrue(filter.mayContain("3"));
+    assertFalse(filter.mayContain("2"));
+    assertFalse(filter.mayContain("abc"));
+    assertFalse(filter.mayContain("__HIVE_DEFAULT_PARTITION__"));
+  }
+
+  public void testIntPartitionRange() throws Exception {
+    RuntimeFilter filter = writeAndRead(intFilter(2, 3, 10, 5));
+    // "4" is greater than "10" as a string
+    assertTrue(filter.mayContain("4"));
+    assertTrue(filter.mayContain("10"));
+    assertTrue(filter.mayContain("03"));
+    assertFalse(filter.mayContain("2"));
+    assertFalse(filter.mayContain("11"));
+    assertFalse(filter.mayContain("100"));
+  }
+
+  public void testDoublePartitionValues() throws Exception {
+    RuntimeFilter filter = writeAndRead(doubleFilter(10, 1.0, 2.5));
+    assertTrue(filter.mayContain("1"));
+    assertTrue(filter.mayContain("1.0"));
+    assertTrue(filter.mayContain("1.00"));
+    assertTrue(filter.mayContain("2.5"));
+    assertFalse(filter.mayContain("2"));
+  }
+
+  public void testDoublePartitionRange() throws Exception {
+    RuntimeFilter filter = writeAndRead(doubleFilter(2, 1.5, 10.25, 3));
+    assertTrue(filter.mayContain("9.5"));
+    assertTrue(filter.mayContain("10.25"));
+    assertTrue(filter.mayContain("1.50"));
+    assertFalse(filter.mayContain("10.3"));
+    assertFalse(filter.mayContain("1.25"));
+  }
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.WindowFunctionDesc;
+import org.apache.hadoop.hive.ql.plan.WindowingDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde2.objectinspector.InspectableObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * TestWindowingOperator.
+ *
+ */
+public class TestWindowingOperator extends TestCase {
+
+  // (p, o, v) rows, sorted by the partition column p and the order column o
+  private static final int[][] ROWS = {
+      {1, 1, 1}, {1, 1, 2}, {1, 2, 3}, {1, 3, 4}, {2, 5, 5}, {2, 5, 6}, {3, 1, 7}};
+
+  public void testRanking() throws Exception {
+    List<String> result = window(true, ROWS, 1000, ranking("row_number"),
+        ranking("rank"), ranking("dense_rank"));
+    assertEquals(Arrays.asList("1,1,1,1,1,1", "1,1,2,2,1,1", "1,2,3,3,3,2",
+        "1,3,4,4,4,3", "2,5,5,1,1,1", "2,5,6,2,1,1", "3,1,7,1,1,1"), result);
+  }
+
+  public void testLag() throws Exception {
+    // only lag, evaluated as the rows arrive
+    List<String> result = window(true, ROWS, 1000, offset("lag", 1, false),
+        offset("lag", 2, true));
+    assertEquals(Arrays.asList("1,1,1,null,-1", "1,1,2,1,-1", "1,2,3,2,1",
+        "1,3,4,3,2", "2,5,5,null,-1", "2,5,6,5,-1", "3,1,7,null,-1"), result);
+  }
+
+  public void testLagLead() throws Exception {
+    // lead needs the following rows, so the partitions are buffered
+    List<String> result = window(true, ROWS, 1000, offset("lag", 1, false),
+        offset("lead", 1, true), offset("lag", 2, true));
+    assertEquals(Arrays.asList("1,1,1,null,2,-1", "1,1,2,1,3,-1",
+        "1,2,3,2,4,1", "1,3,4,3,-1,2", "2,5,5,null,6,-1", "2,5,6,5,-1,-1",
+        "3,1,7,null,-1,-1"), result);
+  }
+
+  public void testRowsVsRange() throws Exception {
+    // a RANGE frame includes all the peers of the current row
+    List<String> result = window(true, ROWS, 1000,
+        sum(false, WindowFunctionDesc.UNBOUNDED_PRECEDING, 0),
+        sum(true, WindowFunctionDesc.UNBOUNDED_PRECEDING, 0));
+    assertEquals(Arrays.asList("1,1,1,1,3", "1,1,2,3,3", "1,2,3,6,6",
+        "1,3,4,10,10", "2,5,5,5,11", "2,5,6,11,11", "3,1,7,7,7"), result);
+  }
+
+  public void testBoundedFrames() throws Exception {
+    List<String> result = window(true, ROWS, 1000, sum(false, -1, 1),
+        sum(true, 0, WindowFunctionDesc.UNBOUNDED_FOLLOWING),
+        sum(false, WindowFunctionDesc.UNBOUNDED_PRECEDING,
+        WindowFunctionDesc.UNBOUNDED_FOLLOWING));
+    assertEquals(Arrays.asList("1,1,1,3,10,10", "1,1,2,6,10,10",
+        "1,2,3,9,7,10", "1,3,4,7,4,10", "2,5,5,11,11,11", "2,5,6,11,11,11",
+        "3,1,7,7,7,7"), result);
+  }
+
+  public void testNoOrder() throws Exception {
+    // without order all the rows of a partition are peers
+    List<String> result = window(false, ROWS, 1000, ranking("rank"),
+        sum(true, WindowFunctionDesc.UNBOUNDED_PRECEDING, 0));
+    assertEquals(Arrays.asList("1,1,1,1,10", "1,1,2,1,10", "1,2,3,1,10",
+        "1,3,4,1,10", "2,5,5,1,11", "2,5,6,1,11", "3,1,7,1,7"), result);
+  }
+
+  public void testSpill() throws Exception {
+    int numRows = 10;
+    int[][] rows = new int[numRows][];
+    for (int i = 0; i < numRows; i++) {
+      rows[i] = new int[] {1, 1, i + 1};
+    }
+    List<String> expected = new ArrayList<String>();
+
+    // a peer group larger than the cache, evaluated as the rows arrive
+    List<String> result = window(true, rows, 2, ranking("rank"),
+        sum(true, WindowFunctionDesc.UNBOUNDED_PRECEDING, 0));
+    for (int i = 0; i < numRows; i++) {
+      expected.add("1,1," + (i + 1) + ",1,55");
+    }
+    assertEquals(expected, result);
+
+    // a partition larger than the cache, buffered
+    result = window(true, rows, 2, sum(false, -1, 0), offset("lead", 1, false));
+    expected.clear();
+    for (int i = 0; i < numRows; i++) {
+      expected.add("1,1," + (i + 1) + "," + (2 * i + 1) + ","
+          + (i + 1 < numRows ? String.valueOf(i + 2) : "null"));
+    }
+    assertEquals(expected, result);
+  }
+
+  private static ExprNodeDesc column(String name) {
+    return new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, name, "", false);
+  }
+
+  private static WindowFunctionDesc ranking(String name) {
+    return new WindowFunctionDesc(name, new ArrayList<ExprNodeDesc>(), null, 0,
+        false, 0, 0);
+  }
+
+  private static WindowFunctionDesc offset(String name, int offset,
+      boolean withDefault) {
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    parameters.add(column("v"));
+    if (withDefault) {
+      parameters.add(new ExprNodeConstantDesc(TypeInfoFactory.intTypeInfo,
+          Integer.valueOf(-1)));
+    }
+    return new WindowFunctionDesc(name, parameters, null, offset, false, 0, 0);
+  }
+
+  private static WindowFunctionDesc sum(boolean range, int start, int end)
+      throws Exception {
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    parameters.add(column("v"));
+    GenericUDAFEvaluator evaluator = new GenericUDAFSum()
+        .getEvaluator(new TypeInfo[] {TypeInfoFactory.intTypeInfo});
+    return new WindowFunctionDesc("sum", parameters, evaluator, 0, range,
+        start, end);
+  }
+
+  /**
+   * Run the windowing operator partitioned by p and ordered by o over the
+   * rows.
+   *
+   * @return the output rows as comma-separated values
+   */
+  private List<String> window(boolean ordered, int[][] rows, int cacheSize,
+      WindowFunctionDesc... functions) throws Exception {
+    ArrayList<ExprNodeDesc> partitionCols = new ArrayList<ExprNodeDesc>();
+    partitionCols.add(column("p"));
+    ArrayList<ExprNodeDesc> orderCols = new ArrayList<ExprNodeDesc>();
+    if (ordered) {
+      orderCols.add(column("o"));
+    }
+    ArrayList<String> outputColumnNames = new ArrayList<String>();
+    for (int i = 0; i < 3 + functions.length; i++) {
+      outputColumnNames.add("_col" + i);
+    }
+    WindowingDesc desc = new WindowingDesc(partitionCols, orderCols,
+        new ArrayList<WindowFunctionDesc>(Arrays.asList(functions)),
+        outputColumnNames);
+
+    Operator<WindowingDesc> op = OperatorFactory.get(WindowingDesc.class);
+    op.setConf(desc);
+    CollectOperator collect = (CollectOperator) OperatorFactory
+        .getAndMakeChild(new CollectDesc(Integer.valueOf(1000)), op);
+
+    List<ObjectInspector> fieldInspectors = new ArrayList<ObjectInspector>();
+    for (int i = 0; i < 3; i++) {
+      fieldInspectors
+          .add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+    }
+    StructObjectInspector rowInspector = ObjectInspectorFactory
+        .getStandardStructObjectInspector(Arrays.asList("p", "o", "v"),
+        fieldInspectors);
+
+    JobConf conf = new JobConf(TestWindowingOperator.class);
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVEWINDOWINGCACHESIZE,
+        cacheSize);
+    op.initialize(conf, new ObjectInspector[] {rowInspector});
+    for (int[] values : rows) {
+      List<Object> row = new ArrayList<Object>();
+      for (int value : values) {
+        row.add(new IntWritable(value));
+      }
+      op.process(row, 0);
+    }
+    op.close(false);
+
+    List<String> result = new ArrayList<String>();
+    InspectableObject io = new InspectableObject();
+    for (collect.retrieve(io); io.o != null; collect.retrieve(io)) {
+      StringBuilder sb = new StringBuilder();
+      for (Object field : ((StructObjectInspector) io.oi)
+          .getStructFieldsDataAsList(io.o)) {
+        if (sb.length() > 0) {
+          sb.append(',');
+        }
+        sb.append(field);
+      }
+      result.add(sb.toString());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.CollectOperator;
+import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCount;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.InspectableObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * TestVectorGroupByOperator.
+ *
+ * Runs select k, sum(v), count(v), count(1) group by k through the vectorized
+ * table scan and group by, with null keys and values, and more rows than a
+ * batch, from rows copied by the scan and from batches read by an input
+ * format.
+ */
+public class TestVectorGroupByOperator extends TestCase {
+
+  private static final int NUM_ROWS = 2500;
+
+  // the rows (k int, s string, v double): s is not vectorized
+  private StructObjectInspector rowOI;
+  private Integer[] keys;
+  private Double[] values;
+
+  @Override
+  protected void setUp() {
+    rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("k", "s", "v"), Arrays.<ObjectInspector>asList(
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector,
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector,
+        PrimitiveObjectInspectorFactory.writableDoubleObjectInspector));
+    keys = new Integer[NUM_ROWS];
+    values = new Double[NUM_ROWS];
+    for (int r = 0; r < NUM_ROWS; r++) {
+      keys[r] = r % 11 == 0 ? null : Integer.valueOf(r % 13);
+      values[r] = r % 7 == 0 ? null : Double.valueOf(r * 0.5);
+    }
+  }
+
+  /**
+   * @return the expected groups, by key, as sum,count,count(1)
+   */
+  private Map<String, String> expected(boolean withValues) {
+    Map<String, double[]> groups = new TreeMap<String, double[]>();
+    for (int r = 0; r < NUM_ROWS; r++) {
+      String key = String.valueOf(keys[r]);
+      double[] group = groups.get(key);
+      if (group == null) {
+        group = new double[3];
+        groups.put(key, group);
+      }
+      if (withValues && values[r] != null) {
+        group[0] += values[r];
+        group[1]++;
+      }
+      group[2]++;
+    }
+    Map<String, String> result = new TreeMap<String, String>();
+    for (Map.Entry<String, double[]> entry : groups.entrySet()) {
+      double[] group = entry.getValue();
+      result.put(entry.getKey(), (group[1] == 0 ? "null" : String.valueOf(group[0])) + ","
+          + (long) group[1] + "," + (long) group[2]);
+    }
+    return result;
+  }
+
+  private static AggregationDesc aggregation(String name, ExprNodeDesc parameter)
+      throws Exception {
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    TypeInfo[] types = new TypeInfo[0];
+    if (parameter != null) {
+      parameters.add(parameter);
+      types = new TypeInfo[] {parameter.getTypeInfo()};
+    }
+    GenericUDAFEvaluator evaluator = "sum".equals(name) ? new GenericUDAFSum()
+        .getEvaluator(types) : new GenericUDAFCount().getEvaluator(types);
+    return new AggregationDesc(name, evaluator, parameters, false,
+        GenericUDAFEvaluator.Mode.PARTIAL1);
+  }
+
+  /**
+   * The vectorized scan, group by and a collector of its output.
+   *
+   * @param memory
+   *          the portion of the memory of the hash table of the group by
+   */
+  private VectorTableScanOperator plan(float memory) throws Exception {
+    ExprNodeDesc k = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "k", "t", false);
+    ExprNodeDesc v = new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo, "v", "t", false);
+    ArrayList<ExprNodeDesc> groupKeys = new ArrayList<ExprNodeDesc>();
+    groupKeys.add(k);
+    ArrayList<AggregationDesc> aggregators = new ArrayList<AggregationDesc>();
+    aggregators.add(aggregation("sum", v));
+    aggregators.add(aggregation("count", v));
+    aggregators.add(aggregation("count", null));
+    GroupByDesc groupByDesc = new GroupByDesc(GroupByDesc.Mode.HASH,
+        new ArrayList<String>(Arrays.asList("_col0", "_col1", "_col2", "_col3")),
+        groupKeys, aggregators, false, memory, 0.9f);
+
+    VectorTableScanOperator scan = new VectorTableScanOperator();
+    scan.setConf(new TableScanDesc("t"));
+    scan.setVectorColumns(new ArrayList<String>(Arrays.asList("k", "v")));
+    scan.initializeCounters();
+    VectorGroupByOperator groupBy = new VectorGroupByOperator();
+    groupBy.setConf(groupByDesc);
+    groupBy.initializeCounters();
+    List<Operator<? extends Serializable>> children =
+        new ArrayList<Operator<? extends Serializable>>();
+    children.add(groupBy);
+    scan.setChildOperators(children);
+    List<Operator<? extends Serializable>> parents =
+        new ArrayList<Operator<? extends Serializable>>();
+    parents.add(scan);
+    groupBy.setParentOperators(parents);
+    OperatorFactory.getAndMakeChild(new CollectDesc(Integer.valueOf(NUM_ROWS)), groupBy);
+
+    scan.initialize(new JobConf(TestVectorGroupByOperator.class),
+        new ObjectInspector[] {rowOI});
+    return scan;
+  }
+
+  private static VectorGroupByOperator getGroupBy(VectorTableScanOperator scan) {
+    return (VectorGroupByOperator) scan.getChildOperators().get(0);
+  }
+
+  /**
+   * Close the plan, and merge the groups it output, as the reducer would.
+   *
+   * @return the groups, by key, as sum,count,count(1)
+   */
+  private static Map<String, String> close(VectorTableScanOperator scan, int expectedGroups)
+      throws Exception {
+    scan.close(false);
+    CollectOperator collect = (CollectOperator) getGroupBy(scan).getChildOperators().get(0);
+
+    Map<String, double[]> groups = new TreeMap<String, double[]>();
+    int outputRows = 0;
+    InspectableObject io = new InspectableObject();
+    for (collect.retrieve(io); io.o != null; collect.retrieve(io)) {
+      List<Object> row = ((StructObjectInspector) io.oi).getStructFieldsDataAsList(io.o);
+      String key = String.valueOf(row.get(0));
+      double[] group = groups.get(key);
+      if (group == null) {
+        group = new double[3];
+        groups.put(key, group);
+      }
+      if (row.get(1) != null) {
+        group[0] += ((DoubleWritable) row.get(1)).get();
+      }
+      group[1] += Long.parseLong(row.get(2).toString());
+      group[2] += Long.parseLong(row.get(3).toString());
+      outputRows++;
+    }
+    if (expectedGroups >= 0) {
+      // each group is output once
+      assertEquals(expectedGroups, outputRows);
+    }
+
+    Map<String, String> result = new TreeMap<String, String>();
+    for (Map.Entry<String, double[]> entry : groups.entrySet()) {
+      double[] group = entry.getValue();
+      result.put(entry.getKey(), (group[1] == 0 ? "null" : String.valueOf(group[0])) + ","
+          + (long) group[1] + "," + (long) group[2]);
+    }
+    return result;
+  }
+
+  private void processRows(VectorTableScanOperator scan) throws Exception {
+    for (int r = 0; r < NUM_ROWS; r++) {
+      List<Object> row = new ArrayList<Object>();
+      row.add(keys[r] == null ? null : new IntWritable(keys[r]));
+      row.add(new Text("s" + r));
+      row.add(values[r] == null ? null : new DoubleWritable(values[r]));
+      scan.process(row, 0);
+    }
+  }
+
+  /**
+   * Feed the rows in batches of the given size, as an input format reads
+   * them: only the decoded columns are in the batch.
+   */
+  private void processBatches(VectorTableScanOperator scan, int batchSize,
+      boolean withValues) throws Exception {
+    VectorizedRowBatch batch = new VectorizedRowBatch(withValues ? 3 : 2);
+    LongColumnVector k = new LongColumnVector();
+    DoubleColumnVector v = new DoubleColumnVector();
+    for (int start = 0; start < NUM_ROWS; start += batchSize) {
+      // the operators install their scratch columns in the batch, so the
+      // reader installs its columns again at each read
+      batch.cols = new ColumnVector[withValues ? 3 : 2];
+      batch.cols[0] = k;
+      if (withValues) {
+        batch.cols[2] = v;
+      }
+      batch.reset();
+      int end = Math.min(NUM_ROWS, start + batchSize);
+      for (int r = start; r < end; r++) {
+        if (keys[r] == null) {
+          k.setNull(r - start);
+        } else {
+          k.vector[r - start] = keys[r];
+        }
+        if (values[r] == null) {
+          v.setNull(r - start);
+        } else {
+          v.vector[r - start] = values[r];
+        }
+      }
+      batch.size = end - start;
+      scan.process(batch, 0);
+    }
+  }
+
+  /**
+   * The rows copied by the scan fill three batches, the last one partly.
+   */
+  public void testRows() throws Exception {
+    VectorTableScanOperator scan = plan(0.5f);
+    processRows(scan);
+    Map<String, String> expected = expected(true);
+    assertEquals(expected, close(scan, expected.size()));
+    assertTrue(expected.containsKey("null"));
+  }
+
+  /**
+   * The batches read by an input format are forwarded as they are, whatever
+   * their size.
+   */
+  public void testBatches() throws Exception {
+    VectorTableScanOperator scan = plan(0.5f);
+    processBatches(scan, 1000, true);
+    Map<String, String> expected = expected(true);
+    assertEquals(expected, close(scan, expected.size()));
+  }
+
+  /**
+   * The rows copied before a batch read by an input format are forwarded
+   * first.
+   */
+  public void testRowsThenBatches() throws Exception {
+    VectorTableScanOperator scan = plan(0.5f);
+    processRows(scan);
+    processBatches(scan, VectorizedRowBatch.DEFAULT_SIZE, true);
+    Map<String, String> expected = expected(true);
+    Map<String, String> twice = new TreeMap<String, String>();
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      String[] group = entry.getValue().split(",");
+      twice.put(entry.getKey(), String.valueOf(2 * Double.parseDouble(group[0])) + ","
+          + 2 * Long.parseLong(group[1]) + "," + 2 * Long.parseLong(group[2]));
+    }
+    assertEquals(twice, close(scan, expected.size()));
+  }
+
+  /**
+   * A file written before the column v was added to the table has no
+   * values for it, so they are all null.
+   */
+  public void testMissingColumn() throws Exception {
+    VectorTableScanOperator scan = plan(0.5f);
+    processBatches(scan, VectorizedRowBatch.DEFAULT_SIZE, false);
+    Map<String, String> expected = expected(false);
+    assertEquals(expected, close(scan, expected.size()));
+  }
+
+  /**
+   * With no memory for its hash table, the group by flushes it after each
+   * batch, and a group is output once per batch it is in.
+   */
+  public void testFlush() throws Exception {
+    VectorTableScanOperator scan = plan(0.0f);
+    processRows(scan);
+    GroupByOperator groupBy = getGroupBy(scan);
+    Map<String, String> result = close(scan, -1);
+    assertEquals(expected(true), result);
+    assertEquals(Long.valueOf(3),
+        groupBy.getStats().get(GroupByOperator.Counter.HASH_TABLE_FLUSHES));
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.exec.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluatorFactory;
+import org.apache.hadoop.hive.ql.exec.vector.expressions.VectorExpression;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * TestVectorizationContext.
+ *
+ * Checks that the compiled vector expressions give the same results as the row evaluators.
+ */
+public class TestVectorizationContext extends TestCase {
+
+  private static final int NUM_ROWS = 2000;
+
+  private StructObjectInspector rowOI;
+  private List<Object> rows;
+  private ExprNodeDesc a;
+  private ExprNodeDesc b;
+  private ExprNodeDesc c;
+
+  @Override
+  protected void setUp() {
+    rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("a", "b", "c", "s"), Arrays.<ObjectInspector>asList(
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector,
+        PrimitiveObjectInspectorFactory.writableDoubleObjectInspector,
+        PrimitiveObjectInspectorFactory.writableBooleanObjectInspector,
+        PrimitiveObjectInspectorFactory.writableStringObjectInspector));
+    a = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "a", "t", false);
+    b = new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo, "b", "t", false);
+    c = new ExprNodeColumnDesc(TypeInfoFactory.booleanTypeInfo, "c", "t", false);
+
+    Random random = new Random(17);
+    rows = new ArrayList<Object>();
+    for (int r = 0; r < NUM_ROWS; r++) {
+      List<Object> row = new ArrayList<Object>();
+      row.add(random.nextInt(10) == 0 ? null : new IntWritable(random.nextInt(41) - 20));
+      row.add(random.nextInt(10) == 0 ? null : new DoubleWritable(random.nextDouble() * 10 - 5));
+      row.add(random.nextInt(10) == 0 ? null : new BooleanWritable(random.nextBoolean()));
+      row.add(new Text("s" + r));
+      rows.add(row);
+    }
+  }
+
+  private static ExprNodeDesc func(String name, ExprNodeDesc... children) throws Exception {
+    return TypeCheckProcFactory.DefaultExprProcessor.getFuncExprNodeDesc(name, children);
+  }
+
+  /**
+   * Fill a batch with the rows from start.
+   */
+  private VectorizedRowBatch fill(VectorizationContext context, int start) {
+    VectorizedRowBatch batch = new VectorizedRowBatch(context.getNumInputColumns());
+    batch.setColumns(0, context.createInputColumns());
+    batch.setColumns(context.getNumInputColumns(), context.createScratchColumns());
+    List<? extends StructField> fields = rowOI.getAllStructFieldRefs();
+    int end = Math.min(NUM_ROWS, start + VectorizedRowBatch.DEFAULT_SIZE);
+    for (int r = start; r < end; r++) {
+      for (int k = 0; k < context.getNumInputColumns(); k++) {
+        ColumnVector column = batch.cols[k];
+        if (column == null) {
+          continue;
+        }
+        Object field = rowOI.getStructFieldData(rows.get(r), fields.get(k));
+        PrimitiveObjectInspector fieldOI =
+            (PrimitiveObjectInspector) fields.get(k).getFieldObjectInspector();
+        if (field == null) {
+          column.setNull(r - start);
+        } else if (column instanceof LongColumnVector) {
+          ((LongColumnVector) column).vector[r - start] =
+              PrimitiveObjectInspectorUtils.getLong(field, fieldOI);
+        } else {
+          ((DoubleColumnVector) column).vector[r - start] =
+              PrimitiveObjectInspectorUtils.getDouble(field, fieldOI);
+        }
+      }
+    }
+    batch.size = end - start;
+    return batch;
+  }
+
+  private void checkValues(ExprNodeDesc expr) throws Exception {
+    ExprNodeEvaluator eval = ExprNodeEvaluatorFactory.get(expr);
+    PrimitiveObjectInspector resultOI = (PrimitiveObjectInspector) eval.initialize(rowOI);
+    VectorizationContext context = new VectorizationContext(rowOI);
+    VectorExpression vectorExpr = context.getVectorExpression(expr);
+
+    for (int start = 0; start < NUM_ROWS; start += VectorizedRowBatch.DEFAULT_SIZE) {
+      VectorizedRowBatch batch = fill(context, start);
+      vectorExpr.evaluate(batch);
+      ColumnVector result = batch.cols[vectorExpr.getOutputColumn()];
+      for (int i = 0; i < batch.size; i++) {
+        Object expected = eval.evaluate(rows.get(start + i));
+        String message = expr.getExprString() + " row " + (start + i);
+        if (expected == null) {
+          assertTrue(message, !result.noNulls && result.isNull[i]);
+          continue;
+        }
+        assertTrue(message, result.noNulls || !result.isNull[i]);
+        if (result instanceof LongColumnVector) {
+          assertEquals(message, PrimitiveObjectInspectorUtils.getLong(expected, resultOI),
+              ((LongColumnVector) result).vector[i]);
+        } else {
+          assertEquals(message, PrimitiveObjectInspectorUtils.getDouble(expected, resultOI),
+              ((DoubleColumnVector) result).vector[i], 0);
+        }
+      }
+    }
+  }
+
+  private void checkFilter(ExprNodeDesc expr) throws Exception {
+    ExprNodeEvaluator eval = ExprNodeEvaluatorFactory.get(expr);
+    PrimitiveObjectInspector resultOI = (PrimitiveObjectInspector) eval.initialize(rowOI);
+    VectorizationContext context = new VectorizationContext(rowOI);
+    VectorExpression filter = context.getFilterExpression(expr);
+
+    for (int start = 0; start < NUM_ROWS; start += VectorizedRowBatch.DEFAULT_SIZE) {
+      VectorizedRowBatch batch = fill(context, start);
+      int n = batch.size;
+      filter.evaluate(batch);
+      List<Integer> expected = new ArrayList<Integer>();
+      for (int i = 0; i < n; i++) {
+        Object result = eval.evaluate(rows.get(start + i));
+        if (Boolean.TRUE.equals(resultOI.getPrimitiveJavaObject(result))) {
+          expected.add(i);
+        }
+      }
+      List<Integer> actual = new ArrayList<Integer>();
+      for (int j = 0; j < batch.size; j++) {
+        actual.add(batch.selectedInUse ? batch.selected[j] : j);
+      }
+      assertEquals(expr.getExprString(), expected, actual);
+    }
+  }
+
+  public void testArithmetic() throws Exception {
+    checkValues(a);
+    checkValues(func("+", a, new ExprNodeConstantDesc(3)));
+    checkValues(func("-", func("*", a, a), new ExprNodeConstantDesc(7)));
+    checkValues(func("/", b, new ExprNodeConstantDesc(2)));
+    checkValues(func("/", a, new ExprNodeConstantDesc(3)));
+    checkValues(func("+", a, b));
+    checkValues(func("*", b, new ExprNodeConstantDesc(-1.5)));
+  }
+
+  public void testCasts() throws Exception {
+    checkValues(func("double", a));
+    checkValues(func("int", b));
+    checkValues(func("tinyint", func("*", a, new ExprNodeConstantDesc(20))));
+    checkValues(func("bigint", c));
+  }
+
+  public void testFilters() throws Exception {
+    checkFilter(c);
+    checkFilter(func(">", a, new ExprNodeConstantDesc(10)));
+    checkFilter(func("<=", b, a));
+    checkFilter(func("not", func("=", a, new ExprNodeConstantDesc(5))));
+    checkFilter(func("isnull", a));
+    checkFilter(func("not", func("isnotnull", b)));
+    checkFilter(func("and", func("<>", a, new ExprNodeConstantDesc(0)), c));
+    checkFilter(func("or", func(">", a, new ExprNodeConstantDesc(15)),
+        func("and", func("<", b, new ExprNodeConstantDesc(0.5)), c)));
+  }
+
+  public void testUnsupported() throws Exception {
+    ExprNodeDesc s = new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "s", "t", false);
+    VectorizationContext context = new VectorizationContext(rowOI);
+    try {
+      context.getFilterExpression(func("=", s, new ExprNodeConstantDesc("s1")));
+      fail("Comparison of strings should not be vectorized");
+    } catch (HiveException e) {
+      // expected
+    }
+    assertFalse(VectorizationContext.isSupported(func("concat", s, s), false));
+    assertTrue(VectorizationContext.isSupported(func("+", a, b), false));
+  }
+}
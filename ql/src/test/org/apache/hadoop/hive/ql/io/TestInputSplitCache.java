@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+/**
+ * Unittest for InputSplitCache.
+ */
+@SuppressWarnings("deprecation")
+public class TestInputSplitCache extends TestCase {
+
+  private JobConf job;
+  private FileSystem fileSystem;
+  private Path testDir;
+  private Path dataDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    Configuration conf = new Configuration();
+    job = new JobConf(conf);
+    fileSystem = FileSystem.getLocal(conf);
+    testDir = new Path(System.getProperty("test.data.dir", System.getProperty(
+        "user.dir", new File(".").getAbsolutePath()))
+        + "/TestInputSplitCache");
+    fileSystem.delete(testDir, true);
+    dataDir = new Path(testDir, "datadir");
+  }
+
+  @Override
+  protected void tearDown() throws IOException {
+    fileSystem.delete(testDir, true);
+  }
+
+  public void testDisabled() {
+    HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_CACHE_SIZE, 0);
+    assertNull(InputSplitCache.get(job));
+  }
+
+  public void testLookup() throws IOException {
+    writeTextFile(new Path(dataDir, "file1"), "line1\nline2\n");
+    HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_CACHE_SIZE, 2);
+    InputSplitCache cache = InputSplitCache.get(job);
+    cache.clear();
+    long hits = cache.getHitCount();
+    long invalidations = cache.getInvalidationCount();
+
+    String key = cache.getKey(dataDir, TextInputFormat.class, 1, job);
+    assertNull(cache.lookup(key, dataDir, job));
+    InputSplit[] splits = getSplits(cache, key);
+    assertEquals(1, splits.length);
+    assertSame(splits, cache.lookup(key, dataDir, job));
+    assertEquals(hits + 1, cache.getHitCount());
+
+    // a different filter is a different key
+    JobConf filterJob = new JobConf(job);
+    filterJob.set(TableScanDesc.FILTER_EXPR_CONF_STR, "<filter/>");
+    assertFalse(key.equals(cache.getKey(dataDir, TextInputFormat.class, 1, filterJob)));
+    assertFalse(key.equals(cache.getKey(dataDir, TextInputFormat.class, 2, job)));
+
+    // adding a file changes the modification time of the dir
+    writeTextFile(new Path(dataDir, "file2"), "line3\n");
+    new File(dataDir.toUri().getPath()).setLastModified(
+        cache.getModificationTime(dataDir, job) + 2000);
+    assertNull(cache.lookup(key, dataDir, job));
+    assertEquals(invalidations + 1, cache.getInvalidationCount());
+    assertEquals(2, getSplits(cache, key).length);
+    assertEquals(2, cache.lookup(key, dataDir, job).length);
+  }
+
+  public void testEviction() throws IOException {
+    HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_CACHE_SIZE, 2);
+    InputSplitCache cache = InputSplitCache.get(job);
+    cache.clear();
+    for (int i = 0; i < 3; i++) {
+      cache.put("key" + i, 0, new InputSplit[0]);
+    }
+    assertEquals(2, cache.size());
+
+    HiveConf.setIntVar(job, HiveConf.ConfVars.HIVE_SPLIT_CACHE_SIZE, 3);
+    assertNotSame(cache, InputSplitCache.get(job));
+  }
+
+  private InputSplit[] getSplits(InputSplitCache cache, String key) throws IOException {
+    long modificationTime = cache.getModificationTime(dataDir, job);
+    JobConf newJob = new JobConf(job);
+    FileInputFormat.setInputPaths(newJob, dataDir);
+    TextInputFormat inputFormat = new TextInputFormat();
+    inputFormat.configure(newJob);
+    InputSplit[] splits = inputFormat.getSplits(newJob, 1);
+    cache.put(key, modificationTime, splits);
+    return splits;
+  }
+
+  private void writeTextFile(Path file, String content) throws IOException {
+    OutputStreamWriter writer = new OutputStreamWriter(fileSystem.create(file));
+    writer.write(content);
+    writer.close();
+  }
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Random;
@@ -35,6 +36,19 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
 import org.apache.hadoop.hive.serde.Constants;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.serde2.SerDeException;
@@ -44,16 +58,19 @@ import org.apache.hadoop.hive.serde2.columnar.ColumnarSerDe;
 import org.apache.hadoop.hive.serde2.io.ByteWritable;
 import org.apache.hadoop.hive.serde2.io.DoubleWritable;
 import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.FileSplit;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
@@ -352,6 +369,318 @@ public class TestRCFile extends TestCase {
         + " number columns and " + count + " number rows is " + fileLen);
   }
 
+  public void testColumnStatistics() throws Exception {
+    writeThenReadWithColumnStatistics(null);
+    writeThenReadWithColumnStatistics(new DefaultCodec());
+  }
+
+  private void writeThenReadWithColumnStatistics(CompressionCodec codec)
+      throws Exception {
+    Path testDir = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testcolumnstatistics");
+    Path testFile = new Path(testDir, "test_rcfile");
+    fs.delete(testFile, true);
+    Configuration cloneConf = new Configuration(conf);
+    RCFileOutputFormat.setColumnNumber(cloneConf, bytesArray.length);
+    cloneConf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, 100);
+
+    RCFile.Writer writer = new RCFile.Writer(fs, cloneConf, testFile, null,
+        RCFile.createMetadata(), codec,
+        new ColumnStatisticsCollector(serDe, bytesArray.length));
+    assertTrue(writer.hasStatistics());
+    BytesRefArrayWritable bytes = new BytesRefArrayWritable(bytesArray.length);
+    for (int i = 0; i < bytesArray.length; i++) {
+      bytes.set(i, new BytesRefWritable(bytesArray[i], 0, bytesArray[i].length));
+    }
+    for (int i = 0; i < 1000; i++) {
+      byte[] aint = String.valueOf(i).getBytes("UTF-8");
+      bytes.set(2, new BytesRefWritable(aint, 0, aint.length));
+      writer.append(bytes);
+    }
+    writer.close();
+
+    RCFile.Reader reader = new RCFile.Reader(fs, testFile, cloneConf);
+    assertTrue(reader.hasStatistics());
+    int rowGroups = 0;
+    while (reader.nextColumnsBatch()) {
+      ColumnStatistics[] statistics = reader.getCurrentKeyBufferObj().getStatistics();
+      assertEquals(ColumnStatistics.Kind.LONG, statistics[2].getKind());
+      assertEquals(0, statistics[2].getNullCount());
+      assertEquals(rowGroups * 100, statistics[2].getMinLong());
+      assertEquals(rowGroups * 100 + 99, statistics[2].getMaxLong());
+      assertEquals(ColumnStatistics.Kind.DOUBLE, statistics[4].getKind());
+      assertEquals(5.3, statistics[4].getMaxDouble(), 0.0);
+      assertEquals(new Text("hive and hadoop"), statistics[5].getMinString());
+      assertEquals(100, statistics[6].getNullCount());
+      assertFalse(statistics[6].hasMinMax());
+      rowGroups++;
+    }
+    reader.close();
+    assertEquals(10, rowGroups);
+
+    // aint >= 950 can only match the rows of the last row group
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>();
+    children.add(new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "aint", "t", false));
+    children.add(new ExprNodeConstantDesc(Integer.valueOf(950)));
+    ExprNodeDesc filterExpr = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo,
+        new GenericUDFOPEqualOrGreaterThan(), children);
+
+    RCFileInputFormat inputFormat = new RCFileInputFormat();
+    JobConf jobConf = new JobConf(cloneConf);
+    jobConf.set("mapred.input.dir", testDir.toString());
+    jobConf.set(Constants.LIST_COLUMNS, tbl.getProperty("columns"));
+    jobConf.set(TableScanDesc.FILTER_EXPR_CONF_STR,
+        Utilities.serializeExpression(filterExpr));
+    InputSplit[] splits = inputFormat.getSplits(jobConf, 1);
+    int readCount = 0;
+    for (InputSplit split : splits) {
+      RecordReader rr = inputFormat.getRecordReader(split, jobConf, Reporter.NULL);
+      Object key = rr.createKey();
+      Object value = rr.createValue();
+      while (rr.next(key, value)) {
+        readCount++;
+      }
+      rr.close();
+    }
+    assertEquals(100, readCount);
+  }
+
+  public void testColumnEncodings() throws Exception {
+    writeThenReadWithColumnEncodings(null);
+    writeThenReadWithColumnEncodings(new DefaultCodec());
+  }
+
+  private Path writeWithColumnEncodings(Configuration writeConf, String name,
+      CompressionCodec codec) throws Exception {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testcolumnencodings/" + name);
+    fs.delete(testFile, true);
+    RCFile.Writer writer = new RCFile.Writer(fs, writeConf, testFile, null,
+        RCFile.createMetadata(), codec,
+        new ColumnStatisticsCollector(serDe, bytesArray.length));
+    BytesRefArrayWritable bytes = new BytesRefArrayWritable(bytesArray.length);
+    for (int i = 0; i < bytesArray.length; i++) {
+      bytes.set(i, new BytesRefWritable(bytesArray[i], 0, bytesArray[i].length));
+    }
+    for (int i = 0; i < 1000; i++) {
+      byte[] aint = String.valueOf(i).getBytes("UTF-8");
+      bytes.set(2, new BytesRefWritable(aint, 0, aint.length));
+      byte[] astring = ("s" + (i % 3)).getBytes("UTF-8");
+      bytes.set(5, new BytesRefWritable(astring, 0, astring.length));
+      writer.append(bytes);
+    }
+    writer.close();
+    return testFile;
+  }
+
+  private void writeThenReadWithColumnEncodings(CompressionCodec codec)
+      throws Exception {
+    Configuration cloneConf = new Configuration(conf);
+    RCFileOutputFormat.setColumnNumber(cloneConf, bytesArray.length);
+    cloneConf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, 100);
+    ColumnProjectionUtils.setFullyReadColumns(cloneConf);
+    Path plainFile = writeWithColumnEncodings(cloneConf, "plain", codec);
+    cloneConf.setBoolean(RCFile.COLUMN_ENCODINGS_CONF_STR, true);
+    Path testFile = writeWithColumnEncodings(cloneConf, "encoded", codec);
+    if (codec == null) {
+      assertTrue(fs.getFileStatus(testFile).getLen()
+          < fs.getFileStatus(plainFile).getLen());
+    }
+
+    RCFile.Reader reader = new RCFile.Reader(fs, testFile, cloneConf);
+    assertTrue(reader.hasEncodings());
+    int rowGroups = 0;
+    while (reader.nextColumnsBatch()) {
+      byte[] encodings = reader.getCurrentKeyBufferObj().getEncodings();
+      assertEquals(ColumnEncoding.RUN_LENGTH, encodings[0]);
+      assertEquals(ColumnEncoding.DELTA, encodings[2]);
+      assertEquals(ColumnEncoding.DICTIONARY, encodings[5]);
+      assertEquals(ColumnEncoding.PLAIN, encodings[6]);
+      ColumnStatistics[] statistics = reader.getCurrentKeyBufferObj().getStatistics();
+      assertTrue(statistics[5].hasDictionary());
+      assertEquals(3, statistics[5].getDictionary().size());
+      assertFalse(statistics[2].hasDictionary());
+      rowGroups++;
+    }
+    reader.close();
+    assertEquals(10, rowGroups);
+
+    reader = new RCFile.Reader(fs, testFile, cloneConf);
+    LongWritable rowID = new LongWritable();
+    BytesRefArrayWritable cols = new BytesRefArrayWritable();
+    int i = 0;
+    while (reader.next(rowID)) {
+      reader.getCurrentRow(cols);
+      cols.resetValid(bytesArray.length);
+      for (int j = 0; j < bytesArray.length; j++) {
+        String expected;
+        if (j == 2) {
+          expected = String.valueOf(i);
+        } else if (j == 5) {
+          expected = "s" + (i % 3);
+        } else {
+          expected = new String(bytesArray[j], "UTF-8");
+        }
+        BytesRefWritable col = cols.get(j);
+        assertEquals(expected, new String(col.getData(), col.getStart(),
+            col.getLength(), "UTF-8"));
+      }
+      i++;
+    }
+    reader.close();
+    assertEquals(1000, i);
+
+    // astring = 's15' lies between the smallest and the largest value of
+    // every row group, but is in none of their dictionaries
+    assertEquals(0, readWithFilter(cloneConf, testFile, "s15"));
+    assertEquals(1000, readWithFilter(cloneConf, testFile, "s1"));
+  }
+
+  private int readWithFilter(Configuration readConf, Path testFile, String astring)
+      throws IOException {
+    List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>();
+    children.add(new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "astring", "t", false));
+    children.add(new ExprNodeConstantDesc(astring));
+    ExprNodeDesc filterExpr = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo,
+        new GenericUDFOPEqual(), children);
+
+    RCFileInputFormat inputFormat = new RCFileInputFormat();
+    JobConf jobConf = new JobConf(readConf);
+    jobConf.set("mapred.input.dir", testFile.toString());
+    jobConf.set(Constants.LIST_COLUMNS, tbl.getProperty("columns"));
+    jobConf.set(TableScanDesc.FILTER_EXPR_CONF_STR,
+        Utilities.serializeExpression(filterExpr));
+    InputSplit[] splits = inputFormat.getSplits(jobConf, 1);
+    int readCount = 0;
+    for (InputSplit split : splits) {
+      RecordReader rr = inputFormat.getRecordReader(split, jobConf, Reporter.NULL);
+      Object key = rr.createKey();
+      Object value = rr.createValue();
+      while (rr.next(key, value)) {
+        readCount++;
+      }
+      rr.close();
+    }
+    return readCount;
+  }
+
+  public void testVectorizedRead() throws Exception {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testvectorizedread/test_rcfile");
+    fs.delete(testFile, true);
+    Configuration cloneConf = new Configuration(conf);
+    RCFileOutputFormat.setColumnNumber(cloneConf, bytesArray.length);
+    // row groups larger than a batch
+    cloneConf.setInt(RCFile.RECORD_INTERVAL_CONF_STR, 1500);
+
+    int rowCount = 3000;
+    RCFile.Writer writer = new RCFile.Writer(fs, cloneConf, testFile, null,
+        new DefaultCodec());
+    BytesRefArrayWritable bytes = new BytesRefArrayWritable(bytesArray.length);
+    for (int i = 0; i < bytesArray.length; i++) {
+      bytes.set(i, new BytesRefWritable(bytesArray[i], 0, bytesArray[i].length));
+    }
+    byte[] nullBytes = "NULL".getBytes("UTF-8");
+    for (int i = 0; i < rowCount; i++) {
+      byte[] aint = String.valueOf(i).getBytes("UTF-8");
+      bytes.set(2, new BytesRefWritable(aint, 0, aint.length));
+      byte[] astring = i % 5 == 0 ? nullBytes : ("s" + i).getBytes("UTF-8");
+      bytes.set(5, new BytesRefWritable(astring, 0, astring.length));
+      writer.append(bytes);
+    }
+    writer.close();
+
+    ArrayList<Integer> readColumns = new ArrayList<Integer>();
+    readColumns.add(2);
+    readColumns.add(4);
+    readColumns.add(5);
+    readColumns.add(6);
+    ColumnProjectionUtils.setReadColumnIDs(cloneConf, readColumns);
+    long fileLength = fs.getFileStatus(testFile).getLen();
+    RCFileVectorizedRecordReader reader = new RCFileVectorizedRecordReader(cloneConf,
+        new FileSplit(testFile, 0, fileLength, (String[]) null), tbl);
+    VectorizedRowBatch batch = reader.createBatch();
+    assertNull(batch.cols[0]);
+    assertTrue(batch.cols[2] instanceof LongColumnVector);
+    assertTrue(batch.cols[4] instanceof DoubleColumnVector);
+    assertTrue(batch.cols[5] instanceof BytesColumnVector);
+
+    int row = 0;
+    while (reader.next(batch)) {
+      assertTrue(batch.size <= VectorizedRowBatch.DEFAULT_SIZE);
+      LongColumnVector aint = (LongColumnVector) batch.cols[2];
+      DoubleColumnVector adouble = (DoubleColumnVector) batch.cols[4];
+      BytesColumnVector astring = (BytesColumnVector) batch.cols[5];
+      LongColumnVector anullint = (LongColumnVector) batch.cols[6];
+      for (int i = 0; i < batch.size; i++, row++) {
+        assertEquals(row, aint.vector[i]);
+        assertEquals(5.3, adouble.vector[i], 0.0);
+        if (row % 5 == 0) {
+          assertTrue(astring.isNull[i]);
+        } else {
+          assertTrue(astring.noNulls || !astring.isNull[i]);
+          assertEquals("s" + row, Text.decode(astring.vector[i], astring.start[i],
+              astring.length[i]));
+        }
+        // an empty int does not parse, so it is null
+        assertTrue(anullint.isNull[i]);
+      }
+      // the operators install scratch columns, and the reader of another file
+      // of a combined split other columns: the reader puts its own back
+      batch.setColumns(bytesArray.length, new ColumnVector[] {new LongColumnVector()});
+      batch.cols[0] = new LongColumnVector();
+    }
+    assertNull(batch.cols[0]);
+    assertEquals(bytesArray.length, batch.cols.length);
+    reader.close();
+    assertEquals(rowCount, row);
+  }
+
+  public void testVectorizedReadEscapedString() throws Exception {
+    Path testFile = new Path(System.getProperty("test.data.dir", ".")
+        + "/mapred/testvectorizedreadescaped/test_rcfile");
+    fs.delete(testFile, true);
+    Configuration cloneConf = new Configuration(conf);
+    RCFileOutputFormat.setColumnNumber(cloneConf, bytesArray.length);
+    RCFile.Writer writer = new RCFile.Writer(fs, cloneConf, testFile, null,
+        new DefaultCodec());
+    writer.append(s);
+    writer.close();
+    FileSplit split = new FileSplit(testFile, 0, fs.getFileStatus(testFile).getLen(),
+        (String[]) null);
+
+    Properties escaped = createProperties();
+    escaped.setProperty(Constants.ESCAPE_CHAR, "\\");
+
+    // the numeric columns do not need to be unescaped
+    ArrayList<Integer> readColumns = new ArrayList<Integer>();
+    readColumns.add(2);
+    readColumns.add(4);
+    ColumnProjectionUtils.setReadColumnIDs(cloneConf, readColumns);
+    assertTrue(RCFileVectorizedRecordReader.canDecode(cloneConf, escaped));
+
+    // an escaped string column would be read as null
+    readColumns.add(5);
+    ColumnProjectionUtils.setReadColumnIDs(cloneConf, readColumns);
+    assertFalse(RCFileVectorizedRecordReader.canDecode(cloneConf, escaped));
+    assertTrue(RCFileVectorizedRecordReader.canDecode(cloneConf, tbl));
+    try {
+      new RCFileVectorizedRecordReader(cloneConf, split, escaped);
+      fail("an escaped string column is not decoded");
+    } catch (IOException e) {
+      // expected
+    }
+
+    // all the columns are read when none is projected
+    ColumnProjectionUtils.setFullyReadColumns(cloneConf);
+    assertFalse(RCFileVectorizedRecordReader.canDecode(cloneConf, escaped));
+
+    // only the columnar SerDes are decoded
+    Properties lazySimple = createProperties();
+    lazySimple.setProperty(Constants.SERIALIZATION_LIB, LazySimpleSerDe.class.getName());
+    assertFalse(RCFileVectorizedRecordReader.canDecode(cloneConf, lazySimple));
+  }
+
   private static Properties createProperties() {
     Properties tbl = new Properties();
 
@@ -362,6 +691,7 @@ public class TestRCFile extends TestCase {
     tbl.setProperty("columns.types",
         "tinyint:smallint:int:bigint:double:string:int:string");
     tbl.setProperty(Constants.SERIALIZATION_NULL_FORMAT, "NULL");
+    tbl.setProperty(Constants.SERIALIZATION_LIB, ColumnarSerDe.class.getName());
     return tbl;
   }
 
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluator;
+import org.apache.hadoop.hive.ql.exec.ExprNodeEvaluatorFactory;
+import org.apache.hadoop.hive.ql.exec.ExprNodeSharedEvaluator;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+
+/**
+ * TestExpressionOptimizer.
+ *
+ */
+public class TestExpressionOptimizer extends TestCase {
+
+  /**
+   * Adds one to an int, and counts its calls.
+   */
+  public static class CountingUDF extends GenericUDF {
+
+    private IntObjectInspector argumentOI;
+    private final IntWritable result = new IntWritable();
+    int calls;
+
+    @Override
+    public ObjectInspector initialize(ObjectInspector[] arguments) {
+      argumentOI = (IntObjectInspector) arguments[0];
+      return PrimitiveObjectInspectorFactory.writableIntObjectInspector;
+    }
+
+    @Override
+    public Object evaluate(DeferredObject[] arguments) throws HiveException {
+      calls++;
+      Object value = arguments[0].get();
+      if (value == null) {
+        return null;
+      }
+      result.set(argumentOI.get(value) + 1);
+      return result;
+    }
+
+    @Override
+    public String getDisplayString(String[] children) {
+      return "counting(" + children[0] + ")";
+    }
+  }
+
+  private final ExprNodeDesc a =
+      new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "a", "t", false);
+
+  private static ExprNodeDesc func(String name, ExprNodeDesc... children) throws Exception {
+    return TypeCheckProcFactory.DefaultExprProcessor.getFuncExprNodeDesc(name, children);
+  }
+
+  private static Object fold(ExprNodeDesc desc) {
+    ExprNodeDesc folded = ExpressionOptimizer.foldConstants(desc);
+    assertTrue(folded.getExprString(), folded instanceof ExprNodeConstantDesc);
+    return ((ExprNodeConstantDesc) folded).getValue();
+  }
+
+  public void testFoldConstants() throws Exception {
+    assertEquals(Integer.valueOf(3), fold(func("+",
+        new ExprNodeConstantDesc(1), new ExprNodeConstantDesc(2))));
+    assertEquals(Integer.valueOf(7), fold(func("+", new ExprNodeConstantDesc(1),
+        func("*", new ExprNodeConstantDesc(2), new ExprNodeConstantDesc(3)))));
+    assertEquals(Double.valueOf(1.5), fold(func("double", new ExprNodeConstantDesc("1.5"))));
+    assertEquals("2012-03-01", fold(func("date_add",
+        new ExprNodeConstantDesc("2012-02-28"), new ExprNodeConstantDesc(2))));
+  }
+
+  public void testFoldConstantSubexpressions() throws Exception {
+    ExprNodeDesc folded = ExpressionOptimizer.foldConstants(func("+", a,
+        func("*", new ExprNodeConstantDesc(2), new ExprNodeConstantDesc(3))));
+    assertTrue(folded instanceof ExprNodeGenericFuncDesc);
+    assertSame(a, folded.getChildren().get(0));
+    ExprNodeDesc child = folded.getChildren().get(1);
+    assertTrue(child instanceof ExprNodeConstantDesc);
+    assertEquals(Integer.valueOf(6), ((ExprNodeConstantDesc) child).getValue());
+  }
+
+  public void testNonDeterministic() throws Exception {
+    ExprNodeDesc rand = func("rand", new ExprNodeConstantDesc(1));
+    assertSame(rand, ExpressionOptimizer.foldConstants(rand));
+
+    List<ExprNodeDesc> cols = new ArrayList<ExprNodeDesc>();
+    cols.add(func("rand", a));
+    cols.add(func("rand", a));
+    ExpressionOptimizer.shareCommonSubexpressions(cols);
+    assertNotSame(cols.get(0), cols.get(1));
+  }
+
+  public void testShareCommonSubexpressions() throws Exception {
+    CountingUDF udf1 = new CountingUDF();
+    CountingUDF udf2 = new CountingUDF();
+    List<ExprNodeDesc> cols = new ArrayList<ExprNodeDesc>();
+    cols.add(func("*", ExprNodeGenericFuncDesc.newInstance(udf1, Arrays.asList(a)),
+        new ExprNodeConstantDesc(2)));
+    cols.add(ExprNodeGenericFuncDesc.newInstance(udf2, Arrays.asList(a)));
+    ExpressionOptimizer.shareCommonSubexpressions(cols);
+    assertSame(cols.get(0).getChildren().get(0), cols.get(1));
+
+    StructObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(
+        Arrays.asList("a"), Arrays.<ObjectInspector>asList(
+        PrimitiveObjectInspectorFactory.writableIntObjectInspector));
+    ExprNodeSharedEvaluator.RowCounter counter = new ExprNodeSharedEvaluator.RowCounter();
+    ExprNodeEvaluator[] evaluators = ExprNodeEvaluatorFactory.get(cols, counter);
+    for (ExprNodeEvaluator evaluator : evaluators) {
+      evaluator.initialize(rowOI);
+    }
+    for (int r = 0; r < 10; r++) {
+      counter.next();
+      List<Object> row = Arrays.<Object>asList(new IntWritable(r));
+      assertEquals(new IntWritable(2 * (r + 1)), evaluators[0].evaluate(row));
+      assertEquals(new IntWritable(r + 1), evaluators[1].evaluate(row));
+    }
+    assertEquals(10, udf1.calls);
+    assertEquals(0, udf2.calls);
+  }
+}
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.optimizer.physical;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.CollectOperator;
+import org.apache.hadoop.hive.ql.exec.FilterOperator;
+import org.apache.hadoop.hive.ql.exec.GroupByOperator;
+import org.apache.hadoop.hive.ql.exec.Operator;
+import org.apache.hadoop.hive.ql.exec.OperatorFactory;
+import org.apache.hadoop.hive.ql.exec.TableScanOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorFilterOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorGroupByOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorSelectOperator;
+import org.apache.hadoop.hive.ql.exec.vector.VectorTableScanOperator;
+import org.apache.hadoop.hive.ql.parse.TypeCheckProcFactory;
+import org.apache.hadoop.hive.ql.plan.AggregationDesc;
+import org.apache.hadoop.hive.ql.plan.CollectDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.FilterDesc;
+import org.apache.hadoop.hive.ql.plan.GroupByDesc;
+import org.apache.hadoop.hive.ql.plan.MapredWork;
+import org.apache.hadoop.hive.ql.plan.SelectDesc;
+import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFCount;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFSum;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+
+/**
+ * TestVectorizer.
+ *
+ * Checks which map-side plans are replaced by their vectorized operators, and
+ * that the others are left as they are.
+ */
+public class TestVectorizer extends TestCase {
+
+  private final ExprNodeDesc a = new ExprNodeColumnDesc(TypeInfoFactory.intTypeInfo, "a", "t",
+      false);
+  private final ExprNodeDesc b = new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo, "b", "t",
+      false);
+  private final ExprNodeDesc s = new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, "s", "t",
+      false);
+
+  private static ExprNodeDesc func(String name, ExprNodeDesc... children) throws Exception {
+    return TypeCheckProcFactory.DefaultExprProcessor.getFuncExprNodeDesc(name, children);
+  }
+
+  private static AggregationDesc aggregation(String name, ExprNodeDesc parameter,
+      boolean distinct) throws Exception {
+    ArrayList<ExprNodeDesc> parameters = new ArrayList<ExprNodeDesc>();
+    parameters.add(parameter);
+    TypeInfo[] types = new TypeInfo[] {parameter.getTypeInfo()};
+    GenericUDAFEvaluator evaluator = "sum".equals(name) ? new GenericUDAFSum()
+        .getEvaluator(types) : new GenericUDAFCount().getEvaluator(types);
+    return new AggregationDesc(name, evaluator, parameters, distinct,
+        GenericUDAFEvaluator.Mode.PARTIAL1);
+  }
+
+  private static GroupByDesc groupBy(GroupByDesc.Mode mode, List<ExprNodeDesc> keys,
+      List<AggregationDesc> aggregators) {
+    ArrayList<String> outputColumnNames = new ArrayList<String>();
+    for (int i = 0; i < keys.size() + aggregators.size(); i++) {
+      outputColumnNames.add("_col" + i);
+    }
+    return new GroupByDesc(mode, outputColumnNames, new ArrayList<ExprNodeDesc>(keys),
+        new ArrayList<AggregationDesc>(aggregators), false, 0.5f, 0.9f);
+  }
+
+  /**
+   * Chain the operators of the descriptors below a table scan, and vectorize
+   * the map-side plan of the scan.
+   *
+   * @return the operators of the map-side plan after vectorization, from the
+   *         table scan down
+   */
+  private static List<Operator<? extends Serializable>> vectorize(TableScanDesc scan,
+      Serializable... descs) {
+    Operator<? extends Serializable> tableScan = OperatorFactory.get(scan);
+    Operator<? extends Serializable> parent = tableScan;
+    for (Serializable desc : descs) {
+      parent = OperatorFactory.getAndMakeChild(desc, parent);
+    }
+    MapredWork work = new MapredWork();
+    LinkedHashMap<String, Operator<? extends Serializable>> aliasToWork =
+        new LinkedHashMap<String, Operator<? extends Serializable>>();
+    aliasToWork.put("t", tableScan);
+    work.setAliasToWork(aliasToWork);
+
+    Vectorizer.vectorize(work);
+
+    List<Operator<? extends Serializable>> plan = new ArrayList<Operator<? extends Serializable>>();
+    Operator<? extends Serializable> op = work.getAliasToWork().get("t");
+    while (op != null) {
+      plan.add(op);
+      List<Operator<? extends Serializable>> children = op.getChildOperators();
+      if (children != null && children.size() == 1) {
+        // the chain is well linked both ways
+        assertSame(op, children.get(0).getParentOperators().get(0));
+        op = children.get(0);
+      } else {
+        op = null;
+      }
+    }
+    return plan;
+  }
+
+  private static void assertClasses(List<Operator<? extends Serializable>> plan,
+      Class<?>... classes) {
+    assertEquals(classes.length, plan.size());
+    for (int i = 0; i < classes.length; i++) {
+      assertEquals(classes[i], plan.get(i).getClass());
+    }
+  }
+
+  public void testVectorized() throws Exception {
+    List<Operator<? extends Serializable>> plan = vectorize(new TableScanDesc("t"),
+        new FilterDesc(func(">", a, new ExprNodeConstantDesc(10)), false),
+        groupBy(GroupByDesc.Mode.HASH, Arrays.asList(a),
+        Arrays.asList(aggregation("sum", b, false), aggregation("count", b, false))),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, VectorTableScanOperator.class, VectorFilterOperator.class,
+        VectorGroupByOperator.class, CollectOperator.class);
+    assertEquals(Arrays.asList("a", "b"),
+        ((VectorTableScanOperator) plan.get(0)).getVectorColumns());
+  }
+
+  /**
+   * The columns of the scan are the ones used up to the select which
+   * computes its own.
+   */
+  public void testVectorizedSelect() throws Exception {
+    ArrayList<ExprNodeDesc> columns = new ArrayList<ExprNodeDesc>();
+    columns.add(func("+", a, b));
+    List<Operator<? extends Serializable>> plan = vectorize(new TableScanDesc("t"),
+        new SelectDesc(columns, new ArrayList<String>(Arrays.asList("_col0"))),
+        groupBy(GroupByDesc.Mode.HASH, Arrays.asList(
+        (ExprNodeDesc) new ExprNodeColumnDesc(TypeInfoFactory.doubleTypeInfo, "_col0", "", false)),
+        new ArrayList<AggregationDesc>()),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, VectorTableScanOperator.class, VectorSelectOperator.class,
+        VectorGroupByOperator.class, CollectOperator.class);
+    assertEquals(Arrays.asList("a", "b"),
+        ((VectorTableScanOperator) plan.get(0)).getVectorColumns());
+  }
+
+  public void testUnsupportedFilter() throws Exception {
+    List<Operator<? extends Serializable>> plan = vectorize(new TableScanDesc("t"),
+        new FilterDesc(func("=", s, new ExprNodeConstantDesc("x")), false),
+        groupBy(GroupByDesc.Mode.HASH, Arrays.asList(a),
+        Arrays.asList(aggregation("sum", b, false))),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, TableScanOperator.class, FilterOperator.class,
+        GroupByOperator.class, CollectOperator.class);
+  }
+
+  public void testDistinctAggregation() throws Exception {
+    List<Operator<? extends Serializable>> plan = vectorize(new TableScanDesc("t"),
+        groupBy(GroupByDesc.Mode.HASH, Arrays.asList(a, b),
+        Arrays.asList(aggregation("count", b, true))),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, TableScanOperator.class, GroupByOperator.class, CollectOperator.class);
+  }
+
+  public void testStringKey() throws Exception {
+    List<Operator<? extends Serializable>> plan = vectorize(new TableScanDesc("t"),
+        groupBy(GroupByDesc.Mode.HASH, Arrays.asList(s),
+        Arrays.asList(aggregation("sum", b, false))),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, TableScanOperator.class, GroupByOperator.class, CollectOperator.class);
+  }
+
+  /**
+   * Only the map-side hash aggregation is vectorized.
+   */
+  public void testNotHashGroupBy() throws Exception {
+    List<Operator<? extends Serializable>> plan = vectorize(new TableScanDesc("t"),
+        groupBy(GroupByDesc.Mode.COMPLETE, Arrays.asList(a),
+        Arrays.asList(aggregation("sum", b, false))),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, TableScanOperator.class, GroupByOperator.class, CollectOperator.class);
+  }
+
+  public void testNoGroupBy() throws Exception {
+    List<Operator<? extends Serializable>> plan = vectorize(new TableScanDesc("t"),
+        new FilterDesc(func(">", a, new ExprNodeConstantDesc(10)), false),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, TableScanOperator.class, FilterOperator.class, CollectOperator.class);
+  }
+
+  public void testGatherStats() throws Exception {
+    TableScanDesc scan = new TableScanDesc("t");
+    scan.setGatherStats(true);
+    List<Operator<? extends Serializable>> plan = vectorize(scan,
+        groupBy(GroupByDesc.Mode.HASH, Arrays.asList(a),
+        Arrays.asList(aggregation("sum", b, false))),
+        new CollectDesc(Integer.valueOf(10)));
+
+    assertClasses(plan, TableScanOperator.class, GroupByOperator.class, CollectOperator.class);
+  }
+}
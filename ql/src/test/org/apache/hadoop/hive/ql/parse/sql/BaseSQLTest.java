@@ -28,6 +28,7 @@ import org.apache.hadoop.hive.ql.parse.sql.transformer.NothingTransformer;
 import org.apache.hadoop.hive.ql.parse.sql.transformer.PrepareFilterBlockTransformer;
 import org.apache.hadoop.hive.ql.parse.sql.transformer.PrepareQueryInfoTransformer;
 import org.apache.hadoop.hive.ql.parse.sql.transformer.SubQUnnestTransformer;
+import org.apache.hadoop.hive.ql.parse.sql.transformer.TransformerBuilder;
 
 import br.com.porcelli.parser.plsql.PantheraParser_PLSQLParser;
 
@@ -138,6 +139,17 @@ public abstract class BaseSQLTest extends TestCase {
     }
   }
 
+  /**
+   * Compare SQL AST after all transformers, which is the tree Hive AST is generated from.
+   */
+  void testTransformer(String sql, String sqlTree) throws SqlXlateException {
+    TranslateContext context = new TranslateContext(null);
+    SqlASTNode sqlAST = buildAST(sql);
+    TransformerBuilder.buildTransformer().transformAST(sqlAST, context);
+    System.out.println(sqlAST.toStringTree());
+    assertEquals(sqlTree, sqlAST.toStringTree());
+  }
+
   void printTreeType3(org.antlr33.runtime.tree.Tree tree) {
 
     System.out.println(this.toTypeString3(tree));
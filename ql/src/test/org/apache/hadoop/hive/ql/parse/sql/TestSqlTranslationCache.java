@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.parse.sql;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.MetaStoreUtils;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.parse.ASTNode;
+import org.apache.hadoop.hive.ql.parse.ParseDriver;
+import org.apache.hadoop.hive.ql.stats.StatsSetupConst;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+
+/**
+ * TestSqlTranslationCache.
+ *
+ */
+public class TestSqlTranslationCache extends TestCase {
+  private static final String TABLE = "sql_cache_t1";
+
+  private HiveConf conf;
+  private Hive db;
+  private SqlTranslationCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    conf = new HiveConf(TestSqlTranslationCache.class);
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVE_SQL_TRANSLATION_CACHE_SIZE, 2);
+    db = Hive.get(conf);
+    db.dropTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, TABLE, true, true);
+    db.createTable(TABLE, Arrays.asList("key", "value"), null,
+        SequenceFileInputFormat.class, SequenceFileOutputFormat.class);
+    cache = SqlTranslationCache.get(conf);
+    cache.clear();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    db.dropTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, TABLE, true, true);
+    Hive.closeCurrent();
+    super.tearDown();
+  }
+
+  public void testHit() throws Exception {
+    String key = cache.getKey("select key from " + TABLE, conf);
+    assertNull(cache.lookup(key, conf));
+
+    ASTNode tree = parse("select key from " + TABLE);
+    cache.put(key, tree, conf);
+    long hits = cache.getHitCount();
+    ASTNode cached = cache.lookup(key, conf);
+    assertNotNull(cached);
+    assertNotSame(tree, cached);
+    assertEquals(tree.toStringTree(), cached.toStringTree());
+    assertEquals(hits + 1, cache.getHitCount());
+
+    // the returned tree is a copy, changing it does not change the cache
+    cached.deleteChild(0);
+    assertEquals(tree.toStringTree(), cache.lookup(key, conf).toStringTree());
+  }
+
+  public void testEviction() throws Exception {
+    ASTNode tree = parse("select key from " + TABLE);
+    cache.put("k1", tree, conf);
+    cache.put("k2", tree, conf);
+    // k1 is used more recently than k2
+    assertNotNull(cache.lookup("k1", conf));
+    cache.put("k3", tree, conf);
+
+    assertEquals(2, cache.size());
+    assertNull(cache.lookup("k2", conf));
+    assertNotNull(cache.lookup("k1", conf));
+    assertNotNull(cache.lookup("k3", conf));
+  }
+
+  public void testDdlInvalidation() throws Exception {
+    String key = cache.getKey("select key from " + TABLE, conf);
+    cache.put(key, parse("select key from " + TABLE), conf);
+    assertNotNull(cache.lookup(key, conf));
+
+    long invalidations = cache.getInvalidationCount();
+    Table tab = db.getTable(TABLE);
+    tab.getTTable().getSd().getCols().add(new FieldSchema("extra", "string", null));
+    db.alterTable(TABLE, tab);
+    assertNull(cache.lookup(key, conf));
+    assertEquals(invalidations + 1, cache.getInvalidationCount());
+
+    cache.put(key, parse("select key from " + TABLE), conf);
+    assertNotNull(cache.lookup(key, conf));
+    db.dropTable(MetaStoreUtils.DEFAULT_DATABASE_NAME, TABLE);
+    assertNull(cache.lookup(key, conf));
+    assertEquals(invalidations + 2, cache.getInvalidationCount());
+  }
+
+  public void testStatsInvalidation() throws Exception {
+    String key = cache.getKey("select key from " + TABLE, conf);
+    cache.put(key, parse("select key from " + TABLE), conf);
+    assertNotNull(cache.lookup(key, conf));
+
+    // the size of a table may change the join order
+    Table tab = db.getTable(TABLE);
+    tab.getParameters().put(StatsSetupConst.TOTAL_SIZE, "1000");
+    db.alterTable(TABLE, tab);
+    assertNull(cache.lookup(key, conf));
+
+    cache.put(key, parse("select key from " + TABLE), conf);
+    assertNotNull(cache.lookup(key, conf));
+    tab = db.getTable(TABLE);
+    tab.getParameters().put(StatsSetupConst.TOTAL_SIZE, "2000");
+    db.alterTable(TABLE, tab);
+    assertNull(cache.lookup(key, conf));
+  }
+
+  public void testConfChange() throws Exception {
+    String command = "select key from " + TABLE;
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVEOPTSQLJOINREORDER, false);
+    String key = cache.getKey(command, conf);
+    cache.put(key, parse(command), conf);
+
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVEOPTSQLJOINREORDER, true);
+    String reorderKey = cache.getKey(command, conf);
+    assertFalse(key.equals(reorderKey));
+    assertNull(cache.lookup(reorderKey, conf));
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVEOPTSQLJOINREORDER, false);
+    assertNotNull(cache.lookup(key, conf));
+
+    // a new size re-creates the cache, and a size of 0 disables it
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVE_SQL_TRANSLATION_CACHE_SIZE, 3);
+    SqlTranslationCache resized = SqlTranslationCache.get(conf);
+    assertNotSame(cache, resized);
+    assertEquals(0, resized.size());
+    HiveConf.setIntVar(conf, HiveConf.ConfVars.HIVE_SQL_TRANSLATION_CACHE_SIZE, 0);
+    assertNull(SqlTranslationCache.get(conf));
+  }
+
+  private static ASTNode parse(String command) throws Exception {
+    return new ParseDriver().parse(command);
+  }
+}
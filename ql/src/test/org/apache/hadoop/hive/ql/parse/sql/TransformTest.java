@@ -17,6 +17,25 @@
  */
 package org.apache.hadoop.hive.ql.parse.sql;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.antlr33.runtime.tree.CommonTree;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.parse.HiveParser;
+import org.apache.hadoop.hive.ql.parse.sql.transformer.CrossJoinTransformer;
+import org.apache.hadoop.hive.ql.parse.sql.transformer.MultipleTableSelectTransformer;
+import org.apache.hadoop.hive.ql.parse.sql.transformer.NothingTransformer;
+import org.apache.hadoop.hive.ql.parse.sql.transformer.PrepareQueryInfoTransformer;
+import org.apache.hadoop.hive.ql.parse.sql.transformer.QueryInfo;
+
+import br.com.porcelli.parser.plsql.PantheraParser_PLSQLParser;
+
 /**
  * Test transformer.
  * TransformTest.
@@ -49,6 +68,57 @@ public class TransformTest extends BaseSQLTest {
   }
 
 
+  /**
+   * QueryInfo is kept for an unchanged SQL AST, and rebuilt if a token or the shape of the tree
+   * changes.
+   */
+  public void testQueryInfoReuse() throws SqlXlateException {
+    String sql = "select key from src where key > 1;";
+    TranslateContext context = new TranslateContext(null);
+    SqlASTNode sqlAST = buildAST(sql);
+    PrepareQueryInfoTransformer tf = new PrepareQueryInfoTransformer(new NothingTransformer());
+
+    tf.transform(sqlAST, context);
+    QueryInfo qInfo = context.getQInfoRoot();
+    tf.transform(sqlAST, context);
+    assertSame(qInfo, context.getQInfoRoot());
+
+    // a token changed in place
+    CommonTree literal = findNode(sqlAST, "1");
+    literal.getToken().setText("2");
+    tf.transform(sqlAST, context);
+    assertNotSame(qInfo, context.getQInfoRoot());
+    qInfo = context.getQInfoRoot();
+    tf.transform(sqlAST, context);
+    assertSame(qInfo, context.getQInfoRoot());
+
+    // a node replaced by an equal copy
+    CommonTree parent = (CommonTree) literal.getParent();
+    parent.setChild(literal.getChildIndex(), literal.dupNode());
+    tf.transform(sqlAST, context);
+    assertNotSame(qInfo, context.getQInfoRoot());
+    qInfo = context.getQInfoRoot();
+
+    // a subtree removed
+    CommonTree where = findNode(sqlAST, "where");
+    where.getParent().deleteChild(where.getChildIndex());
+    tf.transform(sqlAST, context);
+    assertNotSame(qInfo, context.getQInfoRoot());
+  }
+
+  private CommonTree findNode(CommonTree tree, String text) {
+    if (text.equals(tree.getText())) {
+      return tree;
+    }
+    for (int i = 0; i < tree.getChildCount(); i++) {
+      CommonTree node = findNode((CommonTree) tree.getChild(i), text);
+      if (node != null) {
+        return node;
+      }
+    }
+    return null;
+  }
+
   public void testGreaterThanAll() throws SqlXlateException {
     String sql = "select a from t1 where b > all (select b from t2 where t2.c > 100);";
     String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME t1)))) (join cross (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME t2)))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (max (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT b)))))))) (ALIAS panthera_1))) (where (LOGIC_EXPR (> (CASCATED_ELEMENT (ANY_ELEMENT t2 c)) 100)))))))))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT a))))) (where (LOGIC_EXPR (> (CASCATED_ELEMENT (ANY_ELEMENT b)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_1)))))))))";
@@ -82,10 +152,47 @@ public class TransformTest extends BaseSQLTest {
 
   public void testNotInUC() throws SqlXlateException {
     String sql = "select count(ps_suppkey) from partsupp where ps_suppkey not in (select s_suppkey from supplier where s_comment like '%Customer%Complaints%');";
-    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME partsupp)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT ps_suppkey))) (ALIAS panthera_0)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT ps_suppkey))) (ALIAS panthera_1))))))))) (join cross (TABLE_REF_ELEMENT (ALIAS panthera_3) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME supplier)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ROUTINE_CALL (ROUTINE_NAME collect_set) (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT s_suppkey)))))))) (ALIAS panthera_4))) (where (LOGIC_EXPR (like (CASCATED_ELEMENT (ANY_ELEMENT s_comment)) (EXPR '%Customer%Complaints%'))))))))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count (EXPR (CASCATED_ELEMENT (ANY_ELEMENT ps_suppkey)))))) (ALIAS panthera_5))) (where (LOGIC_EXPR (not (CASCATED_ELEMENT (ROUTINE_CALL (ROUTINE_NAME array_contains) (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)))) (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_4))))))))))))))";
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME partsupp)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT ps_suppkey))) (ALIAS panthera_0)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT ps_suppkey))) (ALIAS panthera_1))))))))) (join leftanti (TABLE_REF_ELEMENT (ALIAS panthera_3) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME supplier)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT s_suppkey))) (ALIAS panthera_4))) (where (LOGIC_EXPR (like (CASCATED_ELEMENT (ANY_ELEMENT s_comment)) (EXPR '%Customer%Complaints%')))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_1)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_3 panthera_4)))))) (join cross (TABLE_REF_ELEMENT (ALIAS panthera_8) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_7) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME supplier)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT s_suppkey))) (ALIAS panthera_4))) (where (LOGIC_EXPR (like (CASCATED_ELEMENT (ANY_ELEMENT s_comment)) (EXPR '%Customer%Complaints%')))))))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count *))) (ALIAS panthera_5)) (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_4)))))) (ALIAS panthera_6)))))))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count (EXPR (CASCATED_ELEMENT (ANY_ELEMENT ps_suppkey)))))) (ALIAS panthera_9))) (where (LOGIC_EXPR (or (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_8 panthera_5)) 0) (and (IS_NOT_NULL (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_1))) (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_8 panthera_5)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_8 panthera_6)))))))))))";
     testFilterBlockTransformer(sql, tTree);
   }
 
+  public void testNotInUCMapJoinHint() throws SqlXlateException {
+    String sql = "select count(ps_suppkey) from partsupp where ps_suppkey not in (select s_suppkey from supplier where s_comment like '%Customer%Complaints%');";
+    TranslateContext context = new TranslateContext(null);
+    SqlASTNode sqlAST = buildAST(sql);
+    fbt.transform(sqlAST, context);
+
+    // the one-row count of the sub query is map joined by the select of the anti join
+    List<Map<Integer, List<String>>> hints = new ArrayList<Map<Integer, List<String>>>();
+    collectHints(sqlAST, context, hints);
+    assertEquals(1, hints.size());
+    assertEquals(1, hints.get(0).size());
+    assertEquals(Arrays.asList("panthera_8"), hints.get(0).get(HiveParser.TOK_MAPJOIN));
+  }
+
+  public void testNotInUCMultiColumn() throws SqlXlateException {
+    String sql = "select o_orderkey from orders where (o_orderkey, o_custkey) not in (select l_orderkey, l_partkey from lineitem);";
+    TranslateContext context = new TranslateContext(null);
+    SqlASTNode sqlAST = buildAST(sql);
+    try {
+      fbt.transform(sqlAST, context);
+      fail("multi parameter NOT IN is not supported");
+    } catch (SqlXlateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("multi parameter NOT IN"));
+    }
+  }
+
+  private void collectHints(CommonTree node, TranslateContext context,
+      List<Map<Integer, List<String>>> hints) {
+    if (node.getType() == PantheraParser_PLSQLParser.SQL92_RESERVED_SELECT
+        && context.getHints(node) != null) {
+      hints.add(context.getHints(node));
+    }
+    for (int i = 0; i < node.getChildCount(); i++) {
+      collectHints((CommonTree) node.getChild(i), context, hints);
+    }
+  }
+
   public void testLessThanC() throws SqlXlateException {
     String sql = "select  sum(l_extendedprice) / 7.0 as avg_yearly from part where l_quantity < (select  0.2 * avg(l_quantity)  from    lineitem  where   lineitem.l_partkey = part.p_partkey);";
     String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME part)))) (join (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (* 0.2 (STANDARD_FUNCTION (avg (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_quantity))))))))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT lineitem l_partkey))) (ALIAS panthera_2))) (group (GROUP_BY_ELEMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT lineitem l_partkey))))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT part p_partkey)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_2)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (/ (STANDARD_FUNCTION (sum (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_extendedprice))))))) 7.0)) (ALIAS avg_yearly))) (where (LOGIC_EXPR (< (CASCATED_ELEMENT (ANY_ELEMENT l_quantity)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)))))))))";
@@ -99,8 +206,123 @@ public class TransformTest extends BaseSQLTest {
   }
 
   public void testNotExistsC() throws SqlXlateException {
+    // correlated NOT EXISTS is one left anti join on the correlated key
     String sql = "select  count(l1.l_orderkey)  from lineitem l1 where not exists (select * from lineitem l2 where l1.l_orderkey = l2.l_orderkey);";
-    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME orders)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_orderkey))) (ALIAS panthera_0)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_orderkey))) (ALIAS panthera_1))))))))) (join leftsemi (TABLE_REF_ELEMENT (ALIAS panthera_3) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_4))) (group (GROUP_BY_ELEMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey)))) (having (LOGIC_EXPR (> (STANDARD_FUNCTION (sum (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_quantity))))))) 300)))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_4)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_0))) (ALIAS panthera_5)))))))";
-    testFilterBlockTransformer(sql, tTree);
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS l1) (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l1 l_orderkey))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_4))))))))) (join leftanti (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS l2) (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_3))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_4)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_3)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)))))) (ALIAS panthera_col_0))) (where (LOGIC_EXPR true))))))";
+    testTransformer(sql, tTree);
+  }
+
+  public void testNotExistsCHaving() throws SqlXlateException {
+    String sql = "select l_orderkey, sum(l_quantity) from lineitem group by l_orderkey having not exists (select * from orders where orders.o_orderkey = lineitem.l_orderkey);";
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (STANDARD_FUNCTION (sum (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_quantity)))))))) (ALIAS panthera_2)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_5))) (group (GROUP_BY_ELEMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))))))))))) (join leftanti (TABLE_REF_ELEMENT (ALIAS panthera_3) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME orders)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_orderkey))) (ALIAS panthera_4))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_3 panthera_4)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_5)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1))) (ALIAS panthera_col_0)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_2))) (ALIAS panthera_col_1))) (where (LOGIC_EXPR true))))))";
+    testTransformer(sql, tTree);
+  }
+
+  public void testNotExistsCNotEqual() throws SqlXlateException {
+    // not equal correlated condition can't be anti join key, it is checked after a left join
+    String sql = "select count(l1.l_orderkey) from lineitem l1 where not exists (select * from lineitem l3 where l3.l_orderkey = l1.l_orderkey and l3.l_suppkey <> l1.l_suppkey and l3.l_receiptdate > l3.l_commitdate);";
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS l1) (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l1 l_orderkey))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_4)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_suppkey))) (ALIAS panthera_6))))))))) (join left (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS l3) (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_3)) (SELECT_ITEM (EXPR (STANDARD_FUNCTION (max (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_suppkey)))))))) (ALIAS panthera_5)) (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_suppkey)))))) (ALIAS panthera_5count))) (where (LOGIC_EXPR (> (CASCATED_ELEMENT (ANY_ELEMENT l_receiptdate)) (CASCATED_ELEMENT (ANY_ELEMENT l_commitdate))))) (group (GROUP_BY_ELEMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_3)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_4)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)))))) (ALIAS panthera_col_0))) (where (LOGIC_EXPR (or (and (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_5count)) 1) (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_5)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_6)))) (and (IS_NULL (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_3))) (IS_NULL (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_5)))))))))))";
+    testTransformer(sql, tTree);
+  }
+
+  public void testExistsC() throws SqlXlateException {
+    // duplicate sub query rows of a key don't duplicate top rows of left semi join
+    String sql = "select count(o_orderkey) from orders where exists (select * from lineitem where lineitem.l_orderkey = orders.o_orderkey);";
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME orders)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_orderkey))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_orderkey))) (ALIAS panthera_4))))))))) (join leftsemi (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_3))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_3)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_4)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (count (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)))))) (ALIAS panthera_col_0))) (where (LOGIC_EXPR true))))))";
+    testTransformer(sql, tTree);
+  }
+
+  public void testInC() throws SqlXlateException {
+    String sql = "select o_orderkey from orders where o_custkey in (select l_suppkey from lineitem where lineitem.l_orderkey = orders.o_orderkey);";
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME orders)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_orderkey))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_custkey))) (ALIAS panthera_2)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT o_orderkey))) (ALIAS panthera_6))))))))) (join leftsemi (TABLE_REF_ELEMENT (ALIAS panthera_3) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_suppkey))) (ALIAS panthera_4)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_orderkey))) (ALIAS panthera_5))))))))) (on (LOGIC_EXPR (and (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_2)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_3 panthera_4))) (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_3 panthera_5)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_6))))))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1))) (ALIAS panthera_col_0))) (where (LOGIC_EXPR true))))))";
+    testTransformer(sql, tTree);
+  }
+
+  public void testLessThanCJoin() throws SqlXlateException {
+    // sub query is grouped by the correlated key, so it is joined once for each top row
+    String sql = "select sum(l_extendedprice) from lineitem, part where p_partkey = l_partkey and l_quantity < (select 0.2 * avg(l_quantity) from lineitem l2 where l2.l_partkey = part.p_partkey);";
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))) (join (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME part)))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT part p_partkey)) (CASCATED_ELEMENT (ANY_ELEMENT lineitem l_partkey)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_extendedprice))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_quantity))) (ALIAS panthera_3)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT p_partkey))) (ALIAS panthera_6))))))))) (join (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS l2) (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (* 0.2 (STANDARD_FUNCTION (avg (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l2 l_quantity))))))))) (ALIAS panthera_4)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_partkey))) (ALIAS panthera_5))) (group (GROUP_BY_ELEMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_partkey))))))))))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_5)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_6)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (sum (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)))))))) (ALIAS panthera_col_0))) (where (LOGIC_EXPR (< (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_3)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_4)))))))))";
+    testTransformer(sql, tTree);
+  }
+
+  public void testLessThanCOr() throws SqlXlateException {
+    // OR correlated condition can't be join key, sub query is grouped by both keys and cross joined
+    String sql = "select sum(l_extendedprice) from lineitem, part where p_partkey = l_partkey and l_quantity < (select 0.2 * avg(l_quantity) from lineitem l2 where l2.l_partkey = part.p_partkey or l2.l_suppkey = part.p_partkey);";
+    String tTree = "(STATEMENTS (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS panthera_0) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))) (join (TABLE_REF_ELEMENT (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME part)))) (on (LOGIC_EXPR (= (CASCATED_ELEMENT (ANY_ELEMENT part p_partkey)) (CASCATED_ELEMENT (ANY_ELEMENT lineitem l_partkey)))))))) (SELECT_LIST (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_extendedprice))) (ALIAS panthera_1)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_quantity))) (ALIAS panthera_3)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT p_partkey))) (ALIAS panthera_6)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT p_partkey))) (ALIAS panthera_8))))))))) (join cross (TABLE_REF_ELEMENT (ALIAS panthera_2) (TABLE_EXPRESSION (SELECT_MODE (SELECT_STATEMENT (SUBQUERY (select (from (TABLE_REF (TABLE_REF_ELEMENT (ALIAS l2) (TABLE_EXPRESSION (DIRECT_MODE (TABLEVIEW_NAME lineitem)))))) (SELECT_LIST (SELECT_ITEM (EXPR (* 0.2 (STANDARD_FUNCTION (avg (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_quantity))))))))) (ALIAS panthera_4)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_partkey))) (ALIAS panthera_5)) (SELECT_ITEM (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_suppkey))) (ALIAS panthera_7))) (group (GROUP_BY_ELEMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_partkey)))) (GROUP_BY_ELEMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT l_suppkey)))))))))))))) (SELECT_LIST (SELECT_ITEM (EXPR (STANDARD_FUNCTION (sum (ARGUMENTS (ARGUMENT (EXPR (CASCATED_ELEMENT (ANY_ELEMENT panthera_1)))))))) (ALIAS panthera_col_0))) (where (LOGIC_EXPR (and (or (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_5)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_6))) (= (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_7)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_8)))) (< (CASCATED_ELEMENT (ANY_ELEMENT panthera_0 panthera_3)) (CASCATED_ELEMENT (ANY_ELEMENT panthera_2 panthera_4))))))))))";
+    testTransformer(sql, tTree);
+  }
+
+  public void testJoinReorderStar() throws SqlXlateException {
+    String sql = "select l.l_quantity from part p, lineitem l, supplier s, orders o where l.l_partkey = p.p_partkey and l.l_suppkey = s.s_suppkey and l.l_orderkey = o.o_orderkey;";
+    testJoinOrder(sql, true, Arrays.asList("l", "s", "p", "o"), "l");
+  }
+
+  public void testJoinReorderChain() throws SqlXlateException {
+    // customer is the smallest table, but can only be joined once orders is joined
+    String sql = "select l.l_quantity from customer c, orders o, part p, lineitem l where l.l_orderkey = o.o_orderkey and o.o_custkey = c.c_custkey and l.l_partkey = p.p_partkey;";
+    testJoinOrder(sql, true, Arrays.asList("l", "p", "o", "c"), "l");
+  }
+
+  public void testJoinReorderUnknownSize() throws SqlXlateException {
+    String sql = "select l.l_quantity from part p, lineitem l, nation n where l.l_partkey = p.p_partkey and l.l_suppkey = n.n_nationkey;";
+    testJoinOrder(sql, true, Arrays.asList("p", "l", "n"), null);
+  }
+
+  public void testJoinReorderDisabled() throws SqlXlateException {
+    String sql = "select l.l_quantity from part p, lineitem l, supplier s where l.l_partkey = p.p_partkey and l.l_suppkey = s.s_suppkey;";
+    testJoinOrder(sql, false, Arrays.asList("p", "l", "s"), null);
+  }
+
+  /**
+   * Check the join order chosen by CrossJoinTransformer, and the table given a STREAMTABLE hint.
+   */
+  private void testJoinOrder(String sql, boolean reorder, List<String> expectedOrder,
+      String expectedStreamTable) throws SqlXlateException {
+    HiveConf conf = new HiveConf(TransformTest.class);
+    HiveConf.setBoolVar(conf, HiveConf.ConfVars.HIVEOPTSQLJOINREORDER, reorder);
+    TranslateContext context = new TranslateContext(conf);
+    final Map<String, Long> sizes = new HashMap<String, Long>();
+    sizes.put("lineitem", 600000000L);
+    sizes.put("orders", 150000000L);
+    sizes.put("part", 20000000L);
+    sizes.put("supplier", 1000000L);
+    sizes.put("customer", 100000L);
+    context.setMeta(new SqlXlateUtil.HiveMetadata(conf) {
+      @Override
+      public long getTableSize(String tblName) {
+        Long size = sizes.get(tblName);
+        return size == null ? -1 : size;
+      }
+    });
+
+    SqlASTNode sqlAST = buildAST(sql);
+    new CrossJoinTransformer(new MultipleTableSelectTransformer(new PrepareQueryInfoTransformer(
+        new NothingTransformer()))).transform(sqlAST, context);
+    System.out.println(sqlAST.toStringTree());
+
+    CommonTree select = context.getqInfoList().get(0).getSelectKeyForThisQ();
+    CommonTree topTableRef = (CommonTree) select.getFirstChildWithType(
+        PantheraParser_PLSQLParser.SQL92_RESERVED_FROM).getChild(0);
+    List<String> order = new ArrayList<String>();
+    order.add(getTableAlias((CommonTree) topTableRef.getChild(0)));
+    for (int i = 1; i < topTableRef.getChildCount(); i++) {
+      order.add(getTableAlias((CommonTree) ((CommonTree) topTableRef.getChild(i))
+          .getFirstChildWithType(PantheraParser_PLSQLParser.TABLE_REF_ELEMENT)));
+    }
+    assertEquals(expectedOrder, order);
+
+    Map<Integer, List<String>> hints = context.getHints(select);
+    if (expectedStreamTable == null) {
+      assertNull(hints);
+    } else {
+      assertEquals(Arrays.asList(expectedStreamTable), hints.get(HiveParser.TOK_STREAMTABLE));
+    }
+  }
+
+  private String getTableAlias(CommonTree tableRefElement) {
+    Set<String> aliases = new HashSet<String>();
+    SqlXlateUtil.getSrcTblAlias(tableRefElement, aliases);
+    assertEquals(1, aliases.size());
+    return aliases.iterator().next();
   }
 }
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.generic;
+
+import java.lang.reflect.Method;
+
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.udf.UDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.UDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.UDFOPMod;
+import org.apache.hadoop.hive.ql.udf.UDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.UDFOPNegative;
+import org.apache.hadoop.hive.ql.udf.UDFOPPlus;
+import org.apache.hadoop.hive.ql.udf.UDFSubstr;
+import org.apache.hadoop.hive.ql.udf.UDFToDouble;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * PerformTestUDFInvoker.
+ *
+ * Compares the time of a call of the built-in UDFs through their invoker and by reflection, for
+ * the numeric operators over all the numeric types, and for UDFs which are still called by
+ * reflection.
+ *
+ * Usage: PerformTestUDFInvoker [calls]
+ */
+public class PerformTestUDFInvoker {
+
+  private static final int ROUNDS = 5;
+
+  private static long time(UDFInvoker invoker, Object[][] arguments, int calls)
+      throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < calls; i++) {
+      invoker.invoke(arguments[i & (arguments.length - 1)]);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static void measure(String name, Class<? extends UDF> udfClass, Object[][] arguments,
+      int calls, TypeInfo... types) throws Exception {
+    UDF udf = ReflectionUtils.newInstance(udfClass, null);
+    Method method = TestUDFInvoker.resolve(udf, types);
+    UDFInvoker invoker = UDFInvoker.get(udf, method);
+    UDFInvoker reflection = new UDFInvoker.ReflectionInvoker(udf, method);
+
+    // the best of a few rounds, after the first one which warms up both paths
+    long invokerTime = Long.MAX_VALUE;
+    long reflectionTime = Long.MAX_VALUE;
+    for (int round = 0; round <= ROUNDS; round++) {
+      long t1 = time(invoker, arguments, calls);
+      long t2 = time(reflection, arguments, calls);
+      if (round > 0) {
+        invokerTime = Math.min(invokerTime, t1);
+        reflectionTime = Math.min(reflectionTime, t2);
+      }
+    }
+    System.out.println(String.format("%-24s %-20s %8.2f ns/call %8.2f ns/call %6.2fx", name,
+        invoker.getClass().getSimpleName(), (double) invokerTime / calls,
+        (double) reflectionTime / calls, (double) reflectionTime / invokerTime));
+  }
+
+  private static Object[][] numericArguments(Method method, int arity) {
+    Class<?> type = method.getParameterTypes()[0];
+    Object[][] arguments = new Object[16][arity];
+    for (int i = 0; i < arguments.length; i++) {
+      for (int j = 0; j < arity; j++) {
+        arguments[i][j] = TestUDFInvoker.writable(type, i * 7 + j + 1);
+      }
+    }
+    return arguments;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+    System.out.println(String.format("%-24s %-20s %16s %16s %7s", "udf", "invoker",
+        "invoker", "reflection", "speedup"));
+
+    Class<?>[] binaryOps = {UDFOPPlus.class, UDFOPMinus.class, UDFOPMultiply.class,
+        UDFOPMod.class, UDFOPDivide.class};
+    for (Class<?> op : binaryOps) {
+      Class<? extends UDF> udfClass = op.asSubclass(UDF.class);
+      for (TypeInfo type : TestUDFInvoker.NUMERIC_TYPES) {
+        Method method = TestUDFInvoker.resolve(ReflectionUtils.newInstance(udfClass, null),
+            type, type);
+        measure(op.getSimpleName() + "(" + type.getTypeName() + ")", udfClass,
+            numericArguments(method, 2), calls, type, type);
+      }
+    }
+    for (TypeInfo type : TestUDFInvoker.NUMERIC_TYPES) {
+      Method method = TestUDFInvoker.resolve(new UDFOPNegative(), type);
+      measure("UDFOPNegative(" + type.getTypeName() + ")", UDFOPNegative.class,
+          numericArguments(method, 1), calls, type);
+    }
+
+    Object[][] intArguments = new Object[16][];
+    Object[][] substrArguments = new Object[16][];
+    for (int i = 0; i < 16; i++) {
+      intArguments[i] = new Object[] {new IntWritable(i)};
+      substrArguments[i] = new Object[] {new Text("value " + i), new IntWritable(i % 4)};
+    }
+    measure("UDFToDouble(int)", UDFToDouble.class, intArguments, calls,
+        TypeInfoFactory.intTypeInfo);
+    measure("UDFSubstr(string,int)", UDFSubstr.class, substrArguments, calls,
+        TypeInfoFactory.stringTypeInfo, TypeInfoFactory.intTypeInfo);
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.ql.udf.generic;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.udf.UDFOPDivide;
+import org.apache.hadoop.hive.ql.udf.UDFOPMinus;
+import org.apache.hadoop.hive.ql.udf.UDFOPMod;
+import org.apache.hadoop.hive.ql.udf.UDFOPMultiply;
+import org.apache.hadoop.hive.ql.udf.UDFOPNegative;
+import org.apache.hadoop.hive.ql.udf.UDFOPPlus;
+import org.apache.hadoop.hive.ql.udf.UDFOPPositive;
+import org.apache.hadoop.hive.ql.udf.UDFPosMod;
+import org.apache.hadoop.hive.ql.udf.UDFSubstr;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * TestUDFInvoker.
+ *
+ */
+public class TestUDFInvoker extends TestCase {
+
+  static final TypeInfo[] NUMERIC_TYPES = {TypeInfoFactory.byteTypeInfo,
+      TypeInfoFactory.shortTypeInfo, TypeInfoFactory.intTypeInfo, TypeInfoFactory.longTypeInfo,
+      TypeInfoFactory.floatTypeInfo, TypeInfoFactory.doubleTypeInfo};
+
+  static Object writable(Class<?> type, int value) {
+    if (type == ByteWritable.class) {
+      return new ByteWritable((byte) value);
+    } else if (type == ShortWritable.class) {
+      return new ShortWritable((short) value);
+    } else if (type == IntWritable.class) {
+      return new IntWritable(value);
+    } else if (type == LongWritable.class) {
+      return new LongWritable(value);
+    } else if (type == FloatWritable.class) {
+      return new FloatWritable(value);
+    } else {
+      return new DoubleWritable(value);
+    }
+  }
+
+  static Method resolve(UDF udf, TypeInfo... types) throws Exception {
+    List<TypeInfo> typeInfos = new ArrayList<TypeInfo>();
+    for (TypeInfo type : types) {
+      typeInfos.add(type);
+    }
+    return udf.getResolver().getEvalMethod(typeInfos);
+  }
+
+  /**
+   * Check that the operator is called directly for all the numeric types, with the same results
+   * as by reflection.
+   */
+  private void checkSameResults(Class<? extends UDF> udfClass, int arity) throws Exception {
+    for (TypeInfo type : NUMERIC_TYPES) {
+      TypeInfo[] types = new TypeInfo[arity];
+      for (int i = 0; i < arity; i++) {
+        types[i] = type;
+      }
+      // each invoker has its own UDF, as the UDFs reuse their result
+      UDF udf = ReflectionUtils.newInstance(udfClass, null);
+      UDF reflectionUdf = ReflectionUtils.newInstance(udfClass, null);
+      Method method = resolve(udf, types);
+      UDFInvoker invoker = UDFInvoker.get(udf, method);
+      UDFInvoker reflection = new UDFInvoker.ReflectionInvoker(reflectionUdf, method);
+      assertFalse(udfClass + " " + type, invoker instanceof UDFInvoker.ReflectionInvoker);
+
+      Class<?> parameterType = method.getParameterTypes()[0];
+      for (int a = -7; a <= 7; a += 3) {
+        Object[] arguments = new Object[arity];
+        for (int i = 0; i < arity; i++) {
+          arguments[i] = writable(parameterType, i == 0 ? a : 4);
+        }
+        assertEquals(udfClass + " " + type, reflection.invoke(arguments),
+            invoker.invoke(arguments));
+      }
+      Object[] nulls = new Object[arity];
+      assertEquals(reflection.invoke(nulls), invoker.invoke(nulls));
+    }
+  }
+
+  public void testNumericOperators() throws Exception {
+    checkSameResults(UDFOPPlus.class, 2);
+    checkSameResults(UDFOPMinus.class, 2);
+    checkSameResults(UDFOPMultiply.class, 2);
+    checkSameResults(UDFOPMod.class, 2);
+    checkSameResults(UDFPosMod.class, 2);
+    checkSameResults(UDFOPDivide.class, 2);
+    checkSameResults(UDFOPNegative.class, 1);
+    checkSameResults(UDFOPPositive.class, 1);
+  }
+
+  public void testOtherUDFs() throws Exception {
+    UDF udf = new UDFSubstr();
+    Method method = resolve(udf, TypeInfoFactory.stringTypeInfo, TypeInfoFactory.intTypeInfo);
+    assertTrue(UDFInvoker.get(udf, method) instanceof UDFInvoker.ReflectionInvoker);
+  }
+}